@@ -68,6 +68,50 @@ afterEvaluate {
     }
 }
 
+// list the ripper classes and the domains they are limited to at build time, so finding the
+// ripper for a URL does not scan the jar or instantiate every ripper
+val generateRipperIndex by tasks.registering {
+  val rippersDir = file("src/main/java/com/rarchives/ripme/ripper/rippers")
+  val outputDir = layout.buildDirectory.dir("generated/resources/ripperIndex")
+  inputs.dir(rippersDir)
+  outputs.dir(outputDir)
+  doLast {
+    val packages = listOf("com.rarchives.ripme.ripper.rippers" to rippersDir,
+        "com.rarchives.ripme.ripper.rippers.video" to rippersDir.resolve("video"))
+    // a ripper that extends AbstractHTMLRipper or AbstractJSONRipper directly, keeps their canRip
+    // and returns a constant from getDomain() only accepts hosts ending with that domain
+    val defaultCanRip = Regex("""class\s+\w+\s+extends\s+Abstract(HTML|JSON)Ripper\b""")
+    val getDomain = Regex("""String\s+getDomain\(\)\s*\{\s*return\s+(?:"([^"\\]+)"|(\w+))\s*;\s*}""")
+    fun domainOf(source: String): String? {
+      if (!defaultCanRip.containsMatchIn(source) || source.contains("boolean canRip(")) {
+        return null
+      }
+      val match = getDomain.find(source) ?: return null
+      val constant = match.groupValues[2]
+      if (constant.isEmpty()) {
+        return match.groupValues[1]
+      }
+      return Regex("""\b${constant}\s*=\s*"([^"\\]+)"\s*[;,]""").find(source)?.groupValues?.get(1)
+    }
+    val lines = packages.flatMap { (pkg, dir) ->
+      (dir.listFiles() ?: emptyArray())
+        .filter { it.isFile && it.name.endsWith(".java") }
+        .sortedBy { it.name }
+        .map { file ->
+          val className = pkg + "." + file.name.removeSuffix(".java")
+          domainOf(file.readText())?.let { "$className $it" } ?: className
+        }
+    }
+    val index = outputDir.get().file("ripper.index").asFile
+    index.parentFile.mkdirs()
+    index.writeText(lines.joinToString("\n", postfix = "\n"))
+  }
+}
+
+sourceSets.main {
+  resources.srcDir(generateRipperIndex)
+}
+
 tasks.compileJava {
   options.release.set(Integer.parseInt(javacRelease))
 }
@@ -147,6 +191,95 @@ tasks.register<Test>("testTagged") {
   }
 }
 
+// JMH benchmarks of the hot paths live in src/jmh. "gradle jmh" runs them and writes the results to
+// build/reports/jmh/results.json; -Pjmh.includes=<regex> runs a subset. "gradle jmhCompare
+// -Pjmh.baseline=<results.json of an earlier build>" prints the change of every benchmark.
+val jmhVersion = "1.37"
+val jmh by sourceSets.creating {
+  compileClasspath += sourceSets.main.get().output
+  runtimeClasspath += sourceSets.main.get().output
+}
+
+configurations[jmh.implementationConfigurationName].extendsFrom(configurations.implementation.get())
+configurations[jmh.runtimeOnlyConfigurationName].extendsFrom(configurations.runtimeOnly.get())
+
+// The replay server behind ripperThroughput lives in src/jmh so it stays out of the jar; its own
+// tests are in src/test.
+sourceSets.test {
+  compileClasspath += jmh.output
+  runtimeClasspath += jmh.output
+}
+
+dependencies {
+  jmh.implementationConfigurationName("org.openjdk.jmh:jmh-core:$jmhVersion")
+  jmh.annotationProcessorConfigurationName("org.openjdk.jmh:jmh-generator-annprocess:$jmhVersion")
+}
+
+tasks.named<JavaCompile>(jmh.compileJavaTaskName) {
+  options.release.set(Integer.parseInt(javacRelease))
+}
+
+val jmhResults = layout.buildDirectory.file("reports/jmh/results.json")
+
+tasks.register<JavaExec>("jmh") {
+  group = "verification"
+  description = "Runs the JMH benchmarks."
+  classpath = jmh.runtimeClasspath
+  mainClass.set("org.openjdk.jmh.Main")
+  val includes = (project.findProperty("jmh.includes") ?: "") as String
+  args = listOf("-rf", "json", "-rff", jmhResults.get().asFile.path) + listOfNotNull(includes.ifBlank { null })
+  outputs.file(jmhResults)
+  outputs.upToDateWhen { false }
+  doFirst {
+    jmhResults.get().asFile.parentFile.mkdirs()
+  }
+}
+
+tasks.register<JavaExec>("jmhCompare") {
+  group = "verification"
+  description = "Compares the last JMH results with the results of an earlier build."
+  classpath = jmh.runtimeClasspath
+  mainClass.set("com.rarchives.ripme.benchmarks.CompareResults")
+  val baseline = (project.findProperty("jmh.baseline") ?: "") as String
+  args = listOf(baseline, jmhResults.get().asFile.path)
+  doFirst {
+    if (baseline.isBlank()) {
+      throw GradleException("Set -Pjmh.baseline to the results.json of the build to compare with")
+    }
+  }
+}
+
+// End-to-end ripper throughput against the fixtures recorded in src/jmh/replay, served by a local
+// replay server with the same network profile on every build. -Preplay.latency_ms,
+// -Preplay.bytes_per_second and -Preplay.throttle_every change the profile; record a new fixture set
+// with -Preplay.record=<name>,<url>.
+val throughputResults = layout.buildDirectory.file("reports/replay/throughput.json")
+
+tasks.register<JavaExec>("ripperThroughput") {
+  group = "verification"
+  description = "Rips the recorded fixtures through a local replay server and reports pages, files and bytes per second."
+  classpath = jmh.runtimeClasspath
+  mainClass.set("com.rarchives.ripme.benchmarks.RipperThroughput")
+  val profile = listOf("latency_ms" to "--latency", "bytes_per_second" to "--bandwidth", "throttle_every" to "--throttle")
+    .flatMap { (property, option) ->
+      project.findProperty("replay.$property")?.let { listOf(option, it.toString()) } ?: emptyList()
+    }
+  val record = (project.findProperty("replay.record") ?: "") as String
+  args = if (record.isNotBlank()) {
+    listOf("--record") + record.split(",", limit = 2) + file("src/jmh/replay").path
+  } else {
+    profile + listOf(file("src/jmh/replay").path, throughputResults.get().asFile.path)
+  }
+  inputs.dir("src/jmh/replay")
+  outputs.file(throughputResults)
+}
+
+// The fixtures in src/jmh/replay are a single 4chan thread, so this only covers the throughput of
+// ChanRipper, not of rippers in general.
+tasks.named("check") {
+  dependsOn("ripperThroughput")
+}
+
 // make all archive tasks in the build reproducible
 tasks.withType<AbstractArchiveTask>().configureEach {
   isPreserveFileTimestamps = false
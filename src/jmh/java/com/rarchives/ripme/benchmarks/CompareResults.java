@@ -0,0 +1,74 @@
+package com.rarchives.ripme.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Prints the change of every benchmark between two JMH JSON result files, as written by
+ * {@code gradle jmh}. Run with {@code gradle jmhCompare -Pjmh.baseline=old-results.json}.
+ */
+public class CompareResults {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: CompareResults <baseline.json> <results.json>");
+            System.exit(2);
+        }
+        Map<String, JSONObject> baseline = read(args[0]);
+        Map<String, JSONObject> results = read(args[1]);
+        System.out.printf("%-70s %14s %14s %9s%n", "Benchmark", "Baseline", "Current", "Change");
+        for (Map.Entry<String, JSONObject> entry : results.entrySet()) {
+            JSONObject current = entry.getValue();
+            double score = current.getDouble("score");
+            String unit = current.getString("scoreUnit");
+            JSONObject old = baseline.get(entry.getKey());
+            if (old == null) {
+                System.out.printf("%-70s %14s %14s %9s%n", entry.getKey(), "-", format(score, unit), "new");
+                continue;
+            }
+            double oldScore = old.getDouble("score");
+            String change = oldScore == 0 ? "-" : String.format("%+.1f%%", (score - oldScore) / oldScore * 100);
+            System.out.printf("%-70s %14s %14s %9s%n", entry.getKey(), format(oldScore, unit), format(score, unit), change);
+        }
+        for (String name : baseline.keySet()) {
+            if (!results.containsKey(name)) {
+                System.out.printf("%-70s %14s %14s %9s%n", name, format(baseline.get(name).getDouble("score"),
+                        baseline.get(name).getString("scoreUnit")), "-", "removed");
+            }
+        }
+    }
+
+    private static String format(double score, String unit) {
+        return String.format("%.3f %s", score, unit);
+    }
+
+    /**
+     * Reads the primary metric of each benchmark, keyed by benchmark name and parameters.
+     */
+    private static Map<String, JSONObject> read(String file) throws IOException {
+        JSONArray runs = new JSONArray(new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8));
+        Map<String, JSONObject> scores = new LinkedHashMap<>();
+        for (int i = 0; i < runs.length(); i++) {
+            JSONObject run = runs.getJSONObject(i);
+            String name = run.getString("benchmark").replace("com.rarchives.ripme.benchmarks.", "");
+            JSONObject params = run.optJSONObject("params");
+            if (params != null) {
+                StringBuilder key = new StringBuilder(name);
+                for (String param : new TreeSet<>(params.keySet())) {
+                    key.append(' ').append(param).append('=').append(params.get(param));
+                }
+                name = key.toString();
+            }
+            scores.put(name, run.getJSONObject("primaryMetric"));
+        }
+        return scores;
+    }
+}
@@ -0,0 +1,117 @@
+package com.rarchives.ripme.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.rarchives.ripme.utils.BufferPool;
+
+/**
+ * The body copy of {@code DownloadFileThread} for one small image: the stream copy with a fresh
+ * array per file against the channel copy through {@link BufferPool}. Run with
+ * {@code -Pjmh.includes=CopyBenchmark} and {@code -prof gc} to compare allocation per file.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CopyBenchmark {
+
+    @Param({"65536", "1048576"})
+    public int fileBytes;
+
+    private byte[] body;
+    private Path file;
+    private final BufferPool pool = new BufferPool(256 * 1024, 4);
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        body = new byte[fileBytes];
+        new Random(1).nextBytes(body);
+        file = Files.createTempFile("ripme-jmh-copy", ".jpg");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public byte[] streamCopy() throws IOException {
+        MessageDigest digest = sha256();
+        InputStream bis = new BufferedInputStream(new ByteArrayInputStream(body));
+        try (FileOutputStream fos = new FileOutputStream(file.toFile())) {
+            byte[] data = new byte[1024 * 256];
+            int bytesRead;
+            while ((bytesRead = bis.read(data)) != -1) {
+                fos.write(data, 0, bytesRead);
+                digest.update(data, 0, bytesRead);
+            }
+        }
+        bis.close();
+        return digest.digest();
+    }
+
+    @Benchmark
+    public byte[] pooledChannelCopy() throws IOException {
+        MessageDigest digest = sha256();
+        ByteBuffer buffer = pool.acquire();
+        try (ReadableByteChannel in = Channels.newChannel(new ByteArrayInputStream(body));
+             FileChannel out = new FileOutputStream(file.toFile()).getChannel()) {
+            while (true) {
+                int read = in.read(buffer);
+                if (read < 0 || !buffer.hasRemaining()) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    buffer.rewind();
+                    digest.update(buffer);
+                    buffer.clear();
+                }
+                if (read < 0) {
+                    break;
+                }
+            }
+        } finally {
+            pool.release(buffer);
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
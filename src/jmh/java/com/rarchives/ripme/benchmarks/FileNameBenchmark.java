@@ -0,0 +1,57 @@
+package com.rarchives.ripme.benchmarks;
+
+import java.net.URI;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.rarchives.ripme.ripper.AbstractRipper;
+import com.rarchives.ripme.utils.Utils;
+
+/**
+ * File name handling done for every download.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileNameBenchmark {
+
+    private URL url;
+    private String title;
+    private String saveAs;
+
+    @Setup
+    public void setUp() throws Exception {
+        url = new URI("https://64.media.tumblr.com/3f1c0b2a9d/s1280x1920/1a2b3c4d5e6f.jpg?width=1280&format=jpg#top").toURL();
+        title = "\u00dcbersicht: Album \u00abSummer 2023\u00bb \u2014 day 1/3 (photos & videos)!";
+        saveAs = "reddit_sub_pics_2023-07-01 [OC] my: cat? \"Mittens\" <3 | sleeping*.jpg";
+    }
+
+    @Benchmark
+    public String filesystemSafe() {
+        return Utils.filesystemSafe(title);
+    }
+
+    @Benchmark
+    public String sanitizeSaveAs() {
+        return Utils.sanitizeSaveAs(saveAs);
+    }
+
+    @Benchmark
+    public String getFileName() {
+        return AbstractRipper.getFileName(url, "001_", null, null);
+    }
+}
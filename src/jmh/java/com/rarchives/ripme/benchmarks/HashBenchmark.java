@@ -0,0 +1,137 @@
+package com.rarchives.ripme.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.rarchives.ripme.utils.Utils;
+
+/**
+ * Duplicate detection cost per downloaded file: hashing the body while it is written, as
+ * {@code DownloadFileThread} does, against writing it and reading it back for
+ * {@link Utils#sha256Digest(Path)}.
+ * <p>
+ * The body is streamed from one random chunk repeated up to the file size, so files of 2 GB do not
+ * have to fit in a byte array.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HashBenchmark {
+
+    private static final int CHUNK_BYTES = 1024 * 1024;
+
+    @Param({"1", "16", "100", "2048"})
+    public int fileMb;
+
+    private byte[] chunk;
+    private long size;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        chunk = new byte[CHUNK_BYTES];
+        new Random(1).nextBytes(chunk);
+        size = (long) fileMb * CHUNK_BYTES;
+        file = Files.createTempFile("ripme-jmh-", ".bin");
+        // sha256OfFile reads the file without writing it first
+        try (InputStream in = body(); OutputStream out = Files.newOutputStream(file)) {
+            copy(in, out);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * @return {@link #size} bytes of {@link #chunk} repeated.
+     */
+    private InputStream body() {
+        return new InputStream() {
+            private long position = 0;
+
+            @Override
+            public int read() {
+                return position < size ? chunk[(int) (position++ % CHUNK_BYTES)] & 0xff : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (position >= size) {
+                    return -1;
+                }
+                int offset = (int) (position % CHUNK_BYTES);
+                int n = (int) Math.min(Math.min(len, CHUNK_BYTES - offset), size - position);
+                System.arraycopy(chunk, offset, b, off, n);
+                position += n;
+                return n;
+            }
+        };
+    }
+
+    @Benchmark
+    public byte[] hashWhileWriting() throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream in = body();
+             OutputStream out = new DigestOutputStream(Files.newOutputStream(file), digest)) {
+            copy(in, out);
+        }
+        return digest.digest();
+    }
+
+    @Benchmark
+    public byte[] writeThenHash() throws IOException {
+        try (InputStream in = body();
+             OutputStream out = Files.newOutputStream(file)) {
+            copy(in, out);
+        }
+        return Utils.sha256Digest(file);
+    }
+
+    @Benchmark
+    public String sha256OfFile() throws IOException {
+        return Utils.sha256(file);
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] data = new byte[1024 * 256];
+        int read;
+        while ((read = in.read(data)) != -1) {
+            out.write(data, 0, read);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.rarchives.ripme.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.rarchives.ripme.utils.HashHistoryIndex;
+import com.rarchives.ripme.utils.PerceptualHashIndex;
+import com.rarchives.ripme.utils.URLHistoryIndex;
+
+/**
+ * Lookups in the URL and hash histories, which every queued download goes through, and in the
+ * perceptual hash index of the near-duplicate image check.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HistoryBenchmark {
+
+    @Param({"100000"})
+    public int historySize;
+
+    private URLHistoryIndex urls;
+    private HashHistoryIndex hashes;
+    private String knownURL;
+    private String unknownURL;
+    private byte[] knownHash;
+    private PerceptualHashIndex images;
+    private long nearImage;
+    private long unknownImage;
+    private final List<byte[]> newHashes = new ArrayList<>();
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Random random = new Random(1);
+        Path dir = Files.createTempDirectory("ripme-jmh-history");
+        StringBuilder urlHistory = new StringBuilder();
+        StringBuilder hashHistory = new StringBuilder();
+        StringBuilder imageHashes = new StringBuilder();
+        byte[] hash = new byte[32];
+        for (int i = 0; i < historySize; i++) {
+            urlHistory.append("https://i.redd.it/").append(Long.toHexString(random.nextLong())).append(".jpg\n");
+            random.nextBytes(hash);
+            hashHistory.append(toHex(hash)).append('\n');
+            imageHashes.append(String.format("%016x", random.nextLong())).append(" /rips/").append(i).append(".jpg\n");
+        }
+        Path urlFile = dir.resolve("url_history.txt");
+        Path hashFile = dir.resolve("hash_history.txt");
+        Files.write(urlFile, urlHistory.toString().getBytes(StandardCharsets.UTF_8));
+        Files.write(hashFile, hashHistory.toString().getBytes(StandardCharsets.UTF_8));
+        Path imageFile = dir.resolve("image_hashes.txt");
+        Files.write(imageFile, imageHashes.toString().getBytes(StandardCharsets.UTF_8));
+        images = PerceptualHashIndex.forFile(imageFile.toString());
+        urls = URLHistoryIndex.forFile(urlFile.toString());
+        hashes = HashHistoryIndex.forFile(hashFile.toString());
+
+        String[] lines = urlHistory.toString().split("\n");
+        knownURL = lines[lines.length / 2];
+        unknownURL = "https://i.redd.it/not-in-history.jpg";
+        String[] hashLines = hashHistory.toString().split("\n");
+        knownHash = fromHex(hashLines[hashLines.length / 2]);
+        String[] imageLines = imageHashes.toString().split("\n");
+        // A re-encoded copy: a few bits away from a known image
+        nearImage = Long.parseUnsignedLong(imageLines[imageLines.length / 2].substring(0, 16), 16) ^ 0x1011000000000000L;
+        unknownImage = random.nextLong();
+        for (int i = 0; i < 1 << 16; i++) {
+            byte[] fresh = new byte[32];
+            random.nextBytes(fresh);
+            newHashes.add(fresh);
+        }
+        // load both indexes outside the measurement
+        urls.contains(knownURL);
+        hashes.contains(knownHash);
+        images.findNear(nearImage, 6);
+    }
+
+    @Benchmark
+    public boolean urlHit() {
+        return urls.contains(knownURL);
+    }
+
+    @Benchmark
+    public boolean urlMiss() {
+        return urls.contains(unknownURL);
+    }
+
+    @Benchmark
+    public boolean hashDuplicate() {
+        return hashes.addIfAbsent(knownHash);
+    }
+
+    @Benchmark
+    public boolean hashNew() {
+        // appends to the history file, like a real download
+        return hashes.addIfAbsent(newHashes.get(next++ & (newHashes.size() - 1)));
+    }
+
+    @Benchmark
+    public String nearDuplicateImage() {
+        return images.findNear(nearImage, 6);
+    }
+
+    @Benchmark
+    public String newImage() {
+        return images.findNear(unknownImage, 6);
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static byte[] fromHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+}
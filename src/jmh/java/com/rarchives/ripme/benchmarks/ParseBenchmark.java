@@ -0,0 +1,127 @@
+package com.rarchives.ripme.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.rarchives.ripme.ripper.rippers.ChanRipper;
+import com.rarchives.ripme.ripper.rippers.ImgurRipper;
+import com.rarchives.ripme.ripper.rippers.RedditListings;
+import com.rarchives.ripme.ripper.rippers.TumblrRipper;
+
+/**
+ * Page parsing for the most used rippers, on pages saved under {@code fixtures/}.
+ * <p>
+ * Imgur and Tumblr parse their API responses inside {@code rip()}, so for those the benchmarks
+ * repeat the same lookups on the saved responses.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+
+    private String chanHtml;
+    private byte[] redditJson;
+    private String imgurJson;
+    private String tumblrJson;
+    private ChanRipper chanRipper;
+    private ImgurRipper imgurRipper;
+    private TumblrRipper tumblrRipper;
+    private URL imgurURL;
+    private URL tumblrURL;
+    private URL redditURL;
+
+    @Setup
+    public void setUp() throws Exception {
+        chanHtml = fixture("4chan-thread.html");
+        redditJson = fixture("reddit-listing.json").getBytes(StandardCharsets.UTF_8);
+        redditURL = new URI("https://www.reddit.com/r/pics.json").toURL();
+        imgurJson = fixture("imgur-album.json");
+        tumblrJson = fixture("tumblr-posts.json");
+        chanRipper = new ChanRipper(new URI("https://boards.4chan.org/wg/thread/7654321").toURL());
+        imgurURL = new URI("https://imgur.com/a/Xk2pLqZ").toURL();
+        imgurRipper = new ImgurRipper(imgurURL);
+        tumblrURL = new URI("https://example.tumblr.com/tagged/landscape").toURL();
+        tumblrRipper = new TumblrRipper(tumblrURL);
+    }
+
+    private static String fixture(String name) throws IOException {
+        try (InputStream in = ParseBenchmark.class.getResourceAsStream("/fixtures/" + name)) {
+            if (in == null) {
+                throw new IOException("Missing fixture " + name);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Benchmark
+    public List<String> chanThread() throws Exception {
+        Document page = Jsoup.parse(chanHtml, "https://boards.4chan.org/wg/thread/7654321");
+        return chanRipper.getURLsFromPage(page);
+    }
+
+    @Benchmark
+    public JSONArray redditListingTree() {
+        return new JSONArray(new String(redditJson, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public JSONArray redditListingStreamed() throws IOException {
+        return RedditListings.read(new ByteArrayInputStream(redditJson), redditURL);
+    }
+
+    @Benchmark
+    public List<String> imgurAlbum() throws Exception {
+        List<String> links = new ArrayList<>();
+        JSONArray images = new JSONObject(imgurJson).getJSONObject("data").getJSONArray("images");
+        for (int i = 0; i < images.length(); i++) {
+            links.add(images.getJSONObject(i).getString("link"));
+        }
+        links.add(imgurRipper.getGID(imgurRipper.sanitizeURL(imgurURL)));
+        return links;
+    }
+
+    @Benchmark
+    public List<String> tumblrPosts() throws Exception {
+        List<String> links = new ArrayList<>();
+        JSONArray posts = new JSONObject(tumblrJson).getJSONObject("response").getJSONArray("posts");
+        for (int i = 0; i < posts.length(); i++) {
+            JSONObject post = posts.getJSONObject(i);
+            if (post.has("photos")) {
+                JSONArray photos = post.getJSONArray("photos");
+                for (int j = 0; j < photos.length(); j++) {
+                    links.add(photos.getJSONObject(j).getJSONObject("original_size").getString("url")
+                            .replaceAll("http:", "https:"));
+                }
+            } else if (post.has("video_url")) {
+                links.add(post.getString("video_url").replaceAll("http:", "https:"));
+            }
+        }
+        links.add(tumblrRipper.getGID(tumblrRipper.sanitizeURL(tumblrURL)));
+        return links;
+    }
+}
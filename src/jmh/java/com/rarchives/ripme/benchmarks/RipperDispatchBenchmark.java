@@ -0,0 +1,55 @@
+package com.rarchives.ripme.benchmarks;
+
+import java.net.URI;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.rarchives.ripme.ripper.AbstractRipper;
+
+/**
+ * Finding the ripper for a URL, done for every URL queued from the command line, the GUI or a
+ * history re-rip.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RipperDispatchBenchmark {
+
+    @Param({
+            "https://www.reddit.com/r/pics/",
+            "https://imgur.com/a/abcde",
+            "https://boards.4chan.org/wg/thread/1234567",
+            "https://example.tumblr.com/",
+            "https://coomer.st/onlyfans/user/example"
+    })
+    public String url;
+
+    private URL parsed;
+
+    @Setup
+    public void setUp() throws Exception {
+        parsed = new URI(url).toURL();
+        // build the registry outside the measurement
+        AbstractRipper.getRipper(parsed);
+    }
+
+    @Benchmark
+    public AbstractRipper getRipper() throws Exception {
+        return AbstractRipper.getRipper(parsed);
+    }
+}
@@ -0,0 +1,167 @@
+package com.rarchives.ripme.benchmarks;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+
+import com.rarchives.ripme.ripper.AbstractRipper;
+import com.rarchives.ripme.utils.ReplayRouter;
+import com.rarchives.ripme.utils.ReplayServer;
+import com.rarchives.ripme.utils.Utils;
+
+/**
+ * Rips every recorded site in a fixtures directory through a {@link ReplayServer} and reports
+ * pages, files and bytes per second for each ripper under one network profile.
+ * <p>
+ * Each subdirectory holds the fixtures of one rip and a {@code manifest.json} with the
+ * {@code url} to rip. New ones are recorded from the live site with
+ * {@code --record <name> <url>}.
+ */
+public class RipperThroughput {
+
+    private static final String MANIFEST = "manifest.json";
+
+    public static void main(String[] args) throws Exception {
+        ReplayServer.Profile profile = new ReplayServer.Profile()
+                .latency(20)
+                .bandwidth(20L * 1024 * 1024)
+                .throttle(50, 1);
+        String recordName = null;
+        String recordURL = null;
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--latency":
+                    profile.latency(Long.parseLong(args[++i]));
+                    break;
+                case "--bandwidth":
+                    profile.bandwidth(Long.parseLong(args[++i]));
+                    break;
+                case "--throttle":
+                    profile.throttle(Integer.parseInt(args[++i]), 1);
+                    break;
+                case "--record":
+                    recordName = args[++i];
+                    recordURL = args[++i];
+                    break;
+                default:
+                    paths.add(args[i]);
+            }
+        }
+        if (paths.isEmpty() || (recordName == null && paths.size() != 2)) {
+            System.err.println("Usage: RipperThroughput [--latency ms] [--bandwidth bytes/s] [--throttle n]"
+                    + " <fixtures> <results.json>");
+            System.err.println("       RipperThroughput --record <name> <url> <fixtures>");
+            System.exit(2);
+        }
+        Path fixtures = Paths.get(paths.get(0));
+        configure();
+        int status;
+        if (recordName != null) {
+            status = record(fixtures.resolve(recordName), recordURL);
+        } else {
+            status = run(fixtures, Paths.get(paths.get(1)), profile);
+        }
+        // Download pools and the replay server leave non-daemon threads behind
+        System.exit(status);
+    }
+
+    private static void configure() throws IOException {
+        Utils.setConfigString("rips.directory", Files.createTempDirectory("ripme-throughput").toString());
+        Utils.setConfigBoolean("remember.url_history", false);
+        Utils.setConfigBoolean("http.cache.enabled", false);
+        Utils.setConfigBoolean("file.overwrite", true);
+    }
+
+    private static int record(Path dir, String url) throws Exception {
+        try (ReplayServer server = new ReplayServer(dir, ReplayServer.Mode.RECORD, new ReplayServer.Profile())) {
+            ReplayRouter.setServer(server.start());
+            rip(new URI(url).toURL());
+            Files.writeString(dir.resolve(MANIFEST), new JSONObject().put("url", url).toString(2) + "\n",
+                    StandardCharsets.UTF_8);
+            System.out.printf("Recorded %d pages and %d files into %s%n", server.getPages(), server.getFiles(), dir);
+            return 0;
+        } finally {
+            ReplayRouter.setServer(null);
+        }
+    }
+
+    private static int run(Path fixtures, Path results, ReplayServer.Profile profile) throws IOException {
+        JSONObject report = new JSONObject();
+        report.put("profile", new JSONObject()
+                .put("latencyMillis", profile.getLatencyMillis())
+                .put("bytesPerSecond", profile.getBytesPerSecond())
+                .put("throttleEvery", profile.getThrottleEvery()));
+        JSONObject rippers = new JSONObject();
+        int failed = 0;
+        System.out.printf("%-16s %8s %8s %12s %10s %10s %14s%n", "Ripper", "Pages", "Files", "Bytes",
+                "Pages/s", "Files/s", "Bytes/s");
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(fixtures, Files::isDirectory)) {
+            List<Path> sorted = new ArrayList<>();
+            dirs.forEach(sorted::add);
+            sorted.sort(null);
+            for (Path dir : sorted) {
+                Path manifest = dir.resolve(MANIFEST);
+                if (!Files.exists(manifest)) {
+                    continue;
+                }
+                String name = dir.getFileName().toString();
+                JSONObject result = runOne(dir, new JSONObject(Files.readString(manifest, StandardCharsets.UTF_8))
+                        .getString("url"), profile);
+                rippers.put(name, result);
+                if (result.has("error")) {
+                    failed++;
+                    System.out.printf("%-16s failed: %s%n", name, result.getString("error"));
+                } else {
+                    System.out.printf("%-16s %8d %8d %12d %10.1f %10.1f %14.0f%n", name, result.getLong("pages"),
+                            result.getLong("files"), result.getLong("bytes"), result.getDouble("pagesPerSecond"),
+                            result.getDouble("filesPerSecond"), result.getDouble("bytesPerSecond"));
+                }
+            }
+        }
+        report.put("rippers", rippers);
+        Files.createDirectories(results.toAbsolutePath().getParent());
+        Files.writeString(results, report.toString(2) + "\n", StandardCharsets.UTF_8);
+        return failed == 0 ? 0 : 1;
+    }
+
+    private static JSONObject runOne(Path dir, String url, ReplayServer.Profile profile) {
+        JSONObject result = new JSONObject();
+        try (ReplayServer server = new ReplayServer(dir, ReplayServer.Mode.REPLAY, profile)) {
+            ReplayRouter.setServer(server.start());
+            long start = System.nanoTime();
+            rip(new URI(url).toURL());
+            double seconds = (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+            result.put("seconds", seconds);
+            result.put("pages", server.getPages());
+            result.put("files", server.getFiles());
+            result.put("bytes", server.getBytes());
+            result.put("pagesPerSecond", server.getPages() / seconds);
+            result.put("filesPerSecond", server.getFiles() / seconds);
+            result.put("bytesPerSecond", server.getBytes() / seconds);
+            result.put("throttled", server.getThrottled());
+            result.put("misses", server.getMisses());
+        } catch (Exception e) {
+            result.put("error", e.toString());
+        } finally {
+            ReplayRouter.setServer(null);
+        }
+        return result;
+    }
+
+    private static void rip(URL url) throws Exception {
+        AbstractRipper ripper = AbstractRipper.getRipper(url);
+        ripper.setup();
+        ripper.rip();
+    }
+}
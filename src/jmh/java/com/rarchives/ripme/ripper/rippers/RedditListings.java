@@ -0,0 +1,23 @@
+package com.rarchives.ripme.ripper.rippers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+import org.json.JSONArray;
+
+import com.rarchives.ripme.utils.JsonStreamReader;
+
+/**
+ * Lets the benchmarks call {@link RedditRipper}'s own listing reader, so a change to it shows up in
+ * their results.
+ */
+public final class RedditListings {
+
+    private RedditListings() {
+    }
+
+    public static JSONArray read(InputStream in, URL url) throws IOException {
+        return RedditRipper.readListing(JsonStreamReader.of(in), url);
+    }
+}
@@ -0,0 +1,422 @@
+package com.rarchives.ripme.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP server that stands in for the sites a ripper talks to, for offline tests and
+ * benchmarks. Requests reach it through {@link ReplayRouter}.
+ * <p>
+ * Every response is a fixture in one directory: {@code <key>.json} holds the URL, status and
+ * headers, and {@code <key>.body} the body as it was sent. Media fixtures can leave out the body
+ * file and give a {@code size} instead, and are then served that many generated bytes. The key is
+ * derived from the URL without its scheme (see {@link #keyOf(URL)}).
+ * <p>
+ * In {@link Mode#RECORD} requests without a fixture are fetched from the real site and saved; in
+ * {@link Mode#REPLAY} they are answered with a 404. Responses are shaped by a {@link Profile}.
+ */
+public class ReplayServer implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger(ReplayServer.class);
+
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+    private static final Set<String> UNRECORDED_HEADERS = new HashSet<>(Arrays.asList(
+            "connection", "content-length", "date", "keep-alive", "set-cookie", "transfer-encoding"));
+    private static final Set<String> UNFORWARDED_HEADERS = new HashSet<>(Arrays.asList(
+            "connection", "host", "keep-alive", "range", "if-none-match", "if-modified-since"));
+
+    public enum Mode {
+        REPLAY,
+        RECORD
+    }
+
+    /**
+     * Network conditions applied to every response.
+     */
+    public static class Profile {
+        private long latencyMillis = 0;
+        private long bytesPerSecond = 0;
+        private int throttleEvery = 0;
+        private int retryAfterSeconds = 1;
+
+        /**
+         * Delay before each response is sent.
+         */
+        public Profile latency(long millis) {
+            this.latencyMillis = millis;
+            return this;
+        }
+
+        /**
+         * Bandwidth of each response body; 0 for unlimited.
+         */
+        public Profile bandwidth(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+            return this;
+        }
+
+        /**
+         * Answers every {@code n}th request to a host with a 429 carrying
+         * {@code Retry-After: retryAfterSeconds}; 0 never does.
+         */
+        public Profile throttle(int n, int retryAfterSeconds) {
+            this.throttleEvery = n;
+            this.retryAfterSeconds = retryAfterSeconds;
+            return this;
+        }
+
+        public long getLatencyMillis() {
+            return latencyMillis;
+        }
+
+        public long getBytesPerSecond() {
+            return bytesPerSecond;
+        }
+
+        public int getThrottleEvery() {
+            return throttleEvery;
+        }
+
+        @Override
+        public String toString() {
+            return "latency=" + latencyMillis + "ms bandwidth=" + (bytesPerSecond == 0 ? "unlimited" : bytesPerSecond + "B/s")
+                    + " throttle=" + (throttleEvery == 0 ? "off" : "1/" + throttleEvery);
+        }
+    }
+
+    private final Path fixtures;
+    private final Mode mode;
+    private final Profile profile;
+    private final Map<String, AtomicInteger> hostRequests = new ConcurrentHashMap<>();
+    private final LongAdder pages = new LongAdder();
+    private final LongAdder files = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private HttpServer server;
+    private ExecutorService executor;
+    private URL baseURL;
+
+    public ReplayServer(Path fixtures, Mode mode, Profile profile) {
+        this.fixtures = fixtures;
+        this.mode = mode;
+        this.profile = profile;
+    }
+
+    /**
+     * Starts listening on a free port of the loopback address.
+     * @return The URL to pass to {@link ReplayRouter#setServer(URL)}
+     */
+    public URL start() throws IOException {
+        if (mode == Mode.RECORD) {
+            Files.createDirectories(fixtures);
+        }
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        executor = ThreadUtils.newThreadPerTaskExecutor("ripme-replay-");
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        baseURL = new URL("http", server.getAddress().getHostString(), server.getAddress().getPort(), "");
+        logger.info("Serving {} fixtures from {} at {} ({})", mode.name().toLowerCase(Locale.ROOT), fixtures, baseURL, profile);
+        return baseURL;
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    /** @return Responses served with a text, HTML, JSON or XML body. */
+    public long getPages() {
+        return pages.sum();
+    }
+
+    /** @return Responses served with any other body. */
+    public long getFiles() {
+        return files.sum();
+    }
+
+    /** @return Body bytes sent. */
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    /** @return Requests answered with an injected 429. */
+    public long getThrottled() {
+        return throttled.sum();
+    }
+
+    /** @return Requests without a fixture while replaying. */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public void resetStats() {
+        hostRequests.clear();
+        pages.reset();
+        files.reset();
+        bytes.reset();
+        throttled.reset();
+        misses.reset();
+    }
+
+    /**
+     * @return The fixture key of a URL: the first 20 hex digits of the SHA-256 of the URL without
+     *         its scheme and fragment, so that http and https requests share a fixture.
+     */
+    public static String keyOf(URL url) {
+        String withoutScheme = url.getAuthority() + url.getFile();
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(withoutScheme.getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder();
+            for (int i = 0; i < 10; i++) {
+                key.append(String.format("%02x", hash[i]));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            URL original = ReplayRouter.unrouteWith(baseURL, new URL(baseURL, exchange.getRequestURI().toString()));
+            if (original == null) {
+                send(exchange, 400, "Not a routed URL: " + exchange.getRequestURI());
+                return;
+            }
+            sleep(profile.latencyMillis);
+            if (shouldThrottle(original.getHost())) {
+                throttled.increment();
+                exchange.getResponseHeaders().set("Retry-After", Integer.toString(profile.retryAfterSeconds));
+                send(exchange, 429, "Too Many Requests");
+                return;
+            }
+            String key = keyOf(original);
+            Path meta = fixtures.resolve(key + ".json");
+            if (!Files.exists(meta)) {
+                if (mode == Mode.RECORD) {
+                    record(exchange, original, key);
+                } else {
+                    misses.increment();
+                    logger.warn("No fixture for {}", original);
+                    send(exchange, 404, "No fixture for " + original);
+                    return;
+                }
+            }
+            replay(exchange, original, key, new JSONObject(Files.readString(meta, StandardCharsets.UTF_8)));
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to answer {}: {}", exchange.getRequestURI(), e.getMessage());
+            throw e;
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private boolean shouldThrottle(String host) {
+        if (profile.throttleEvery <= 0) {
+            return false;
+        }
+        int count = hostRequests.computeIfAbsent(host, h -> new AtomicInteger()).incrementAndGet();
+        return count % profile.throttleEvery == 0;
+    }
+
+    private void replay(HttpExchange exchange, URL original, String key, JSONObject fixture) throws IOException {
+        int status = fixture.getInt("status");
+        JSONObject headers = fixture.optJSONObject("headers");
+        Headers responseHeaders = exchange.getResponseHeaders();
+        String contentType = null;
+        if (headers != null) {
+            for (String name : headers.keySet()) {
+                String value = headers.getString(name);
+                if (name.equalsIgnoreCase("Location")) {
+                    value = ReplayRouter.routeWith(baseURL, new URL(original, value)).toExternalForm();
+                } else if (name.equalsIgnoreCase("Content-Type")) {
+                    contentType = value;
+                }
+                responseHeaders.set(name, value);
+            }
+        }
+        Path bodyFile = fixtures.resolve(key + ".body");
+        long length = Files.exists(bodyFile) ? Files.size(bodyFile) : fixture.optLong("size", 0);
+        long start = 0;
+        long end = length - 1;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null && status == 200) {
+            Matcher m = RANGE.matcher(range);
+            if (m.matches() && Long.parseLong(m.group(1)) < length) {
+                start = Long.parseLong(m.group(1));
+                if (!m.group(2).isEmpty()) {
+                    end = Math.min(end, Long.parseLong(m.group(2)));
+                }
+                status = 206;
+                responseHeaders.set("Content-Range", "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+        if (status == 200 || status == 206) {
+            responseHeaders.set("Accept-Ranges", "bytes");
+        }
+        long count = Math.max(0, end - start + 1);
+        boolean head = exchange.getRequestMethod().equalsIgnoreCase("HEAD");
+        exchange.sendResponseHeaders(status, head || count == 0 ? -1 : count);
+        if (isPage(contentType)) {
+            pages.increment();
+        } else if (status < 300) {
+            files.increment();
+        }
+        if (head || count == 0) {
+            return;
+        }
+        try (OutputStream out = exchange.getResponseBody()) {
+            if (Files.exists(bodyFile)) {
+                try (InputStream in = Files.newInputStream(bodyFile)) {
+                    in.skipNBytes(start);
+                    writeThrottled(in, out, count);
+                }
+            } else {
+                writeThrottled(new GeneratedBody(start), out, count);
+            }
+        }
+    }
+
+    private void record(HttpExchange exchange, URL original, String key) throws IOException {
+        logger.info("Recording {}", original);
+        HttpURLConnection connection = (HttpURLConnection) original.openConnection();
+        connection.setInstanceFollowRedirects(false);
+        connection.setRequestMethod("GET");
+        for (Map.Entry<String, List<String>> header : exchange.getRequestHeaders().entrySet()) {
+            if (!UNFORWARDED_HEADERS.contains(header.getKey().toLowerCase(Locale.ROOT))) {
+                connection.setRequestProperty(header.getKey(), String.join(", ", header.getValue()));
+            }
+        }
+        int status = connection.getResponseCode();
+        JSONObject headers = new JSONObject();
+        for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+            if (header.getKey() != null && !UNRECORDED_HEADERS.contains(header.getKey().toLowerCase(Locale.ROOT))) {
+                headers.put(header.getKey(), String.join(", ", header.getValue()));
+            }
+        }
+        InputStream body = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        Path bodyFile = fixtures.resolve(key + ".body");
+        if (body != null) {
+            try (InputStream in = body) {
+                Files.copy(in, bodyFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        JSONObject fixture = new JSONObject();
+        fixture.put("url", original.toExternalForm());
+        fixture.put("status", status);
+        fixture.put("headers", headers);
+        Files.writeString(fixtures.resolve(key + ".json"), fixture.toString(2) + "\n", StandardCharsets.UTF_8);
+    }
+
+    private void writeThrottled(InputStream in, OutputStream out, long count) throws IOException {
+        byte[] buffer = new byte[8192];
+        long started = System.nanoTime();
+        long sent = 0;
+        while (sent < count) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, count - sent));
+            if (read < 0) {
+                break;
+            }
+            out.write(buffer, 0, read);
+            sent += read;
+            bytes.add(read);
+            if (profile.bytesPerSecond > 0) {
+                long due = started + TimeUnit.SECONDS.toNanos(1) * sent / profile.bytesPerSecond;
+                sleep(TimeUnit.NANOSECONDS.toMillis(due - System.nanoTime()));
+            }
+        }
+    }
+
+    private static boolean isPage(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.toLowerCase(Locale.ROOT);
+        return type.startsWith("text/") || type.contains("json") || type.contains("xml") || type.contains("javascript");
+    }
+
+    private static void send(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while shaping a response");
+        }
+    }
+
+    /**
+     * Reproducible bytes for media fixtures that only give a size.
+     */
+    private static class GeneratedBody extends InputStream {
+        private long position;
+
+        GeneratedBody(long position) {
+            this.position = position;
+        }
+
+        @Override
+        public int read() {
+            return (int) ((position++ * 31 + 7) & 0xff);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            for (int i = 0; i < len; i++) {
+                b[off + i] = (byte) read();
+            }
+            return len;
+        }
+    }
+}
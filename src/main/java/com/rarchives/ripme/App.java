@@ -1,10 +1,15 @@
 package com.rarchives.ripme;
 
 import com.rarchives.ripme.ripper.AbstractRipper;
+import com.rarchives.ripme.ripper.BatchRipScheduler;
+import com.rarchives.ripme.ripper.WatchScheduler;
 import com.rarchives.ripme.ui.History;
 import com.rarchives.ripme.ui.HistoryEntry;
 import com.rarchives.ripme.ui.MainWindow;
+import com.rarchives.ripme.ui.RipStatusHandler;
+import com.rarchives.ripme.ui.RipStatusMessage;
 import com.rarchives.ripme.ui.UpdateUtils;
+import com.rarchives.ripme.utils.Metrics;
 import com.rarchives.ripme.utils.Proxy;
 import com.rarchives.ripme.utils.RipUtils;
 import com.rarchives.ripme.utils.Utils;
@@ -21,17 +26,27 @@ import org.apache.logging.log4j.Logger;
 import javax.swing.*;
 import java.awt.*;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Stream;
 import com.rarchives.ripme.utils.LoggingConfig;
 
@@ -47,6 +62,8 @@ public class App {
     private static final Logger logger = LogManager.getLogger(App.class);
     public static String stringToAppendToFoldername = null;
     private static final History HISTORY = new History();
+    // Guards HISTORY and the history file while several rips run at once (-f with --parallel).
+    private static final ReentrantLock HISTORY_LOCK = new ReentrantLock();
     /**
      * Where everything starts. Takes in, and tries to parse as many commandline arguments as possible.
      * Otherwise, it launches a GUI.
@@ -72,6 +89,7 @@ public class App {
         } else if (Utils.getConfigString("proxy.socks", null) != null) {
             Proxy.setSocks(Utils.getConfigString("proxy.socks", null));
         }
+        Metrics.startExport();
 
         // This has to be here instead of handleArgs because handleArgs isn't parsed until after a item is ripper
         if (cl.hasOption("a")) {
@@ -103,10 +121,35 @@ public class App {
      *
      */
     private static void rip(URL url) throws Exception {
+        rip(url, null);
+    }
+
+    private static AbstractRipper rip(URL url, RipStatusHandler observer) throws Exception {
+        return rip(url, observer, null);
+    }
+
+    private static AbstractRipper rip(URL url, RipStatusHandler observer, WatchScheduler.Source watch) throws Exception {
         AbstractRipper ripper = AbstractRipper.getRipper(url);
+        ripper.setObserver(observer);
+        if (watch != null) {
+            ripper.setWatchMarks(watch.getMarks());
+        }
         ripper.setup();
         ripper.rip();
+        if (watch != null) {
+            watch.newMarks = ripper.getWatchMarks();
+            watch.newItems = ripper.getNewWatchItems();
+        }
+        HISTORY_LOCK.lock();
+        try {
+            addToHistory(ripper);
+        } finally {
+            HISTORY_LOCK.unlock();
+        }
+        return ripper;
+    }
 
+    private static void addToHistory(AbstractRipper ripper) throws URISyntaxException {
         String u = ripper.getURL().toExternalForm();
         Date date = new Date();
         if (HISTORY.containsURL(u)) {
@@ -240,6 +283,31 @@ public class App {
             }
         }
 
+        //Keep polling the selected (or all) albums for new items
+        if (cl.hasOption('W')) {
+            loadHistory();
+            List<String> urls = new ArrayList<>();
+            for (HistoryEntry entry : HISTORY.toList()) {
+                if (entry.selected) {
+                    urls.add(entry.url);
+                }
+            }
+            if (urls.isEmpty()) {
+                for (HistoryEntry entry : HISTORY.toList()) {
+                    urls.add(entry.url);
+                }
+            }
+            if (urls.isEmpty()) {
+                logger.error("There are no history entries to watch. Rip some albums first");
+                System.exit(-1);
+            }
+            int parallel = cl.hasOption('P')
+                    ? Integer.parseInt(cl.getOptionValue('P'))
+                    : Utils.getConfigInteger("cli.parallel_rips", 1);
+            watchURLs(urls, parallel);
+            System.exit(0);
+        }
+
         //Save the order of images in album
         if (cl.hasOption('d')) {
             Utils.setConfigBoolean("download.save_order", true);
@@ -260,14 +328,14 @@ public class App {
         if (cl.hasOption('f')) {
             Path urlfile = Paths.get(cl.getOptionValue('f'));
 
+            List<String> urls = new ArrayList<>();
             try (BufferedReader br = Files.newBufferedReader(urlfile)) {
                 String url;
                 while ((url = br.readLine()) != null) {
                     if (url.startsWith("//") || url.startsWith("#")) {
                         logger.debug("Skipping over line \"" + url + "\"because it is a comment");
-                    } else {
-                        // loop through each url in the file and process each url individually.
-                        ripURL(url.trim(), !cl.hasOption("n"));
+                    } else if (!url.trim().isEmpty()) {
+                        urls.add(url.trim());
                     }
                 }
             } catch (FileNotFoundException fne) {
@@ -275,6 +343,13 @@ public class App {
             } catch (IOException ioe) {
                 logger.error("[!] Failed reading file containing list of URLs. Cannot continue.");
             }
+            if (!urls.isEmpty()) {
+                loadHistory();
+                int parallel = cl.hasOption('P')
+                        ? Integer.parseInt(cl.getOptionValue('P'))
+                        : Utils.getConfigInteger("cli.parallel_rips", 1);
+                ripURLs(urls, parallel, cl.hasOption('S') ? Paths.get(cl.getOptionValue('S')) : null);
+            }
         }
 
         //The URL to rip.
@@ -309,6 +384,144 @@ public class App {
         }
     }
 
+    /**
+     * Rips a list of URLs, running up to {@code parallel} rips at once but never two for the same
+     * domain, and optionally writes one JSON line per URL with its result to {@code summaryFile}.
+     */
+    private static void ripURLs(List<String> urls, int parallel, Path summaryFile) {
+        logger.info("Ripping {} URLs, up to {} at once", urls.size(), parallel);
+        BufferedWriter summary = null;
+        if (summaryFile != null) {
+            try {
+                summary = Files.newBufferedWriter(summaryFile, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                logger.error("[!] Unable to write summary to " + summaryFile + ": " + e.getMessage());
+            }
+        }
+        BufferedWriter summaryWriter = summary;
+        BatchRipScheduler scheduler = new BatchRipScheduler(parallel, App::getDomainFromUrl);
+        try {
+            List<BatchRipScheduler.Result> results = scheduler.run(urls, App::ripForBatch, result -> {
+                logger.info("Finished {} ({}): {} files, {} bytes, {} errors in {} ms", result.url, result.status,
+                        result.files, result.bytes, result.errors, result.durationMillis);
+                if (summaryWriter != null) {
+                    try {
+                        summaryWriter.write(result.toJSON().toString());
+                        summaryWriter.newLine();
+                        summaryWriter.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+            long failed = results.stream().filter(result -> !"ok".equals(result.status)).count();
+            logger.info("Ripped {} URLs, {} failed", results.size(), failed);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("[!] Interrupted while ripping URLs");
+        } finally {
+            if (summaryWriter != null) {
+                try {
+                    summaryWriter.close();
+                } catch (IOException e) {
+                    logger.warn("Failed to close summary file " + summaryFile + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Keeps re-ripping {@code urls}, each on its own interval and only down to what the previous
+     * poll already saw, until interrupted.
+     */
+    private static void watchURLs(List<String> urls, int parallel) {
+        WatchScheduler watcher = WatchScheduler.fromConfig();
+        watcher.setSources(urls);
+        logger.info("Watching {} URLs, up to {} polls at once", urls.size(), parallel);
+        try {
+            watcher.run(new BatchRipScheduler(parallel, App::getDomainFromUrl),
+                    source -> ripForBatch(source.url, source));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("[!] Interrupted while watching URLs");
+        }
+    }
+
+    private static BatchRipScheduler.Result ripForBatch(String targetURL) {
+        return ripForBatch(targetURL, null);
+    }
+
+    private static BatchRipScheduler.Result ripForBatch(String targetURL, WatchScheduler.Source watch) {
+        BatchRipScheduler.Result result = new BatchRipScheduler.Result(targetURL);
+        BatchRipStats stats = new BatchRipStats();
+        try {
+            URL url = new URI(targetURL).toURL();
+            AbstractRipper ripper = rip(url, stats, watch);
+            result.dir = ripper.getWorkingDir().getAbsolutePath();
+            HISTORY_LOCK.lock();
+            try {
+                saveHistory();
+            } finally {
+                HISTORY_LOCK.unlock();
+            }
+        } catch (MalformedURLException | URISyntaxException | IllegalArgumentException e) {
+            logger.error("[!] Given URL is not valid. Expected URL format is http://domain.com/...");
+            result.failed("Invalid URL");
+        } catch (Exception e) {
+            logger.error("[!] Error while ripping URL " + targetURL, e);
+            result.failed(e.toString());
+        }
+        result.files = stats.files.get();
+        result.bytes = stats.bytes.get();
+        result.errors = stats.errors.get();
+        if (result.message == null && stats.ripError != null) {
+            result.failed(stats.ripError);
+        }
+        return result;
+    }
+
+    private static String getDomainFromUrl(String urlString) {
+        try {
+            URL url = new URI(urlString).toURL();
+            return url.getHost() == null ? null : url.getHost().toLowerCase(Locale.ROOT);
+        } catch (MalformedURLException | URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Counts the files, bytes and errors of one rip from its status updates.
+     */
+    private static class BatchRipStats implements RipStatusHandler {
+        private final AtomicInteger files = new AtomicInteger();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicInteger errors = new AtomicInteger();
+        private volatile String ripError = null;
+
+        @Override
+        public void update(AbstractRipper ripper, RipStatusMessage message) {
+            switch (message.getStatus()) {
+            case DOWNLOAD_COMPLETE:
+                files.incrementAndGet();
+                try {
+                    bytes.addAndGet(Files.size(Paths.get(String.valueOf(message.getObject()))));
+                } catch (IOException | RuntimeException e) {
+                    logger.debug("Unable to get size of {}: {}", message.getObject(), e.getMessage());
+                }
+                break;
+            case DOWNLOAD_ERRORED:
+                errors.incrementAndGet();
+                break;
+            case RIP_ERRORED:
+            case NO_ALBUM_OR_USER:
+                ripError = String.valueOf(message.getObject());
+                break;
+            default:
+                break;
+            }
+        }
+    }
+
     /**
      * Creates an Options object, returns it.
      * @return Returns all acceptable command-line options.
@@ -321,12 +534,15 @@ public class App {
         opts.addOption("w", "overwrite", false, "Overwrite existing files");
         opts.addOption("r", "rerip", false, "Re-rip all ripped albums");
         opts.addOption("R", "rerip-selected", false, "Re-rip all selected albums");
+        opts.addOption("W", "watch", false, "Keep polling the selected albums (all if none are selected) for new items");
         opts.addOption("d", "saveorder", false, "Save the order of images in album");
         opts.addOption("D", "nosaveorder", false, "Don't save order of images");
         opts.addOption("4", "skip404", false, "Don't retry after a 404 (not found) error");
         opts.addOption("l", "ripsdirectory", true, "Rips Directory (Default: ./rips)");
         opts.addOption("n", "no-prop-file", false, "Do not create properties file.");
         opts.addOption("f", "urls-file", true, "Rip URLs from a file.");
+        opts.addOption("P", "parallel", true, "Number of albums to rip at once with -f or -W (one per domain at a time)");
+        opts.addOption("S", "summary", true, "With -f, write one JSON line per URL with its result to this file");
         opts.addOption("v", "version", false, "Show current version");
         opts.addOption("s", "socks-server", true, "Use socks server ([user:password]@host[:port])");
         opts.addOption("p", "proxy-server", true, "Use HTTP Proxy server ([user:password]@host[:port])");
@@ -16,6 +16,7 @@ import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -72,6 +73,41 @@ public abstract class AbstractHTMLRipper extends AbstractRipper {
         return null;
     }
 
+    /**
+     * Whether an interrupted rip can resume from its last {@link RipCheckpoint}. Only enable this for
+     * rippers whose {@link #getNextPage(Document)} works from the page alone, without state set up
+     * while fetching earlier pages.
+     */
+    protected boolean hasCheckpointSupport() {
+        return false;
+    }
+
+    /**
+     * Fetches the next pages while the current one is processed, for rippers with checkpoint
+     * support: their {@link #getNextPage(Document)} already has to work from the page alone.
+     */
+    @Override
+    protected boolean canPrefetchPages() {
+        return hasCheckpointSupport();
+    }
+
+    /**
+     * @return The cursor that {@link #getPageAtCheckpoint(String)} turns back into {@code page}.
+     */
+    protected String getCheckpointCursor(Document page) {
+        return page.location();
+    }
+
+    /**
+     * Fetches the page a rip resumes at.
+     *
+     * @param cursor Cursor from {@link #getCheckpointCursor(Document)}.
+     */
+    protected Document getPageAtCheckpoint(String cursor) throws IOException, URISyntaxException {
+        String body = Http.getWith429Retry(new URI(cursor).toURL(), 5, 15, AbstractRipper.USER_AGENT);
+        return Jsoup.parse(body, cursor);
+    }
+
     protected abstract List<String> getURLsFromPage(Document page) throws UnsupportedEncodingException, URISyntaxException;
 
     protected List<String> getDescriptionsFromPage(Document doc) throws IOException {
@@ -127,9 +163,20 @@ public abstract class AbstractHTMLRipper extends AbstractRipper {
     public void rip() throws IOException, URISyntaxException {
         int index = 0;
         int textindex = 0;
+        long ripStart = System.nanoTime();
         logger.info("Retrieving " + this.url);
         sendUpdate(STATUS.LOADING_RESOURCE, this.url.toExternalForm());
-        var doc = getCachedFirstPage();
+        RipCheckpoint checkpoint = hasCheckpointSupport() && !isWatching() ? openCheckpoint() : null;
+        Document doc;
+        if (checkpoint != null && checkpoint.load()) {
+            logger.info("Resuming rip after " + checkpoint.getPages() + " pages at " + checkpoint.getCursor());
+            index = checkpoint.getIndex();
+            resumePendingDownloads(checkpoint);
+            doc = getPageAtCheckpoint(checkpoint.getCursor());
+        } else {
+            doc = getCachedFirstPage();
+        }
+        long firstPageNanos = System.nanoTime() - ripStart;
 
         if (hasQueueSupport() && pageContainsAlbums(this.url)) {
             List<String> urls = getAlbumsToQueue(doc);
@@ -146,99 +193,112 @@ public abstract class AbstractHTMLRipper extends AbstractRipper {
 
         logger.info("Got doc location " + doc.location());
 
-        while (doc != null) {
-            waitIfPaused();
-            logger.info("Processing a doc...");
-
-            // catch if we saw a doc location already, save the ones seen in a list
-            if (doclocation.contains(doc.location())) {
-                logger.info("Already processed location " + doc.location() + " breaking");
-                break;
-            }
-            doclocation.add(doc.location());
+        PagePrefetcher<Document> pages = new PagePrefetcher<>(doc, getPrefetchDepth(), this::getNextPage,
+                this::waitIfPaused, this::isStopped);
+        try {
+            while (doc != null) {
+                waitIfPaused();
+                logger.info("Processing a doc...");
+
+                // catch if we saw a doc location already, save the ones seen in a list
+                if (doclocation.contains(doc.location())) {
+                    logger.info("Already processed location " + doc.location() + " breaking");
+                    break;
+                }
+                doclocation.add(doc.location());
 
-            if (alreadyDownloadedUrls >= Utils.getConfigInteger("history.end_rip_after_already_seen", 1000000000) && !isThisATest()) {
-                sendUpdate(STATUS.DOWNLOAD_COMPLETE_HISTORY, "Already seen the last " + alreadyDownloadedUrls + " images ending rip");
-                break;
-            }
+                if (alreadyDownloadedUrls >= Utils.getConfigInteger("history.end_rip_after_already_seen", 1000000000) && !isThisATest()) {
+                    sendUpdate(STATUS.DOWNLOAD_COMPLETE_HISTORY, "Already seen the last " + alreadyDownloadedUrls + " images ending rip");
+                    break;
+                }
 
-            logger.info("retrieving urls from doc");
+                logger.info("retrieving urls from doc");
 
-            List<String> imageURLs = getURLsFromPage(doc);
-            // If hasASAPRipping() returns true then the ripper will handle downloading the files
-            // if not it's done in the following block of code
-            if (!hasASAPRipping()) {
-                // Remove all but 1 image
-                if (isThisATest()) {
-                    while (imageURLs.size() > 1) {
-                        imageURLs.remove(1);
+                List<String> imageURLs = getURLsFromPage(doc);
+                // If hasASAPRipping() returns true then the ripper will handle downloading the files
+                // if not it's done in the following block of code
+                if (!hasASAPRipping()) {
+                    // Remove all but 1 image
+                    if (isThisATest()) {
+                        while (imageURLs.size() > 1) {
+                            imageURLs.remove(1);
+                        }
                     }
-                }
-
-                if (imageURLs.isEmpty()) {
-                    throw new IOException("No images found at " + doc.location());
-                }
 
-                for (String imageURL : imageURLs) {
-                    waitIfPaused();
-                    index += 1;
-                    logger.debug("Found image url #" + index + ": '" + imageURL + "'");
-                    downloadURL(new URI(imageURL).toURL(), index);
-                    if (isStopped() || isThisATest()) {
-                        break;
+                    if (imageURLs.isEmpty()) {
+                        throw new IOException("No images found at " + doc.location());
                     }
-                }
-            }
-            if (hasDescriptionSupport() && Utils.getConfigBoolean("descriptions.save", false)) {
-                logger.debug("Fetching description(s) from " + doc.location());
-                List<String> textURLs = getDescriptionsFromPage(doc);
-                if (!textURLs.isEmpty()) {
-                    logger.debug("Found description link(s) from " + doc.location());
-                    for (String textURL : textURLs) {
+
+                    for (String imageURL : imageURLs) {
+                        waitIfPaused();
+                        if (reachedWatchMark(imageURL)) {
+                            logger.info("Reached items seen by the previous watch poll at " + imageURL);
+                            break;
+                        }
+                        index += 1;
+                        logger.debug("Found image url #" + index + ": '" + imageURL + "'");
+                        downloadURL(new URI(imageURL).toURL(), index);
                         if (isStopped() || isThisATest()) {
                             break;
                         }
+                    }
+                }
+                if (hasDescriptionSupport() && Utils.getConfigBoolean("descriptions.save", false)) {
+                    logger.debug("Fetching description(s) from " + doc.location());
+                    List<String> textURLs = getDescriptionsFromPage(doc);
+                    if (!textURLs.isEmpty()) {
+                        logger.debug("Found description link(s) from " + doc.location());
+                        for (String textURL : textURLs) {
+                            if (isStopped() || isThisATest()) {
+                                break;
+                            }
 
-                        textindex += 1;
-                        logger.debug("Getting description from " + textURL);
-                        String[] tempDesc = getDescription(textURL,doc);
-
-                        if (tempDesc != null) {
-                            URL url = new URI(textURL).toURL();
-                            String filename = fileNameFromURL(url);
-
-                            boolean fileExists = new File(
-                                workingDir.getCanonicalPath()
-                                        + ""
-                                        + File.separator
-                                        + getPrefix(index)
-                                        + (tempDesc.length > 1 ? tempDesc[1] : filename)
-                                        + ".txt").exists();
-
-                            if (Utils.getConfigBoolean("file.overwrite", false) || !fileExists) {
-                                logger.debug("Got description from " + textURL);
-                                saveText(url, "", tempDesc[0], textindex, (tempDesc.length > 1 ? tempDesc[1] : filename));
-                                sleep(descSleepTime());
-                            } else {
-                                logger.debug("Description from " + textURL + " already exists.");
+                            textindex += 1;
+                            logger.debug("Getting description from " + textURL);
+                            String[] tempDesc = getDescription(textURL,doc);
+
+                            if (tempDesc != null) {
+                                URL url = new URI(textURL).toURL();
+                                String filename = fileNameFromURL(url);
+
+                                boolean fileExists = new File(
+                                    workingDir.getCanonicalPath()
+                                            + ""
+                                            + File.separator
+                                            + getPrefix(index)
+                                            + (tempDesc.length > 1 ? tempDesc[1] : filename)
+                                            + ".txt").exists();
+
+                                if (Utils.getConfigBoolean("file.overwrite", false) || !fileExists) {
+                                    logger.debug("Got description from " + textURL);
+                                    saveText(url, "", tempDesc[0], textindex, (tempDesc.length > 1 ? tempDesc[1] : filename));
+                                    sleep(descSleepTime());
+                                } else {
+                                    logger.debug("Description from " + textURL + " already exists.");
+                                }
                             }
-                        }
 
+                        }
                     }
                 }
-            }
 
-            if (isStopped() || isThisATest()) {
-                break;
-            }
+                if (isStopped() || isThisATest() || isWatchMarkReached()) {
+                    break;
+                }
 
-            try {
-                sendUpdate(STATUS.LOADING_RESOURCE, "next page");
-                doc = getNextPage(doc);
-            } catch (IOException e) {
-                logger.info("Can't get next page: " + e.getMessage());
-                break;
+                try {
+                    sendUpdate(STATUS.LOADING_RESOURCE, "next page");
+                    doc = pages.next();
+                } catch (IOException e) {
+                    logger.info("Can't get next page: " + e.getMessage());
+                    break;
+                }
+                if (checkpoint != null && doc != null) {
+                    checkpoint.save(getCheckpointCursor(doc), index, getPendingDownloads());
+                }
             }
+        } finally {
+            pages.close();
         }
 
         // If they're using a thread pool, wait for it.
@@ -247,6 +307,36 @@ public abstract class AbstractHTMLRipper extends AbstractRipper {
             getThreadPool().waitForThreads();
         }
         waitForThreads();
+        pages.logFetchTime(url.toExternalForm(), firstPageNanos, System.nanoTime() - ripStart);
+        if (checkpoint != null && !isStopped()) {
+            checkpoint.delete();
+        }
+    }
+
+    /**
+     * @return Downloads queued but not finished yet, as URL to target file.
+     */
+    private Map<String, String> getPendingDownloads() {
+        Map<String, String> pending = new LinkedHashMap<>();
+        synchronized (itemsPending) {
+            for (Map.Entry<URL, File> item : itemsPending.entrySet()) {
+                pending.put(item.getKey().toExternalForm(), item.getValue().getPath());
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Queues the downloads that were still pending when the checkpoint was saved.
+     */
+    private void resumePendingDownloads(RipCheckpoint checkpoint) {
+        for (Map.Entry<String, String> item : checkpoint.getPending().entrySet()) {
+            try {
+                addURLToDownload(new URI(item.getKey()).toURL(), Paths.get(item.getValue()));
+            } catch (MalformedURLException | URISyntaxException | IllegalArgumentException e) {
+                logger.warn("Skipping pending download " + item.getKey() + " from checkpoint: " + e.getMessage());
+            }
+        }
     }
 
     /**
@@ -426,13 +516,14 @@ public abstract class AbstractHTMLRipper extends AbstractRipper {
      */
     public void downloadCompleted(URL url, Path saveAs) {
         onDownloadSuccess(url);
+        // Kept up to date without an observer too, since rip checkpoints record it.
+        itemsPending.remove(url);
         if (observer == null) {
             return;
         }
         try {
             String path = Utils.removeCWD(saveAs);
             RipStatusMessage msg = new RipStatusMessage(STATUS.DOWNLOAD_COMPLETE, path);
-            itemsPending.remove(url);
             itemsCompleted.put(url, saveAs);
             observer.update(this, msg);
 
@@ -449,10 +540,10 @@ public abstract class AbstractHTMLRipper extends AbstractRipper {
     public void downloadErrored(URL url, String reason) {
         trackHttpDownloadError(reason);
         onDownloadFailure(url);
+        itemsPending.remove(url);
         if (observer == null) {
             return;
         }
-        itemsPending.remove(url);
         itemsErrored.put(url, reason);
         observer.update(this, new RipStatusMessage(STATUS.DOWNLOAD_ERRORED, url + " : " + reason));
 
@@ -466,11 +557,11 @@ public abstract class AbstractHTMLRipper extends AbstractRipper {
      */
     public void downloadExists(URL url, Path file) {
         onDownloadFailure(url);
+        itemsPending.remove(url);
         if (observer == null) {
             return;
         }
 
-        itemsPending.remove(url);
         itemsSkipped.put(url, file);
         observer.update(this, new RipStatusMessage(STATUS.DOWNLOAD_WARN, url + " already saved as " + file));
 
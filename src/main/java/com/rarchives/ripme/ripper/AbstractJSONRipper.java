@@ -13,6 +13,7 @@ import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -48,6 +49,40 @@ public abstract class AbstractJSONRipper extends AbstractRipper {
     protected JSONObject getNextPage(JSONObject doc) throws IOException, URISyntaxException {
         throw new IOException("getNextPage not implemented");
     }
+
+    /**
+     * Whether an interrupted rip can resume from its last {@link RipCheckpoint}. Rippers enabling
+     * this implement {@link #getCheckpointCursor(JSONObject)} and {@link #getPageAtCheckpoint(String)}.
+     */
+    protected boolean hasCheckpointSupport() {
+        return false;
+    }
+
+    /**
+     * Fetches the next pages while the current one is processed, for rippers with checkpoint
+     * support: their {@link #getNextPage(JSONObject)} already has to work from the page alone.
+     */
+    @Override
+    protected boolean canPrefetchPages() {
+        return hasCheckpointSupport();
+    }
+
+    /**
+     * @return A cursor (page number, {@code after} token, ...) that {@link #getPageAtCheckpoint(String)}
+     *         turns back into {@code page}, or null if this page cannot be resumed at.
+     */
+    protected String getCheckpointCursor(JSONObject page) {
+        return null;
+    }
+
+    /**
+     * Fetches the page a rip resumes at.
+     *
+     * @param cursor Cursor from {@link #getCheckpointCursor(JSONObject)}.
+     */
+    protected JSONObject getPageAtCheckpoint(String cursor) throws IOException, URISyntaxException {
+        throw new IOException("getPageAtCheckpoint not implemented");
+    }
     protected abstract List<String> getURLsFromJSON(JSONObject json);
     protected abstract void downloadURL(URL url, int index);
     private DownloadThreadPool getThreadPool() {
@@ -71,52 +106,80 @@ public abstract class AbstractJSONRipper extends AbstractRipper {
     @Override
     public void rip() throws IOException, URISyntaxException {
         int index = 0;
+        long ripStart = System.nanoTime();
         logger.info("Retrieving " + this.url);
         sendUpdate(STATUS.LOADING_RESOURCE, this.url.toExternalForm());
-        JSONObject json = getFirstPage();
-
-        while (json != null) {
-            waitIfPaused();
-            List<String> imageURLs = getURLsFromJSON(json);
+        RipCheckpoint checkpoint = hasCheckpointSupport() && !isWatching() ? openCheckpoint() : null;
+        JSONObject json;
+        if (checkpoint != null && checkpoint.load()) {
+            logger.info("Resuming rip after " + checkpoint.getPages() + " pages at " + checkpoint.getCursor());
+            index = checkpoint.getIndex();
+            resumePendingDownloads(checkpoint);
+            json = getPageAtCheckpoint(checkpoint.getCursor());
+        } else {
+            json = getFirstPage();
+        }
+        long firstPageNanos = System.nanoTime() - ripStart;
 
-            if (alreadyDownloadedUrls >= Utils.getConfigInteger("history.end_rip_after_already_seen", 1000000000) && !isThisATest()) {
-                 sendUpdate(STATUS.DOWNLOAD_COMPLETE, "Already seen the last " + alreadyDownloadedUrls + " images ending rip");
-                 break;
-            }
+        PagePrefetcher<JSONObject> pages = new PagePrefetcher<>(json, getPrefetchDepth(), this::getNextPage,
+                this::waitIfPaused, this::isStopped);
+        try {
+            while (json != null) {
+                waitIfPaused();
+                List<String> imageURLs = getURLsFromJSON(json);
 
-            // Remove all but 1 image
-            if (isThisATest()) {
-                while (imageURLs.size() > 1) {
-                    imageURLs.remove(1);
+                if (alreadyDownloadedUrls >= Utils.getConfigInteger("history.end_rip_after_already_seen", 1000000000) && !isThisATest()) {
+                     sendUpdate(STATUS.DOWNLOAD_COMPLETE_HISTORY, "Already seen the last " + alreadyDownloadedUrls + " images ending rip");
+                     break;
                 }
-            }
 
-            if (imageURLs.isEmpty() && !hasASAPRipping()) {
-                throw new IOException("No images found at " + this.url);
-            }
+                // Remove all but 1 image
+                if (isThisATest()) {
+                    while (imageURLs.size() > 1) {
+                        imageURLs.remove(1);
+                    }
+                }
 
-            for (String imageURL : imageURLs) {
-                waitIfPaused();
-                if (isStopped()) {
-                    break;
+                if (imageURLs.isEmpty() && !hasASAPRipping()) {
+                    throw new IOException("No images found at " + this.url);
                 }
 
-                index += 1;
-                logger.debug("Found image url #" + index+ ": " + imageURL);
-                downloadURL(new URI(imageURL).toURL(), index);
-            }
+                for (String imageURL : imageURLs) {
+                    waitIfPaused();
+                    if (isStopped()) {
+                        break;
+                    }
 
-            if (isStopped() || isThisATest()) {
-                break;
-            }
+                    if (reachedWatchMark(imageURL)) {
+                        logger.info("Reached items seen by the previous watch poll at " + imageURL);
+                        break;
+                    }
 
-            try {
-                sendUpdate(STATUS.LOADING_RESOURCE, "next page");
-                json = getNextPage(json);
-            } catch (IOException | URISyntaxException e) {
-                logger.info("Can't get next page: " + e.getMessage());
-                break;
+                    index += 1;
+                    logger.debug("Found image url #" + index+ ": " + imageURL);
+                    downloadURL(new URI(imageURL).toURL(), index);
+                }
+
+                if (isStopped() || isThisATest() || isWatchMarkReached()) {
+                    break;
+                }
+
+                try {
+                    sendUpdate(STATUS.LOADING_RESOURCE, "next page");
+                    json = pages.next();
+                } catch (IOException | URISyntaxException e) {
+                    logger.info("Can't get next page: " + e.getMessage());
+                    break;
+                }
+                if (checkpoint != null && json != null) {
+                    String cursor = getCheckpointCursor(json);
+                    if (cursor != null) {
+                        checkpoint.save(cursor, index, getPendingDownloads());
+                    }
+                }
             }
+        } finally {
+            pages.close();
         }
 
         // If they're using a thread pool, wait for it.
@@ -125,6 +188,36 @@ public abstract class AbstractJSONRipper extends AbstractRipper {
             getThreadPool().waitForThreads();
         }
         waitForThreads();
+        pages.logFetchTime(url.toExternalForm(), firstPageNanos, System.nanoTime() - ripStart);
+        if (checkpoint != null && !isStopped()) {
+            checkpoint.delete();
+        }
+    }
+
+    /**
+     * @return Downloads queued but not finished yet, as URL to target file.
+     */
+    private Map<String, String> getPendingDownloads() {
+        Map<String, String> pending = new LinkedHashMap<>();
+        synchronized (itemsPending) {
+            for (Map.Entry<URL, File> item : itemsPending.entrySet()) {
+                pending.put(item.getKey().toExternalForm(), item.getValue().getPath());
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Queues the downloads that were still pending when the checkpoint was saved.
+     */
+    private void resumePendingDownloads(RipCheckpoint checkpoint) {
+        for (Map.Entry<String, String> item : checkpoint.getPending().entrySet()) {
+            try {
+                addURLToDownload(new URI(item.getKey()).toURL(), Paths.get(item.getValue()));
+            } catch (MalformedURLException | URISyntaxException | IllegalArgumentException e) {
+                logger.warn("Skipping pending download " + item.getKey() + " from checkpoint: " + e.getMessage());
+            }
+        }
     }
 
     protected String getPrefix(int index) {
@@ -226,13 +319,14 @@ public abstract class AbstractJSONRipper extends AbstractRipper {
      */
     public void downloadCompleted(URL url, Path saveAs) {
         onDownloadSuccess(url);
+        // Kept up to date without an observer too, since rip checkpoints record it.
+        itemsPending.remove(url);
         if (observer == null) {
             return;
         }
         try {
             String path = Utils.removeCWD(saveAs);
             RipStatusMessage msg = new RipStatusMessage(STATUS.DOWNLOAD_COMPLETE, path);
-            itemsPending.remove(url);
             itemsCompleted.put(url, saveAs);
             observer.update(this, msg);
 
@@ -249,10 +343,10 @@ public abstract class AbstractJSONRipper extends AbstractRipper {
     public void downloadErrored(URL url, String reason) {
         trackHttpDownloadError(reason);
         onDownloadFailure(url);
+        itemsPending.remove(url);
         if (observer == null) {
             return;
         }
-        itemsPending.remove(url);
         itemsErrored.put(url, reason);
         observer.update(this, new RipStatusMessage(STATUS.DOWNLOAD_ERRORED, url + " : " + reason));
 
@@ -266,11 +360,11 @@ public abstract class AbstractJSONRipper extends AbstractRipper {
      */
     public void downloadExists(URL url, Path file) {
         onDownloadFailure(url);
+        itemsPending.remove(url);
         if (observer == null) {
             return;
         }
 
-        itemsPending.remove(url);
         itemsSkipped.put(url, file);
         observer.update(this, new RipStatusMessage(STATUS.DOWNLOAD_WARN, url + " already saved as " + file));
 
@@ -1,10 +1,7 @@
 package com.rarchives.ripme.ripper;
 
 import java.awt.Desktop;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.net.MalformedURLException;
@@ -14,18 +11,20 @@ import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Observable;
 import java.util.Random;
-import java.util.Scanner;
 import java.util.Set;
-import java.util.stream.Stream;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -38,6 +37,13 @@ import com.rarchives.ripme.ui.RipStatusMessage;
 import com.rarchives.ripme.ui.RipStatusMessage.STATUS;
 import com.rarchives.ripme.utils.ConsecutiveHttpFailureTracker;
 import com.rarchives.ripme.utils.DownloadLimitTracker;
+import com.rarchives.ripme.utils.HashHistoryIndex;
+import com.rarchives.ripme.utils.HeadHashIndex;
+import com.rarchives.ripme.utils.HostRateLimiter;
+import com.rarchives.ripme.utils.Metrics;
+import com.rarchives.ripme.utils.NearDuplicateChecker;
+import com.rarchives.ripme.utils.PageCache;
+import com.rarchives.ripme.utils.URLHistoryIndex;
 import com.rarchives.ripme.utils.Utils;
 
 // Suppress warning for specifically Observable. Hopefully no other deprecations
@@ -54,6 +60,7 @@ public abstract class AbstractRipper
     private static final Logger logger = LogManager.getLogger(AbstractRipper.class);
     private final String URLHistoryFile = Utils.getURLHistoryFile();
     private final String hashHistoryFile = Utils.getHashHistoryFile();
+    private final String headHashFile = Utils.getHeadHashFile();
 
     public static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/134.0.0.0 Safari/537.36";
     public static final String FIREFOX_USER_AGENT =
@@ -78,11 +85,53 @@ public abstract class AbstractRipper
         return false;
     }
 
+    /**
+     * Starting request rate for this ripper's host, in requests per second, used instead of
+     * sleeping between requests. The rate grows while the host answers and drops when it returns
+     * 429 or 5xx responses; see {@link HostRateLimiter}.
+     *
+     * @return The starting rate, or 0 to leave the host unlimited until it throttles us.
+     */
+    protected double getRequestBudget() {
+        return 0;
+    }
+
+    /**
+     * Whether pages loaded through {@code Http} for this ripper's host may be answered from the
+     * {@link PageCache} after a {@code 304 Not Modified}. Rippers whose pages change without
+     * changing their {@code ETag} or {@code Last-Modified} should return false.
+     */
+    protected boolean canCachePages() {
+        return true;
+    }
+
+    /**
+     * Whether the next pages of a rip may be fetched on another thread while the current page is
+     * processed; see {@link PagePrefetcher}. Only safe if fetching the next page does not depend on
+     * state changed while processing the current one.
+     */
+    protected boolean canPrefetchPages() {
+        return false;
+    }
+
+    /**
+     * @return Number of pages to fetch ahead, from {@code page.prefetch}, or 0 if this ripper
+     *         cannot fetch ahead.
+     */
+    int getPrefetchDepth() {
+        if (!canPrefetchPages() || isThisATest()) {
+            return 0;
+        }
+        return Math.max(0, Utils.getConfigInteger("page.prefetch", 1));
+    }
+
     // Everytime addUrlToDownload skips a already downloaded url this increases by 1
     public int alreadyDownloadedUrls = 0;
     private final AtomicBoolean shouldStop = new AtomicBoolean(false);
     private final AtomicBoolean shouldPause = new AtomicBoolean(false);
-    private final Object pauseLock = new Object();
+    // A Lock rather than a monitor, so paused virtual threads do not pin their carrier thread.
+    private final ReentrantLock pauseLock = new ReentrantLock();
+    private final Condition unpaused = pauseLock.newCondition();
     private static boolean thisIsATest = false;
     private final int maxDownloads = Utils.getConfigInteger("maxdownloads", -1);
     private final DownloadLimitTracker downloadLimitTracker = new DownloadLimitTracker(maxDownloads);
@@ -91,9 +140,14 @@ public abstract class AbstractRipper
             new ConsecutiveHttpFailureTracker(httpFailureThreshold);
     private final AtomicBoolean circuitBroken = new AtomicBoolean(false);
 
-    private final Set<String> knownHashes = Collections.synchronizedSet(new HashSet<>());
-    private volatile boolean hashHistoryLoaded = false;
-    private final Object hashHistoryLock = new Object();
+    // Marks kept per listing between watch polls
+    static final int WATCH_MARK_COUNT = 10;
+    private volatile boolean watching = false;
+    private volatile boolean watchMarkReached = false;
+    private final Map<String, List<String>> previousWatchMarks = new HashMap<>();
+    private final Map<String, List<String>> watchMarks = new LinkedHashMap<>();
+    private final ReentrantLock watchMarksLock = new ReentrantLock();
+    private int newWatchItems = 0;
 
     public void stop() {
         logger.trace("stop()");
@@ -120,8 +174,15 @@ public abstract class AbstractRipper
             return;
         }
         shouldPause.set(false);
-        synchronized (pauseLock) {
-            pauseLock.notifyAll();
+        signalUnpaused();
+    }
+
+    private void signalUnpaused() {
+        pauseLock.lock();
+        try {
+            unpaused.signalAll();
+        } finally {
+            pauseLock.unlock();
         }
     }
 
@@ -137,9 +198,7 @@ public abstract class AbstractRipper
         circuitBroken.set(false);
         httpFailureTracker.reset();
         shouldPause.set(false);
-        synchronized (pauseLock) {
-            pauseLock.notifyAll();
-        }
+        signalUnpaused();
     }
 
     protected void trackHttpDownloadError(String reason) {
@@ -179,15 +238,157 @@ public abstract class AbstractRipper
      */
     protected void waitIfPaused() {
         while (shouldPause.get() && !shouldStop.get()) {
-            synchronized (pauseLock) {
+            pauseLock.lock();
+            try {
+                unpaused.await(500, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.warn("Interrupted while paused");
+                return;
+            } finally {
+                pauseLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return The checkpoint of this rip, or null if it cannot be checkpointed (or this is a test).
+     */
+    protected RipCheckpoint openCheckpoint() {
+        if (isThisATest()) {
+            return null;
+        }
+        try {
+            return RipCheckpoint.forAlbum(getHost(), getGID(url));
+        } catch (MalformedURLException | URISyntaxException e) {
+            logger.debug("Not checkpointing rip of {}: {}", url, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Starts watch mode: the marks are the newest items seen by the previous poll of this URL, by
+     * listing, and the rip stops paging once it reaches one of them if
+     * {@link #hasNewestFirstListing()}; see {@link WatchScheduler}.
+     *
+     * @param marks Marks from {@link #getWatchMarks()} of the previous poll, empty on the first.
+     */
+    public void setWatchMarks(Map<String, List<String>> marks) {
+        watchMarksLock.lock();
+        try {
+            watching = true;
+            previousWatchMarks.clear();
+            previousWatchMarks.putAll(marks);
+        } finally {
+            watchMarksLock.unlock();
+        }
+    }
+
+    public boolean isWatching() {
+        return watching;
+    }
+
+    /**
+     * Whether this ripper lists items newest first, so a watch poll can stop at the first item
+     * the previous poll saw. Threads and galleries that add items at the end list the oldest
+     * first, and are walked in full on every poll instead, the URL history skipping what was
+     * downloaded before.
+     */
+    protected boolean hasNewestFirstListing() {
+        return false;
+    }
+
+    /**
+     * Checks an item of the listing while watching. Items pinned to the top of the listing
+     * whatever their age, such as stickied posts, should not be checked.
+     *
+     * @param listing Name of the listing, for rippers that walk more than one (e.g. per media type).
+     * @param mark    Stable id of the item, such as a post id or the item URL.
+     * @return True if the listing is newest first and the previous poll already saw this item, so
+     *         older pages need not be fetched.
+     */
+    protected boolean reachedWatchMark(String listing, String mark) {
+        if (!watching || mark == null || mark.isEmpty()) {
+            return false;
+        }
+        if (!hasNewestFirstListing()) {
+            // Seen items say nothing about the ones after them; count what the history lacks
+            if (!isInURLHistory(mark)) {
+                watchMarksLock.lock();
                 try {
-                    pauseLock.wait(500);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    logger.warn("Interrupted while paused");
-                    return;
+                    newWatchItems++;
+                } finally {
+                    watchMarksLock.unlock();
                 }
             }
+            return false;
+        }
+        watchMarksLock.lock();
+        try {
+            List<String> previous = previousWatchMarks.getOrDefault(listing, Collections.emptyList());
+            if (previous.contains(mark)) {
+                watchMarkReached = true;
+                return true;
+            }
+            List<String> current = watchMarks.computeIfAbsent(listing, k -> new ArrayList<>());
+            if (current.size() < WATCH_MARK_COUNT && !current.contains(mark)) {
+                current.add(mark);
+            }
+            newWatchItems++;
+            return false;
+        } finally {
+            watchMarksLock.unlock();
+        }
+    }
+
+    protected boolean reachedWatchMark(String mark) {
+        return reachedWatchMark("", mark);
+    }
+
+    /**
+     * @return True once this rip has reached a mark of the previous poll.
+     */
+    protected boolean isWatchMarkReached() {
+        return watchMarkReached;
+    }
+
+    /**
+     * @return The marks to pass to the next poll: the newest items of this poll, topped up with
+     *         the previous marks so a deleted post does not make the next poll walk everything.
+     */
+    public Map<String, List<String>> getWatchMarks() {
+        watchMarksLock.lock();
+        try {
+            Map<String, List<String>> marks = new LinkedHashMap<>();
+            Set<String> listings = new LinkedHashSet<>(watchMarks.keySet());
+            listings.addAll(previousWatchMarks.keySet());
+            for (String listing : listings) {
+                List<String> merged = new ArrayList<>(watchMarks.getOrDefault(listing, Collections.emptyList()));
+                for (String mark : previousWatchMarks.getOrDefault(listing, Collections.emptyList())) {
+                    if (merged.size() >= WATCH_MARK_COUNT) {
+                        break;
+                    }
+                    if (!merged.contains(mark)) {
+                        merged.add(mark);
+                    }
+                }
+                marks.put(listing, merged);
+            }
+            return marks;
+        } finally {
+            watchMarksLock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of items newer than the previous poll's marks that this rip found.
+     */
+    public int getNewWatchItems() {
+        watchMarksLock.lock();
+        try {
+            return newWatchItems;
+        } finally {
+            watchMarksLock.unlock();
         }
     }
 
@@ -219,8 +420,6 @@ public abstract class AbstractRipper
             return;
         }
         downloadedURL = normalizeUrl(downloadedURL);
-        BufferedWriter bw = null;
-        FileWriter fw = null;
         try {
             File file = new File(URLHistoryFile);
             if (!new File(Utils.getConfigDir()).exists()) {
@@ -244,83 +443,86 @@ public abstract class AbstractRipper
                 logger.error("Can't write to url history file: " + URLHistoryFile);
                 return;
             }
-            fw = new FileWriter(file.getAbsoluteFile(), true);
-            bw = new BufferedWriter(fw);
-            bw.write(downloadedURL);
+            URLHistoryIndex.forFile(URLHistoryFile).append(downloadedURL);
         } catch (IOException e) {
             e.printStackTrace();
-        } finally {
-            try {
-                if (bw != null)
-                    bw.close();
-                if (fw != null)
-                    fw.close();
-            } catch (IOException ex) {
-                ex.printStackTrace();
-            }
         }
     }
 
-    private void ensureHashHistoryLoaded() {
-        if (hashHistoryLoaded) {
-            return;
-        }
-        synchronized (hashHistoryLock) {
-            if (hashHistoryLoaded) {
-                return;
-            }
-            Path historyPath = Paths.get(hashHistoryFile);
-            if (Files.exists(historyPath)) {
-                try (Stream<String> lines = Files.lines(historyPath)) {
-                    lines.map(String::trim)
-                            .filter(line -> !line.isEmpty())
-                            .forEach(knownHashes::add);
-                } catch (IOException e) {
-                    logger.warn("Failed to load hash history from {}: {}", historyPath, e.getMessage());
-                }
-            }
-            hashHistoryLoaded = true;
-        }
-    }
-
-    private void writeDownloadedHash(String hash) {
-        synchronized (hashHistoryLock) {
-            Path historyPath = Paths.get(hashHistoryFile);
-            try {
-                if (historyPath.getParent() != null) {
-                    Files.createDirectories(historyPath.getParent());
-                }
-                Files.writeString(historyPath, hash + System.lineSeparator(),
-                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
-            } catch (IOException e) {
-                logger.warn("Failed to append hash {} to {}: {}", hash, historyPath, e.getMessage());
-            }
-        }
+    private boolean isDuplicateHashCheckEnabled() {
+        return !Utils.getConfigBoolean("download.allow_duplicates", false)
+                && !Utils.getConfigBoolean("file.overwrite", false);
     }
 
     public boolean registerDownloadHash(Path file) {
-        if (Utils.getConfigBoolean("download.allow_duplicates", false)
-                || Utils.getConfigBoolean("file.overwrite", false)) {
+        if (!isDuplicateHashCheckEnabled()) {
             return true;
         }
-        ensureHashHistoryLoaded();
-        String hash;
+        byte[] hash;
         try {
-            hash = Utils.sha256(file);
+            hash = Utils.sha256Digest(file);
         } catch (IOException | IllegalStateException e) {
             logger.warn("Unable to hash {}: {}", Utils.removeCWD(file), e.getMessage());
             return true;
         }
-        synchronized (hashHistoryLock) {
-            if (knownHashes.contains(hash)) {
-                return false;
-            }
-            knownHashes.add(hash);
-            writeDownloadedHash(hash);
+        return registerDownloadHash(hash);
+    }
+
+    /**
+     * Records the SHA-256 of a downloaded file that was already hashed while it was written.
+     *
+     * @param sha256 Raw SHA-256 value of the file contents.
+     * @return False if a file with the same hash was downloaded before.
+     */
+    public boolean registerDownloadHash(byte[] sha256) {
+        if (!isDuplicateHashCheckEnabled()) {
+            return true;
+        }
+        if (HashHistoryIndex.forFile(hashHistoryFile).addIfAbsent(sha256)) {
+            return true;
         }
+        Metrics.getInstance().onDedupHit(getHost());
+        return false;
+    }
+
+    private boolean isHeadDedupEnabled() {
+        return isDuplicateHashCheckEnabled() && Utils.getConfigBoolean("download.head_dedup", true);
+    }
+
+    /**
+     * Checks the size and first bytes of a download against earlier downloads, so a duplicate can be
+     * abandoned before the rest of its body is transferred.
+     *
+     * @param size     Content-Length of the download.
+     * @param headHash Raw SHA-256 of the first {@link HeadHashIndex#HEAD_BYTES} bytes.
+     * @return True if a file with the same size and head was downloaded before.
+     */
+    public boolean isProbableDuplicate(long size, byte[] headHash) {
+        if (!isHeadDedupEnabled() || !HeadHashIndex.forFile(headHashFile).contains(size, headHash)) {
+            return false;
+        }
+        Metrics.getInstance().onDedupHit(getHost());
         return true;
     }
 
+    /**
+     * Records the size and head hash of a completed download for {@link #isProbableDuplicate(long, byte[])}.
+     */
+    public void registerHeadHash(long size, byte[] headHash) {
+        if (isHeadDedupEnabled()) {
+            HeadHashIndex.forFile(headHashFile).add(size, headHash);
+        }
+    }
+
+    /**
+     * Queues a completed download for the near-duplicate image check, if it is enabled.
+     */
+    public void checkNearDuplicate(Path file) {
+        if (isDuplicateHashCheckEnabled()) {
+            NearDuplicateChecker.getInstance().submit(file, getHost());
+        }
+    }
+
     /**
      * Normalize a URL
      *
@@ -338,21 +540,18 @@ public abstract class AbstractRipper
      *         Returns false if not yet downloaded.
      */
     protected boolean hasDownloadedURL(String url) {
-        File file = new File(URLHistoryFile);
-        url = normalizeUrl(url);
-
-        try (Scanner scanner = new Scanner(file)) {
-            while (scanner.hasNextLine()) {
-                final String lineFromFile = scanner.nextLine();
-                if (lineFromFile.equals(url)) {
-                    return true;
-                }
-            }
-        } catch (FileNotFoundException e) {
+        if (!isInURLHistory(url)) {
             return false;
         }
+        Metrics.getInstance().onHistoryHit(getHost());
+        return true;
+    }
 
-        return false;
+    /**
+     * Like {@link #hasDownloadedURL(String)}, without counting a history hit.
+     */
+    boolean isInURLHistory(String url) {
+        return URLHistoryIndex.forFile(URLHistoryFile).contains(normalizeUrl(url));
     }
 
     /**
@@ -384,6 +583,11 @@ public abstract class AbstractRipper
      */
     public void setup() throws IOException, URISyntaxException {
         setWorkingDir(this.url);
+        HostRateLimiter.getInstance().setBudget(HostRateLimiter.hostOf(this.url), getRequestBudget());
+        PageCache pageCache = PageCache.getInstance();
+        if (pageCache != null && !canCachePages()) {
+            pageCache.disableFor(HostRateLimiter.hostOf(this.url));
+        }
         // we do not care if the RollingFileAppender is active,
         // just change the logfile in case.
         // TODO this does not work - not even with
@@ -866,33 +1070,7 @@ public abstract class AbstractRipper
      * @throws Exception If no compatible rippers can be found.
      */
     public static AbstractRipper getRipper(URL url) throws Exception {
-        for (Constructor<?> constructor : getRipperConstructors("com.rarchives.ripme.ripper.rippers")) {
-            try {
-                AbstractRipper ripper = (AbstractRipper) constructor.newInstance(url);
-                // DEBUG: Log ripper class and canRip result
-                logger.info("Trying ripper: {} canRip: {}", ripper.getClass().getName(), ripper.canRip(url));
-                if (ripper.canRip(url)) {
-                    logger.debug("Found album ripper: " + ripper.getClass().getName());
-                    return ripper;
-                }
-            } catch (Exception e) {
-                // Incompatible rippers *will* throw exceptions during instantiation.
-                logger.debug("Exception instantiating ripper: {}: {}", constructor.getDeclaringClass().getName(), e.getMessage());
-            }
-        }
-        for (Constructor<?> constructor : getRipperConstructors("com.rarchives.ripme.ripper.rippers.video")) {
-            try {
-                VideoRipper ripper = (VideoRipper) constructor.newInstance(url);
-                logger.info("Trying video ripper: {} canRip: {}", ripper.getClass().getName(), ripper.canRip(url));
-                if (ripper.canRip(url)) {
-                    logger.debug("Found video ripper: " + ripper.getClass().getName());
-                    return ripper;
-                }
-            } catch (Exception e) {
-                logger.debug("Exception instantiating video ripper: {}: {}", constructor.getDeclaringClass().getName(), e.getMessage());
-            }
-        }
-        throw new Exception("No compatible ripper found");
+        return RipperRegistry.getInstance().getRipper(url);
     }
 
     /**
@@ -900,6 +1078,12 @@ public abstract class AbstractRipper
      * @return List of constructors for all eligible Rippers.
      */
     public static List<Constructor<?>> getRipperConstructors(String pkg) throws Exception {
+        if (RipperRegistry.ALBUM_PACKAGE.equals(pkg)) {
+            return RipperRegistry.getInstance().getConstructors(false);
+        }
+        if (RipperRegistry.VIDEO_PACKAGE.equals(pkg)) {
+            return RipperRegistry.getInstance().getConstructors(true);
+        }
         List<Constructor<?>> constructors = new ArrayList<>();
         for (Class<?> clazz : Utils.getClassesForPackage(pkg)) {
             if (AbstractRipper.class.isAssignableFrom(clazz)) {
@@ -915,6 +1099,7 @@ public abstract class AbstractRipper
      * @param status
      */
     public void sendUpdate(STATUS status, Object message) {
+        Metrics.getInstance().onStatus(getHost(), status.name());
         if (status == STATUS.DOWNLOAD_ERRORED && message != null) {
             trackHttpDownloadError(message.toString());
         }
@@ -0,0 +1,187 @@
+package com.rarchives.ripme.ripper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONObject;
+
+import com.rarchives.ripme.utils.ThreadUtils;
+
+/**
+ * Runs a list of rips with a bounded number running at once and at most one rip per domain at a
+ * time, like the GUI queue does.
+ * <p>
+ * URLs are started in list order, skipping over those whose domain is busy until it frees up, so
+ * one slow album only holds back other albums from the same site.
+ */
+public class BatchRipScheduler {
+
+    private static final Logger logger = LogManager.getLogger(BatchRipScheduler.class);
+
+    /**
+     * Outcome of one rip, written to the batch summary.
+     */
+    public static class Result {
+        public final String url;
+        public String status = "ok";
+        public String message = null;
+        public String dir = null;
+        public int files = 0;
+        public long bytes = 0;
+        public int errors = 0;
+        public long durationMillis = 0;
+
+        public Result(String url) {
+            this.url = url;
+        }
+
+        public Result failed(String message) {
+            this.status = "error";
+            this.message = message;
+            return this;
+        }
+
+        public JSONObject toJSON() {
+            JSONObject json = new JSONObject();
+            json.put("url", url);
+            json.put("status", status);
+            if (message != null) {
+                json.put("message", message);
+            }
+            if (dir != null) {
+                json.put("dir", dir);
+            }
+            json.put("files", files);
+            json.put("bytes", bytes);
+            json.put("errors", errors);
+            json.put("duration_ms", durationMillis);
+            return json;
+        }
+    }
+
+    private final int maxConcurrent;
+    private final Function<String, String> domainOf;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Set<String> activeDomains = new HashSet<>();
+    private int running = 0;
+
+    /**
+     * @param maxConcurrent Maximum number of rips running at once.
+     * @param domainOf      Returns the domain of a URL, or null if the URL is not valid.
+     */
+    public BatchRipScheduler(int maxConcurrent, Function<String, String> domainOf) {
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.domainOf = domainOf;
+    }
+
+    /**
+     * Rips every URL and waits until all rips are done.
+     *
+     * @param urls     URLs to rip.
+     * @param ripper   Rips one URL and returns its result. Should not throw.
+     * @param onResult Called with each result as soon as its rip finishes, one call at a time.
+     * @return The results in the order of {@code urls}.
+     */
+    public List<Result> run(List<String> urls, Function<String, Result> ripper, Consumer<Result> onResult)
+            throws InterruptedException {
+        Result[] results = new Result[urls.size()];
+        LinkedList<Integer> pending = new LinkedList<>();
+        for (int i = 0; i < urls.size(); i++) {
+            pending.add(i);
+        }
+        ReentrantLock resultLock = new ReentrantLock();
+        ExecutorService executor = ThreadUtils.newThreadPerTaskExecutor("ripme-batch-");
+        try {
+            lock.lock();
+            try {
+                while (!pending.isEmpty() || running > 0) {
+                    Iterator<Integer> it = pending.iterator();
+                    while (running < maxConcurrent && it.hasNext()) {
+                        int index = it.next();
+                        String url = urls.get(index);
+                        String domain = domainOf.apply(url);
+                        if (domain == null) {
+                            it.remove();
+                            Result result = new Result(url).failed("Invalid URL");
+                            results[index] = result;
+                            report(onResult, result, resultLock);
+                            continue;
+                        }
+                        if (activeDomains.contains(domain)) {
+                            continue;
+                        }
+                        it.remove();
+                        activeDomains.add(domain);
+                        running++;
+                        logger.info("Starting rip {} of {} ({} running): {}", index + 1, urls.size(), running, url);
+                        executor.execute(() -> {
+                            Result result = ripOne(url, ripper);
+                            results[index] = result;
+                            report(onResult, result, resultLock);
+                            finished(domain);
+                        });
+                    }
+                    if (!pending.isEmpty() || running > 0) {
+                        changed.await();
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return new ArrayList<>(Arrays.asList(results));
+    }
+
+    private static Result ripOne(String url, Function<String, Result> ripper) {
+        long start = System.nanoTime();
+        Result result;
+        try {
+            result = ripper.apply(url);
+        } catch (RuntimeException e) {
+            logger.error("[!] Error while ripping URL " + url, e);
+            result = new Result(url).failed(e.toString());
+        }
+        result.durationMillis = (System.nanoTime() - start) / 1_000_000;
+        return result;
+    }
+
+    private static void report(Consumer<Result> onResult, Result result, ReentrantLock resultLock) {
+        if (onResult == null) {
+            return;
+        }
+        resultLock.lock();
+        try {
+            onResult.accept(result);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to record result for {}: {}", result.url, e.getMessage());
+        } finally {
+            resultLock.unlock();
+        }
+    }
+
+    private void finished(String domain) {
+        lock.lock();
+        try {
+            activeDomains.remove(domain);
+            running--;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -2,22 +2,35 @@ package com.rarchives.ripme.ripper;
 
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
-
-import javax.net.ssl.HttpsURLConnection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.jsoup.HttpStatusException;
 
 import com.rarchives.ripme.ui.RipStatusMessage.STATUS;
+import com.rarchives.ripme.utils.BufferPool;
+import com.rarchives.ripme.utils.HeadHashIndex;
+import com.rarchives.ripme.utils.HostRateLimiter;
+import com.rarchives.ripme.utils.HttpTransport;
+import com.rarchives.ripme.utils.Metrics;
 import com.rarchives.ripme.utils.Utils;
 
 /**
@@ -27,6 +40,10 @@ import com.rarchives.ripme.utils.Utils;
 class DownloadFileThread implements Runnable {
     private static final Logger logger = LogManager.getLogger(DownloadFileThread.class);
     private static final long MIN_FILE_SIZE_BYTES = 10 * 1024;
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final boolean PREALLOCATE = Utils.getConfigBoolean("download.preallocate", false);
+    private static final long STOPPED = -1;
+    private static final long PROBABLE_DUPLICATE = -2;
 
     private String referrer = "";
     private Map<String, String> cookies = new HashMap<>();
@@ -43,6 +60,9 @@ class DownloadFileThread implements Runnable {
     private final int TIMEOUT;
 
     private final int retrySleep;
+    // SHA-256 of the first HeadHashIndex.HEAD_BYTES of the body, set by copyBody
+    private byte[] headHash;
+
     public DownloadFileThread(URL url, File saveAs, AbstractRipper observer, Boolean getFileExtFromMIME) {
         super();
         this.url = url;
@@ -90,7 +110,6 @@ class DownloadFileThread implements Runnable {
         Path targetPath = targetFile.toPath();
         long fileSize = 0;
         int bytesTotal;
-        int bytesDownloaded = 0;
         boolean resumeDownload = observer.tryResumeDownload();
         if (targetFile.exists() && resumeDownload) {
             fileSize = targetFile.length();
@@ -126,56 +145,54 @@ class DownloadFileThread implements Runnable {
                 return;
             }
         }
+        StringBuilder cookie = new StringBuilder();
+        for (String key : cookies.keySet()) {
+            if (!cookie.toString().equals("")) {
+                cookie.append("; ");
+            }
+            cookie.append(key).append("=").append(cookies.get(key));
+        }
+        String cookieHeader = cookie.toString();
         URL urlToDownload = this.url;
         boolean redirected = false;
+        boolean rangesSupported = true;
+        Metrics metrics = Metrics.getInstance();
         int tries = 0; // Number of attempts to download
         do {
             tries += 1;
-            try {
-                logger.info("    Downloading file: " + urlToDownload + (tries > 0 ? " Retry #" + tries : ""));
-                observer.sendUpdate(STATUS.DOWNLOAD_STARTED, url.toExternalForm());
+            if (tries > 1) {
+                metrics.onRetry(HostRateLimiter.hostOf(urlToDownload));
+            }
+            logger.info("    Downloading file: " + urlToDownload + (tries > 0 ? " Retry #" + tries : ""));
+            observer.sendUpdate(STATUS.DOWNLOAD_STARTED, url.toExternalForm());
 
-                // Setup HTTP request. Decide the connection type from the URL we are actually
-                // fetching (which may differ from the original after a redirect) so that a
-                // redirect that switches protocol/host does not cause a ClassCastException.
-                HttpURLConnection huc;
-                URLConnection rawConnection = urlToDownload.openConnection();
-                if (rawConnection instanceof HttpsURLConnection) {
-                    huc = (HttpsURLConnection) rawConnection;
-                } else {
-                    huc = (HttpURLConnection) rawConnection;
-                }
-                huc.setInstanceFollowRedirects(true);
-                // It is important to set both ConnectTimeout and ReadTimeout. If you don't then
-                // ripme will wait forever
-                // for the server to send data after connecting.
-                huc.setConnectTimeout(TIMEOUT);
-                huc.setReadTimeout(TIMEOUT);
-                huc.setRequestProperty("accept", "*/*");
-                if (!referrer.equals("")) {
-                    huc.setRequestProperty("Referer", referrer); // Sic
-                }
-                huc.setRequestProperty("User-agent", userAgent);
-                for (Map.Entry<String, String> header : extraHeaders.entrySet()) {
-                    huc.setRequestProperty(header.getKey(), header.getValue());
-                }
-                StringBuilder cookie = new StringBuilder();
-                for (String key : cookies.keySet()) {
-                    if (!cookie.toString().equals("")) {
-                        cookie.append("; ");
-                    }
-                    cookie.append(key).append("=").append(cookies.get(key));
-                }
-                huc.setRequestProperty("Cookie", cookie.toString());
-                if (resumeDownload) {
-                    if (fileSize != 0) {
-                        huc.setRequestProperty("Range", "bytes=" + fileSize + "-");
-                    }
+            // Setup HTTP request.
+            // It is important to set both ConnectTimeout and ReadTimeout. If you don't then
+            // ripme will wait forever
+            // for the server to send data after connecting.
+            HttpTransport.Request request = new HttpTransport.Request(urlToDownload)
+                    .timeouts(TIMEOUT, TIMEOUT)
+                    .followRedirects(true)
+                    .header("accept", "*/*")
+                    // Ask for the body as-is so Content-Length and Range refer to the bytes on disk.
+                    .header("Accept-Encoding", "identity");
+            if (!referrer.equals("")) {
+                request.header("Referer", referrer); // Sic
+            }
+            request.header("User-agent", userAgent);
+            request.headers(extraHeaders);
+            if (!cookies.isEmpty()) {
+                request.header("Cookie", cookieHeader);
+            }
+            if (resumeDownload) {
+                if (fileSize != 0) {
+                    request.header("Range", "bytes=" + fileSize + "-");
                 }
-                logger.debug(Utils.getLocalizedString("request.properties") + ": " + huc.getRequestProperties());
-                huc.connect();
+            }
+            logger.debug(Utils.getLocalizedString("request.properties") + ": " + request.getHeaders());
 
-                int statusCode = huc.getResponseCode();
+            try (HttpTransport.Response huc = HttpTransport.getDefault().execute(request)) {
+                int statusCode = huc.getStatusCode();
                 logger.debug("Status code: " + statusCode);
                 // If the server doesn't allow resuming downloads error out
                 if (statusCode != 206 && resumeDownload && targetFile.exists()) {
@@ -184,7 +201,7 @@ class DownloadFileThread implements Runnable {
                     throw new IOException(Utils.getLocalizedString("server.doesnt.support.resuming.downloads"));
                 }
                 if (statusCode / 100 == 3) { // 3xx Redirect
-                    String location = huc.getHeaderField("Location");
+                    String location = huc.getHeader("Location");
                     if (location == null || location.isBlank()) {
                         logger.error("[!] Redirect status code " + statusCode + " without a Location header while downloading " + urlToDownload);
                         observer.downloadErrored(url, "Redirect (" + statusCode + ") without Location header while downloading " + url.toExternalForm());
@@ -202,7 +219,7 @@ class DownloadFileThread implements Runnable {
                 }
                 if (statusCode == 429) { // Too Many Requests
                     logger.warn("[!] Received 429 Too Many Requests for " + url);
-                    String retryAfterHeader = huc.getHeaderField("Retry-After");
+                    String retryAfterHeader = huc.getHeader("Retry-After");
                     int waitTimeSeconds = 5; // Default wait time
 
                     if (retryAfterHeader != null) {
@@ -233,7 +250,8 @@ class DownloadFileThread implements Runnable {
                     // Throw exception so download can be retried
                     throw new IOException(Utils.getLocalizedString("retriable.status.code") + " " + statusCode);
                 }
-                if (huc.getContentLength() == 503 && urlToDownload.getHost().endsWith("imgur.com")) {
+                long contentLength = huc.getContentLength();
+                if (contentLength == 503 && urlToDownload.getHost().endsWith("imgur.com")) {
                     // Imgur image with 503 bytes is "404"
                     logger.error("[!] Imgur image is 404 (503 bytes long): " + url);
                     observer.downloadErrored(url, "Imgur image is 404: " + url.toExternalForm());
@@ -243,110 +261,211 @@ class DownloadFileThread implements Runnable {
                 // If the ripper is using the bytes progress bar set bytesTotal to
                 // huc.getContentLength()
                 if (observer.useByteProgessBar()) {
-                    bytesTotal = huc.getContentLength();
+                    bytesTotal = contentLength > Integer.MAX_VALUE ? -1 : (int) contentLength;
                     observer.setBytesTotal(bytesTotal);
                     observer.sendUpdate(STATUS.TOTAL_BYTES, bytesTotal);
                     logger.debug("Size of file at " + this.url + " = " + bytesTotal + "b");
                 }
 
-                // Save file
-                InputStream bis;
-                bis = new BufferedInputStream(huc.getInputStream());
-
-                // Check if we should get the file ext from the MIME type
-                if (getFileExtFromMIME) {
-                    String fileExt = URLConnection.guessContentTypeFromStream(bis);
-                    if (fileExt != null) {
-                        fileExt = fileExt.replaceAll("image/", "");
-                    } else {
-                        logger.error("Was unable to get content type from stream");
-                        // Try to get the file type from the magic number
-                        byte[] magicBytes = new byte[8];
-                        bis.read(magicBytes, 0, 5);
-                        bis.reset();
-                        fileExt = Utils.getEXTFromMagic(magicBytes);
-                        if (fileExt == null) {
-                            logger.error(Utils.getLocalizedString("was.unable.to.get.content.type.using.magic.number"));
-                            logger.error(
-                                    Utils.getLocalizedString("magic.number.was") + ": " + Arrays.toString(magicBytes));
-                        }
+                boolean shouldSkipFileDownload = contentLength / 1000000 >= 10 && AbstractRipper.isThisATest();
+                // Reject by Content-Length before any of the body is read or written
+                long maxSize = Utils.getConfigLong("download.max_size", 0);
+                String sizeError = null;
+                if (statusCode == 200 && contentLength >= 0 && contentLength < MIN_FILE_SIZE_BYTES) {
+                    logger.warn("[!] Skipping {} ({} bytes) because it is smaller than {} bytes", url, contentLength,
+                            MIN_FILE_SIZE_BYTES);
+                    sizeError = "File smaller than 10KB";
+                } else if (statusCode == 200 && maxSize > 0 && contentLength > maxSize) {
+                    logger.warn("[!] Skipping {} ({} bytes) because it is larger than download.max_size ({} bytes)",
+                            url, contentLength, maxSize);
+                    sizeError = "File larger than " + maxSize + " bytes";
+                }
+                if (sizeError != null && !shouldSkipFileDownload) {
+                    if (useTempFile && !workingFile.delete()) {
+                        logger.warn("[!] Failed to delete temporary file {}", workingFile.getAbsolutePath());
                     }
-                    if (fileExt != null) {
-                        targetFile = new File(targetFile.toString() + "." + fileExt);
-                        targetPath = targetFile.toPath();
-                        saveAs = targetFile;
-                        if (!useTempFile) {
-                            workingFile = targetFile;
+                    observer.downloadErrored(url, sizeError);
+                    return;
+                }
+                // Hash the body while it is written so duplicate detection does not have to read
+                // the file back.
+                MessageDigest digest = newSha256Digest();
+                headHash = null;
+                // Large files from servers that accept ranges are fetched over several connections
+                SegmentedDownload segmented = statusCode == 200 && rangesSupported && !getFileExtFromMIME
+                        && !shouldSkipFileDownload ? SegmentedDownload.forResponse(targetPath, huc) : null;
+                if (segmented != null) {
+                    segmented.loadState();
+                    logger.info("Downloading {} in {} segments", prettySaveAs, segmented.getSegmentCount());
+                    URL rangeURL = huc.getURL();
+                    String host = HostRateLimiter.hostOf(rangeURL);
+                    // The head of the open body is matched against earlier downloads, as in copyBody
+                    InputStream firstBody = huc.getBody();
+                    byte[] head = firstBody.readNBytes(HeadHashIndex.HEAD_BYTES);
+                    headHash = newSha256Digest().digest(head);
+                    if (observer.isProbableDuplicate(contentLength, headHash)) {
+                        metrics.onBytes(host, head.length);
+                        logger.warn("[!] Skipping {} because its size and first {} bytes match a previously downloaded file",
+                                url, HeadHashIndex.HEAD_BYTES);
+                        segmented.discard();
+                        if (useTempFile && !workingFile.delete()) {
+                            logger.warn("[!] Failed to delete temporary file {}", workingFile.getAbsolutePath());
                         }
+                        observer.downloadExists(url, targetPath);
+                        return;
                     }
-                }
-                // If we're resuming a download we append data to the existing file
-                OutputStream fos = null;
-                if (statusCode == 206) {
-                    fos = new FileOutputStream(workingFile, true);
-                } else {
+                    AtomicLong reported = new AtomicLong();
+                    boolean complete;
                     try {
-                        fos = new FileOutputStream(workingFile);
-                    } catch (FileNotFoundException e) {
-                        String fnfMessage = e.getMessage() == null ? "" : e.getMessage();
-                        // We do this because some filesystems have a max name length
-                        if (fnfMessage.contains("File name too long")) {
-                            logger.error("The filename " + saveAs.getName()
-                                    + " is to long to be saved on this file system.");
-                            logger.info("Shortening filename");
-                            String[] saveAsSplit = workingFile.getName().split("\\.");
-                            // Get the file extension so when we shorten the file name we don't cut off the
-                            // file extension
-                            String fileExt = saveAsSplit[saveAsSplit.length - 1];
-                            // The max limit for filenames on Linux with Ext3/4 is 255 bytes
-                            logger.info(workingFile.getName().substring(0, 254 - fileExt.length()) + fileExt);
-                            String filename = workingFile.getName().substring(0, 254 - fileExt.length()) + "." + fileExt;
-                            // We can't just use the new file name as the saveAs because the file name
-                            // doesn't include the
-                            // users save path, so we get the user save path from the old saveAs
-                            targetFile = new File(targetFile.getParentFile().getAbsolutePath() + File.separator + filename);
+                        complete = segmented.download((start, end) -> openRange(request, rangeURL, start, end),
+                                new SequenceInputStream(new ByteArrayInputStream(head), firstBody), bytes -> {
+                                    metrics.onBytes(host, bytes - reported.getAndSet(bytes));
+                                    if (observer.useByteProgessBar()) {
+                                        observer.setBytesCompleted((int) Math.min(bytes, Integer.MAX_VALUE));
+                                        observer.sendUpdate(STATUS.COMPLETED_BYTES, (int) Math.min(bytes, Integer.MAX_VALUE));
+                                    }
+                                }, observer::isStopped);
+                    } catch (SegmentedDownload.RangesNotSupportedException e) {
+                        logger.warn("[!] {}; downloading {} over a single connection", e.getMessage(), url);
+                        segmented.discard();
+                        rangesSupported = false;
+                        tries--;
+                        continue;
+                    }
+                    if (!complete) {
+                        observer.downloadErrored(url, Utils.getLocalizedString("download.interrupted"));
+                        return;
+                    }
+                    segmented.finish(workingFile.toPath());
+                    digestExistingFile(digest, workingFile);
+                } else {
+                    // Save file. Only sniffing the type needs mark/reset; otherwise the body is read
+                    // straight into the copy buffer.
+                    InputStream bis = getFileExtFromMIME ? new BufferedInputStream(huc.getBody()) : huc.getBody();
+
+                    // Check if we should get the file ext from the MIME type
+                    if (getFileExtFromMIME) {
+                        String fileExt = URLConnection.guessContentTypeFromStream(bis);
+                        if (fileExt != null) {
+                            fileExt = fileExt.replaceAll("image/", "");
+                        } else {
+                            logger.error("Was unable to get content type from stream");
+                            // Try to get the file type from the magic number
+                            byte[] magicBytes = new byte[8];
+                            bis.read(magicBytes, 0, 5);
+                            bis.reset();
+                            fileExt = Utils.getEXTFromMagic(magicBytes);
+                            if (fileExt == null) {
+                                logger.error(Utils.getLocalizedString("was.unable.to.get.content.type.using.magic.number"));
+                                logger.error(
+                                        Utils.getLocalizedString("magic.number.was") + ": " + Arrays.toString(magicBytes));
+                            }
+                        }
+                        if (fileExt != null) {
+                            targetFile = new File(targetFile.toString() + "." + fileExt);
                             targetPath = targetFile.toPath();
                             saveAs = targetFile;
-                            workingFile = useTempFile ? workingFile : targetFile;
-                            fos = new FileOutputStream(workingFile);
-                        } else if (targetFile.getAbsolutePath().length() > 259 && Utils.isWindows()) {
-                            // This if is for when the file path has gone above 260 chars which windows does
-                            // not allow
-                            fos = Files.newOutputStream(
-                                    Utils.shortenSaveAsWindows(targetFile.getParentFile().getPath(), targetFile.getName()));
-                            assert fos != null: "After shortenSaveAsWindows: " + targetFile.getAbsolutePath();
-                        }
-                        if (fos == null) {
-                            // Re-throw so the failure is surfaced/retried instead of causing a
-                            // later NullPointerException when we try to write to a null stream.
-                            throw e;
+                            if (!useTempFile) {
+                                workingFile = targetFile;
+                            }
                         }
                     }
-                }
-                byte[] data = new byte[1024 * 256];
-                int bytesRead;
-                boolean shouldSkipFileDownload = huc.getContentLength() / 1000000 >= 10 && AbstractRipper.isThisATest();
-                // If this is a test rip we skip large downloads
-                if (shouldSkipFileDownload) {
-                    logger.debug("Not downloading whole file because it is over 10mb and this is a test");
-                } else {
-                    while ((bytesRead = bis.read(data)) != -1) {
+                    // If we're resuming a download we append data to the existing file
+                    OutputStream fos = null;
+                    if (statusCode == 206) {
+                        fos = new FileOutputStream(workingFile, true);
+                    } else {
                         try {
-                            observer.stopCheck();
-                        } catch (IOException e) {
-                            observer.downloadErrored(url, Utils.getLocalizedString("download.interrupted"));
-                            return;
+                            fos = new FileOutputStream(workingFile);
+                        } catch (FileNotFoundException e) {
+                            String fnfMessage = e.getMessage() == null ? "" : e.getMessage();
+                            // We do this because some filesystems have a max name length
+                            if (fnfMessage.contains("File name too long")) {
+                                logger.error("The filename " + saveAs.getName()
+                                        + " is to long to be saved on this file system.");
+                                logger.info("Shortening filename");
+                                String[] saveAsSplit = workingFile.getName().split("\\.");
+                                // Get the file extension so when we shorten the file name we don't cut off the
+                                // file extension
+                                String fileExt = saveAsSplit[saveAsSplit.length - 1];
+                                // The max limit for filenames on Linux with Ext3/4 is 255 bytes
+                                logger.info(workingFile.getName().substring(0, 254 - fileExt.length()) + fileExt);
+                                String filename = workingFile.getName().substring(0, 254 - fileExt.length()) + "." + fileExt;
+                                // We can't just use the new file name as the saveAs because the file name
+                                // doesn't include the
+                                // users save path, so we get the user save path from the old saveAs
+                                targetFile = new File(targetFile.getParentFile().getAbsolutePath() + File.separator + filename);
+                                targetPath = targetFile.toPath();
+                                saveAs = targetFile;
+                                workingFile = useTempFile ? workingFile : targetFile;
+                                fos = new FileOutputStream(workingFile);
+                            } else if (targetFile.getAbsolutePath().length() > 259 && Utils.isWindows()) {
+                                // This if is for when the file path has gone above 260 chars which windows does
+                                // not allow
+                                fos = Files.newOutputStream(
+                                        Utils.shortenSaveAsWindows(targetFile.getParentFile().getPath(), targetFile.getName()));
+                                assert fos != null: "After shortenSaveAsWindows: " + targetFile.getAbsolutePath();
+                            }
+                            if (fos == null) {
+                                // Re-throw so the failure is surfaced/retried instead of causing a
+                                // later NullPointerException when we try to write to a null stream.
+                                throw e;
+                            }
                         }
-                        fos.write(data, 0, bytesRead);
-                        if (observer.useByteProgessBar()) {
-                            bytesDownloaded += bytesRead;
-                            observer.setBytesCompleted(bytesDownloaded);
-                            observer.sendUpdate(STATUS.COMPLETED_BYTES, bytesDownloaded);
+                    }
+                    // When resuming, the bytes already on disk are hashed first.
+                    if (statusCode == 206) {
+                        digestExistingFile(digest, workingFile);
+                    }
+                    WritableByteChannel out = fos instanceof FileOutputStream
+                            ? ((FileOutputStream) fos).getChannel() : Channels.newChannel(fos);
+                    long copied = 0;
+                    try {
+                        // If this is a test rip we skip large downloads
+                        if (shouldSkipFileDownload) {
+                            logger.debug("Not downloading whole file because it is over 10mb and this is a test");
+                        } else {
+                            boolean preallocate = PREALLOCATE && statusCode == 200 && !resumeDownload
+                                    && contentLength > 0 && out instanceof FileChannel;
+                            if (preallocate) {
+                                // Usually a sparse file, so this sets the length without reserving space
+                                ((FileChannel) out).write(ByteBuffer.allocate(1), contentLength - 1);
+                            }
+                            // A fresh body of known length can be matched against earlier downloads
+                            // by its size and head
+                            long expectedSize = statusCode == 200 ? contentLength : -1;
+                            try {
+                                copied = copyBody(bis, out, digest, HostRateLimiter.hostOf(urlToDownload), expectedSize);
+                            } finally {
+                                if (preallocate) {
+                                    // Drop the preallocated tail of a body that ended early
+                                    FileChannel channel = (FileChannel) out;
+                                    if (channel.size() > channel.position()) {
+                                        channel.truncate(channel.position());
+                                    }
+                                }
+                            }
+                        }
+                    } finally {
+                        // Closing the body early drops the connection instead of reading the rest
+                        bis.close();
+                        out.close();
+                        fos.close();
+                    }
+                    if (copied == STOPPED) {
+                        observer.downloadErrored(url, Utils.getLocalizedString("download.interrupted"));
+                        return;
+                    }
+                    if (copied == PROBABLE_DUPLICATE) {
+                        logger.warn("[!] Skipping {} because its size and first {} bytes match a previously downloaded file",
+                                url, HeadHashIndex.HEAD_BYTES);
+                        if (!workingFile.delete()) {
+                            logger.warn("[!] Failed to delete duplicate file {}", workingFile.getAbsolutePath());
                         }
+                        observer.downloadExists(url, targetPath);
+                        return;
                     }
                 }
-                bis.close();
-                fos.close();
 
                 File fileToInspect = workingFile;
                 long finalSize = fileToInspect.length();
@@ -359,7 +478,10 @@ class DownloadFileThread implements Runnable {
                     observer.downloadErrored(url, "File smaller than 10KB (deleted)");
                     return;
                 }
-                if (!shouldSkipFileDownload && !observer.registerDownloadHash(fileToInspect.toPath())) {
+                if (!shouldSkipFileDownload && headHash != null && finalSize == contentLength) {
+                    observer.registerHeadHash(finalSize, headHash);
+                }
+                if (!shouldSkipFileDownload && !observer.registerDownloadHash(digest.digest())) {
                     logger.warn("[!] Deleting {} because its hash matches a previously downloaded file", prettySaveAs);
                     if (!fileToInspect.delete()) {
                         logger.warn("[!] Failed to delete duplicate file {}", fileToInspect.getAbsolutePath());
@@ -417,7 +539,160 @@ class DownloadFileThread implements Runnable {
             }
         } while (true);
         observer.downloadCompleted(url, saveAs.toPath());
+        observer.checkNearDuplicate(saveAs.toPath());
         logger.info("[+] Saved " + url + " as " + this.prettySaveAs);
     }
 
+    /**
+     * Opens the bytes {@code start} to {@code end} of a file, with the headers of {@code request}.
+     */
+    private InputStream openRange(HttpTransport.Request request, URL rangeURL, long start, long end)
+            throws IOException {
+        HttpTransport.Request rangeRequest = new HttpTransport.Request(rangeURL)
+                .timeouts(TIMEOUT, TIMEOUT)
+                .followRedirects(true)
+                .headers(request.getHeaders())
+                .header("Range", "bytes=" + start + "-" + end);
+        HttpTransport.Response response = HttpTransport.getDefault().execute(rangeRequest);
+        try {
+            int statusCode = response.getStatusCode();
+            String contentRange = response.getHeader("Content-Range");
+            if (statusCode == 200 || statusCode == 416
+                    || (statusCode == 206 && (contentRange == null || !contentRange.startsWith("bytes " + start + "-")))) {
+                throw new SegmentedDownload.RangesNotSupportedException(
+                        "Server answered a range request with " + statusCode + " " + contentRange);
+            }
+            if (statusCode != 206) {
+                throw new IOException(Utils.getLocalizedString("retriable.status.code") + " " + statusCode);
+            }
+            return new FilterInputStream(response.getBody()) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        response.close();
+                    }
+                }
+            };
+        } catch (IOException | RuntimeException e) {
+            response.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Copies a response body to {@code out} through a pooled buffer, hashing it on the way. The
+     * stop flag, the byte progress bar and the download metrics are updated every
+     * {@link #PROGRESS_INTERVAL_NANOS} rather than after every read.
+     * <p>
+     * When {@code expectedSize} is known, the first {@link HeadHashIndex#HEAD_BYTES} are hashed
+     * separately into {@link #headHash} and the copy stops as soon as they match an earlier download.
+     * @return The number of bytes copied, {@link #STOPPED} if the rip was stopped or
+     *         {@link #PROBABLE_DUPLICATE} if the head matched
+     */
+    private long copyBody(InputStream body, WritableByteChannel out, MessageDigest digest, String host,
+            long expectedSize) throws IOException {
+        boolean byteProgress = observer.useByteProgessBar();
+        Metrics metrics = Metrics.getInstance();
+        ReadableByteChannel in = Channels.newChannel(body);
+        BufferPool pool = BufferPool.getInstance();
+        ByteBuffer buffer = pool.acquire();
+        long copied = 0;
+        long unreported = 0;
+        long lastUpdate = System.nanoTime();
+        MessageDigest headDigest = expectedSize > 0 ? newSha256Digest() : null;
+        headHash = null;
+        try {
+            while (true) {
+                int start = buffer.position();
+                int read = in.read(buffer);
+                if (read > 0) {
+                    if (headDigest != null) {
+                        ByteBuffer head = buffer.duplicate();
+                        head.position(start).limit(start + (int) Math.min(read, HeadHashIndex.HEAD_BYTES - copied));
+                        headDigest.update(head);
+                    }
+                    copied += read;
+                    unreported += read;
+                }
+                if (headDigest != null && (read < 0 || copied >= HeadHashIndex.HEAD_BYTES)) {
+                    headHash = headDigest.digest();
+                    headDigest = null;
+                    if (observer.isProbableDuplicate(expectedSize, headHash)) {
+                        if (unreported > 0) {
+                            metrics.onBytes(host, unreported);
+                        }
+                        return PROBABLE_DUPLICATE;
+                    }
+                }
+                if (read < 0 || !buffer.hasRemaining()) {
+                    write(buffer, out, digest);
+                }
+                long now = System.nanoTime();
+                if (read < 0 || now - lastUpdate >= PROGRESS_INTERVAL_NANOS) {
+                    lastUpdate = now;
+                    if (unreported > 0) {
+                        metrics.onBytes(host, unreported);
+                        unreported = 0;
+                    }
+                    if (byteProgress) {
+                        int completed = (int) Math.min(copied, Integer.MAX_VALUE);
+                        observer.setBytesCompleted(completed);
+                        observer.sendUpdate(STATUS.COMPLETED_BYTES, completed);
+                    }
+                    if (read < 0) {
+                        return copied;
+                    }
+                    if (observer.isStopped()) {
+                        // Keep what was read so a resumed download can continue from it
+                        write(buffer, out, digest);
+                        return STOPPED;
+                    }
+                }
+            }
+        } finally {
+            pool.release(buffer);
+        }
+    }
+
+    /**
+     * Writes out and hashes the bytes collected in {@code buffer}, leaving it empty.
+     */
+    private static void write(ByteBuffer buffer, WritableByteChannel out, MessageDigest digest) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.rewind();
+        digest.update(buffer);
+        buffer.clear();
+    }
+
+    private static MessageDigest newSha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Feeds the part of a file that is already on disk into the digest, used before appending
+     * the remainder of a resumed download.
+     */
+    private static void digestExistingFile(MessageDigest digest, File file) throws IOException {
+        BufferPool pool = BufferPool.getInstance();
+        ByteBuffer buffer = pool.acquire();
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        } finally {
+            pool.release(buffer);
+        }
+    }
+
 }
@@ -1,94 +1,347 @@
 package com.rarchives.ripme.ripper;
 
 import java.net.URL;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
+import com.rarchives.ripme.utils.HostHealth;
+import com.rarchives.ripme.utils.HostRateLimiter;
+import com.rarchives.ripme.utils.Metrics;
+import com.rarchives.ripme.utils.ThreadUtils;
 import com.rarchives.ripme.utils.Utils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 /**
- * Simple wrapper around a cached thread pool with per-domain throttling.
+ * Bounded download scheduler with per-domain throttling.
+ * <p>
+ * Tasks for a domain wait in that domain's ready queue until one of its
+ * {@code threads.size} permits is free, and only then are handed to a fixed
+ * set of at most {@code threads.max_total} worker threads. Waiting tasks do not
+ * hold a thread, so thread count stays flat regardless of album size.
+ * <p>
+ * With {@code threads.virtual} enabled on a JVM that supports it, each dispatched task gets its
+ * own virtual thread instead; concurrency is then bounded by the per-domain permits alone.
+ * <p>
+ * Tasks for a domain that {@link HostHealth} has paused stay parked in the ready queue and are
+ * dispatched again once the domain's cool-down ends.
  */
 public class DownloadThreadPool {
 
     private static final Logger logger = LogManager.getLogger(DownloadThreadPool.class);
+    private static final AtomicInteger poolCounter = new AtomicInteger();
+
     private ExecutorService threadPool = null;
-    private final ConcurrentMap<String, Semaphore> domainPermits = new ConcurrentHashMap<>();
+    private final AtomicInteger runningTasks = new AtomicInteger();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition idle = lock.newCondition();
+    private final Map<String, HostQueue> hostQueues = new HashMap<>();
+    private int pendingTasks = 0;
     private int maxPerDomain;
+    private final HostHealth health;
+    private final Consumer<String> healthListener = this::hostAvailable;
 
     public DownloadThreadPool() {
-        initialize("Main");
+        this("Main");
     }
 
     public DownloadThreadPool(String threadPoolName) {
-        initialize(threadPoolName);
+        this(threadPoolName, Utils.getConfigInteger("threads.size", 10), -1);
+    }
+
+    /**
+     * @param threadPoolName Name of the threadpool.
+     * @param maxPerDomain   Maximum number of tasks running at once for one domain.
+     * @param maxWorkers     Maximum number of worker threads, or -1 to read {@code threads.max_total}.
+     */
+    DownloadThreadPool(String threadPoolName, int maxPerDomain, int maxWorkers) {
+        this(threadPoolName, maxPerDomain, maxWorkers, HostHealth.getInstance());
     }
-    
+
+    DownloadThreadPool(String threadPoolName, int maxPerDomain, int maxWorkers, HostHealth health) {
+        this.health = health;
+        initialize(threadPoolName, maxPerDomain, maxWorkers);
+        health.addListener(healthListener);
+        Metrics.getInstance().addQueue(this, DownloadThreadPool::getQueueDepths);
+    }
+
     /**
      * Initializes the threadpool.
      * @param threadPoolName Name of the threadpool.
      */
-    private void initialize(String threadPoolName) {
-        maxPerDomain = Utils.getConfigInteger("threads.size", 10);
-        logger.debug("Initializing " + threadPoolName + " thread pool with up to " + maxPerDomain
-                + " threads per domain");
-        threadPool = Executors.newCachedThreadPool();
+    private void initialize(String threadPoolName, int maxPerDomain, int maxWorkers) {
+        this.maxPerDomain = Math.max(1, maxPerDomain);
+        if (maxWorkers <= 0) {
+            maxWorkers = Utils.getConfigInteger("threads.max_total", this.maxPerDomain * 2);
+        }
+        maxWorkers = Math.max(1, maxWorkers);
+        String prefix = "ripme-" + threadPoolName + "-" + poolCounter.incrementAndGet() + "-";
+        if (ThreadUtils.useVirtualThreads()) {
+            logger.debug("Initializing " + threadPoolName + " thread pool with virtual threads and up to "
+                    + this.maxPerDomain + " threads per domain");
+            threadPool = ThreadUtils.newThreadPerTaskExecutor(prefix);
+            return;
+        }
+        logger.debug("Initializing " + threadPoolName + " thread pool with up to " + this.maxPerDomain
+                + " threads per domain and " + maxWorkers + " threads in total");
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxWorkers, maxWorkers, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), newThreadFactory(prefix));
+        executor.allowCoreThreadTimeOut(true);
+        threadPool = executor;
     }
+
+    private static ThreadFactory newThreadFactory(String prefix) {
+        AtomicInteger threadCounter = new AtomicInteger();
+        return task -> new Thread(task, prefix + threadCounter.incrementAndGet());
+    }
+
     /**
      * For adding threads to execution pool.
      * @param t
      *      Thread to be added.
      */
     public void addThread(Runnable t) {
-        threadPool.execute(t);
+        lock.lock();
+        try {
+            pendingTasks++;
+        } finally {
+            lock.unlock();
+        }
+        submit(() -> {
+            try {
+                t.run();
+            } finally {
+                taskFinished();
+            }
+        });
     }
 
     public void addThread(URL url, Runnable t) {
-        threadPool.execute(wrapWithDomainLimit(url, t));
+        String host = url == null ? null : url.getHost();
+        if (host == null || host.isEmpty()) {
+            addThread(t);
+            return;
+        }
+        host = host.toLowerCase();
+        lock.lock();
+        try {
+            pendingTasks++;
+            HostQueue queue = hostQueues.computeIfAbsent(host, ignored -> new HostQueue());
+            if (queue.inFlight >= maxPerDomain || health.isOpen(host)) {
+                queue.ready.add(t);
+                return;
+            }
+            queue.inFlight++;
+        } finally {
+            lock.unlock();
+        }
+        dispatch(host, t);
     }
 
-    private Runnable wrapWithDomainLimit(URL url, Runnable task) {
-        if (url == null) {
-            return task;
-        }
-        String host = url.getHost();
-        if (host == null || host.isEmpty()) {
-            return task;
+    private void dispatch(String host, Runnable task) {
+        try {
+            submit(() -> {
+                try {
+                    task.run();
+                } finally {
+                    hostTaskFinished(host);
+                }
+            });
+        } catch (RuntimeException e) {
+            // The pool has been shut down; give the permit back so the counts stay accurate.
+            lock.lock();
+            try {
+                HostQueue queue = hostQueues.get(host);
+                queue.inFlight--;
+                if (queue.inFlight == 0 && queue.ready.isEmpty()) {
+                    hostQueues.remove(host);
+                }
+            } finally {
+                lock.unlock();
+            }
+            throw e;
         }
-        final Semaphore semaphore = domainPermits.computeIfAbsent(host.toLowerCase(),
-                ignored -> new Semaphore(maxPerDomain));
-        return () -> {
-            boolean acquired = false;
+    }
+
+    private void submit(Runnable task) {
+        try {
+            threadPool.execute(() -> {
+                runningTasks.incrementAndGet();
+                try {
+                    task.run();
+                } finally {
+                    runningTasks.decrementAndGet();
+                }
+            });
+        } catch (RuntimeException e) {
+            lock.lock();
             try {
-                semaphore.acquire();
-                acquired = true;
-                task.run();
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                logger.warn("Interrupted while waiting for permit for domain {}", host, e);
+                pendingTasks--;
+                idle.signalAll();
             } finally {
-                if (acquired) {
-                    semaphore.release();
+                lock.unlock();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Hands the host's permit to its next ready task, or releases it if there is none.
+     */
+    private void hostTaskFinished(String host) {
+        Runnable next;
+        lock.lock();
+        try {
+            HostQueue queue = hostQueues.get(host);
+            // park the remaining tasks while the host is paused
+            next = health.isOpen(host) ? null : queue.ready.poll();
+            if (next == null) {
+                queue.inFlight--;
+                if (queue.inFlight == 0 && queue.ready.isEmpty()) {
+                    hostQueues.remove(host);
                 }
             }
-        };
+        } finally {
+            lock.unlock();
+        }
+        taskFinished();
+        if (next != null) {
+            dispatch(host, next);
+        }
     }
 
     /**
-     * Tries to shutdown threadpool.
+     * Dispatches the parked tasks of a host that {@link HostHealth} reports usable again.
+     */
+    private void hostAvailable(String healthHost) {
+        List<Map.Entry<String, Runnable>> tasks = new ArrayList<>();
+        lock.lock();
+        try {
+            for (Map.Entry<String, HostQueue> entry : hostQueues.entrySet()) {
+                String host = entry.getKey();
+                if (!host.equals(healthHost) && !host.equals("www." + healthHost) || health.isOpen(host)) {
+                    continue;
+                }
+                HostQueue queue = entry.getValue();
+                while (queue.inFlight < maxPerDomain && !queue.ready.isEmpty()) {
+                    queue.inFlight++;
+                    tasks.add(new AbstractMap.SimpleEntry<>(host, queue.ready.poll()));
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (!tasks.isEmpty()) {
+            logger.info("Resuming {} parked downloads for {}", tasks.size(), healthHost);
+        }
+        for (Map.Entry<String, Runnable> task : tasks) {
+            dispatch(task.getKey(), task.getValue());
+        }
+    }
+
+    private void taskFinished() {
+        lock.lock();
+        try {
+            pendingTasks--;
+            if (pendingTasks == 0) {
+                idle.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of tasks waiting for a permit, per domain, labelled like the other host metrics.
+     */
+    public Map<String, Integer> getQueueDepths() {
+        lock.lock();
+        try {
+            Map<String, Integer> depths = new TreeMap<>();
+            for (Map.Entry<String, HostQueue> entry : hostQueues.entrySet()) {
+                depths.merge(HostRateLimiter.hostOf(entry.getKey()), entry.getValue().ready.size(), Integer::sum);
+            }
+            return Collections.unmodifiableMap(depths);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of tasks dispatched to a worker (queued for or running on a thread), per domain.
+     */
+    public Map<String, Integer> getInFlightCounts() {
+        lock.lock();
+        try {
+            Map<String, Integer> inFlight = new TreeMap<>();
+            for (Map.Entry<String, HostQueue> entry : hostQueues.entrySet()) {
+                inFlight.put(entry.getKey(), entry.getValue().inFlight);
+            }
+            return Collections.unmodifiableMap(inFlight);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of tasks that were added and have not finished yet.
+     */
+    public int getPendingCount() {
+        lock.lock();
+        try {
+            return pendingTasks;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of worker threads currently alive. With virtual threads, the number of tasks running.
+     */
+    public int getWorkerCount() {
+        if (threadPool instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) threadPool).getPoolSize();
+        }
+        return runningTasks.get();
+    }
+
+    /**
+     * Waits for all queued tasks to finish, then shuts the threadpool down.
      */
     public void waitForThreads() {
-        threadPool.shutdown();
+        lock.lock();
         try {
-            threadPool.awaitTermination(3600, TimeUnit.SECONDS);
+            long remaining = TimeUnit.SECONDS.toNanos(3600);
+            while (pendingTasks > 0 && remaining > 0) {
+                remaining = idle.awaitNanos(remaining);
+            }
         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             logger.error("[!] Interrupted while waiting for threads to finish: ", e);
+        } finally {
+            lock.unlock();
         }
+        health.removeListener(healthListener);
+        threadPool.shutdown();
+    }
+
+    private static class HostQueue {
+        private final ArrayDeque<Runnable> ready = new ArrayDeque<>();
+        private int inFlight = 0;
     }
 }
@@ -0,0 +1,193 @@
+package com.rarchives.ripme.ripper;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.rarchives.ripme.utils.ThreadUtils;
+
+/**
+ * Fetches the next pages of a rip in the background while the current page is processed.
+ * <p>
+ * Up to {@code depth} pages are fetched ahead; the background fetch waits for the rip to take one
+ * before it requests another. It checks the ripper's pause and stop state before each request, and requests still
+ * go through {@code Http}, so the per-host rate limits apply as before. With a depth of 0 each
+ * page is fetched when it is asked for, as the rip loops always did.
+ * <p>
+ * Only rippers whose {@code getNextPage} works from the page alone can fetch ahead, because it is
+ * called on another thread while the previous page is still being processed.
+ *
+ * @param <P> Page type: a {@code Document} or a {@code JSONObject}.
+ */
+class PagePrefetcher<P> implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger(PagePrefetcher.class);
+
+    /**
+     * Fetches the page after {@code page}, or returns null if it is the last one.
+     */
+    interface NextPage<P> {
+        P get(P page) throws IOException, URISyntaxException;
+    }
+
+    private static final Object END = new Object();
+
+    private static final class Failure {
+        private final Exception exception;
+
+        private Failure(Exception exception) {
+            this.exception = exception;
+        }
+    }
+
+    private final NextPage<P> nextPage;
+    private final Runnable waitIfPaused;
+    private final BooleanSupplier stopped;
+    private final BlockingQueue<Object> ready;
+    // One per page the background fetch may request before the rip takes one
+    private final Semaphore ahead;
+    private Thread worker = null;
+    private P current;
+    private boolean ended = false;
+    private long waitNanos = 0;
+    private int pages = 0;
+
+    /**
+     * @param first        Page the rip starts at.
+     * @param depth        Number of pages to fetch ahead, or 0 to fetch each page when asked.
+     * @param nextPage     Fetches the page after a page.
+     * @param waitIfPaused Blocks while the rip is paused.
+     * @param stopped      Tells whether the rip was stopped.
+     */
+    PagePrefetcher(P first, int depth, NextPage<P> nextPage, Runnable waitIfPaused, BooleanSupplier stopped) {
+        this.current = first;
+        this.nextPage = nextPage;
+        this.waitIfPaused = waitIfPaused;
+        this.stopped = stopped;
+        this.ready = depth > 0 ? new LinkedBlockingQueue<>() : null;
+        this.ahead = new Semaphore(Math.max(depth, 0));
+        if (ready != null && first != null) {
+            worker = ThreadUtils.newThreadFactory("ripme-page-prefetch-").newThread(() -> fetchAhead(first));
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    private void fetchAhead(P first) {
+        P page = first;
+        try {
+            while (page != null) {
+                ahead.acquire();
+                waitIfPaused.run();
+                if (stopped.getAsBoolean()) {
+                    break;
+                }
+                Object item;
+                try {
+                    page = nextPage.get(page);
+                    item = page == null ? END : page;
+                } catch (IOException | URISyntaxException | RuntimeException e) {
+                    page = null;
+                    item = new Failure(e);
+                }
+                ready.put(item);
+            }
+            if (stopped.getAsBoolean()) {
+                ready.put(END);
+            }
+        } catch (InterruptedException e) {
+            // closed by the rip
+        }
+    }
+
+    /**
+     * @return The next page, or null after the last one.
+     * @throws IOException If fetching the page failed.
+     */
+    @SuppressWarnings("unchecked")
+    P next() throws IOException, URISyntaxException {
+        if (ended || current == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        try {
+            if (ready == null) {
+                current = nextPage.get(current);
+            } else {
+                Object item = ready.take();
+                ahead.release();
+                if (item instanceof Failure) {
+                    rethrow(((Failure) item).exception);
+                }
+                current = item == END ? null : (P) item;
+            }
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            ended = true;
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the next page");
+        } finally {
+            waitNanos += System.nanoTime() - start;
+        }
+        if (current == null) {
+            ended = true;
+        } else {
+            pages++;
+        }
+        return current;
+    }
+
+    private static void rethrow(Exception e) throws IOException, URISyntaxException {
+        if (e instanceof IOException) {
+            throw (IOException) e;
+        }
+        if (e instanceof URISyntaxException) {
+            throw (URISyntaxException) e;
+        }
+        throw (RuntimeException) e;
+    }
+
+    /**
+     * @return Time the rip spent waiting in {@link #next()}, in nanoseconds.
+     */
+    long getWaitNanos() {
+        return waitNanos;
+    }
+
+    /**
+     * @return Number of pages returned by {@link #next()}.
+     */
+    int getPages() {
+        return pages;
+    }
+
+    /**
+     * Logs how much of a rip was spent waiting for pages.
+     *
+     * @param firstPageNanos Time spent loading the first page.
+     * @param ripNanos       Duration of the whole rip.
+     */
+    void logFetchTime(String url, long firstPageNanos, long ripNanos) {
+        long waited = firstPageNanos + waitNanos;
+        logger.info("Waited {} ms for {} pages of {} ({}% of the rip)", TimeUnit.NANOSECONDS.toMillis(waited),
+                pages + 1, url, ripNanos > 0 ? waited * 100 / ripNanos : 0);
+    }
+
+    /**
+     * Stops fetching ahead, dropping pages the rip did not take.
+     */
+    @Override
+    public void close() {
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+}
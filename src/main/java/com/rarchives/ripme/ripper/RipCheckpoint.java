@@ -0,0 +1,154 @@
+package com.rarchives.ripme.ripper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.rarchives.ripme.utils.Utils;
+
+/**
+ * Progress of a paginated rip, saved after every page so an interrupted rip can resume where it
+ * stopped instead of walking all pages again.
+ * <p>
+ * A checkpoint records the cursor of the next page to process (its URL, or an API cursor such as
+ * a page number or {@code after} token), the item index reached, and the downloads that were
+ * queued but had not finished. It is stored as {@code checkpoints/<host>_<gid>.json} in the config
+ * directory and deleted once the rip completes.
+ */
+public class RipCheckpoint {
+
+    private static final Logger logger = LogManager.getLogger(RipCheckpoint.class);
+
+    private final Path file;
+    private String cursor = null;
+    private int index = 0;
+    private int pages = 0;
+    private Map<String, String> pending = Collections.emptyMap();
+
+    public RipCheckpoint(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * @return The checkpoint for the album {@code gid} on {@code host}, or null if checkpoints are
+     *         disabled with {@code rip.checkpoints}.
+     */
+    public static RipCheckpoint forAlbum(String host, String gid) {
+        if (!Utils.getConfigBoolean("rip.checkpoints", true)) {
+            return null;
+        }
+        String name = Utils.filesystemSafe(host + "_" + gid) + ".json";
+        return new RipCheckpoint(Paths.get(Utils.getConfigDir(), "checkpoints", name));
+    }
+
+    /**
+     * Reads the saved checkpoint, if there is one.
+     *
+     * @return True if a checkpoint with a cursor was found.
+     */
+    public boolean load() {
+        if (!Files.exists(file)) {
+            return false;
+        }
+        try {
+            JSONObject json = new JSONObject(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+            cursor = json.optString("cursor", null);
+            index = json.optInt("index", 0);
+            pages = json.optInt("pages", 0);
+            Map<String, String> loaded = new LinkedHashMap<>();
+            JSONArray items = json.optJSONArray("pending");
+            if (items != null) {
+                for (int i = 0; i < items.length(); i++) {
+                    JSONObject item = items.getJSONObject(i);
+                    loaded.put(item.getString("url"), item.getString("file"));
+                }
+            }
+            pending = loaded;
+            return cursor != null;
+        } catch (IOException | JSONException e) {
+            logger.warn("Ignoring unreadable rip checkpoint {}: {}", file, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Records that the next page to process is {@code cursor}.
+     *
+     * @param cursor  Cursor of the next page.
+     * @param index   Number of items found so far.
+     * @param pending Downloads queued but not finished, as URL to target file.
+     */
+    public void save(String cursor, int index, Map<String, String> pending) {
+        this.cursor = cursor;
+        this.index = index;
+        this.pages++;
+        this.pending = pending;
+        JSONObject json = new JSONObject();
+        json.put("cursor", cursor);
+        json.put("index", index);
+        json.put("pages", pages);
+        JSONArray items = new JSONArray();
+        for (Map.Entry<String, String> item : pending.entrySet()) {
+            JSONObject entry = new JSONObject();
+            entry.put("url", item.getKey());
+            entry.put("file", item.getValue());
+            items.put(entry);
+        }
+        json.put("pending", items);
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(tmp, json.toString().getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to save rip checkpoint {}: {}", file, e.getMessage());
+        }
+    }
+
+    public void delete() {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Unable to delete rip checkpoint {}: {}", file, e.getMessage());
+        }
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return Number of pages completed before this checkpoint.
+     */
+    public int getPages() {
+        return pages;
+    }
+
+    /**
+     * @return Downloads that were queued but not finished, as URL to target file.
+     */
+    public Map<String, String> getPending() {
+        return pending;
+    }
+}
@@ -0,0 +1,245 @@
+package com.rarchives.ripme.ripper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Constructor;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.rarchives.ripme.utils.Utils;
+
+/**
+ * Finds the ripper for a URL without scanning the jar for ripper classes on every lookup.
+ * <p>
+ * The ripper classes are read once from {@code ripper.index}, which the build generates from the
+ * {@code rippers} and {@code rippers.video} packages. If the index is missing, for example when
+ * running from an IDE without the Gradle task, the packages are scanned once instead. Classes are
+ * loaded when they are first tried.
+ * <p>
+ * Rippers are always tried in index order, album rippers before video rippers. For rippers that
+ * keep the default {@code canRip}, which accepts hosts ending with {@code getDomain()}, the index
+ * also lists that domain, so a lookup only instantiates those whose domain ends the URL's host,
+ * plus every ripper with its own {@code canRip}.
+ */
+public class RipperRegistry {
+
+    private static final Logger logger = LogManager.getLogger(RipperRegistry.class);
+
+    static final String INDEX_RESOURCE = "ripper.index";
+    static final String ALBUM_PACKAGE = "com.rarchives.ripme.ripper.rippers";
+    static final String VIDEO_PACKAGE = "com.rarchives.ripme.ripper.rippers.video";
+
+    private static volatile RipperRegistry instance;
+
+    /**
+     * A ripper class from the index, loaded on first use.
+     */
+    private static final class Entry {
+        private final String className;
+        // Domain the host must end with, or null if the ripper decides in its own canRip
+        private final String domain;
+        private final boolean video;
+        private int order;
+        private volatile Constructor<?> constructor;
+        private volatile boolean invalid;
+
+        private Entry(String line) {
+            String[] fields = line.trim().split("\\s+");
+            this.className = fields[0];
+            this.domain = fields.length > 1 ? fields[1] : null;
+            this.video = className.startsWith(VIDEO_PACKAGE + ".");
+        }
+
+        private Constructor<?> constructor(ClassLoader classLoader) {
+            if (constructor == null && !invalid) {
+                try {
+                    Class<?> clazz = Class.forName(className, true, classLoader);
+                    if (AbstractRipper.class.isAssignableFrom(clazz)) {
+                        constructor = clazz.getConstructor(URL.class);
+                    } else {
+                        invalid = true;
+                    }
+                } catch (ClassNotFoundException | NoSuchMethodException | LinkageError e) {
+                    logger.debug("Skipping ripper {}: {}", className, e.toString());
+                    invalid = true;
+                }
+            }
+            return constructor;
+        }
+    }
+
+    private final List<Entry> entries;
+    private final ClassLoader classLoader;
+    // Rippers by the domain their host must end with
+    private final Map<String, List<Entry>> byDomain = new HashMap<>();
+    private final List<Entry> anyHost = new ArrayList<>();
+
+    /**
+     * @param indexLines Ripper class names, each optionally followed by the domain it is limited to.
+     */
+    RipperRegistry(List<String> indexLines, ClassLoader classLoader) {
+        List<Entry> list = new ArrayList<>();
+        for (String line : indexLines) {
+            list.add(new Entry(line));
+        }
+        // album rippers are tried before video rippers, as before
+        List<Entry> ordered = new ArrayList<>();
+        for (Entry entry : list) {
+            if (!entry.video) {
+                ordered.add(entry);
+            }
+        }
+        for (Entry entry : list) {
+            if (entry.video) {
+                ordered.add(entry);
+            }
+        }
+        for (int i = 0; i < ordered.size(); i++) {
+            Entry entry = ordered.get(i);
+            entry.order = i;
+            if (entry.domain == null) {
+                anyHost.add(entry);
+            } else {
+                byDomain.computeIfAbsent(entry.domain, k -> new ArrayList<>()).add(entry);
+            }
+        }
+        this.entries = Collections.unmodifiableList(ordered);
+        this.classLoader = classLoader;
+    }
+
+    public static RipperRegistry getInstance() {
+        if (instance == null) {
+            synchronized (RipperRegistry.class) {
+                if (instance == null) {
+                    ClassLoader classLoader = RipperRegistry.class.getClassLoader();
+                    instance = new RipperRegistry(loadClassNames(classLoader), classLoader);
+                }
+            }
+        }
+        return instance;
+    }
+
+    private static List<String> loadClassNames(ClassLoader classLoader) {
+        List<String> names = readIndex(classLoader.getResourceAsStream(INDEX_RESOURCE));
+        if (!names.isEmpty()) {
+            logger.debug("Loaded {} rippers from {}", names.size(), INDEX_RESOURCE);
+            return names;
+        }
+        logger.debug("No {} found, scanning ripper packages", INDEX_RESOURCE);
+        for (String pkg : new String[] {ALBUM_PACKAGE, VIDEO_PACKAGE}) {
+            for (Class<?> clazz : Utils.getClassesForPackage(pkg)) {
+                names.add(clazz.getName());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Reads the lines of an index: a class name, optionally followed by whitespace and the domain
+     * the ripper is limited to. Blank lines and lines starting with {@code #} are ignored.
+     */
+    static List<String> readIndex(InputStream in) {
+        List<String> names = new ArrayList<>();
+        if (in == null) {
+            return names;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    names.add(line);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to read {}: {}", INDEX_RESOURCE, e.getMessage());
+            names.clear();
+        }
+        return names;
+    }
+
+    /**
+     * Finds, instantiates, and returns a compatible ripper for given URL.
+     *
+     * @param url URL to rip.
+     * @return Instantiated ripper ready to rip given URL.
+     * @throws Exception If no compatible rippers can be found.
+     */
+    public AbstractRipper getRipper(URL url) throws Exception {
+        for (Entry entry : candidates(url.getHost())) {
+            AbstractRipper ripper = tryRipper(entry, url);
+            if (ripper != null) {
+                return ripper;
+            }
+        }
+        throw new Exception("No compatible ripper found");
+    }
+
+    /**
+     * @return The rippers that may accept {@code host}, in index order.
+     */
+    private List<Entry> candidates(String host) {
+        if (host == null || host.isEmpty()) {
+            return entries;
+        }
+        List<Entry> candidates = new ArrayList<>(anyHost);
+        // same test as the default canRip, which is a plain suffix match
+        for (int i = 0; i < host.length(); i++) {
+            List<Entry> matching = byDomain.get(host.substring(i));
+            if (matching != null) {
+                candidates.addAll(matching);
+            }
+        }
+        candidates.sort(Comparator.comparingInt(entry -> entry.order));
+        return candidates;
+    }
+
+    private AbstractRipper tryRipper(Entry entry, URL url) {
+        Constructor<?> constructor = entry.constructor(classLoader);
+        if (constructor == null) {
+            return null;
+        }
+        try {
+            AbstractRipper ripper = (AbstractRipper) constructor.newInstance(url);
+            boolean canRip = ripper.canRip(url);
+            logger.debug("Trying {}ripper: {} canRip: {}", entry.video ? "video " : "", entry.className, canRip);
+            if (canRip) {
+                logger.debug("Found {} ripper: {}", entry.video ? "video" : "album", entry.className);
+                return ripper;
+            }
+        } catch (Exception e) {
+            // Incompatible rippers *will* throw exceptions during instantiation.
+            logger.debug("Exception instantiating ripper: {}: {}", entry.className,
+                    e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * @param video True for video rippers, false for album rippers.
+     * @return URL constructors of the rippers, loading every ripper class.
+     */
+    public List<Constructor<?>> getConstructors(boolean video) {
+        List<Constructor<?>> constructors = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.video == video) {
+                Constructor<?> constructor = entry.constructor(classLoader);
+                if (constructor != null) {
+                    constructors.add(constructor);
+                }
+            }
+        }
+        return constructors;
+    }
+}
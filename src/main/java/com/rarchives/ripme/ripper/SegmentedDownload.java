@@ -0,0 +1,377 @@
+package com.rarchives.ripme.ripper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.rarchives.ripme.utils.BufferPool;
+import com.rarchives.ripme.utils.HttpTransport;
+import com.rarchives.ripme.utils.ThreadUtils;
+import com.rarchives.ripme.utils.Utils;
+
+/**
+ * Downloads a large file over several connections at once.
+ * <p>
+ * The file is split into segments of {@code download.segment_size_mb}, which
+ * {@code download.segments} connections fetch with {@code Range} requests and write in place into
+ * a preallocated {@code .part} file. Finished segments are recorded in a {@code .part.segments}
+ * file next to it, so a download that was interrupted, or that failed and is retried, only
+ * fetches the segments it is missing. The record is dropped when the server reports a different
+ * length, ETag or Last-Modified date for the file.
+ */
+class SegmentedDownload {
+
+    private static final Logger logger = LogManager.getLogger(SegmentedDownload.class);
+
+    static final String PART_SUFFIX = ".part";
+    static final String STATE_SUFFIX = ".part.segments";
+
+    /**
+     * Thrown when the server answers a range request with the whole file or another range.
+     */
+    static class RangesNotSupportedException extends IOException {
+        RangesNotSupportedException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Opens the bytes {@code start} to {@code end} (inclusive) of the file.
+     */
+    interface RangeFetcher {
+        InputStream open(long start, long end) throws IOException;
+    }
+
+    private final Path partFile;
+    private final Path stateFile;
+    private final long length;
+    private final String validator;
+    private final long segmentSize;
+    private final int segmentCount;
+    private final int connections;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final BitSet done;
+    private final AtomicLong completedBytes = new AtomicLong();
+    private volatile boolean failed = false;
+
+    /**
+     * @param target      File the download is saved as; the part and state files are named after it.
+     * @param length      Length of the file.
+     * @param validator   ETag or Last-Modified date of the file, or an empty string.
+     * @param segmentSize Bytes per range request.
+     * @param connections Number of ranges fetched at once.
+     */
+    SegmentedDownload(Path target, long length, String validator, long segmentSize, int connections) {
+        this.partFile = target.resolveSibling(target.getFileName() + PART_SUFFIX);
+        this.stateFile = target.resolveSibling(target.getFileName() + STATE_SUFFIX);
+        this.length = length;
+        this.validator = validator == null ? "" : validator;
+        this.segmentSize = Math.max(1, segmentSize);
+        long count = (length + this.segmentSize - 1) / this.segmentSize;
+        if (count > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many segments for " + length + " bytes");
+        }
+        this.segmentCount = (int) count;
+        this.connections = Math.max(1, connections);
+        this.done = new BitSet(segmentCount);
+    }
+
+    /**
+     * @return A download of the body of {@code response}, or null if it should be downloaded over
+     *         a single connection: ranges are disabled, the file is small, or the server does not
+     *         accept ranges.
+     */
+    static SegmentedDownload forResponse(Path target, HttpTransport.Response response) {
+        int connections = Utils.getConfigInteger("download.segments", 4);
+        long segmentSize = Utils.getConfigLong("download.segment_size_mb", 16) * 1024 * 1024;
+        long minSize = Utils.getConfigLong("download.segment_min_mb", 64) * 1024 * 1024;
+        long length = response.getContentLength();
+        if (connections < 2 || segmentSize <= 0 || length < Math.max(minSize, 2 * segmentSize)) {
+            return null;
+        }
+        String acceptRanges = response.getHeader("Accept-Ranges");
+        if (acceptRanges == null || !acceptRanges.trim().equalsIgnoreCase("bytes")) {
+            return null;
+        }
+        String validator = response.getHeader("ETag");
+        if (validator == null || validator.isEmpty() || validator.startsWith("W/")) {
+            validator = response.getHeader("Last-Modified");
+        }
+        return new SegmentedDownload(target, length, validator, segmentSize, connections);
+    }
+
+    int getSegmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * @return The number of segments already downloaded, according to the state file.
+     */
+    int getDoneSegments() {
+        lock.lock();
+        try {
+            return done.cardinality();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads the segments finished by a previous attempt. A state file for another version of the
+     * file, or without its part file, is ignored.
+     */
+    void loadState() {
+        if (!Files.exists(stateFile) || !Files.exists(partFile)) {
+            return;
+        }
+        try {
+            List<String> lines = Files.readAllLines(stateFile, StandardCharsets.UTF_8);
+            if (lines.size() >= 3 && Long.parseLong(lines.get(0)) == length && lines.get(1).equals(validator)
+                    && Files.size(partFile) == length) {
+                BitSet saved = BitSet.valueOf(Base64.getDecoder().decode(lines.get(2)));
+                lock.lock();
+                try {
+                    done.clear();
+                    done.or(saved.get(0, segmentCount));
+                    completedBytes.set(0);
+                    for (int i = done.nextSetBit(0); i >= 0; i = done.nextSetBit(i + 1)) {
+                        completedBytes.addAndGet(segmentEnd(i) - segmentStart(i) + 1);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                logger.info("Resuming {} with {} of {} segments already downloaded", partFile.getFileName(),
+                        done.cardinality(), segmentCount);
+            } else {
+                logger.info("Discarding the partial download of {}: the file changed", partFile.getFileName());
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("Ignoring unreadable download state {}: {}", stateFile, e.getMessage());
+        }
+    }
+
+    private void saveState() throws IOException {
+        String state = length + "\n" + validator + "\n" + Base64.getEncoder().encodeToString(done.toByteArray()) + "\n";
+        Path tmp = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+        Files.write(tmp, state.getBytes(StandardCharsets.UTF_8));
+        try {
+            Files.move(tmp, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, stateFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private long segmentStart(int index) {
+        return index * segmentSize;
+    }
+
+    private long segmentEnd(int index) {
+        return Math.min(length, (index + 1) * segmentSize) - 1;
+    }
+
+    /**
+     * Fetches the missing segments into the part file.
+     *
+     * @param fetcher  Opens a range of the file.
+     * @param first    Body of a response that starts at byte 0, used for the first segment, or null.
+     *                 It is closed before this returns.
+     * @param progress Receives the number of bytes downloaded so far.
+     * @param stopped  Tells whether the rip was stopped.
+     * @return True if every segment was downloaded, false if the rip was stopped first.
+     * @throws IOException If a segment failed. The finished segments are kept for the next attempt.
+     */
+    boolean download(RangeFetcher fetcher, InputStream first, LongConsumer progress, BooleanSupplier stopped)
+            throws IOException {
+        Queue<Integer> pending = new ConcurrentLinkedQueue<>();
+        boolean firstDone;
+        lock.lock();
+        try {
+            if (done.isEmpty() || !Files.exists(partFile)) {
+                done.clear();
+                completedBytes.set(0);
+                try (RandomAccessFile file = new RandomAccessFile(partFile.toFile(), "rw")) {
+                    file.setLength(length);
+                }
+                saveState();
+            }
+            for (int i = done.nextClearBit(0); i < segmentCount; i = done.nextClearBit(i + 1)) {
+                pending.add(i);
+            }
+            firstDone = done.get(0);
+        } finally {
+            lock.unlock();
+        }
+        logger.debug("Downloading {} segments of {} over {} connections", pending.size(), partFile.getFileName(),
+                connections);
+        InputStream firstBody = firstDone ? null : first;
+        if (firstBody == null && first != null) {
+            first.close();
+        }
+        if (firstBody != null) {
+            // The first segment is read from the open body by the first worker, never fetched again
+            pending.remove(0);
+        }
+        int workerCount = Math.min(connections, pending.size() + (firstBody != null ? 1 : 0));
+        failed = false;
+        ExecutorService executor = ThreadUtils.newThreadPerTaskExecutor("ripme-segment-");
+        try (FileChannel channel = FileChannel.open(partFile, StandardOpenOption.WRITE)) {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < workerCount; i++) {
+                boolean useFirst = i == 0;
+                workers.add(executor.submit(() -> {
+                    work(pending, channel, fetcher, useFirst ? firstBody : null, progress, stopped);
+                    return null;
+                }));
+            }
+            IOException failure = null;
+            for (Future<?> worker : workers) {
+                try {
+                    worker.get();
+                } catch (ExecutionException e) {
+                    failed = true;
+                    Throwable cause = e.getCause();
+                    if (failure == null) {
+                        failure = cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                    }
+                } catch (InterruptedException e) {
+                    failed = true;
+                    Thread.currentThread().interrupt();
+                    for (Future<?> other : workers) {
+                        other.cancel(true);
+                    }
+                    throw new IOException("Interrupted while downloading segments");
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            executor.shutdownNow();
+            if (firstBody != null) {
+                firstBody.close();
+            }
+        }
+        return getDoneSegments() == segmentCount;
+    }
+
+    private void work(Queue<Integer> pending, FileChannel channel, RangeFetcher fetcher, InputStream firstBody,
+                      LongConsumer progress, BooleanSupplier stopped) throws IOException {
+        try {
+            fetchSegments(pending, channel, fetcher, firstBody, progress, stopped);
+        } catch (IOException | RuntimeException e) {
+            // Stop the other connections; the next attempt picks up the unfinished segments
+            failed = true;
+            throw e;
+        }
+    }
+
+    private void fetchSegments(Queue<Integer> pending, FileChannel channel, RangeFetcher fetcher,
+                               InputStream firstBody, LongConsumer progress, BooleanSupplier stopped)
+            throws IOException {
+        // The worker given the open first body starts with the first segment
+        Integer index = firstBody != null ? Integer.valueOf(0) : pending.poll();
+        for (; index != null && !failed && !stopped.getAsBoolean(); index = pending.poll()) {
+            long start = segmentStart(index);
+            long end = segmentEnd(index);
+            boolean complete;
+            if (index == 0 && firstBody != null) {
+                complete = copy(firstBody, channel, start, end, progress, stopped);
+            } else {
+                try (InputStream in = fetcher.open(start, end)) {
+                    complete = copy(in, channel, start, end, progress, stopped);
+                }
+            }
+            if (!complete) {
+                // Stopped, or another connection failed, part way through the segment
+                return;
+            }
+            // The bitmap must not get ahead of the data on disk
+            channel.force(false);
+            lock.lock();
+            try {
+                done.set(index);
+                saveState();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Copies the bytes {@code start} to {@code end} of the file from {@code in} into place.
+     *
+     * @return True if the whole segment was copied, false if the rip was stopped or another
+     *         connection failed first.
+     */
+    private boolean copy(InputStream in, FileChannel channel, long start, long end, LongConsumer progress,
+                         BooleanSupplier stopped) throws IOException {
+        ReadableByteChannel source = Channels.newChannel(in);
+        BufferPool pool = BufferPool.getInstance();
+        ByteBuffer buffer = pool.acquire();
+        long position = start;
+        try {
+            while (position <= end && !failed && !stopped.getAsBoolean()) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), end - position + 1));
+                int read = source.read(buffer);
+                if (read < 0) {
+                    throw new IOException("Segment at byte " + start + " ended after " + (position - start) + " of "
+                            + (end - start + 1) + " bytes");
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+                progress.accept(completedBytes.addAndGet(read));
+            }
+            return position > end;
+        } finally {
+            pool.release(buffer);
+            if (position <= end) {
+                // Unfinished; the segment is fetched again from its start next time
+                completedBytes.addAndGet(start - position);
+            }
+        }
+    }
+
+    /**
+     * Deletes the part and state files.
+     */
+    void discard() throws IOException {
+        Files.deleteIfExists(partFile);
+        Files.deleteIfExists(stateFile);
+    }
+
+    /**
+     * Moves the finished part file to {@code destination} and removes the state file.
+     */
+    void finish(Path destination) throws IOException {
+        Files.move(partFile, destination, StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(stateFile);
+    }
+}
@@ -0,0 +1,353 @@
+package com.rarchives.ripme.ripper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.rarchives.ripme.utils.Utils;
+
+/**
+ * Keeps re-ripping a set of watched URLs, each on its own adaptive interval, fetching only what
+ * is new since the previous poll.
+ * <p>
+ * Each source keeps the marks of the newest items its previous poll saw (post ids or item URLs,
+ * see {@link AbstractRipper#reachedWatchMark(String, String)}). A poll of a ripper that lists newest
+ * first stops paging as soon as it reaches one of them, so following a large listing costs one or
+ * two pages per poll instead of its whole back catalogue. Several marks are kept so a deleted post
+ * does not lose the position. Other rippers are walked in full, and the URL history skips what was
+ * downloaded before.
+ * <p>
+ * A poll that finds new items halves the source's interval, down to
+ * {@code watch.min_interval_minutes}; one that finds nothing waits half as long again next time,
+ * up to {@code watch.max_interval_minutes}. The state is stored in {@code watch.json} in the
+ * config directory, so watching picks up where it left off after a restart.
+ */
+public class WatchScheduler {
+
+    private static final Logger logger = LogManager.getLogger(WatchScheduler.class);
+
+    /**
+     * A watched URL and its polling state.
+     */
+    public static class Source {
+        public final String url;
+        private Map<String, List<String>> marks = new LinkedHashMap<>();
+        private long intervalMillis;
+        private long nextPoll = 0;
+        private long lastPoll = 0;
+        private int lastNewItems = 0;
+
+        // Filled in by the poll
+        public Map<String, List<String>> newMarks = null;
+        public int newItems = 0;
+
+        Source(String url, long intervalMillis) {
+            this.url = url;
+            this.intervalMillis = intervalMillis;
+        }
+
+        /**
+         * @return The marks to pass to {@link AbstractRipper#setWatchMarks(Map)}.
+         */
+        public Map<String, List<String>> getMarks() {
+            return marks;
+        }
+
+        public long getIntervalMillis() {
+            return intervalMillis;
+        }
+
+        public long getNextPoll() {
+            return nextPoll;
+        }
+
+        public int getLastNewItems() {
+            return lastNewItems;
+        }
+
+        JSONObject toJSON() {
+            JSONObject json = new JSONObject();
+            json.put("url", url);
+            JSONObject jsonMarks = new JSONObject();
+            for (Map.Entry<String, List<String>> listing : marks.entrySet()) {
+                jsonMarks.put(listing.getKey(), new JSONArray(listing.getValue()));
+            }
+            json.put("marks", jsonMarks);
+            json.put("interval_ms", intervalMillis);
+            json.put("next_poll", nextPoll);
+            json.put("last_poll", lastPoll);
+            json.put("last_new_items", lastNewItems);
+            return json;
+        }
+
+        static Source fromJSON(JSONObject json, long defaultInterval) {
+            Source source = new Source(json.getString("url"), json.optLong("interval_ms", defaultInterval));
+            JSONObject jsonMarks = json.optJSONObject("marks");
+            if (jsonMarks != null) {
+                for (String listing : jsonMarks.keySet()) {
+                    JSONArray items = jsonMarks.getJSONArray(listing);
+                    List<String> list = new ArrayList<>();
+                    for (int i = 0; i < items.length(); i++) {
+                        list.add(items.getString(i));
+                    }
+                    source.marks.put(listing, list);
+                }
+            }
+            source.nextPoll = json.optLong("next_poll", 0);
+            source.lastPoll = json.optLong("last_poll", 0);
+            source.lastNewItems = json.optInt("last_new_items", 0);
+            return source;
+        }
+    }
+
+    private final Path file;
+    private final long minInterval;
+    private final long maxInterval;
+    private final LongSupplier clock;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, Source> sources = new LinkedHashMap<>();
+
+    /**
+     * @param file        State file, or null to keep the state in memory only.
+     * @param minInterval Shortest time between two polls of a source, in milliseconds.
+     * @param maxInterval Longest time between two polls of a source, in milliseconds.
+     * @param clock       Source of {@link System#currentTimeMillis()}-like timestamps.
+     */
+    WatchScheduler(Path file, long minInterval, long maxInterval, LongSupplier clock) {
+        this.file = file;
+        this.minInterval = Math.max(1, minInterval);
+        this.maxInterval = Math.max(this.minInterval, maxInterval);
+        this.clock = clock;
+    }
+
+    /**
+     * @return A scheduler using {@code watch.json} and the intervals from the config.
+     */
+    public static WatchScheduler fromConfig() {
+        WatchScheduler scheduler = new WatchScheduler(Paths.get(Utils.getConfigDir(), "watch.json"),
+                TimeUnit.MINUTES.toMillis(Utils.getConfigInteger("watch.min_interval_minutes", 15)),
+                TimeUnit.MINUTES.toMillis(Utils.getConfigInteger("watch.max_interval_minutes", 1440)),
+                System::currentTimeMillis);
+        scheduler.load();
+        return scheduler;
+    }
+
+    /**
+     * Reads the saved state, keeping the current sources if there is none.
+     */
+    void load() {
+        if (file == null || !Files.exists(file)) {
+            return;
+        }
+        lock.lock();
+        try {
+            JSONObject json = new JSONObject(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+            JSONArray items = json.optJSONArray("sources");
+            if (items != null) {
+                for (int i = 0; i < items.length(); i++) {
+                    Source source = Source.fromJSON(items.getJSONObject(i), minInterval);
+                    sources.put(source.url, source);
+                }
+            }
+        } catch (IOException | JSONException e) {
+            logger.warn("Ignoring unreadable watch state {}: {}", file, e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void save() {
+        if (file == null) {
+            return;
+        }
+        JSONArray items = new JSONArray();
+        for (Source source : sources.values()) {
+            items.put(source.toJSON());
+        }
+        JSONObject json = new JSONObject();
+        json.put("sources", items);
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(tmp, json.toString().getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to save watch state to {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Makes {@code urls} the watched sources: new URLs are polled right away, and sources not in
+     * {@code urls} are dropped with their state.
+     */
+    public void setSources(Collection<String> urls) {
+        lock.lock();
+        try {
+            Map<String, Source> updated = new LinkedHashMap<>();
+            for (String url : urls) {
+                Source source = sources.get(url);
+                updated.put(url, source != null ? source : new Source(url, minInterval));
+            }
+            sources.clear();
+            sources.putAll(updated);
+            save();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public List<Source> getSources() {
+        lock.lock();
+        try {
+            return new ArrayList<>(sources.values());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The sources due for a poll, the longest overdue first.
+     */
+    public List<Source> due() {
+        lock.lock();
+        try {
+            long now = clock.getAsLong();
+            List<Source> due = new ArrayList<>();
+            for (Source source : sources.values()) {
+                if (source.nextPoll <= now) {
+                    source.newMarks = null;
+                    source.newItems = 0;
+                    due.add(source);
+                }
+            }
+            due.sort((a, b) -> Long.compare(a.nextPoll, b.nextPoll));
+            return due;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Milliseconds until the next source is due, or -1 if nothing is watched.
+     */
+    public long millisUntilNextPoll() {
+        lock.lock();
+        try {
+            long next = Long.MAX_VALUE;
+            for (Source source : sources.values()) {
+                next = Math.min(next, source.nextPoll);
+            }
+            return next == Long.MAX_VALUE ? -1 : Math.max(0, next - clock.getAsLong());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records a successful poll of {@code source}, with {@link Source#newMarks} and
+     * {@link Source#newItems} filled in, and schedules its next one.
+     */
+    public void polled(Source source) {
+        lock.lock();
+        try {
+            long now = clock.getAsLong();
+            if (source.newMarks != null) {
+                source.marks = source.newMarks;
+            }
+            if (source.newItems > 0) {
+                source.intervalMillis = Math.max(minInterval, source.intervalMillis / 2);
+            } else {
+                source.intervalMillis = Math.min(maxInterval, source.intervalMillis + source.intervalMillis / 2);
+            }
+            source.lastNewItems = source.newItems;
+            source.lastPoll = now;
+            source.nextPoll = now + source.intervalMillis;
+            logger.info("{} had {} new items, polling again in {} minutes", source.url, source.newItems,
+                    TimeUnit.MILLISECONDS.toMinutes(source.intervalMillis));
+            if (sources.containsKey(source.url)) {
+                save();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records a failed poll of {@code source}. Its marks are kept and it is retried after its
+     * current interval.
+     */
+    public void failed(Source source) {
+        lock.lock();
+        try {
+            long now = clock.getAsLong();
+            source.lastPoll = now;
+            source.nextPoll = now + source.intervalMillis;
+            if (sources.containsKey(source.url)) {
+                save();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Polls the due sources through {@code batch} until interrupted, sleeping until the next one
+     * is due in between.
+     *
+     * @param batch  Runs the polls of one round.
+     * @param poller Rips one source with its marks and fills in its new marks. Should not throw.
+     */
+    public void run(BatchRipScheduler batch, Function<Source, BatchRipScheduler.Result> poller)
+            throws InterruptedException {
+        while (!Thread.currentThread().isInterrupted()) {
+            List<Source> due = due();
+            if (!due.isEmpty()) {
+                Map<String, Source> byUrl = new LinkedHashMap<>();
+                for (Source source : due) {
+                    byUrl.put(source.url, source);
+                }
+                logger.info("Polling {} of {} watched sources", due.size(), getSources().size());
+                batch.run(new ArrayList<>(byUrl.keySet()), url -> poller.apply(byUrl.get(url)), result -> {
+                    Source source = byUrl.get(result.url);
+                    if ("ok".equals(result.status)) {
+                        polled(source);
+                    } else {
+                        failed(source);
+                    }
+                });
+            }
+            long wait = millisUntilNextPoll();
+            if (wait < 0) {
+                logger.info("Nothing to watch");
+                return;
+            }
+            if (wait > 0) {
+                logger.info("Next watched source is due in {} minutes", TimeUnit.MILLISECONDS.toMinutes(wait));
+                TimeUnit.MILLISECONDS.sleep(wait);
+            }
+        }
+    }
+}
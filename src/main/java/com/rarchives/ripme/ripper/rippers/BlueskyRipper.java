@@ -4,6 +4,7 @@ import com.rarchives.ripme.ripper.AbstractJSONRipper;
 import com.rarchives.ripme.ui.RipStatusMessage.STATUS;
 import com.rarchives.ripme.ripper.AbstractRipper;
 import com.rarchives.ripme.utils.DownloadLimitTracker;
+import com.rarchives.ripme.utils.FirefoxCookieUtils;
 import com.rarchives.ripme.utils.Http;
 import com.rarchives.ripme.utils.Utils;
 import org.jsoup.Connection;
@@ -158,37 +159,9 @@ public class BlueskyRipper extends AbstractJSONRipper {
         } catch (Exception ignored) {}
     }
 
-    // Loads Bluesky cookies from Firefox (Windows)
-    private static java.util.Map<String, String> loadBlueskyCookiesFromFirefox() {
-        java.util.Map<String, String> cookies = new java.util.HashMap<>();
-        try {
-            String userHome = System.getProperty("user.home");
-            String profilesIniPath = userHome + "/AppData/Roaming/Mozilla/Firefox/profiles.ini";
-            java.nio.file.Path iniPath = java.nio.file.Paths.get(profilesIniPath);
-            if (!java.nio.file.Files.exists(iniPath)) return cookies;
-            java.util.List<String> lines = java.nio.file.Files.readAllLines(iniPath);
-            String profilePath = null;
-            for (String line : lines) {
-                if (line.trim().startsWith("Path=")) {
-                    profilePath = line.trim().substring(5);
-                    break;
-                }
-            }
-            if (profilePath == null) return cookies;
-            String sqlitePath = userHome + "/AppData/Roaming/Mozilla/Firefox/Profiles/" + profilePath + "/cookies.sqlite";
-            Class.forName("org.sqlite.JDBC");
-            try (java.sql.Connection conn = java.sql.DriverManager.getConnection("jdbc:sqlite:" + sqlitePath)) {
-                String sql = "SELECT name, value FROM moz_cookies WHERE (host LIKE '%bsky.app' OR host LIKE '%bsky.social')";
-                try (java.sql.Statement stmt = conn.createStatement(); java.sql.ResultSet rs = stmt.executeQuery(sql)) {
-                    while (rs.next()) {
-                        cookies.put(rs.getString("name"), rs.getString("value"));
-                    }
-                }
-            }
-        } catch (Exception e) {
-            // Ignore errors, just return empty map
-        }
-        return cookies;
+    // Loads Bluesky cookies from the first Firefox profile that has any
+    private static Map<String, String> loadBlueskyCookiesFromFirefox() {
+        return FirefoxCookieUtils.readCookies(List.of("%bsky.app", "%bsky.social"));
     }
 
     @Override
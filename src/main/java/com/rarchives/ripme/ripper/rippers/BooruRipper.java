@@ -57,6 +57,16 @@ public class BooruRipper extends AbstractHTMLRipper {
         return Http.url(getPage(0)).get();
     }
 
+    @Override
+    protected boolean hasCheckpointSupport() {
+        return true;
+    }
+
+    @Override
+    protected Document getPageAtCheckpoint(String cursor) throws IOException {
+        return Http.url(cursor).get();
+    }
+
     @Override
     public Document getNextPage(Document doc) throws IOException {
         int offset = Integer.parseInt(doc.getElementsByTag("posts").first().attr("offset"));
@@ -9,8 +9,8 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
-import java.sql.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.regex.Matcher;
@@ -27,7 +27,9 @@ import org.jsoup.Jsoup;
 
 import com.rarchives.ripme.ripper.AbstractJSONRipper;
 import com.rarchives.ripme.utils.DownloadLimitTracker;
+import com.rarchives.ripme.utils.FirefoxCookieUtils;
 import com.rarchives.ripme.utils.Http;
+import com.rarchives.ripme.utils.JsonStreamReader;
 import com.rarchives.ripme.utils.Utils;
 import com.rarchives.ripme.ui.RipStatusMessage;
 import com.rarchives.ripme.ripper.AbstractRipper;
@@ -53,6 +55,11 @@ public class CoomerPartyRipper extends AbstractJSONRipper {
     private static final String KEY_FILE = "file";
     private static final String KEY_PATH = "path";
     private static final String KEY_ATTACHMENTS = "attachments";
+    // Keys some mirrors wrap a page of posts in, by preference
+    private static final List<String> POSTS_WRAPPER_KEYS = Arrays.asList("posts", "items", "data");
+    // Post fields kept when streaming a page; the rest (mostly the post text) is skipped
+    private static final Set<String> POST_FIELDS = new HashSet<>(Arrays.asList("id", "title", "published",
+            KEY_FILE, KEY_ATTACHMENTS));
 
     // Posts Request Endpoint templates
     // Primary endpoint: /api/v1/{service}/user/{username}/posts
@@ -188,13 +195,8 @@ public class CoomerPartyRipper extends AbstractJSONRipper {
             String apiUrl = String.format(POSTS_ENDPOINT, dom, service, user, offset);
 
             for (Map<String, String> headers : buildApiHeaderVariants()) {
-                String jsonArrayString = null;
                 try {
-                    jsonArrayString = fetchRawPosts(apiUrl, headers);
-
-                    logger.debug("Raw JSON from API for offset " + offset + ": " + jsonArrayString);
-
-                    JSONArray jsonArray = parsePostsArray(jsonArrayString);
+                    JSONArray jsonArray = fetchPosts(apiUrl, headers);
 
                     if (jsonArray.length() == 0) {
                         logger.warn("No posts found at offset " + offset + " for user: " + user);
@@ -217,12 +219,6 @@ public class CoomerPartyRipper extends AbstractJSONRipper {
                 } catch (JSONException e) {
                     lastException = new IOException("Invalid JSON response", e);
                     logger.warn("Invalid JSON from {} with headers {}: {}", apiUrl, headers.keySet(), e.getMessage());
-                    if (jsonArrayString != null) {
-                        String snippet = jsonArrayString.length() > 200
-                                ? jsonArrayString.substring(0, 200) + "..."
-                                : jsonArrayString;
-                        logger.debug("Response body (truncated to 200 chars): {}", snippet.replaceAll("\n", "\\n"));
-                    }
                     // Move on to the next header set or domain to mirror the working Python client's tolerance
                     continue;
                 } catch (IOException e) {
@@ -251,6 +247,69 @@ public class CoomerPartyRipper extends AbstractJSONRipper {
         return variants;
     }
 
+    /**
+     * Fetches a page of posts, streaming the response and keeping only the fields the rip uses
+     * (post text and metadata make up most of each page). Responses that are not plain JSON, such
+     * as the HTML-wrapped pages some mirrors serve, are fetched again as text and recovered by
+     * {@link #parsePostsArray(String)}.
+     */
+    protected JSONArray fetchPosts(String apiUrl, Map<String, String> headers) throws IOException {
+        try {
+            return Http.getJsonWith429Retry(new URL(apiUrl), 5, 5, COOMER_USER_AGENT, headers, this::readPostsArray);
+        } catch (JsonStreamReader.MalformedJsonException e) {
+            logger.debug("Unable to stream posts from {} ({}), reading them as text", apiUrl, e.getMessage());
+        }
+        String jsonArrayString = fetchRawPosts(apiUrl, headers);
+        logger.debug("Raw JSON from API: " + jsonArrayString);
+        try {
+            return parsePostsArray(jsonArrayString);
+        } catch (JSONException e) {
+            String snippet = jsonArrayString.length() > 200
+                    ? jsonArrayString.substring(0, 200) + "..."
+                    : jsonArrayString;
+            logger.debug("Response body (truncated to 200 chars): {}", snippet.replaceAll("\n", "\\n"));
+            throw e;
+        }
+    }
+
+    private JSONArray readPostsArray(JsonStreamReader reader) throws IOException {
+        if (reader.peek() == JsonStreamReader.Token.BEGIN_OBJECT) {
+            // Some mirrors wrap the page in {"posts": [...]}, {"items": [...]} or {"data": [...]}
+            JSONArray posts = null;
+            int postsRank = POSTS_WRAPPER_KEYS.size();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                int rank = POSTS_WRAPPER_KEYS.indexOf(reader.nextName());
+                if (rank >= 0 && rank < postsRank && reader.peek() == JsonStreamReader.Token.BEGIN_ARRAY) {
+                    posts = readPosts(reader);
+                    postsRank = rank;
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (posts == null) {
+                throw new JsonStreamReader.MalformedJsonException("No posts array in response");
+            }
+            return posts;
+        }
+        return readPosts(reader);
+    }
+
+    private JSONArray readPosts(JsonStreamReader reader) throws IOException {
+        JSONArray posts = new JSONArray();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() == JsonStreamReader.Token.BEGIN_OBJECT) {
+                posts.put(reader.readObject(POST_FIELDS));
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endArray();
+        return posts;
+    }
+
     protected String fetchRawPosts(String apiUrl, Map<String, String> headers) throws IOException {
         return Http.getWith429Retry(new URL(apiUrl), 5, 5, COOMER_USER_AGENT, headers);
     }
@@ -806,63 +865,11 @@ public class CoomerPartyRipper extends AbstractJSONRipper {
     }
 
     private static String getCoomerCookiesFromFirefox() {
-        try {
-            String userHome = System.getProperty("user.home");
-            String profilesIniPath = userHome + "/AppData/Roaming/Mozilla/Firefox/profiles.ini";
-            java.nio.file.Path iniPath = java.nio.file.Paths.get(profilesIniPath);
-            if (!java.nio.file.Files.exists(iniPath)) return null;
-            java.util.List<String> lines = java.nio.file.Files.readAllLines(iniPath);
-            java.util.List<String> profilePaths = new java.util.ArrayList<>();
-            for (String line : lines) {
-                if (line.trim().startsWith("Path=")) {
-                    profilePaths.add(line.trim().substring(5));
-                }
-            }
-            logger.info("Found Firefox profiles: {}", profilePaths);
-            for (String profilePath : profilePaths) {
-                String sqlitePath = userHome + "/AppData/Roaming/Mozilla/Firefox/Profiles/" + profilePath + "/cookies.sqlite";
-                sqlitePath = sqlitePath.replace("Profiles/Profiles/", "Profiles/");
-                logger.info("Trying cookies.sqlite at: {}", sqlitePath);
-                java.nio.file.Path tempCopy = null;
-                try {
-                    Class.forName("org.sqlite.JDBC");
-                    tempCopy = java.nio.file.Files.createTempFile("cookies", ".sqlite");
-                    tempCopy.toFile().deleteOnExit();
-                    java.nio.file.Files.copy(java.nio.file.Paths.get(sqlitePath), tempCopy, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
-                    try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + tempCopy.toString())) {
-                        String sql = "SELECT name, value FROM moz_cookies WHERE host LIKE '%coomer%'";
-                        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
-                            StringBuilder cookieStr = new StringBuilder();
-                            boolean found = false;
-                            while (rs.next()) {
-                                String name = rs.getString("name");
-                                String value = rs.getString("value");
-                                if (cookieStr.length() > 0) cookieStr.append("; ");
-                                cookieStr.append(name).append("=").append(value);
-                                found = true;
-                            }
-                            if (found) {
-                                logger.info("Found Coomer cookies in profile {}: {}", profilePath, cookieStr.length() > 16 ? cookieStr.substring(0,8)+"..."+cookieStr.substring(cookieStr.length()-8) : cookieStr.toString());
-                                return cookieStr.toString();
-                            }
-                        }
-                    }
-                } catch (Exception e) {
-                    logger.warn("Failed to read cookies from profile {}: {}", profilePath, e.getMessage());
-                } finally {
-                    if (tempCopy != null) {
-                        try {
-                            java.nio.file.Files.deleteIfExists(tempCopy);
-                        } catch (IOException cleanupException) {
-                            logger.debug("Unable to delete temporary Firefox cookie copy", cleanupException);
-                        }
-                    }
-                }
-            }
-        } catch (Exception e) {
-            logger.warn("Error reading Firefox profiles.ini: {}", e.getMessage());
+        Map<String, String> cookies = FirefoxCookieUtils.readCookies(List.of("%coomer%"));
+        if (!cookies.isEmpty()) {
+            logger.info("Loaded {} Coomer cookies from Firefox", cookies.size());
         }
-        return null;
+        return FirefoxCookieUtils.toCookieHeader(cookies);
     }
 
     private boolean isImage(String path) {
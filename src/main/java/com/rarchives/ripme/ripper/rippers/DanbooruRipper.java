@@ -18,6 +18,7 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 
 import com.rarchives.ripme.ripper.AbstractJSONRipper;
+import com.rarchives.ripme.utils.OkHttpTransport;
 import com.rarchives.ripme.utils.Utils;
 
 import okhttp3.OkHttpClient;
@@ -34,11 +35,9 @@ public class DanbooruRipper extends AbstractJSONRipper {
 
     private Pattern gidPattern = null;
 
-    private int currentPageNum = 1;
-
     public DanbooruRipper(URL url) throws IOException {
         super(url);
-        this.client = new OkHttpClient.Builder()
+        this.client = OkHttpTransport.newSharedClientBuilder()
                 .readTimeout(60, TimeUnit.SECONDS)
                 .writeTimeout(60, TimeUnit.SECONDS)
                 .build();
@@ -60,18 +59,33 @@ public class DanbooruRipper extends AbstractJSONRipper {
 
     @Override
     protected JSONObject getFirstPage() throws MalformedURLException {
-        return getCurrentPage();
+        return getPageNum(1);
     }
 
     @Override
     protected JSONObject getNextPage(JSONObject doc) throws IOException {
-        return getCurrentPage();
+        return getPageNum(doc.getInt("page") + 1);
+    }
+
+    @Override
+    protected boolean hasCheckpointSupport() {
+        return true;
+    }
+
+    @Override
+    protected String getCheckpointCursor(JSONObject page) {
+        return Integer.toString(page.getInt("page"));
+    }
+
+    @Override
+    protected JSONObject getPageAtCheckpoint(String cursor) throws MalformedURLException {
+        return getPageNum(Integer.parseInt(cursor));
     }
 
     @Nullable
-    private JSONObject getCurrentPage() throws MalformedURLException {
+    private JSONObject getPageNum(int num) throws MalformedURLException {
         Request request = new Request.Builder()
-                .url(getPage(currentPageNum))
+                .url(getPage(num))
                 .header("User-Agent", "Mozilla/5.0 (iPhone; CPU iPhone OS 15_0 like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/15.0 Mobile/15E148 Safari/604.1")
                 .header("Accept", "application/json,text/javascript,*/*;q=0.01")
                 .header("Accept-Language", "en-US,en;q=0.9")
@@ -83,7 +97,6 @@ public class DanbooruRipper extends AbstractJSONRipper {
                 .header("Connection", "keep-alive")
                 .build();
         Response response = null;
-        currentPageNum++;
         try {
             response = client.newCall(request).execute();
             if (!response.isSuccessful()) throw new IOException("Unexpected code " + response);
@@ -91,8 +104,10 @@ public class DanbooruRipper extends AbstractJSONRipper {
             String responseData = response.body().string();
             JSONArray jsonArray = new JSONArray(responseData);
             if(!jsonArray.isEmpty()){
-                String newCompatibleJSON = "{ \"resources\":" + jsonArray + " }";
-                return new JSONObject(newCompatibleJSON);
+                JSONObject page = new JSONObject();
+                page.put("resources", jsonArray);
+                page.put("page", num);
+                return page;
             }
         } catch (IOException e) {
             e.printStackTrace();
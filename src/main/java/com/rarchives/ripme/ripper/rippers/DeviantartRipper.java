@@ -22,6 +22,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -60,7 +61,7 @@ public class DeviantartRipper extends AbstractJSONRipper {
     private static final String GALLERY_API = "https://www.deviantart.com/_puppy/dashared/gallection/contents";
     private static final String DEVIATION_API = "https://www.deviantart.com/_puppy/dadeviation/init";
     private static final String COOKIES_CONFIG_KEY = "DeviantartLogin.cookies";
-    private static final Object COOKIE_PERSIST_LOCK = new Object();
+    private static final ReentrantLock COOKIE_PERSIST_LOCK = new ReentrantLock();
 
     private static final int PAGE_SIZE = 24;
     /** Outer retries for 403 / session recovery after {@link Http#getWith429Retry} exhausts 429 handling. */
@@ -1183,24 +1184,25 @@ public class DeviantartRipper extends AbstractJSONRipper {
     }
 
     private void persistCookies() {
-        synchronized (COOKIE_PERSIST_LOCK) {
-            try {
-                Map<String, String> toStore = new LinkedHashMap<>();
-                String stored = Utils.getConfigString(COOKIES_CONFIG_KEY, null);
-                if (stored != null && !stored.isBlank()) {
-                    try {
-                        toStore.putAll(deserialize(stored));
-                    } catch (ClassNotFoundException e) {
-                        logger.warn("Failed to merge stored DeviantArt cookies: {}", e.getMessage());
-                    }
+        COOKIE_PERSIST_LOCK.lock();
+        try {
+            Map<String, String> toStore = new LinkedHashMap<>();
+            String stored = Utils.getConfigString(COOKIES_CONFIG_KEY, null);
+            if (stored != null && !stored.isBlank()) {
+                try {
+                    toStore.putAll(deserialize(stored));
+                } catch (ClassNotFoundException e) {
+                    logger.warn("Failed to merge stored DeviantArt cookies: {}", e.getMessage());
                 }
-                toStore.putAll(cookies);
-                toStore.put("agegate_state", "1");
-                Utils.setConfigString(COOKIES_CONFIG_KEY, serialize(new HashMap<>(toStore)));
-                Utils.saveConfig();
-            } catch (IOException e) {
-                logger.warn("Failed to persist DeviantArt cookies: {}", e.getMessage());
             }
+            toStore.putAll(cookies);
+            toStore.put("agegate_state", "1");
+            Utils.setConfigString(COOKIES_CONFIG_KEY, serialize(new HashMap<>(toStore)));
+            Utils.saveConfig();
+        } catch (IOException e) {
+            logger.warn("Failed to persist DeviantArt cookies: {}", e.getMessage());
+        } finally {
+            COOKIE_PERSIST_LOCK.unlock();
         }
     }
 
@@ -24,6 +24,7 @@ import com.rarchives.ripme.ripper.AbstractHTMLRipper;
 import com.rarchives.ripme.ripper.DownloadThreadPool;
 import com.rarchives.ripme.ui.RipStatusMessage;
 import com.rarchives.ripme.ui.RipStatusMessage.STATUS;
+import com.rarchives.ripme.utils.HostRateLimiter;
 import com.rarchives.ripme.utils.Http;
 import com.rarchives.ripme.utils.RipUtils;
 import com.rarchives.ripme.utils.Utils;
@@ -33,7 +34,7 @@ public class EHentaiRipper extends AbstractHTMLRipper {
     private static final Logger logger = LogManager.getLogger(EHentaiRipper.class);
 
     // All sleep times are in milliseconds
-    private static final int PAGE_SLEEP_TIME = 3000;
+    // Starting delay between requests for gallery and image pages
     private static final int IMAGE_SLEEP_TIME = 1500;
     private static final int IP_BLOCK_SLEEP_TIME = 60 * 1000;
     private static final Map<String, String> cookies = new HashMap<>();
@@ -63,6 +64,11 @@ public class EHentaiRipper extends AbstractHTMLRipper {
         return "e-hentai";
     }
 
+    @Override
+    protected double getRequestBudget() {
+        return 1000.0 / IMAGE_SLEEP_TIME;
+    }
+
     @Override
     public String getDomain() {
         return "e-hentai.org";
@@ -116,11 +122,8 @@ public class EHentaiRipper extends AbstractHTMLRipper {
                 }
                 logger.warn("Hit rate limit while loading " + url + ", sleeping for " + IP_BLOCK_SLEEP_TIME + "ms, " + retries + " retries remaining");
                 retries--;
-                try {
-                    Thread.sleep(IP_BLOCK_SLEEP_TIME);
-                } catch (InterruptedException e) {
-                    throw new IOException("Interrupted while waiting for rate limit to subside");
-                }
+                // the next request waits until the block is over
+                HostRateLimiter.getInstance().onThrottled(HostRateLimiter.hostOf(url), IP_BLOCK_SLEEP_TIME);
             } else {
                 return doc;
             }
@@ -172,8 +175,6 @@ public class EHentaiRipper extends AbstractHTMLRipper {
             logger.info("lastURL = nextURL : " + nextURL);
             throw new IOException("Reached last page of results");
         }
-        // Sleep before loading next page
-        sleep(PAGE_SLEEP_TIME);
         // Load next page
         Document nextPage = getPageWithRetries(new URI(nextURL).toURL());
         this.lastURL = nextURL;
@@ -195,11 +196,6 @@ public class EHentaiRipper extends AbstractHTMLRipper {
     public void downloadURL(URL url, int index) {
         EHentaiImageThread t = new EHentaiImageThread(url, index, this.workingDir.toPath());
         ehentaiThreadPool.addThread(url, t);
-        try {
-            Thread.sleep(IMAGE_SLEEP_TIME);
-        } catch (InterruptedException e) {
-            logger.warn("Interrupted while waiting to load next image", e);
-        }
     }
 
     /**
@@ -1,6 +1,7 @@
 package com.rarchives.ripme.ripper.rippers;
 
 import com.rarchives.ripme.ripper.AbstractHTMLRipper;
+import com.rarchives.ripme.utils.FirefoxCookieUtils;
 import com.rarchives.ripme.utils.Http;
 import com.rarchives.ripme.utils.RipUtils;
 import com.rarchives.ripme.utils.Utils;
@@ -21,15 +22,6 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -40,8 +32,6 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 public class OnlywamRipper extends AbstractHTMLRipper {
 
@@ -606,88 +596,14 @@ public class OnlywamRipper extends AbstractHTMLRipper {
     }
 
     private Map<String, String> loadCookiesFromFirefox() {
-        Map<String, String> firefoxCookies = new HashMap<>();
-        try {
-            Class.forName("org.sqlite.JDBC");
-        } catch (ClassNotFoundException e) {
+        if (!FirefoxCookieUtils.isSQLiteDriverAvailable()) {
             logger.warn("SQLite JDBC driver not found. Firefox cookie extraction for OnlyWam is unavailable.");
-            return firefoxCookies;
-        }
-
-        Path cookiesFile;
-        try {
-            cookiesFile = findLatestFirefoxCookiesFile();
-        } catch (IOException e) {
-            logger.warn("Unable to locate Firefox cookies.sqlite: {}", e.getMessage());
-            return firefoxCookies;
+            return new HashMap<>();
         }
-
-        if (cookiesFile == null) {
+        Map<String, String> firefoxCookies = FirefoxCookieUtils.readCookies(List.of("%onlywam.com"));
+        if (firefoxCookies.isEmpty()) {
             logger.warn("No Firefox cookies.sqlite containing OnlyWam cookies was found.");
-            return firefoxCookies;
         }
-
-        Path tempCopy = null;
-        try {
-            tempCopy = Files.createTempFile("onlywam_cookies", ".sqlite");
-            tempCopy.toFile().deleteOnExit();
-            Files.copy(cookiesFile, tempCopy, StandardCopyOption.REPLACE_EXISTING);
-            try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + tempCopy.toAbsolutePath());
-                 PreparedStatement statement = connection.prepareStatement(
-                         "SELECT name, value FROM moz_cookies WHERE host LIKE ?")) {
-                statement.setString(1, "%onlywam.com");
-                try (ResultSet rs = statement.executeQuery()) {
-                    while (rs.next()) {
-                        String name = rs.getString("name");
-                        String value = rs.getString("value");
-                        if (name != null && value != null) {
-                            firefoxCookies.put(name, value);
-                        }
-                    }
-                }
-            }
-        } catch (SQLException | IOException e) {
-            logger.warn("Failed to load Firefox cookies for OnlyWam: {}", e.getMessage());
-        } finally {
-            if (tempCopy != null) {
-                try {
-                    Files.deleteIfExists(tempCopy);
-                } catch (IOException e) {
-                    logger.debug("Unable to delete temporary cookies copy: {}", e.getMessage());
-                }
-            }
-        }
-
         return firefoxCookies;
     }
-
-    private Path findLatestFirefoxCookiesFile() throws IOException {
-        String userHome = System.getProperty("user.home");
-        List<Path> searchRoots = new ArrayList<>();
-        searchRoots.add(Paths.get(userHome, "AppData", "Roaming", "Mozilla", "Firefox", "Profiles"));
-        searchRoots.add(Paths.get(userHome, "Library", "Application Support", "Firefox", "Profiles"));
-        searchRoots.add(Paths.get(userHome, ".mozilla", "firefox"));
-
-        Path newest = null;
-        long newestTime = Long.MIN_VALUE;
-        for (Path root : searchRoots) {
-            if (!Files.exists(root)) {
-                continue;
-            }
-            List<Path> candidates;
-            try (Stream<Path> stream = Files.walk(root, 2)) {
-                candidates = stream
-                        .filter(path -> path.getFileName().toString().equals("cookies.sqlite"))
-                        .collect(Collectors.toList());
-            }
-            for (Path candidate : candidates) {
-                long modified = Files.getLastModifiedTime(candidate).toMillis();
-                if (modified > newestTime) {
-                    newestTime = modified;
-                    newest = candidate;
-                }
-            }
-        }
-        return newest;
-    }
 }
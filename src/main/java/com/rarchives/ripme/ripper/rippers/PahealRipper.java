@@ -56,6 +56,16 @@ public class PahealRipper extends AbstractHTMLRipper {
         return Http.url("http://rule34.paheal.net/post/list/" + getTerm(url) + "/1").cookies(getCookies()).get();
     }
 
+    @Override
+    protected boolean hasCheckpointSupport() {
+        return true;
+    }
+
+    @Override
+    protected Document getPageAtCheckpoint(String cursor) throws IOException {
+        return Http.url(cursor).cookies(getCookies()).get();
+    }
+
     @Override
     public Document getNextPage(Document page) throws IOException {
         for (Element e : page.select("#paginator a")) {
@@ -27,6 +27,7 @@ import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
@@ -50,7 +51,9 @@ import com.rarchives.ripme.ripper.AlbumRipper;
 import com.rarchives.ripme.ui.RipStatusMessage;
 import com.rarchives.ripme.ui.UpdateUtils;
 import com.rarchives.ripme.utils.DownloadLimitTracker;
+import com.rarchives.ripme.utils.FirefoxCookieUtils;
 import com.rarchives.ripme.utils.Http;
+import com.rarchives.ripme.utils.JsonStreamReader;
 import com.rarchives.ripme.utils.RipUtils;
 import com.rarchives.ripme.utils.Utils;
 import j2html.TagCreator;
@@ -59,74 +62,14 @@ import j2html.tags.specialized.DivTag;
 import j2html.TagCreator;
 import j2html.tags.ContainerTag;
 import j2html.tags.specialized.DivTag;
-import java.sql.*;
 
 public class RedditRipper extends AlbumRipper {
 
     private final Set<String> coomerProfilesSeen = new HashSet<>();
 
-    // Loads all Reddit cookies from Firefox (Windows), tries all profiles, returns cookie string for HTTP header
+    // Loads Reddit cookies from the first Firefox profile that has any, returns cookie string for HTTP header
     private static String getRedditCookiesFromFirefox() {
-        try {
-            String userHome = System.getProperty("user.home");
-            String profilesIniPath = userHome + "/AppData/Roaming/Mozilla/Firefox/profiles.ini";
-            java.nio.file.Path iniPath = java.nio.file.Paths.get(profilesIniPath);
-            if (!java.nio.file.Files.exists(iniPath)) return null;
-            java.util.List<String> lines = java.nio.file.Files.readAllLines(iniPath);
-            java.util.List<String> profilePaths = new java.util.ArrayList<>();
-            for (String line : lines) {
-                if (line.trim().startsWith("Path=")) {
-                    String path = line.trim().substring(5);
-                    profilePaths.add(path);
-                }
-            }
-            logger.info("Found Firefox profiles: {}", profilePaths);
-            for (String profilePath : profilePaths) {
-                String sqlitePath = userHome + "/AppData/Roaming/Mozilla/Firefox/Profiles/" + profilePath + "/cookies.sqlite";
-                // Remove duplicate Profiles/ if present
-                sqlitePath = sqlitePath.replace("Profiles/Profiles/", "Profiles/");
-                logger.info("Trying cookies.sqlite at: {}", sqlitePath);
-                java.nio.file.Path tempCopy = null;
-                try {
-                    Class.forName("org.sqlite.JDBC");
-                    // Copy to temp file to avoid lock issues
-                    tempCopy = java.nio.file.Files.createTempFile("cookies", ".sqlite");
-                    tempCopy.toFile().deleteOnExit();
-                    java.nio.file.Files.copy(java.nio.file.Paths.get(sqlitePath), tempCopy, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
-                    try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + tempCopy.toString())) {
-                        String sql = "SELECT name, value FROM moz_cookies WHERE host LIKE '%reddit.com'";
-                        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
-                            StringBuilder cookieStr = new StringBuilder();
-                            boolean found = false;
-                            while (rs.next()) {
-                                String name = rs.getString("name");
-                                String value = rs.getString("value");
-                                if (cookieStr.length() > 0) cookieStr.append("; ");
-                                cookieStr.append(name).append("=").append(value);
-                                found = true;
-                            }
-                            if (found) {
-                                logger.info("Found Reddit cookies in profile {}: {}", profilePath, cookieStr.length() > 16 ? cookieStr.substring(0,8)+"..."+cookieStr.substring(cookieStr.length()-8) : cookieStr);
-                                return cookieStr.toString();
-                            }
-                        }
-                    }
-                } catch (Exception e) {
-                    logger.warn("Failed to read cookies from profile {}: {}", profilePath, e.getMessage());
-                } finally {
-                    if (tempCopy != null) {
-                        try {
-                            java.nio.file.Files.deleteIfExists(tempCopy);
-                        } catch (IOException cleanupException) {
-                            logger.debug("Unable to delete temporary Firefox cookie copy", cleanupException);
-                        }
-                    }
-                }
-            }
-        } catch (Exception e) {
-            logger.warn("Error reading Firefox profiles.ini: {}", e.getMessage());
-        }
-        return null;
+        return FirefoxCookieUtils.toCookieHeader(FirefoxCookieUtils.readCookies(List.of("%reddit.com")));
     }
 
     private static final Logger logger = LogManager.getLogger(RedditRipper.class);
@@ -143,10 +86,17 @@ public class RedditRipper extends AlbumRipper {
 
     private static final String REDDIT_USER_AGENT = "RipMe:github.com/Lazidev/ripme:" + UpdateUtils.getThisJarVersion() + " (by /u/metaprime and /u/ineedmorealts)";
 
+    // Starting delay between requests to reddit's API
     private static final int SLEEP_TIME = 2000;
     private static final int RETRY_DELAY_SECONDS = 20;
+    // Fields of listing pages read by getAndParseAndReturnNext() and parseJsonChild()
+    private static final Set<String> LISTING_FIELDS = new HashSet<>(Arrays.asList("after", "score", "body", "id",
+            "is_self", "selftext", "title", "gallery_data", "media_metadata", "url", "name", "stickied", "pinned"));
+
+    // A subreddit listing, with its sort if any
+    private static final Pattern SUBREDDIT_SORT =
+            Pattern.compile("^/r/([^/]+)(?:/(?:hot|best|new|rising|top|controversial))?/?$");
 
-    private long lastRequestTime = 0;
     private final int maxDownloads = Utils.getConfigInteger("maxdownloads", -1);
     private final DownloadLimitTracker downloadLimitTracker = new DownloadLimitTracker(maxDownloads);
     private boolean maxDownloadLimitReached = false;
@@ -160,6 +110,11 @@ public class RedditRipper extends AlbumRipper {
         return url.getHost().endsWith(DOMAIN);
     }
 
+    @Override
+    protected double getRequestBudget() {
+        return 1000.0 / SLEEP_TIME;
+    }
+
     @Override
     public URL sanitizeURL(URL url) throws MalformedURLException, URISyntaxException {
         String u = url.toExternalForm();
@@ -167,14 +122,22 @@ public class RedditRipper extends AlbumRipper {
         return new URI(u).toURL();
     }
 
-    private URL getJsonURL(URL url) throws MalformedURLException, URISyntaxException {
+    URL getJsonURL(URL url) throws MalformedURLException, URISyntaxException {
         Pattern p = Pattern.compile("^https?://[a-zA-Z0-9.]{0,4}reddit\\.com/gallery/([a-zA-Z0-9]+).*$");
         Matcher m = p.matcher(url.toExternalForm());
         if (m.matches()) {
             return new URI("https://reddit.com/" + m.group(m.groupCount()) + ".json").toURL();
         }
 
-        String result = url.getProtocol() + "://" + url.getHost() + url.getPath() + ".json";
+        String path = url.getPath();
+        if (isWatching()) {
+            // Watch marks need a newest-first listing, and the default hot sort is not one
+            Matcher sort = SUBREDDIT_SORT.matcher(path);
+            if (sort.matches()) {
+                path = "/r/" + sort.group(1) + "/new";
+            }
+        }
+        String result = url.getProtocol() + "://" + url.getHost() + path + ".json";
         if (url.getQuery() != null) {
             result += "?" + url.getQuery();
         }
@@ -205,7 +168,7 @@ public class RedditRipper extends AlbumRipper {
                     break;
                 }
 
-                if (jsonURL == null || isThisATest() || isStopped()) {
+                if (jsonURL == null || isThisATest() || isStopped() || isWatchMarkReached()) {
                     break;
                 }
             }
@@ -305,7 +268,7 @@ public class RedditRipper extends AlbumRipper {
             maxDownloadLimitReached = true;
             return null;
         }
-        JSONArray jsonArray = getJsonArrayFromURL(url), children;
+        JSONArray jsonArray = getListingFromURL(url), children;
         JSONObject json, data;
         URL nextURL = null;
         for (int i = 0; i < jsonArray.length(); i++) {
@@ -332,6 +295,10 @@ public class RedditRipper extends AlbumRipper {
                         maxDownloadLimitReached = true;
                         break;
                     }
+                    if (reachedWatchMark(children.getJSONObject(j))) {
+                        logger.info("Reached posts seen by the previous watch poll");
+                        break;
+                    }
                     parseJsonChild(children.getJSONObject(j));
 
                     if (downloadLimitTracker.isLimitReached()) {
@@ -364,14 +331,34 @@ public class RedditRipper extends AlbumRipper {
                 nextURL = new URI(nextURLString).toURL();
             }
         }
+        return nextURL;
+    }
 
-        // Wait to avoid rate-limiting against reddit's API
-        try {
-            Thread.sleep(2000);
-        } catch (InterruptedException e) {
-            logger.warn("Interrupted while sleeping", e);
+    /**
+     * Subreddits are watched by /new, and user pages list newest first unless sorted otherwise.
+     * Posts and searches are not.
+     */
+    @Override
+    protected boolean hasNewestFirstListing() {
+        String path = url.getPath();
+        String query = url.getQuery() == null ? "" : url.getQuery();
+        if (SUBREDDIT_SORT.matcher(path).matches()) {
+            return true;
         }
-        return nextURL;
+        return path.startsWith("/user/") && !path.contains("/comments/")
+                && (!query.contains("sort=") || query.contains("sort=new"));
+    }
+
+    /**
+     * Checks a listing item against the previous watch poll. Stickied and pinned posts stay at the
+     * top of the listing whatever their age, so they are neither recorded nor compared as marks.
+     */
+    boolean reachedWatchMark(JSONObject child) {
+        JSONObject data = child.optJSONObject("data");
+        if (data == null || data.optBoolean("stickied") || data.optBoolean("pinned")) {
+            return false;
+        }
+        return reachedWatchMark(data.optString("name"));
     }
 
     /**
@@ -381,18 +368,111 @@ public class RedditRipper extends AlbumRipper {
      * @throws IOException If no response is received from the url
      */
     private JSONArray getJsonArrayFromURL(URL url) throws IOException {
-        // Wait 2 seconds before the next request
-        long timeDiff = System.currentTimeMillis() - lastRequestTime;
-        if (timeDiff < SLEEP_TIME) {
-            try {
-                Thread.sleep(SLEEP_TIME - timeDiff);
-            } catch (InterruptedException e) {
-                logger.warn("[!] Interrupted while waiting to load next page", e);
-                return new JSONArray();
+        String jsonString = Http.getWith429Retry(url, 5, RETRY_DELAY_SECONDS, REDDIT_USER_AGENT, getRequestHeaders());
+
+        Object jsonObj = new JSONTokener(jsonString).nextValue();
+        JSONArray jsonArray = new JSONArray();
+        if (jsonObj instanceof JSONObject) {
+            jsonArray.put(jsonObj);
+        } else if (jsonObj instanceof JSONArray) {
+            jsonArray = (JSONArray) jsonObj;
+        } else {
+            logger.warn("[!] Unable to parse JSON: " + jsonString);
+        }
+        return jsonArray;
+    }
+
+    /**
+     * Gets a listing page in the same shape as {@link #getJsonArrayFromURL(URL)}, streaming the
+     * response and keeping only the fields the rip uses. Listings carry every field of every post,
+     * and the fields kept are a small part of them.
+     * @param url The url of the desired page
+     * @return The listings on the page, with their children and replies
+     * @throws IOException If no response is received from the url
+     */
+    private JSONArray getListingFromURL(URL url) throws IOException {
+        return Http.getJsonWith429Retry(url, 5, RETRY_DELAY_SECONDS, REDDIT_USER_AGENT, getRequestHeaders(),
+                reader -> readListing(reader, url));
+    }
+
+    /**
+     * Reads a listing page, or the array of listings of a post page, keeping only the fields the
+     * rip uses.
+     *
+     * @param url Where the page came from, for the log.
+     */
+    static JSONArray readListing(JsonStreamReader reader, URL url) throws IOException {
+        JSONArray listings = new JSONArray();
+        JsonStreamReader.Token token = reader.peek();
+        if (token == JsonStreamReader.Token.BEGIN_ARRAY) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                if (reader.peek() == JsonStreamReader.Token.BEGIN_OBJECT) {
+                    listings.put(readThing(reader));
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endArray();
+        } else if (token == JsonStreamReader.Token.BEGIN_OBJECT) {
+            listings.put(readThing(reader));
+        } else {
+            logger.warn("[!] Unable to parse JSON from " + url + ": starts with " + token);
+        }
+        return listings;
+    }
+
+    /**
+     * Reads a listing, post or comment, dropping the fields the rip does not use.
+     */
+    private static JSONObject readThing(JsonStreamReader reader) throws IOException {
+        JSONObject thing = new JSONObject();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("kind")) {
+                thing.put(name, reader.readValue());
+            } else if (name.equals("data") && reader.peek() == JsonStreamReader.Token.BEGIN_OBJECT) {
+                thing.put(name, readThingData(reader));
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return thing;
+    }
+
+    private static JSONObject readThingData(JsonStreamReader reader) throws IOException {
+        JSONObject data = new JSONObject();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            JsonStreamReader.Token token = reader.peek();
+            if (name.equals("children") && token == JsonStreamReader.Token.BEGIN_ARRAY) {
+                JSONArray children = new JSONArray();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    if (reader.peek() == JsonStreamReader.Token.BEGIN_OBJECT) {
+                        children.put(readThing(reader));
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endArray();
+                data.put(name, children);
+            } else if (name.equals("replies") && token == JsonStreamReader.Token.BEGIN_OBJECT) {
+                data.put(name, readThing(reader));
+            } else if (LISTING_FIELDS.contains(name)) {
+                data.put(name, reader.readValue());
+            } else {
+                reader.skipValue();
             }
         }
-        lastRequestTime = System.currentTimeMillis();
+        reader.endObject();
+        return data;
+    }
 
+    private Map<String, String> getRequestHeaders() {
         String redditCookies = getRedditCookiesFromFirefox();
         Map<String,String> headers = new HashMap<>();
         headers.put("Accept", "application/json");
@@ -406,19 +486,7 @@ public class RedditRipper extends AlbumRipper {
         } else {
             logger.warn("No Reddit cookies found; requests will not be authenticated.");
         }
-
-        String jsonString = Http.getWith429Retry(url, 5, RETRY_DELAY_SECONDS, REDDIT_USER_AGENT, headers);
-
-        Object jsonObj = new JSONTokener(jsonString).nextValue();
-        JSONArray jsonArray = new JSONArray();
-        if (jsonObj instanceof JSONObject) {
-            jsonArray.put(jsonObj);
-        } else if (jsonObj instanceof JSONArray) {
-            jsonArray = (JSONArray) jsonObj;
-        } else {
-            logger.warn("[!] Unable to parse JSON: " + jsonString);
-        }
-        return jsonArray;
+        return headers;
     }
 
     /**
@@ -9,12 +9,6 @@ import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.ResultSet;
-import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -31,6 +25,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import com.rarchives.ripme.ripper.AbstractJSONRipper;
+import com.rarchives.ripme.utils.FirefoxCookieUtils;
 import com.rarchives.ripme.utils.Http;
 import com.rarchives.ripme.utils.RipUtils;
 import com.rarchives.ripme.utils.Utils;
@@ -482,81 +477,18 @@ public class RedgifsRipper extends AbstractJSONRipper {
     }
 
     private static String fetchAuthTokenFromRedditCookies() {
-        try {
-            try {
-                Class.forName("org.sqlite.JDBC");
-            } catch (ClassNotFoundException e) {
-                logger.debug("SQLite JDBC driver not available; cannot load Reddit cookies", e);
-                return null;
-            }
-
-            String userHome = System.getProperty("user.home");
-            Path profilesIniPath = Paths.get(userHome, "AppData", "Roaming", "Mozilla", "Firefox", "profiles.ini");
-            if (!Files.exists(profilesIniPath)) {
-                logger.debug("Firefox profiles.ini not found at {}", profilesIniPath);
-                return null;
-            }
-
-            List<String> lines = Files.readAllLines(profilesIniPath, StandardCharsets.UTF_8);
-            List<String> profilePaths = new ArrayList<>();
-            for (String line : lines) {
-                if (line != null) {
-                    String trimmed = line.trim();
-                    if (trimmed.startsWith("Path=")) {
-                        profilePaths.add(trimmed.substring(5));
-                    }
-                }
-            }
-
-            if (profilePaths.isEmpty()) {
-                logger.debug("No Firefox profiles discovered in {}", profilesIniPath);
-                return null;
-            }
-
-            logger.info("Searching Firefox profiles for Reddit auth token: {}", profilePaths);
-
-            for (String profilePath : profilePaths) {
-                String sqlitePathString = userHome + "/AppData/Roaming/Mozilla/Firefox/Profiles/" + profilePath + "/cookies.sqlite";
-                sqlitePathString = sqlitePathString.replace("Profiles/Profiles/", "Profiles/");
-                Path sqlitePath = Paths.get(sqlitePathString);
-                if (!Files.exists(sqlitePath)) {
-                    logger.debug("cookies.sqlite not found for profile {}", profilePath);
-                    continue;
-                }
-
-                Path tempCopy = null;
-                try {
-                    tempCopy = Files.createTempFile("ripme-reddit-cookies", ".sqlite");
-                    tempCopy.toFile().deleteOnExit();
-                    Files.copy(sqlitePath, tempCopy, StandardCopyOption.REPLACE_EXISTING);
-                    try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + tempCopy.toString());
-                         Statement stmt = conn.createStatement();
-                         ResultSet rs = stmt.executeQuery("SELECT name, value FROM moz_cookies WHERE host LIKE '%reddit.com'")) {
-                        Map<String, String> cookies = new HashMap<>();
-                        while (rs.next()) {
-                            cookies.put(rs.getString("name"), rs.getString("value"));
-                        }
+        if (!FirefoxCookieUtils.isSQLiteDriverAvailable()) {
+            logger.debug("SQLite JDBC driver not available; cannot load Reddit cookies");
+            return null;
+        }
 
-                        String token = extractAccessTokenFromCookies(cookies);
-                        if (token != null && !token.isBlank()) {
-                            logger.info("Found Reddit access token in Firefox profile {}", profilePath);
-                            return token;
-                        }
-                    }
-                } catch (Exception e) {
-                    logger.debug("Unable to read Reddit cookies from profile {}", profilePath, e);
-                } finally {
-                    if (tempCopy != null) {
-                        try {
-                            Files.deleteIfExists(tempCopy);
-                        } catch (IOException e) {
-                            logger.debug("Failed to delete temporary Firefox cookie copy", e);
-                        }
-                    }
-                }
+        for (Path profilePath : FirefoxCookieUtils.discoverFirefoxProfiles()) {
+            Map<String, String> cookies = FirefoxCookieUtils.readCookiesFromProfile(profilePath, List.of("%reddit.com"));
+            String token = extractAccessTokenFromCookies(cookies);
+            if (token != null && !token.isBlank()) {
+                logger.info("Found Reddit access token in Firefox profile {}", profilePath.getFileName());
+                return token;
             }
-        } catch (Exception e) {
-            logger.debug("Unexpected error while loading Reddit token from Firefox cookies", e);
         }
 
         return null;
@@ -185,6 +185,12 @@ public class TumblrRipper extends AlbumRipper {
         return url.getHost().endsWith(DOMAIN);
     }
 
+    @Override
+    protected boolean hasNewestFirstListing() {
+        // Posts and likes both come newest first
+        return true;
+    }
+
     /**
      * Sanitizes URL.
      * @param url URL to be sanitized.
@@ -364,7 +370,7 @@ public class TumblrRipper extends AlbumRipper {
                     continue;  // Stop the loop, or `continue;` if you want to skip just this page
                 }
 
-                if (!handleJSON(json)) {
+                if (!handleJSON(json, mediaType)) {
                     // Returns false if an error occurs and we should stop.
                     break;
                 }
@@ -384,7 +390,7 @@ public class TumblrRipper extends AlbumRipper {
         waitForThreads();
     }
 
-    private boolean handleJSON(JSONObject json) {
+    private boolean handleJSON(JSONObject json, String listing) {
         JSONArray posts, photos;
         JSONObject post, photo;
         Pattern p;
@@ -409,6 +415,12 @@ public class TumblrRipper extends AlbumRipper {
 
         for (int i = 0; i < posts.length(); i++) {
             post = posts.getJSONObject(i);
+            // Pinned posts come first whatever their age, so they are not watch marks
+            if (!post.optBoolean("is_pinned")
+                    && reachedWatchMark(listing, post.optString("id_string", post.optString("id")))) {
+                logger.info("Reached {} posts seen by the previous watch poll", listing);
+                return false;
+            }
             String date = post.getString("date");
             if (post.has("photos")) {
                 photos = post.getJSONArray("photos");
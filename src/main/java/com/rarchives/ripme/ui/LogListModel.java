@@ -0,0 +1,256 @@
+package com.rarchives.ripme.ui;
+
+import java.awt.Color;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import javax.swing.AbstractListModel;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * List model for the GUI log, keeping at most a fixed number of lines in a ring buffer.
+ * <p>
+ * The oldest lines are dropped once the buffer is full. A filter on level and source (the ripper
+ * host) is applied through an index of matching line positions, so filtering never copies lines.
+ * Optionally every line is also appended to a file, which then holds the complete history.
+ * <p>
+ * Like other Swing models, it must only be used on the event dispatch thread.
+ */
+public class LogListModel extends AbstractListModel<LogListModel.Line> {
+
+    private static final Logger logger = LogManager.getLogger(LogListModel.class);
+
+    public enum Level {
+        INFO, WARN, ERROR
+    }
+
+    public static class Line {
+        private final String text;
+        private final Color color;
+        private final Level level;
+        private final String source;
+
+        public Line(String text, Color color, Level level, String source) {
+            this.text = text;
+            this.color = color;
+            this.level = level;
+            this.source = source;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public Color getColor() {
+            return color;
+        }
+
+        public Level getLevel() {
+            return level;
+        }
+
+        /**
+         * @return The ripper host the line belongs to, or null if it is not tied to a ripper.
+         */
+        public String getSource() {
+            return source;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    private final Line[] lines;
+    // Number of lines appended so far; line n is stored at lines[n % lines.length] while it is kept.
+    private long total = 0;
+
+    private Level minLevel = Level.INFO;
+    private String sourceFilter = null;
+    // Positions of the kept lines that pass the filter, in a circular buffer. Unused without a filter.
+    private long[] matches = null;
+    private int matchHead = 0;
+    private int matchCount = 0;
+
+    private BufferedWriter spillWriter = null;
+
+    /**
+     * @param maxLines Maximum number of lines kept in memory.
+     */
+    public LogListModel(int maxLines) {
+        lines = new Line[Math.max(1, maxLines)];
+    }
+
+    public int getCapacity() {
+        return lines.length;
+    }
+
+    private boolean isFiltered() {
+        return matches != null;
+    }
+
+    private boolean accepts(Line line) {
+        return line.level.compareTo(minLevel) >= 0
+                && (sourceFilter == null || sourceFilter.equals(line.source));
+    }
+
+    private long firstKept() {
+        return Math.max(0, total - lines.length);
+    }
+
+    private Line lineAt(long position) {
+        return lines[(int) (position % lines.length)];
+    }
+
+    @Override
+    public int getSize() {
+        return isFiltered() ? matchCount : (int) (total - firstKept());
+    }
+
+    @Override
+    public Line getElementAt(int index) {
+        if (isFiltered()) {
+            return lineAt(matches[(matchHead + index) % matches.length]);
+        }
+        return lineAt(firstKept() + index);
+    }
+
+    public void append(Line line) {
+        append(List.of(line));
+    }
+
+    /**
+     * Appends lines, dropping the oldest ones beyond the capacity, and notifies listeners once.
+     */
+    public void append(List<Line> newLines) {
+        if (newLines.isEmpty()) {
+            return;
+        }
+        int oldSize = getSize();
+        int removed = 0;
+        for (Line line : newLines) {
+            if (total >= lines.length) {
+                long evicted = total - lines.length;
+                if (!isFiltered()) {
+                    removed++;
+                } else if (matchCount > 0 && matches[matchHead] == evicted) {
+                    matchHead = (matchHead + 1) % matches.length;
+                    matchCount--;
+                    removed++;
+                }
+            }
+            lines[(int) (total % lines.length)] = line;
+            if (isFiltered() && accepts(line)) {
+                matches[(matchHead + matchCount) % matches.length] = total;
+                matchCount++;
+            }
+            total++;
+        }
+        spill(newLines);
+
+        int newSize = getSize();
+        if (removed > oldSize) {
+            // More lines than the capacity arrived at once; none of the old rows survived.
+            if (oldSize > 0) {
+                fireIntervalRemoved(this, 0, oldSize - 1);
+            }
+            if (newSize > 0) {
+                fireIntervalAdded(this, 0, newSize - 1);
+            }
+            return;
+        }
+        if (removed > 0) {
+            fireIntervalRemoved(this, 0, removed - 1);
+        }
+        if (newSize > oldSize - removed) {
+            fireIntervalAdded(this, oldSize - removed, newSize - 1);
+        }
+    }
+
+    /**
+     * Shows only lines at or above {@code minLevel} from {@code source}.
+     *
+     * @param minLevel Lowest level to show.
+     * @param source   Ripper host to show lines for, or null for all lines.
+     */
+    public void setFilter(Level minLevel, String source) {
+        int oldSize = getSize();
+        this.minLevel = minLevel == null ? Level.INFO : minLevel;
+        this.sourceFilter = source;
+        if (this.minLevel == Level.INFO && source == null) {
+            matches = null;
+        } else {
+            matches = new long[lines.length];
+            matchHead = 0;
+            matchCount = 0;
+            for (long position = firstKept(); position < total; position++) {
+                if (accepts(lineAt(position))) {
+                    matches[matchCount++] = position;
+                }
+            }
+        }
+        if (oldSize > 0) {
+            fireIntervalRemoved(this, 0, oldSize - 1);
+        }
+        int newSize = getSize();
+        if (newSize > 0) {
+            fireIntervalAdded(this, 0, newSize - 1);
+        }
+    }
+
+    /**
+     * Starts appending every line to {@code file}, or stops if it is null.
+     */
+    public void setSpillFile(Path file) {
+        closeSpillFile();
+        if (file == null) {
+            return;
+        }
+        try {
+            spillWriter = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            logger.warn("Unable to open log file {}: {}", file, e.getMessage());
+        }
+    }
+
+    private void spill(List<Line> newLines) {
+        if (spillWriter == null) {
+            return;
+        }
+        try {
+            for (Line line : newLines) {
+                spillWriter.write(line.level.name());
+                if (line.source != null) {
+                    spillWriter.write(" [" + line.source + "]");
+                }
+                spillWriter.write(" " + line.text);
+                spillWriter.newLine();
+            }
+            spillWriter.flush();
+        } catch (IOException e) {
+            logger.warn("Unable to write to log file, no longer saving the full log: {}", e.getMessage());
+            closeSpillFile();
+        }
+    }
+
+    public void closeSpillFile() {
+        if (spillWriter == null) {
+            return;
+        }
+        try {
+            spillWriter.close();
+        } catch (IOException e) {
+            logger.warn("Unable to close log file: {}", e.getMessage());
+        }
+        spillWriter = null;
+    }
+}
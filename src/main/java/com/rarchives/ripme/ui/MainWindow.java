@@ -33,7 +33,6 @@ import java.util.MissingResourceException;
 import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.function.BiConsumer;
 import java.util.stream.Stream;
 
@@ -63,6 +62,7 @@ import org.json.JSONException;
 import com.rarchives.ripme.ripper.AbstractRipper;
 import com.rarchives.ripme.uiUtils.ContextActionProtections;
 import com.rarchives.ripme.utils.RipUtils;
+import com.rarchives.ripme.utils.ThreadUtils;
 import com.rarchives.ripme.utils.Utils;
 
 import org.apache.commons.io.IOUtils;
@@ -107,7 +107,14 @@ public final class MainWindow implements Runnable, RipStatusHandler {
     private final Set<AbstractRipper> finishedRippers =
             Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
     private final Set<String> activeDomains = Collections.newSetFromMap(new ConcurrentHashMap<>());
-    private final ExecutorService ripExecutor = Executors.newCachedThreadPool();
+    private final ExecutorService ripExecutor = ThreadUtils.newThreadPerTaskExecutor("ripme-rip-");
+    private final StatusEventBus<StatusEvent> statusEvents = new StatusEventBus<>(
+            MainWindow::progressEventKey, this::handleEvents, SwingUtilities::invokeLater,
+            Utils.getConfigInteger("ui.refresh_rate", 20));
+    // Log lines appended while a batch of status events is handled, flushed once at the end.
+    private List<LogListModel.Line> pendingLogLines = null;
+    // Host of the ripper whose status event is being handled, used to tag its log lines.
+    private String currentLogSource = null;
     private BiConsumer<String, String> ripperLauncher = this::launchRipper;
 
     private static JFrame mainFrame;
@@ -126,7 +133,14 @@ public final class MainWindow implements Runnable, RipStatusHandler {
     // Log
     private static JButton optionLog;
     private static JPanel logPanel;
-    private static JTextPane logText;
+    private static JList<LogListModel.Line> logList;
+    private static JScrollPane logListScroll;
+    private static LogListModel logModel;
+    private static JComboBox<String> logLevelFilter;
+    private static JComboBox<String> logSourceFilter;
+    private static final String[] LOG_LEVEL_FILTERS = {"All messages", "Warnings and errors", "Errors only"};
+    private static final String ALL_LOG_SOURCES = "All rippers";
+    private final Set<String> logSources = new HashSet<>();
 
     // History
     private static JButton optionHistory;
@@ -930,15 +944,58 @@ public final class MainWindow implements Runnable, RipStatusHandler {
 
         logPanel = new JPanel(new GridBagLayout());
         logPanel.setBorder(emptyBorder);
-        logText = new JTextPane();
-        logText.setEditable(false);
-        JScrollPane logTextScroll = new JScrollPane(logText);
-        logTextScroll.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_ALWAYS);
-        logTextScroll.setPreferredSize(new Dimension(300, 250));
+        logModel = new LogListModel(Utils.getConfigInteger("log.max_lines", 10000));
+        if (Utils.getConfigBoolean("log.spill_to_disk", false)) {
+            logModel.setSpillFile(Paths.get(Utils.getConfigDir(), "gui_log.txt"));
+        }
+        logList = new JList<LogListModel.Line>(logModel) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public boolean getScrollableTracksViewportWidth() {
+                return true;
+            }
+
+            @Override
+            public String getToolTipText(MouseEvent event) {
+                int index = locationToIndex(event.getPoint());
+                return index < 0 ? null : getModel().getElementAt(index).getText();
+            }
+        };
+        // Fixed cell sizes let the list lay out and paint only the visible rows.
+        logList.setFixedCellHeight(logList.getFontMetrics(logList.getFont()).getHeight() + 2);
+        logList.setFixedCellWidth(1);
+        logList.setToolTipText("");
+        logList.setCellRenderer(new DefaultListCellRenderer() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+                if (!isSelected && value instanceof LogListModel.Line) {
+                    setForeground(((LogListModel.Line) value).getColor());
+                }
+                return this;
+            }
+        });
+        logListScroll = new JScrollPane(logList);
+        logListScroll.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_ALWAYS);
+        logListScroll.setPreferredSize(new Dimension(300, 250));
+        logLevelFilter = new JComboBox<>(LOG_LEVEL_FILTERS);
+        logSourceFilter = new JComboBox<>(new String[]{ALL_LOG_SOURCES});
+        logLevelFilter.addActionListener(e -> applyLogFilter());
+        logSourceFilter.addActionListener(e -> applyLogFilter());
+        JPanel logFilterPanel = new JPanel(new GridLayout(1, 2));
+        logFilterPanel.add(logLevelFilter);
+        logFilterPanel.add(logSourceFilter);
         logPanel.setVisible(false);
+        logPanel.add(logFilterPanel, gbc);
+        gbc.gridy = 1;
         gbc.fill = GridBagConstraints.BOTH;
         gbc.weighty = 1;
-        logPanel.add(logTextScroll, gbc);
+        logPanel.add(logListScroll, gbc);
+        gbc.gridy = 0;
         gbc.fill = GridBagConstraints.HORIZONTAL;
         gbc.weighty = 0;
 
@@ -1441,7 +1498,7 @@ public final class MainWindow implements Runnable, RipStatusHandler {
         GridBagConstraints gbc = newConfigGridBagConstraints();
         int row = 0;
         row = addConfigLabelFieldRow(panel, gbc, row, "page.timeout", configField("page.timeout", 5000));
-        row = addConfigLabelFieldRow(panel, gbc, row, "download.max_size", configLongField("download.max_size", 104857600L));
+        row = addConfigLabelFieldRow(panel, gbc, row, "download.max_size", configLongField("download.max_size", 0L));
         row = addConfigLabelFieldRow(panel, gbc, row, "maxdownloads", configField("maxdownloads", 250));
         row = addConfigCheckBoxPairRow(panel, gbc, row, "error.skip404", false, "download.allow_duplicates", false);
         row = addConfigLabelFieldRow(panel, gbc, row, "errors.consecutive_http.failures",
@@ -2257,18 +2314,61 @@ public final class MainWindow implements Runnable, RipStatusHandler {
      * @param color the color of the line
      */
     private void appendLog(final String text, final Color color) {
-        SimpleAttributeSet sas = new SimpleAttributeSet();
-        StyleConstants.setForeground(sas, color);
-        StyledDocument sd = logText.getStyledDocument();
-        try {
-            synchronized (this) {
-                sd.insertString(sd.getLength(), text + "\n", sas);
+        if (!SwingUtilities.isEventDispatchThread()) {
+            LogListModel.Line line = new LogListModel.Line(text, color, logLevelFor(color), null);
+            SwingUtilities.invokeLater(() -> appendLogLines(Collections.singletonList(line)));
+            return;
+        }
+        LogListModel.Line line = new LogListModel.Line(text, color, logLevelFor(color), currentLogSource);
+        if (pendingLogLines != null) {
+            pendingLogLines.add(line);
+            return;
+        }
+        appendLogLines(Collections.singletonList(line));
+    }
+
+    private static LogListModel.Level logLevelFor(Color color) {
+        if (Color.RED.equals(color)) {
+            return LogListModel.Level.ERROR;
+        }
+        if (Color.ORANGE.equals(color)) {
+            return LogListModel.Level.WARN;
+        }
+        return LogListModel.Level.INFO;
+    }
+
+    /**
+     * Writes the log lines collected while handling a batch of status events.
+     */
+    private void flushPendingLog() {
+        List<LogListModel.Line> lines = pendingLogLines;
+        pendingLogLines = null;
+        if (lines != null && !lines.isEmpty()) {
+            appendLogLines(lines);
+        }
+    }
+
+    private void appendLogLines(List<LogListModel.Line> lines) {
+        JScrollBar scrollBar = logListScroll.getVerticalScrollBar();
+        boolean atBottom = scrollBar.getValue() + scrollBar.getVisibleAmount()
+                >= scrollBar.getMaximum() - logList.getFixedCellHeight();
+        logModel.append(lines);
+        for (LogListModel.Line line : lines) {
+            if (line.getSource() != null && logSources.add(line.getSource())) {
+                logSourceFilter.addItem(line.getSource());
             }
-        } catch (BadLocationException e) {
-            LOGGER.warn(e.getMessage());
         }
+        // Only follow new lines if the user has not scrolled up to read older ones.
+        int size = logModel.getSize();
+        if (atBottom && size > 0) {
+            logList.ensureIndexIsVisible(size - 1);
+        }
+    }
 
-        logText.setCaretPosition(sd.getLength());
+    private void applyLogFilter() {
+        LogListModel.Level level = LogListModel.Level.values()[Math.max(0, logLevelFilter.getSelectedIndex())];
+        Object source = logSourceFilter.getSelectedItem();
+        logModel.setFilter(level, source == null || ALL_LOG_SOURCES.equals(source) ? null : source.toString());
     }
 
     /**
@@ -2637,7 +2737,7 @@ public final class MainWindow implements Runnable, RipStatusHandler {
         }
     }
 
-    private class StatusEvent implements Runnable {
+    private static class StatusEvent {
         private final AbstractRipper ripper;
         private final RipStatusMessage msg;
 
@@ -2645,13 +2745,37 @@ public final class MainWindow implements Runnable, RipStatusHandler {
             this.ripper = ripper;
             this.msg = msg;
         }
+    }
 
-        public void run() {
-            handleEvent(this);
+    /**
+     * Byte progress is only shown as the latest value, so those events are collapsed per ripper.
+     */
+    private static Object progressEventKey(StatusEvent evt) {
+        RipStatusMessage.STATUS status = evt.msg.getStatus();
+        if (status == RipStatusMessage.STATUS.COMPLETED_BYTES || status == RipStatusMessage.STATUS.TOTAL_BYTES) {
+            return Arrays.asList(evt.ripper, status);
+        }
+        return null;
+    }
+
+    private void handleEvents(List<StatusEvent> events) {
+        pendingLogLines = new ArrayList<>();
+        try {
+            for (StatusEvent evt : events) {
+                currentLogSource = evt.ripper.getHost();
+                try {
+                    handleEvent(evt);
+                } catch (RuntimeException e) {
+                    LOGGER.error("Failed to handle status event " + evt.msg.getStatus(), e);
+                }
+            }
+        } finally {
+            currentLogSource = null;
+            flushPendingLog();
         }
     }
 
-    private synchronized void handleEvent(StatusEvent evt) {
+    private void handleEvent(StatusEvent evt) {
         RipStatusMessage msg = evt.msg;
         if (evt.ripper.isStopped() && msg.getStatus() != RipStatusMessage.STATUS.RIP_COMPLETE) {
             return;
@@ -2894,8 +3018,7 @@ public final class MainWindow implements Runnable, RipStatusHandler {
     }
 
     public void update(AbstractRipper ripper, RipStatusMessage message) {
-        StatusEvent event = new StatusEvent(ripper, message);
-        SwingUtilities.invokeLater(event);
+        statusEvents.publish(new StatusEvent(ripper, message));
     }
 
     public static void ripAlbumStatic(String url) {
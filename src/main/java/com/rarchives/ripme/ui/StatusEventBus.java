@@ -0,0 +1,119 @@
+package com.rarchives.ripme.ui;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Batches status events from ripper threads and hands them to a consumer at a bounded rate.
+ * <p>
+ * Events for which {@code coalesceKey} returns a key (byte progress, for instance) are collapsed:
+ * only the latest event per key is kept until the next delivery. All other events are delivered
+ * in the order they were published. Each delivery runs on {@code deliveryExecutor} (the EDT for
+ * the GUI) with every event gathered since the previous one; coalesced events come first, followed
+ * by the ordered events. At most {@code maxDeliveriesPerSecond} deliveries happen per second, and
+ * nothing is scheduled while no events arrive.
+ */
+public class StatusEventBus<E> {
+
+    private static final Logger logger = LogManager.getLogger(StatusEventBus.class);
+
+    private static final ScheduledExecutorService TIMER = newTimer();
+
+    private final ConcurrentLinkedQueue<E> ordered = new ConcurrentLinkedQueue<>();
+    private final Map<Object, E> coalesced = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final Function<E, Object> coalesceKey;
+    private final Consumer<List<E>> consumer;
+    private final Executor deliveryExecutor;
+    private final long frameNanos;
+    private volatile long lastDelivery;
+
+    /**
+     * @param coalesceKey            Returns the key under which an event is collapsed, or null if the
+     *                               event must be delivered as-is.
+     * @param consumer               Receives each batch of events.
+     * @param deliveryExecutor       Executor the consumer runs on.
+     * @param maxDeliveriesPerSecond Maximum number of batches delivered per second.
+     */
+    public StatusEventBus(Function<E, Object> coalesceKey, Consumer<List<E>> consumer,
+                          Executor deliveryExecutor, int maxDeliveriesPerSecond) {
+        this.coalesceKey = coalesceKey;
+        this.consumer = consumer;
+        this.deliveryExecutor = deliveryExecutor;
+        this.frameNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, maxDeliveriesPerSecond);
+        this.lastDelivery = System.nanoTime() - frameNanos;
+    }
+
+    private static ScheduledExecutorService newTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, task -> {
+            Thread thread = new Thread(task, "ripme-status-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    /**
+     * Queues an event for the next delivery. Safe to call from any thread.
+     */
+    public void publish(E event) {
+        Object key = coalesceKey.apply(event);
+        if (key != null) {
+            coalesced.put(key, event);
+        } else {
+            ordered.add(event);
+        }
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        long delay = lastDelivery + frameNanos - System.nanoTime();
+        if (delay <= 0) {
+            deliveryExecutor.execute(this::flush);
+        } else {
+            TIMER.schedule(() -> deliveryExecutor.execute(this::flush), delay, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void flush() {
+        lastDelivery = System.nanoTime();
+        // Cleared before draining, so an event published during the drain schedules the next frame.
+        flushScheduled.set(false);
+        List<E> batch = new ArrayList<>();
+        for (Object key : coalesced.keySet()) {
+            E event = coalesced.remove(key);
+            if (event != null) {
+                batch.add(event);
+            }
+        }
+        E event;
+        while ((event = ordered.poll()) != null) {
+            batch.add(event);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            consumer.accept(batch);
+        } catch (RuntimeException e) {
+            logger.error("Failed to handle status events", e);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.rarchives.ripme.utils;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reusable direct buffers for copying downloads to disk.
+ * <p>
+ * Downloads reuse these instead of allocating a large buffer each. The buffers are direct, which
+ * are expensive to allocate, so at most {@code download.buffer_pool_size} of them are created
+ * (default 16, of {@code download.buffer_kb} KiB each, default 256) and handed from one download
+ * to the next. When all of them are in use, {@link #acquire()} returns a heap buffer instead of
+ * waiting.
+ */
+public class BufferPool {
+
+    private static final BufferPool INSTANCE = new BufferPool(
+            Utils.getConfigInteger("download.buffer_kb", 256) * 1024,
+            Utils.getConfigInteger("download.buffer_pool_size", 16));
+
+    private final int bufferSize;
+    private final int maxBuffers;
+    private final BlockingQueue<ByteBuffer> free;
+    private final AtomicInteger created = new AtomicInteger();
+
+    public static BufferPool getInstance() {
+        return INSTANCE;
+    }
+
+    public BufferPool(int bufferSize, int maxBuffers) {
+        this.bufferSize = Math.max(bufferSize, 4096);
+        this.maxBuffers = Math.max(maxBuffers, 1);
+        this.free = new ArrayBlockingQueue<>(this.maxBuffers);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return A cleared buffer that must be given back with {@link #release(ByteBuffer)}.
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = free.poll();
+        if (buffer != null) {
+            buffer.clear();
+            return buffer;
+        }
+        if (created.incrementAndGet() <= maxBuffers) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        created.decrementAndGet();
+        return ByteBuffer.allocate(bufferSize);
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer != null && buffer.isDirect() && buffer.capacity() == bufferSize) {
+            buffer.clear();
+            free.offer(buffer);
+        }
+    }
+
+    /**
+     * @return Direct buffers created so far.
+     */
+    public int getCreated() {
+        return Math.min(created.get(), maxBuffers);
+    }
+}
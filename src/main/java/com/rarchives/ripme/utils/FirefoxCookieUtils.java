@@ -12,21 +12,46 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 /**
  * Utility helpers for discovering Firefox profiles and reading cookies from them.
+ * <p>
+ * The cookies of each profile that match the host patterns asked for so far are read into a
+ * process-wide snapshot, indexed by host and domain. The snapshot is read again when a new pattern
+ * is asked for, or when {@code cookies.sqlite} or its write-ahead log has changed. Firefox writes
+ * to the log on most cookie changes while it runs, so that is checked at most every
+ * {@code firefox.cookies.recheck_seconds}. Rippers can ask for cookies on every page without
+ * copying and opening the database each time.
  */
 public final class FirefoxCookieUtils {
     private static final Logger logger = LogManager.getLogger(FirefoxCookieUtils.class);
 
+    private static final Map<Path, CookieSnapshot> SNAPSHOTS = new ConcurrentHashMap<>();
+    private static final ReentrantLock snapshotLock = new ReentrantLock();
+    // How long a snapshot is used before the database is checked for changes
+    static volatile long recheckNanos = TimeUnit.SECONDS.toNanos(
+            Utils.getConfigInteger("firefox.cookies.recheck_seconds", 30));
+
+    private static volatile Boolean sqliteDriverAvailable = null;
+    private static volatile String profilesStamp = null;
+    private static volatile Set<Path> cachedProfiles = Collections.emptySet();
+
     private FirefoxCookieUtils() {
         // Utility class
     }
@@ -37,26 +62,30 @@ public final class FirefoxCookieUtils {
      * @return {@code true} if the driver could be loaded; {@code false} otherwise.
      */
     public static boolean isSQLiteDriverAvailable() {
-        try {
-            Class.forName("org.sqlite.JDBC");
-            return true;
-        } catch (ClassNotFoundException e) {
-            logger.debug("SQLite JDBC driver not available", e);
-            return false;
+        Boolean available = sqliteDriverAvailable;
+        if (available == null) {
+            try {
+                Class.forName("org.sqlite.JDBC");
+                available = true;
+            } catch (ClassNotFoundException e) {
+                logger.debug("SQLite JDBC driver not available", e);
+                available = false;
+            }
+            sqliteDriverAvailable = available;
         }
+        return available;
     }
 
     /**
-     * Discovers Firefox profile directories for the current platform.
+     * Discovers Firefox profile directories for the current platform. The result is cached until
+     * one of the {@code profiles.ini} files changes.
      *
      * @return A set of profile paths. The set may be empty if no profiles were found.
      */
     public static Set<Path> discoverFirefoxProfiles() {
-        Set<Path> profilePaths = new LinkedHashSet<>();
-
         String userHome = System.getProperty("user.home");
         if (userHome == null || userHome.isBlank()) {
-            return profilePaths;
+            return new LinkedHashSet<>();
         }
 
         List<Path> iniCandidates = new ArrayList<>();
@@ -64,6 +93,16 @@ public final class FirefoxCookieUtils {
         iniCandidates.add(Paths.get(userHome, "Library", "Application Support", "Firefox", "profiles.ini"));
         iniCandidates.add(Paths.get(userHome, ".mozilla", "firefox", "profiles.ini"));
 
+        StringBuilder stamp = new StringBuilder();
+        for (Path iniPath : iniCandidates) {
+            stamp.append(stampOf(iniPath)).append(';');
+        }
+        String currentStamp = stamp.toString();
+        if (currentStamp.equals(profilesStamp)) {
+            return new LinkedHashSet<>(cachedProfiles);
+        }
+
+        Set<Path> profilePaths = new LinkedHashSet<>();
         for (Path iniPath : iniCandidates) {
             if (!Files.exists(iniPath)) {
                 continue;
@@ -75,9 +114,22 @@ public final class FirefoxCookieUtils {
             }
         }
 
+        cachedProfiles = Collections.unmodifiableSet(new LinkedHashSet<>(profilePaths));
+        profilesStamp = currentStamp;
         return profilePaths;
     }
 
+    /**
+     * @return The modification time and size of a file, or "-" if it does not exist.
+     */
+    private static String stampOf(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis() + ":" + Files.size(file);
+        } catch (IOException e) {
+            return "-";
+        }
+    }
+
     private static Set<Path> readProfilesFromIni(Path iniPath) throws IOException {
         Set<Path> profiles = new LinkedHashSet<>();
         List<String> lines = Files.readAllLines(iniPath, StandardCharsets.UTF_8);
@@ -129,6 +181,9 @@ public final class FirefoxCookieUtils {
 
     /**
      * Reads cookies from the specified Firefox profile.
+     * <p>
+     * Patterns of the form {@code %domain} are answered from the domain index, matching the domain
+     * and its subdomains; other patterns are matched against every host in the profile.
      *
      * @param profilePath       The Firefox profile directory.
      * @param hostLikePatterns  SQL LIKE patterns that should match cookie hosts.
@@ -141,61 +196,249 @@ public final class FirefoxCookieUtils {
             return cookies;
         }
 
+        List<String> patterns = new ArrayList<>();
+        for (String pattern : hostLikePatterns) {
+            patterns.add(pattern.toLowerCase(Locale.ROOT));
+        }
+        CookieSnapshot snapshot = getSnapshot(profilePath, patterns);
+        if (snapshot == null) {
+            return cookies;
+        }
+
+        Set<Cookie> matches = new LinkedHashSet<>();
+        for (String pattern : patterns) {
+            snapshot.collect(pattern, matches);
+        }
+        List<Cookie> sorted = new ArrayList<>(matches);
+        // Keep the most recently used value per name, like ORDER BY lastAccessed DESC did.
+        sorted.sort(Comparator.comparingLong((Cookie cookie) -> cookie.lastAccessed).reversed());
+        for (Cookie cookie : sorted) {
+            cookies.putIfAbsent(cookie.name, cookie.value);
+        }
+        return cookies;
+    }
+
+    /**
+     * Reads cookies from the first discovered Firefox profile that has any matching ones.
+     *
+     * @param hostLikePatterns SQL LIKE patterns that should match cookie hosts.
+     * @return A map of cookie names to values. The map is empty if no matching cookies were found.
+     */
+    public static Map<String, String> readCookies(List<String> hostLikePatterns) {
+        if (!isSQLiteDriverAvailable()) {
+            return new LinkedHashMap<>();
+        }
+        for (Path profilePath : discoverFirefoxProfiles()) {
+            Map<String, String> cookies = readCookiesFromProfile(profilePath, hostLikePatterns);
+            if (!cookies.isEmpty()) {
+                return cookies;
+            }
+        }
+        return new LinkedHashMap<>();
+    }
+
+    /**
+     * @return The cookies of a profile for at least {@code patterns}, read again only if there are
+     *         new patterns or the database changed since it was last read.
+     */
+    private static CookieSnapshot getSnapshot(Path profilePath, List<String> patterns) {
+        long now = System.nanoTime();
+        CookieSnapshot snapshot = SNAPSHOTS.get(profilePath);
+        if (snapshot != null && snapshot.patterns.containsAll(patterns) && now - snapshot.checked < recheckNanos) {
+            return snapshot;
+        }
         Path sqlitePath = profilePath.resolve("cookies.sqlite");
+        Path walPath = profilePath.resolve("cookies.sqlite-wal");
+        String stamp = stampOf(sqlitePath) + ";" + stampOf(walPath);
+        if (snapshot != null && snapshot.patterns.containsAll(patterns) && snapshot.stamp.equals(stamp)) {
+            snapshot.checked = now;
+            return snapshot;
+        }
         if (!Files.exists(sqlitePath)) {
-            return cookies;
+            SNAPSHOTS.remove(profilePath);
+            return null;
         }
+        snapshotLock.lock();
+        try {
+            snapshot = SNAPSHOTS.get(profilePath);
+            if (snapshot != null && snapshot.patterns.containsAll(patterns) && snapshot.stamp.equals(stamp)) {
+                return snapshot;
+            }
+            // Keep the patterns asked for before, so they do not each cause another reload
+            Set<String> wanted = new LinkedHashSet<>(patterns);
+            if (snapshot != null) {
+                wanted.addAll(snapshot.patterns);
+            }
+            List<Cookie> cookies = loadCookies(profilePath, sqlitePath, walPath, wanted);
+            if (cookies == null) {
+                return snapshot;
+            }
+            snapshot = new CookieSnapshot(stamp, wanted, cookies, now);
+            SNAPSHOTS.put(profilePath, snapshot);
+            logger.debug("Loaded {} cookies from Firefox profile {}", cookies.size(), profilePath.getFileName());
+            return snapshot;
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
 
-        Path tempCopy = null;
+    /**
+     * @return Number of cookies held for a profile.
+     */
+    static int snapshotSize(Path profilePath) {
+        CookieSnapshot snapshot = SNAPSHOTS.get(profilePath);
+        return snapshot == null ? 0 : snapshot.byHost.values().stream().mapToInt(List::size).sum();
+    }
+
+    /**
+     * Copies the cookie database and its write-ahead log, which Firefox keeps locked, and reads
+     * the cookies whose host matches one of {@code patterns} from the copy.
+     *
+     * @return The cookies, newest first, or null if the database could not be read.
+     */
+    private static List<Cookie> loadCookies(Path profilePath, Path sqlitePath, Path walPath, Set<String> patterns) {
+        Path tempDir = null;
         try {
-            tempCopy = Files.createTempFile("ripme-firefox-cookies", ".sqlite");
-            tempCopy.toFile().deleteOnExit();
+            tempDir = Files.createTempDirectory("ripme-firefox-cookies");
+            Path tempCopy = tempDir.resolve("cookies.sqlite");
             Files.copy(sqlitePath, tempCopy, StandardCopyOption.REPLACE_EXISTING);
+            if (Files.exists(walPath)) {
+                Files.copy(walPath, tempDir.resolve("cookies.sqlite-wal"), StandardCopyOption.REPLACE_EXISTING);
+            }
 
-            String sql = buildCookieQuery(hostLikePatterns.size());
+            String where = String.join(" OR ", Collections.nCopies(patterns.size(), "host LIKE ?"));
+            List<Cookie> cookies = new ArrayList<>();
             try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + tempCopy);
-                    PreparedStatement stmt = conn.prepareStatement(sql)) {
-                for (int i = 0; i < hostLikePatterns.size(); i++) {
-                    stmt.setString(i + 1, hostLikePatterns.get(i));
+                    PreparedStatement stmt = conn.prepareStatement("SELECT host, name, value, lastAccessed"
+                            + " FROM moz_cookies WHERE " + where + " ORDER BY lastAccessed DESC")) {
+                int index = 1;
+                for (String pattern : patterns) {
+                    stmt.setString(index++, pattern);
                 }
-
                 try (ResultSet rs = stmt.executeQuery()) {
                     while (rs.next()) {
+                        String host = rs.getString("host");
                         String name = rs.getString("name");
                         String value = rs.getString("value");
-                        if (name == null || name.isBlank() || value == null || value.isEmpty()) {
+                        if (host == null || name == null || name.isBlank() || value == null || value.isEmpty()) {
                             continue;
                         }
-                        // Query orders by lastAccessed DESC; keep the newest value per name.
-                        cookies.putIfAbsent(name, value);
+                        cookies.add(new Cookie(host.toLowerCase(Locale.ROOT), name, value, rs.getLong("lastAccessed")));
                     }
                 }
             }
+            return cookies;
         } catch (SQLException | IOException e) {
             logger.debug("Unable to read Firefox cookies from profile {}", profilePath, e);
+            return null;
         } finally {
-            if (tempCopy != null) {
-                try {
-                    Files.deleteIfExists(tempCopy);
-                } catch (IOException e) {
-                    logger.debug("Failed to delete temporary Firefox cookie copy", e);
+            if (tempDir != null) {
+                deleteTempDir(tempDir);
+            }
+        }
+    }
+
+    private static void deleteTempDir(Path tempDir) {
+        try {
+            for (String name : List.of("cookies.sqlite", "cookies.sqlite-wal", "cookies.sqlite-shm",
+                    "cookies.sqlite-journal")) {
+                Files.deleteIfExists(tempDir.resolve(name));
+            }
+            Files.deleteIfExists(tempDir);
+        } catch (IOException e) {
+            logger.debug("Failed to delete temporary Firefox cookie copy", e);
+        }
+    }
+
+    private static final class Cookie {
+        final String host;
+        final String name;
+        final String value;
+        final long lastAccessed;
+
+        Cookie(String host, String name, String value, long lastAccessed) {
+            this.host = host;
+            this.name = name;
+            this.value = value;
+            this.lastAccessed = lastAccessed;
+        }
+    }
+
+    /**
+     * The cookies of one profile, by host and by every domain the host is in: the cookies of
+     * {@code .old.reddit.com} are found under {@code old.reddit.com}, {@code reddit.com} and
+     * {@code com}.
+     */
+    private static final class CookieSnapshot {
+        final String stamp;
+        // Host patterns the cookies were read for
+        final Set<String> patterns;
+        final Map<String, List<Cookie>> byHost = new HashMap<>();
+        final Map<String, List<Cookie>> byDomain = new HashMap<>();
+        // When the stamp was last compared with the database, in System.nanoTime()
+        volatile long checked;
+
+        CookieSnapshot(String stamp, Set<String> patterns, List<Cookie> cookies, long checked) {
+            this.stamp = stamp;
+            this.patterns = patterns;
+            this.checked = checked;
+            for (Cookie cookie : cookies) {
+                byHost.computeIfAbsent(cookie.host, ignored -> new ArrayList<>()).add(cookie);
+                String domain = cookie.host.startsWith(".") ? cookie.host.substring(1) : cookie.host;
+                while (true) {
+                    byDomain.computeIfAbsent(domain, ignored -> new ArrayList<>()).add(cookie);
+                    int dot = domain.indexOf('.');
+                    if (dot < 0) {
+                        break;
+                    }
+                    domain = domain.substring(dot + 1);
                 }
             }
         }
 
-        return cookies;
+        void collect(String pattern, Set<Cookie> matches) {
+            String suffix = pattern.startsWith("%") ? pattern.substring(1) : null;
+            if (suffix != null && !suffix.isEmpty() && suffix.indexOf('%') < 0 && suffix.indexOf('_') < 0) {
+                List<Cookie> candidates = byDomain.get(suffix.startsWith(".") ? suffix.substring(1) : suffix);
+                if (candidates != null) {
+                    for (Cookie cookie : candidates) {
+                        if (cookie.host.endsWith(suffix)) {
+                            matches.add(cookie);
+                        }
+                    }
+                }
+                return;
+            }
+            Pattern regex = likeToRegex(pattern);
+            for (Map.Entry<String, List<Cookie>> entry : byHost.entrySet()) {
+                if (regex.matcher(entry.getKey()).matches()) {
+                    matches.addAll(entry.getValue());
+                }
+            }
+        }
     }
 
-    private static String buildCookieQuery(int patternCount) {
-        StringBuilder sql = new StringBuilder("SELECT name, value FROM moz_cookies WHERE ");
-        for (int i = 0; i < patternCount; i++) {
-            if (i > 0) {
-                sql.append(" OR ");
+    /**
+     * Converts a SQL LIKE pattern to a regular expression that matches the same strings.
+     */
+    static Pattern likeToRegex(String likePattern) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : likePattern.toCharArray()) {
+            if (c == '%' || c == '_') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '%' ? ".*" : ".");
+            } else {
+                literal.append(c);
             }
-            sql.append("host LIKE ?");
         }
-        sql.append(" ORDER BY lastAccessed DESC");
-        return sql.toString();
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
     }
 
     /**
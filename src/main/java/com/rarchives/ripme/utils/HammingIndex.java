@@ -0,0 +1,115 @@
+package com.rarchives.ripme.utils;
+
+import java.util.Arrays;
+
+/**
+ * A multi-index hash table of 64-bit hashes, for finding the closest hash within a small Hamming
+ * radius without comparing against every entry.
+ * <p>
+ * Each hash is split into four 16-bit blocks, and every block has its own table from block value
+ * to the hashes that contain it. Two hashes at most {@code r} bits apart differ in at most
+ * {@code r / 4} bits of at least one block, so a lookup only has to visit the buckets of each
+ * block value within that many bits of the query's. For the radii used for near-duplicate images
+ * that is a few dozen buckets, against millions of entries. Entries are stored in parallel arrays,
+ * about 24 bytes each. Not thread safe.
+ */
+final class HammingIndex {
+
+    private static final int BLOCKS = 4;
+    private static final int BLOCK_BITS = 16;
+    // Every 16-bit mask, ordered by the number of bits set
+    private static final int[] MASKS = new int[1 << BLOCK_BITS];
+    // Number of masks with at most i bits set
+    private static final int[] MASKS_WITHIN = new int[BLOCK_BITS + 1];
+
+    static {
+        int n = 0;
+        for (int bits = 0; bits <= BLOCK_BITS; bits++) {
+            for (int mask = 0; mask < MASKS.length; mask++) {
+                if (Integer.bitCount(mask) == bits) {
+                    MASKS[n++] = mask;
+                }
+            }
+            MASKS_WITHIN[bits] = n;
+        }
+    }
+
+    private long[] hashes = new long[1024];
+    // First entry of each bucket, and the next entry in the same bucket, per block
+    private final int[][] heads = new int[BLOCKS][1 << BLOCK_BITS];
+    private final int[][] next = new int[BLOCKS][1024];
+    private int size = 0;
+
+    HammingIndex() {
+        for (int[] blockHeads : heads) {
+            Arrays.fill(blockHeads, -1);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    long getHash(int entry) {
+        return hashes[entry];
+    }
+
+    private static int block(long hash, int block) {
+        return (int) (hash >>> (block * BLOCK_BITS)) & ((1 << BLOCK_BITS) - 1);
+    }
+
+    /**
+     * Adds a hash unless it is already in the index.
+     *
+     * @return The entry holding the hash.
+     */
+    int add(long hash) {
+        for (int entry = heads[0][block(hash, 0)]; entry >= 0; entry = next[0][entry]) {
+            if (hashes[entry] == hash) {
+                return entry;
+            }
+        }
+        if (size == hashes.length) {
+            int capacity = size * 2;
+            hashes = Arrays.copyOf(hashes, capacity);
+            for (int b = 0; b < BLOCKS; b++) {
+                next[b] = Arrays.copyOf(next[b], capacity);
+            }
+        }
+        hashes[size] = hash;
+        for (int b = 0; b < BLOCKS; b++) {
+            int key = block(hash, b);
+            next[b][size] = heads[b][key];
+            heads[b][key] = size;
+        }
+        return size++;
+    }
+
+    /**
+     * @return The entry whose hash is closest to {@code hash} and at most {@code radius} bits away,
+     *         or -1 if there is none.
+     */
+    int nearest(long hash, int radius) {
+        int best = -1;
+        int bestDistance = Math.min(radius, Long.SIZE) + 1;
+        int probes = MASKS_WITHIN[Math.min(Math.max(radius, 0) / BLOCKS, BLOCK_BITS)];
+        for (int b = 0; b < BLOCKS; b++) {
+            int key = block(hash, b);
+            int[] blockHeads = heads[b];
+            int[] blockNext = next[b];
+            for (int i = 0; i < probes; i++) {
+                for (int entry = blockHeads[key ^ MASKS[i]]; entry >= 0; entry = blockNext[entry]) {
+                    int distance = Long.bitCount(hashes[entry] ^ hash);
+                    if (distance < bestDistance) {
+                        best = entry;
+                        bestDistance = distance;
+                        if (distance == 0) {
+                            return best;
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,307 @@
+package com.rarchives.ripme.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Process-wide index of SHA-256 hashes of downloaded files, used for duplicate
+ * detection.
+ * <p>
+ * The hash history file is loaded once per process and shared by all rippers.
+ * Hashes are kept as raw 32-byte values (four longs) in open-addressing tables
+ * instead of hex strings in a {@code HashSet}. The index is split into segments
+ * with their own lock, so concurrent downloads only contend when their hashes
+ * fall into the same segment. New hashes are appended to the history file in the
+ * existing hex format.
+ */
+public class HashHistoryIndex {
+
+    private static final Logger logger = LogManager.getLogger(HashHistoryIndex.class);
+
+    private static final Map<String, HashHistoryIndex> INDEXES = new ConcurrentHashMap<>();
+
+    public static final int HASH_LENGTH = 32;
+    private static final int SEGMENT_COUNT = 16;
+
+    private final Path historyFile;
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+    private final ReentrantLock loadLock = new ReentrantLock();
+    private final ReentrantLock fileLock = new ReentrantLock();
+    private volatile boolean loaded = false;
+
+    HashHistoryIndex(Path historyFile) {
+        this.historyFile = historyFile;
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * @param historyFile Path of the hash history file.
+     * @return The shared index for that file.
+     */
+    public static HashHistoryIndex forFile(String historyFile) {
+        Path path = Paths.get(historyFile).toAbsolutePath();
+        return INDEXES.computeIfAbsent(path.toString(), ignored -> new HashHistoryIndex(path));
+    }
+
+    /**
+     * @param hash Raw SHA-256 value.
+     * @return True if the hash is already known.
+     */
+    public boolean contains(byte[] hash) {
+        checkLength(hash);
+        ensureLoaded();
+        return segmentFor(hash).contains(hash);
+    }
+
+    /**
+     * Records a hash unless it is already known. New hashes are appended to the
+     * history file.
+     *
+     * @param hash Raw SHA-256 value.
+     * @return True if the hash was new, false if it is a duplicate.
+     */
+    public boolean addIfAbsent(byte[] hash) {
+        checkLength(hash);
+        ensureLoaded();
+        if (!segmentFor(hash).add(hash)) {
+            return false;
+        }
+        appendToFile(hash);
+        return true;
+    }
+
+    /**
+     * @return Number of distinct hashes in the index.
+     */
+    public int size() {
+        ensureLoaded();
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loadLock.lock();
+        try {
+            if (loaded) {
+                return;
+            }
+            if (Files.exists(historyFile)) {
+                long start = System.currentTimeMillis();
+                int skipped = 0;
+                try (BufferedReader reader = Files.newBufferedReader(historyFile, StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        byte[] hash = fromHex(line.trim());
+                        if (hash == null) {
+                            if (!line.isBlank()) {
+                                skipped++;
+                            }
+                            continue;
+                        }
+                        segmentFor(hash).add(hash);
+                    }
+                } catch (IOException e) {
+                    logger.warn("Failed to load hash history from {}: {}", historyFile, e.getMessage());
+                }
+                if (skipped > 0) {
+                    logger.warn("Skipped {} malformed lines in {}", skipped, historyFile);
+                }
+                logger.debug("Loaded hash history from {} in {} ms", historyFile,
+                        System.currentTimeMillis() - start);
+            }
+            loaded = true;
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    private void appendToFile(byte[] hash) {
+        String line = toHex(hash) + System.lineSeparator();
+        fileLock.lock();
+        try {
+            if (historyFile.getParent() != null) {
+                Files.createDirectories(historyFile.getParent());
+            }
+            Files.writeString(historyFile, line, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            logger.warn("Failed to append hash {} to {}: {}", line.trim(), historyFile, e.getMessage());
+        } finally {
+            fileLock.unlock();
+        }
+    }
+
+    private Segment segmentFor(byte[] hash) {
+        // The slot inside a segment is taken from the first bytes, so use the last byte here.
+        return segments[hash[HASH_LENGTH - 1] & (SEGMENT_COUNT - 1)];
+    }
+
+    private static void checkLength(byte[] hash) {
+        if (hash == null || hash.length != HASH_LENGTH) {
+            throw new IllegalArgumentException("Expected a " + HASH_LENGTH + " byte SHA-256 value");
+        }
+    }
+
+    public static String toHex(byte[] hash) {
+        StringBuilder builder = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+            builder.append(Character.forDigit(b & 0xf, 16));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return The decoded hash, or null if the text is not a 64 character hex string.
+     */
+    public static byte[] fromHex(String hex) {
+        if (hex.length() != HASH_LENGTH * 2) {
+            return null;
+        }
+        byte[] hash = new byte[HASH_LENGTH];
+        for (int i = 0; i < HASH_LENGTH; i++) {
+            int high = Character.digit(hex.charAt(i * 2), 16);
+            int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            hash[i] = (byte) ((high << 4) | low);
+        }
+        return hash;
+    }
+
+    private static long readLong(byte[] hash, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (hash[offset + i] & 0xffL);
+        }
+        return value;
+    }
+
+    /**
+     * Open-addressing table storing each hash as four consecutive longs. An all-zero
+     * entry marks an empty slot; the all-zero hash itself is tracked with a flag.
+     */
+    private static final class Segment {
+        private static final int WORDS = HASH_LENGTH / 8;
+        private static final int INITIAL_CAPACITY = 1 << 10;
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private long[] table = new long[INITIAL_CAPACITY * WORDS];
+        private int capacity = INITIAL_CAPACITY;
+        private int size = 0;
+        private boolean containsZero = false;
+
+        boolean contains(byte[] hash) {
+            long w0 = readLong(hash, 0), w1 = readLong(hash, 8), w2 = readLong(hash, 16), w3 = readLong(hash, 24);
+            lock.lock();
+            try {
+                if ((w0 | w1 | w2 | w3) == 0) {
+                    return containsZero;
+                }
+                return find(table, capacity, w0, w1, w2, w3) >= 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean add(byte[] hash) {
+            long w0 = readLong(hash, 0), w1 = readLong(hash, 8), w2 = readLong(hash, 16), w3 = readLong(hash, 24);
+            lock.lock();
+            try {
+                if ((w0 | w1 | w2 | w3) == 0) {
+                    if (containsZero) {
+                        return false;
+                    }
+                    containsZero = true;
+                    size++;
+                    return true;
+                }
+                if (find(table, capacity, w0, w1, w2, w3) >= 0) {
+                    return false;
+                }
+                // Grow at a load factor of 3/4.
+                if ((size + 1) * 4 > capacity * 3) {
+                    grow();
+                }
+                insert(table, capacity, w0, w1, w2, w3);
+                size++;
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return size;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void grow() {
+            int newCapacity = capacity * 2;
+            long[] newTable = new long[newCapacity * WORDS];
+            for (int slot = 0; slot < capacity; slot++) {
+                int base = slot * WORDS;
+                if ((table[base] | table[base + 1] | table[base + 2] | table[base + 3]) != 0) {
+                    insert(newTable, newCapacity, table[base], table[base + 1], table[base + 2], table[base + 3]);
+                }
+            }
+            table = newTable;
+            capacity = newCapacity;
+        }
+
+        private static int find(long[] table, int capacity, long w0, long w1, long w2, long w3) {
+            int mask = capacity - 1;
+            int slot = (int) (w0 >>> 32) & mask;
+            while (true) {
+                int base = slot * WORDS;
+                long e0 = table[base], e1 = table[base + 1], e2 = table[base + 2], e3 = table[base + 3];
+                if ((e0 | e1 | e2 | e3) == 0) {
+                    return -1;
+                }
+                if (e0 == w0 && e1 == w1 && e2 == w2 && e3 == w3) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        private static void insert(long[] table, int capacity, long w0, long w1, long w2, long w3) {
+            int mask = capacity - 1;
+            int slot = (int) (w0 >>> 32) & mask;
+            while (true) {
+                int base = slot * WORDS;
+                if ((table[base] | table[base + 1] | table[base + 2] | table[base + 3]) == 0) {
+                    table[base] = w0;
+                    table[base + 1] = w1;
+                    table[base + 2] = w2;
+                    table[base + 3] = w3;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.rarchives.ripme.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Process-wide index of the size and the SHA-256 of the first {@link #HEAD_BYTES} bytes of
+ * downloaded files, next to the full hashes in {@link HashHistoryIndex}.
+ * <p>
+ * A download whose {@code Content-Length} and head match an entry is taken to be a duplicate once
+ * its head has been read, so the rest of the body does not have to be transferred. For files no
+ * larger than the head the match is exact. Entries are appended to the index file as
+ * {@code <size> <hex head hash>} lines.
+ */
+public class HeadHashIndex {
+
+    private static final Logger logger = LogManager.getLogger(HeadHashIndex.class);
+
+    private static final Map<String, HeadHashIndex> INDEXES = new ConcurrentHashMap<>();
+
+    public static final int HEAD_BYTES = 64 * 1024;
+
+    private final Path indexFile;
+    private final Set<Head> heads = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock loadLock = new ReentrantLock();
+    private final ReentrantLock fileLock = new ReentrantLock();
+    private volatile boolean loaded = false;
+
+    HeadHashIndex(Path indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * @param indexFile Path of the head hash file.
+     * @return The shared index for that file.
+     */
+    public static HeadHashIndex forFile(String indexFile) {
+        Path path = Paths.get(indexFile).toAbsolutePath();
+        return INDEXES.computeIfAbsent(path.toString(), ignored -> new HeadHashIndex(path));
+    }
+
+    /**
+     * @param size     Length of the whole file.
+     * @param headHash Raw SHA-256 of its first {@link #HEAD_BYTES} bytes.
+     * @return True if a file with the same size and head was downloaded before.
+     */
+    public boolean contains(long size, byte[] headHash) {
+        ensureLoaded();
+        return heads.contains(new Head(size, headHash));
+    }
+
+    /**
+     * Records the size and head of a downloaded file, appending it to the index file if it is new.
+     */
+    public void add(long size, byte[] headHash) {
+        ensureLoaded();
+        if (heads.add(new Head(size, headHash))) {
+            appendToFile(size + " " + HashHistoryIndex.toHex(headHash));
+        }
+    }
+
+    /**
+     * @return Number of entries in the index.
+     */
+    public int size() {
+        ensureLoaded();
+        return heads.size();
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loadLock.lock();
+        try {
+            if (loaded) {
+                return;
+            }
+            if (Files.exists(indexFile)) {
+                try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        Head head = parse(line.trim());
+                        if (head != null) {
+                            heads.add(head);
+                        }
+                    }
+                } catch (IOException e) {
+                    logger.warn("Failed to load head hashes from {}: {}", indexFile, e.getMessage());
+                }
+            }
+            loaded = true;
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    private static Head parse(String line) {
+        int space = line.indexOf(' ');
+        if (space < 0) {
+            return null;
+        }
+        byte[] hash = HashHistoryIndex.fromHex(line.substring(space + 1));
+        if (hash == null) {
+            return null;
+        }
+        try {
+            return new Head(Long.parseLong(line.substring(0, space)), hash);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void appendToFile(String entry) {
+        fileLock.lock();
+        try {
+            if (indexFile.getParent() != null) {
+                Files.createDirectories(indexFile.getParent());
+            }
+            Files.writeString(indexFile, entry + System.lineSeparator(), StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            logger.warn("Failed to append to {}: {}", indexFile, e.getMessage());
+        } finally {
+            fileLock.unlock();
+        }
+    }
+
+    /**
+     * A size and the first 128 bits of a head hash, which is plenty to tell heads apart.
+     */
+    private static final class Head {
+        private final long size;
+        private final long high;
+        private final long low;
+
+        Head(long size, byte[] hash) {
+            if (hash == null || hash.length < 16) {
+                throw new IllegalArgumentException("Expected a SHA-256 value");
+            }
+            this.size = size;
+            this.high = readLong(hash, 0);
+            this.low = readLong(hash, 8);
+        }
+
+        private static long readLong(byte[] hash, int offset) {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (hash[offset + i] & 0xffL);
+            }
+            return value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Head)) {
+                return false;
+            }
+            Head other = (Head) o;
+            return size == other.size && high == other.high && low == other.low;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(high) * 31 + Long.hashCode(size);
+        }
+    }
+}
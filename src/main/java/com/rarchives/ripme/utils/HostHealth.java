@@ -0,0 +1,286 @@
+package com.rarchives.ripme.utils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Process-wide circuit breaker per host, shared by every ripper and download pool.
+ * <p>
+ * After {@code errors.host.failures} consecutive failures (5xx responses or connection errors)
+ * from a host, across all rippers, the host is <em>open</em>: requests to it wait and download
+ * pools park their queued tasks for the host. When the cool-down of
+ * {@code errors.host.cooldown_seconds} is over the host is <em>half-open</em> and a single probe
+ * request is let through. If the probe succeeds the host is healthy again and parked work resumes;
+ * if it fails the host opens again with twice the cool-down, up to 15 minutes.
+ * <p>
+ * This complements the per-ripper {@link ConsecutiveHttpFailureTracker}, which pauses one rip
+ * after many HTTP errors of any kind.
+ */
+public class HostHealth {
+
+    private static final Logger logger = LogManager.getLogger(HostHealth.class);
+
+    private static final HostHealth INSTANCE = new HostHealth(
+            Utils.getConfigInteger("errors.host.failures", 10),
+            TimeUnit.SECONDS.toMillis(Utils.getConfigInteger("errors.host.cooldown_seconds", 30)),
+            System::currentTimeMillis);
+
+    private static final long MAX_COOLDOWN_MILLIS = TimeUnit.MINUTES.toMillis(15);
+    // a probe that has not reported back after this long no longer blocks the next one
+    private static final long PROBE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(2);
+
+    private static final ScheduledExecutorService TIMER = newTimer();
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final class Host {
+        private State state = State.CLOSED;
+        private int failures = 0;
+        private long cooldown = 0;
+        private long openUntil = 0;
+        private long probeStarted = -1;
+    }
+
+    private final int threshold;
+    private final long baseCooldown;
+    private final LongSupplier clock;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Map<String, Host> hosts = new HashMap<>();
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param threshold      Consecutive failures that open a host, or 0 to disable.
+     * @param cooldownMillis How long a host stays open the first time.
+     * @param clock          Source of {@link System#currentTimeMillis()}-like timestamps.
+     */
+    public HostHealth(int threshold, long cooldownMillis, LongSupplier clock) {
+        this.threshold = threshold;
+        this.baseCooldown = Math.max(1, cooldownMillis);
+        this.clock = clock;
+    }
+
+    public static HostHealth getInstance() {
+        return INSTANCE;
+    }
+
+    private static ScheduledExecutorService newTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, task -> {
+            Thread thread = new Thread(task, "ripme-host-health");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    private static String key(String host) {
+        String key = host == null ? "" : host.toLowerCase(Locale.ROOT);
+        return key.startsWith("www.") ? key.substring(4) : key;
+    }
+
+    /**
+     * Registers a listener called with the host name whenever a host may be used again: when its
+     * cool-down ends or when it recovers. Called without any lock held.
+     */
+    public void addListener(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Consumer<String> listener) {
+        listeners.remove(listener);
+    }
+
+    private void notifyListeners(String host) {
+        for (Consumer<String> listener : listeners) {
+            try {
+                listener.accept(host);
+            } catch (RuntimeException e) {
+                logger.warn("Host health listener failed for {}: {}", host, e.getMessage());
+            }
+        }
+    }
+
+    /** Moves an open host whose cool-down is over to half-open. Must hold the lock. */
+    private State currentState(Host h, long now) {
+        if (h.state == State.OPEN && now >= h.openUntil) {
+            h.state = State.HALF_OPEN;
+            h.probeStarted = -1;
+        }
+        return h.state;
+    }
+
+    public State getState(String host) {
+        lock.lock();
+        try {
+            Host h = hosts.get(key(host));
+            return h == null ? State.CLOSED : currentState(h, clock.getAsLong());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return True if the host is in its cool-down, so work for it should be parked.
+     */
+    public boolean isOpen(String host) {
+        return getState(host) == State.OPEN;
+    }
+
+    /**
+     * Asks to send a request to {@code host}. Always allowed while the host is healthy; while it
+     * is half-open only one caller at a time gets to send the probe.
+     *
+     * @return True if the request may be sent now.
+     */
+    public boolean tryRequest(String host) {
+        lock.lock();
+        try {
+            return tryRequest(key(host), clock.getAsLong());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean tryRequest(String key, long now) {
+        Host h = hosts.get(key);
+        if (h == null) {
+            return true;
+        }
+        switch (currentState(h, now)) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (h.probeStarted < 0 || now - h.probeStarted > PROBE_TIMEOUT_MILLIS) {
+                    h.probeStarted = now;
+                    logger.info("Probing {} after its cool-down", key);
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Waits until a request to {@code host} may be sent; see {@link #tryRequest(String)}.
+     */
+    public void awaitRequest(String host) throws InterruptedException {
+        String key = key(host);
+        lock.lock();
+        try {
+            while (true) {
+                long now = clock.getAsLong();
+                if (tryRequest(key, now)) {
+                    return;
+                }
+                Host h = hosts.get(key);
+                long waitMillis = h.state == State.OPEN ? h.openUntil - now : 1000;
+                changed.await(Math.max(1, Math.min(waitMillis, 1000)), TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reports a response from {@code host} that shows it is working.
+     */
+    public void onSuccess(String host) {
+        String key = key(host);
+        boolean recovered = false;
+        lock.lock();
+        try {
+            Host h = hosts.get(key);
+            if (h == null) {
+                return;
+            }
+            if (h.state != State.CLOSED) {
+                logger.info("{} is responding again", key);
+                recovered = true;
+            }
+            hosts.remove(key);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (recovered) {
+            notifyListeners(key);
+        }
+    }
+
+    /**
+     * Reports a 5xx response or connection failure from {@code host}.
+     */
+    public void onFailure(String host) {
+        if (threshold <= 0) {
+            return;
+        }
+        String key = key(host);
+        long reopenIn = -1;
+        lock.lock();
+        try {
+            long now = clock.getAsLong();
+            Host h = hosts.computeIfAbsent(key, k -> new Host());
+            State state = currentState(h, now);
+            if (state == State.HALF_OPEN) {
+                h.cooldown = Math.min(MAX_COOLDOWN_MILLIS, h.cooldown * 2);
+                reopenIn = h.cooldown;
+                logger.warn("{} is still failing, pausing requests to it for {}s", key, reopenIn / 1000);
+            } else if (state == State.CLOSED && ++h.failures >= threshold) {
+                h.cooldown = baseCooldown;
+                reopenIn = h.cooldown;
+                logger.warn("{} failed {} times in a row, pausing requests to it for {}s", key, h.failures,
+                        reopenIn / 1000);
+            }
+            if (reopenIn > 0) {
+                h.state = State.OPEN;
+                h.openUntil = now + reopenIn;
+                h.probeStarted = -1;
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (reopenIn > 0) {
+            TIMER.schedule(() -> {
+                if (!isOpen(key)) {
+                    lock.lock();
+                    try {
+                        changed.signalAll();
+                    } finally {
+                        lock.unlock();
+                    }
+                    notifyListeners(key);
+                }
+            }, reopenIn, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Reports the status of a response from {@code host}: 5xx counts as a failure, anything else
+     * shows the host is up.
+     */
+    public void onResponse(String host, int statusCode) {
+        if (statusCode / 100 == 5) {
+            onFailure(host);
+        } else {
+            onSuccess(host);
+        }
+    }
+}
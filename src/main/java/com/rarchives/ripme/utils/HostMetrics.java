@@ -0,0 +1,87 @@
+package com.rarchives.ripme.utils;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Snapshot of the {@link Metrics} of one host, as shown over JMX.
+ */
+public class HostMetrics {
+    private final String host;
+    private final long requests;
+    private final long failures;
+    private final long throttled;
+    private final long serverErrors;
+    private final long retries;
+    private final long bytes;
+    private final double bytesPerSecond;
+    private final long averageLatencyMillis;
+    private final int queueDepth;
+
+    @ConstructorProperties({"host", "requests", "failures", "throttled", "serverErrors", "retries", "bytes",
+            "bytesPerSecond", "averageLatencyMillis", "queueDepth"})
+    public HostMetrics(String host, long requests, long failures, long throttled, long serverErrors, long retries,
+                       long bytes, double bytesPerSecond, long averageLatencyMillis, int queueDepth) {
+        this.host = host;
+        this.requests = requests;
+        this.failures = failures;
+        this.throttled = throttled;
+        this.serverErrors = serverErrors;
+        this.retries = retries;
+        this.bytes = bytes;
+        this.bytesPerSecond = bytesPerSecond;
+        this.averageLatencyMillis = averageLatencyMillis;
+        this.queueDepth = queueDepth;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public long getRequests() {
+        return requests;
+    }
+
+    /**
+     * @return Requests that failed without a response.
+     */
+    public long getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return Responses with status 429.
+     */
+    public long getThrottled() {
+        return throttled;
+    }
+
+    public long getServerErrors() {
+        return serverErrors;
+    }
+
+    public long getRetries() {
+        return retries;
+    }
+
+    /**
+     * @return Bytes of files downloaded.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return Download rate over the last sample interval.
+     */
+    public double getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public long getAverageLatencyMillis() {
+        return averageLatencyMillis;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+}
@@ -0,0 +1,289 @@
+package com.rarchives.ripme.utils;
+
+import java.net.URL;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Process-wide request rate limiter with one token bucket per host.
+ * <p>
+ * Hosts start out unlimited unless a ripper declares a budget with {@link #setBudget}. The rate of
+ * a host is adjusted with AIMD: every successful response adds {@code ratelimit.increase} requests
+ * per second, and every 429 or 5xx response halves the rate (down to {@code ratelimit.min_rate})
+ * and blocks the host for the duration of its {@code Retry-After} header. A host that was throttled
+ * without a declared budget goes back to unlimited once its rate climbs above
+ * {@code ratelimit.max_rate}; a declared budget can grow to twice its starting value.
+ * <p>
+ * {@link OkHttpTransport} and {@link Http} call {@link #acquire} before each request and report
+ * the response status, so downloads and page loads for one host share the same budget.
+ */
+public class HostRateLimiter {
+
+    private static final Logger logger = LogManager.getLogger(HostRateLimiter.class);
+
+    private static final HostRateLimiter INSTANCE = new HostRateLimiter(
+            getConfigDouble("ratelimit.increase", 0.1),
+            getConfigDouble("ratelimit.min_rate", 1 / 60.0),
+            getConfigDouble("ratelimit.max_rate", 20),
+            System::nanoTime);
+
+    private static final long MAX_RETRY_AFTER_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private static final class Bucket {
+        private final ReentrantLock lock = new ReentrantLock();
+        /** Requests per second, or 0 if the host is not limited. */
+        private double rate = 0;
+        private double maxRate = 0;
+        private boolean declared = false;
+        private double tokens = 0;
+        private long lastRefill = 0;
+        private long blockedUntil = 0;
+    }
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final double increase;
+    private final double minRate;
+    private final double maxRate;
+    private final LongSupplier nanoClock;
+
+    /**
+     * @param increase  Requests per second added to a limited host's rate per successful request.
+     * @param minRate   Lowest rate a host is throttled down to, in requests per second.
+     * @param maxRate   Rate above which a throttled host without a declared budget is unlimited.
+     * @param nanoClock Source of {@link System#nanoTime()}-like timestamps.
+     */
+    HostRateLimiter(double increase, double minRate, double maxRate, LongSupplier nanoClock) {
+        this.increase = increase;
+        this.minRate = Math.max(minRate, 0.001);
+        this.maxRate = maxRate;
+        this.nanoClock = nanoClock;
+    }
+
+    private static double getConfigDouble(String key, double defaultValue) {
+        String value = Utils.getConfigString(key, null);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for {}: {}", key, value);
+            return defaultValue;
+        }
+    }
+
+    public static HostRateLimiter getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return The key used for the host of {@code url}: lower case, without a leading {@code www.}.
+     */
+    public static String hostOf(URL url) {
+        return hostOf(url.getHost());
+    }
+
+    /**
+     * @return {@code host} in lower case without a leading {@code www.}.
+     */
+    public static String hostOf(String host) {
+        if (host == null) {
+            return "";
+        }
+        host = host.toLowerCase(Locale.ROOT);
+        return host.startsWith("www.") ? host.substring(4) : host;
+    }
+
+    private Bucket bucket(String host) {
+        return buckets.computeIfAbsent(host, k -> new Bucket());
+    }
+
+    /**
+     * Declares the starting request rate of a host, replacing a fixed sleep between requests. Has no
+     * effect if the host already has a declared budget or was throttled to a lower rate.
+     *
+     * @param host              Host as returned by {@link #hostOf(URL)}.
+     * @param requestsPerSecond Starting rate. The rate may grow to twice this value.
+     */
+    public void setBudget(String host, double requestsPerSecond) {
+        if (requestsPerSecond <= 0) {
+            return;
+        }
+        Bucket bucket = bucket(host);
+        bucket.lock.lock();
+        try {
+            if (bucket.declared) {
+                return;
+            }
+            bucket.declared = true;
+            bucket.maxRate = requestsPerSecond * 2;
+            if (bucket.rate == 0 || bucket.rate > requestsPerSecond) {
+                bucket.rate = requestsPerSecond;
+                bucket.tokens = 1;
+                bucket.lastRefill = nanoClock.getAsLong();
+            }
+            logger.debug("Request budget for {} is {} requests/s", host, bucket.rate);
+        } finally {
+            bucket.lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until a request to {@code host} may be sent.
+     */
+    public void acquire(String host) throws InterruptedException {
+        long waitNanos = reserve(host);
+        if (waitNanos > 0) {
+            logger.debug("Waiting {} ms for the request budget of {}", waitNanos / 1_000_000, host);
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Takes a token for {@code host}, borrowing it from the future if none is left.
+     *
+     * @return How long the caller has to wait before sending its request, in nanoseconds.
+     */
+    long reserve(String host) {
+        Bucket bucket = buckets.get(host);
+        if (bucket == null) {
+            return 0;
+        }
+        bucket.lock.lock();
+        try {
+            long now = nanoClock.getAsLong();
+            long readyAt = Math.max(now, bucket.blockedUntil);
+            if (bucket.rate > 0) {
+                refill(bucket, now);
+                bucket.tokens -= 1;
+                if (bucket.tokens < 0) {
+                    readyAt = Math.max(readyAt, now + (long) (-bucket.tokens / bucket.rate * 1e9));
+                }
+            }
+            return readyAt - now;
+        } finally {
+            bucket.lock.unlock();
+        }
+    }
+
+    private static void refill(Bucket bucket, long now) {
+        double capacity = Math.max(1, bucket.rate);
+        bucket.tokens = Math.min(capacity, bucket.tokens + (now - bucket.lastRefill) / 1e9 * bucket.rate);
+        bucket.lastRefill = now;
+    }
+
+    /**
+     * Reports a successful response from {@code host}, raising its rate by one step.
+     */
+    public void onSuccess(String host) {
+        Bucket bucket = buckets.get(host);
+        if (bucket == null) {
+            return;
+        }
+        bucket.lock.lock();
+        try {
+            if (bucket.rate == 0) {
+                return;
+            }
+            refill(bucket, nanoClock.getAsLong());
+            double ceiling = bucket.declared ? bucket.maxRate : maxRate;
+            bucket.rate = Math.min(ceiling, bucket.rate + increase);
+            if (!bucket.declared && bucket.rate >= maxRate) {
+                logger.debug("{} is no longer rate limited", host);
+                bucket.rate = 0;
+            }
+        } finally {
+            bucket.lock.unlock();
+        }
+    }
+
+    /**
+     * Reports a 429 or 5xx response from {@code host}, halving its rate.
+     *
+     * @param retryAfterMillis How long the host asked us to wait, or a negative value if it did not
+     *                         say.
+     */
+    public void onThrottled(String host, long retryAfterMillis) {
+        Bucket bucket = bucket(host);
+        bucket.lock.lock();
+        try {
+            long now = nanoClock.getAsLong();
+            if (bucket.rate == 0) {
+                // start from the rate at which the host told us to stop
+                bucket.rate = maxRate;
+                bucket.tokens = 0;
+                bucket.lastRefill = now;
+            } else {
+                refill(bucket, now);
+            }
+            bucket.rate = Math.max(minRate, bucket.rate / 2);
+            bucket.tokens = Math.min(bucket.tokens, 0);
+            if (retryAfterMillis > 0) {
+                long until = now + TimeUnit.MILLISECONDS.toNanos(Math.min(retryAfterMillis, MAX_RETRY_AFTER_MILLIS));
+                bucket.blockedUntil = Math.max(bucket.blockedUntil, until);
+            }
+            logger.info("{} is throttling requests, lowering request rate to {} requests/s", host,
+                    String.format(Locale.ROOT, "%.2f", bucket.rate));
+        } finally {
+            bucket.lock.unlock();
+        }
+    }
+
+    /**
+     * Reports the status of a response from {@code host}.
+     */
+    public void onResponse(String host, int statusCode, String retryAfterHeader) {
+        if (statusCode == 429 || statusCode / 100 == 5) {
+            onThrottled(host, parseRetryAfterMillis(retryAfterHeader));
+        } else if (statusCode < 400) {
+            onSuccess(host);
+        }
+    }
+
+    /**
+     * @return The current rate of {@code host} in requests per second, or 0 if it is not limited.
+     */
+    public double getRate(String host) {
+        Bucket bucket = buckets.get(host);
+        if (bucket == null) {
+            return 0;
+        }
+        bucket.lock.lock();
+        try {
+            return bucket.rate;
+        } finally {
+            bucket.lock.unlock();
+        }
+    }
+
+    /**
+     * @return The delay requested by a {@code Retry-After} header in seconds or as an HTTP date, or
+     *         -1 if the header is missing or not understood.
+     */
+    public static long parseRetryAfterMillis(String retryAfterHeader) {
+        if (retryAfterHeader == null || retryAfterHeader.isBlank()) {
+            return -1;
+        }
+        String trimmed = retryAfterHeader.trim();
+        try {
+            return Math.max(0, Long.parseLong(trimmed)) * 1000;
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime retryAt = ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, retryAt.toInstant().toEpochMilli() - System.currentTimeMillis());
+            } catch (DateTimeParseException ignored) {
+                return -1;
+            }
+        }
+    }
+}
@@ -23,13 +23,14 @@ import java.security.SecureRandom;
 import java.security.cert.X509Certificate;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.ConnectException;
-import java.net.HttpURLConnection;
 import java.net.SocketTimeoutException;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
@@ -51,6 +52,7 @@ public class Http {
 
     private int retries;
     private int retrySleep = 0;
+    private boolean useCache = true;
     private final String url;
     private Connection connection;
 
@@ -76,7 +78,7 @@ public class Http {
     private void defaultSettings() {
         this.retries = Utils.getConfigInteger("download.retries", 3);
         this.retrySleep = Utils.getConfigInteger("download.retry.sleep", 5000);
-        connection = Jsoup.connect(this.url);
+        connection = Jsoup.connect(ReplayRouter.route(this.url));
         connection.userAgent(AbstractRipper.USER_AGENT);
         connection.method(Method.GET);
         connection.timeout(TIMEOUT);
@@ -189,6 +191,14 @@ public class Http {
         return this;
     }
 
+    /**
+     * Always loads the page in full instead of revalidating a copy in the {@link PageCache}.
+     */
+    public Http noCache() {
+        this.useCache = false;
+        return this;
+    }
+
     // Getters
     public Connection connection() {
         return connection;
@@ -196,65 +206,211 @@ public class Http {
 
     public Document get() throws IOException {
         connection.method(Method.GET);
-        return response().parse();
+        PageCache cache = pageCache();
+        if (cache == null) {
+            return parse(response());
+        }
+        String key = cacheKey();
+        PageCache.Entry cached = addValidators(cache, key);
+        Response response = response();
+        if (isNotModified(response, cached, cache, key)) {
+            return Jsoup.parse(cached.getBody(), cached.getUrl());
+        }
+        response.bufferUp();
+        cache.put(key, ReplayRouter.unroute(response.url()).toExternalForm(), response.header("ETag"),
+                response.header("Last-Modified"), response.body());
+        return parse(response);
     }
 
     public Document post() throws IOException {
         connection.method(Method.POST);
-        return response().parse();
+        return parse(response());
+    }
+
+    /**
+     * Parses a response with the original URL of the page as its location, also when the request
+     * went to the replay server.
+     */
+    private static Document parse(Response response) throws IOException {
+        if (!ReplayRouter.isEnabled()) {
+            return response.parse();
+        }
+        return Jsoup.parse(response.body(), ReplayRouter.unroute(response.url()).toExternalForm());
     }
 
     public JSONObject getJSON() throws IOException {
         ignoreContentType();
-        String jsonString = response().body();
+        String jsonString = body();
         return new JSONObject(jsonString);
     }
 
     public JSONArray getJSONArray() throws IOException {
         ignoreContentType();
-        String jsonArray = response().body();
+        String jsonArray = body();
         return new JSONArray(jsonArray);
     }
 
+    private String body() throws IOException {
+        PageCache cache = pageCache();
+        if (cache == null) {
+            return response().body();
+        }
+        String key = cacheKey();
+        PageCache.Entry cached = addValidators(cache, key);
+        Response response = response();
+        if (isNotModified(response, cached, cache, key)) {
+            return cached.getBody();
+        }
+        String body = response.body();
+        cache.put(key, ReplayRouter.unroute(response.url()).toExternalForm(), response.header("ETag"),
+                response.header("Last-Modified"), body);
+        return body;
+    }
+
+    /**
+     * @return The page cache if this request can use it: a GET without form data to a host that
+     *         did not opt out.
+     */
+    private PageCache pageCache() {
+        Connection.Request request = connection.request();
+        if (!useCache || request.method() != Method.GET || !request.data().isEmpty()) {
+            return null;
+        }
+        PageCache cache = PageCache.getInstance();
+        if (cache == null || !cache.isEnabledFor(HostRateLimiter.hostOf(request.url()))) {
+            return null;
+        }
+        return cache;
+    }
+
+    private String cacheKey() {
+        Connection.Request request = connection.request();
+        Map<String, String> headers = new HashMap<>(request.headers());
+        if (!request.cookies().isEmpty()) {
+            headers.put("Cookie", new TreeMap<>(request.cookies()).toString());
+        }
+        return PageCache.key(url, headers);
+    }
+
+    private PageCache.Entry addValidators(PageCache cache, String key) {
+        PageCache.Entry cached = cache.get(key);
+        if (cached != null) {
+            validatorsOf(cached).forEach(connection::header);
+        }
+        return cached;
+    }
+
+    private static boolean isNotModified(Response response, PageCache.Entry cached, PageCache cache, String key) {
+        if (cached == null || response.statusCode() != 304) {
+            return false;
+        }
+        logger.debug("{} has not changed, using the cached copy", cached.getUrl());
+        cache.touch(key);
+        return true;
+    }
+
     public static String getWith429Retry(URL url, int maxRetries, int baseDelaySeconds, String userAgent) throws IOException {
         return getWith429Retry(url, maxRetries, baseDelaySeconds, userAgent, null);
     }
 
     public static String getWith429Retry(URL url, int maxRetries, int baseDelaySeconds, String userAgent, Map<String,String> headers) throws IOException {
+        return getWith429Retry(url, maxRetries, baseDelaySeconds, userAgent, headers, TEXT_BODY);
+    }
+
+    /**
+     * Reads a JSON response from {@code handler} as it streams in, with the same retries as
+     * {@link #getWith429Retry(URL, int, int, String, Map)}. The body is never held in memory as a
+     * whole, so large API pages cost only what {@code handler} keeps of them. Streamed responses
+     * bypass the page cache.
+     *
+     * @param handler Reads the document. It runs again if the request is retried.
+     */
+    public static <T> T getJsonWith429Retry(URL url, int maxRetries, int baseDelaySeconds, String userAgent,
+                                            Map<String, String> headers, JsonHandler<T> handler) throws IOException {
+        return getWith429Retry(url, maxRetries, baseDelaySeconds, userAgent, headers,
+                body -> handler.read(JsonStreamReader.of(body)));
+    }
+
+    /**
+     * Reads a JSON document from a {@link JsonStreamReader}.
+     */
+    public interface JsonHandler<T> {
+        T read(JsonStreamReader reader) throws IOException;
+    }
+
+    private interface BodyReader<T> {
+        T read(InputStream body) throws IOException;
+
+        /**
+         * @return Whether responses are stored in the page cache, which only holds text bodies.
+         */
+        default boolean isCacheable() {
+            return false;
+        }
+    }
+
+    private static final BodyReader<String> TEXT_BODY = new BodyReader<String>() {
+        @Override
+        public String read(InputStream body) throws IOException {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(body))) {
+                StringBuilder response = new StringBuilder();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    response.append(line).append('\n');
+                }
+                return response.toString();
+            }
+        }
+
+        @Override
+        public boolean isCacheable() {
+            return true;
+        }
+    };
+
+    @SuppressWarnings("unchecked")
+    private static <T> T getWith429Retry(URL url, int maxRetries, int baseDelaySeconds, String userAgent,
+                                         Map<String, String> headers, BodyReader<T> bodyReader) throws IOException {
     int retries = 0;
     int maxDelaySeconds = 600; // Cap max wait to 10 minutes
     Random random = new Random();
     Logger logger = LogManager.getLogger(Http.class);
 
     while (retries <= maxRetries) {
-        HttpURLConnection connection = null;
-        try {
-            connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestProperty("User-Agent", userAgent);
-            // Match the Python client's behavior by accepting compressed responses and
-            // decompressing them manually below.
-            connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+        if (retries > 0) {
+            Metrics.getInstance().onRetry(HostRateLimiter.hostOf(url));
+        }
+        HttpTransport.Request request = new HttpTransport.Request(url)
+                .header("User-Agent", userAgent)
+                // Match the Python client's behavior by accepting compressed responses and
+                // decompressing them manually below.
+                .header("Accept-Encoding", "gzip, deflate")
+                .headers(headers)
+                .timeouts(10000, 10000);
+        if (!request.hasHeader("Accept")) {
+            request.header("Accept", "application/json");
+        }
+        PageCache cache = bodyReader.isCacheable() ? PageCache.getInstance() : null;
+        if (cache != null && !cache.isEnabledFor(HostRateLimiter.hostOf(url))) {
+            cache = null;
+        }
+        String cacheKey = cache == null ? null : PageCache.key(url.toExternalForm(), request.getHeaders());
+        PageCache.Entry cached = cache == null ? null : cache.get(cacheKey);
+        if (cached != null) {
+            request.headers(validatorsOf(cached));
+        }
+        try (HttpTransport.Response connection = HttpTransport.getDefault().execute(request)) {
+            int responseCode = connection.getStatusCode();
 
-            boolean acceptSet = false;
-            if (headers != null) {
-                for (Map.Entry<String,String> entry : headers.entrySet()) {
-                    connection.setRequestProperty(entry.getKey(), entry.getValue());
-                    if ("accept".equalsIgnoreCase(entry.getKey())) {
-                        acceptSet = true;
-                    }
-                }
-            }
-            if (!acceptSet) {
-                connection.setRequestProperty("Accept", "application/json");
+            if (responseCode == 304 && cached != null) {
+                logger.debug("{} has not changed, using the cached copy", url);
+                cache.touch(cacheKey);
+                return (T) cached.getBody();
             }
-            connection.setConnectTimeout(10000);
-            connection.setReadTimeout(10000);
-
-            int responseCode = connection.getResponseCode();
 
             if (responseCode == 429) {
                 if (retries < maxRetries) {
-                    String retryAfter = connection.getHeaderField("Retry-After");
+                    String retryAfter = connection.getHeader("Retry-After");
                     long waitTime = calculate429WaitSeconds(retries, baseDelaySeconds, maxDelaySeconds, retryAfter, random);
                     logger.warn("[!] 429 Too Many Requests - retrying in {}s (attempt {}/{})", waitTime, retries + 1, maxRetries);
 
@@ -288,26 +444,18 @@ public class Http {
                 throw new HttpStatusException("HTTP error fetching URL", responseCode, url.toString());
             }
 
-            InputStream inputStream = connection.getInputStream();
-            String encoding = connection.getContentEncoding();
-            if (encoding != null) {
-                if (encoding.equalsIgnoreCase("gzip")) {
-                    inputStream = new GZIPInputStream(inputStream);
-                } else if (encoding.equalsIgnoreCase("deflate")) {
-                    inputStream = new InflaterInputStream(inputStream);
-                }
-            }
-
-            try (InputStream decodedStream = inputStream;
-                 BufferedReader reader = new BufferedReader(new InputStreamReader(decodedStream))) {
-                StringBuilder response = new StringBuilder();
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    response.append(line).append('\n');
+            try (InputStream decodedStream = openDecodedStream(connection)) {
+                T body = bodyReader.read(decodedStream);
+                if (cache != null) {
+                    cache.put(cacheKey, url.toExternalForm(), connection.getHeader("ETag"),
+                            connection.getHeader("Last-Modified"), (String) body);
                 }
-                return response.toString();
+                return body;
             }
 
+        } catch (JsonStreamReader.MalformedJsonException e) {
+            // The response arrived but is not what was expected; asking again will not help
+            throw e;
         } catch (IOException e) {
             if (retries < maxRetries && isTransientNetworkError(e)) {
                 long waitTime = calculate429WaitSeconds(retries, baseDelaySeconds, maxDelaySeconds, null, random);
@@ -327,10 +475,6 @@ public class Http {
             } else {
                 throw e;
             }
-        } finally {
-            if (connection != null) {
-                connection.disconnect();
-            }
         }
     }
 
@@ -350,15 +494,17 @@ public class Http {
         Logger log = LogManager.getLogger(Http.class);
 
         while (retries <= maxRetries) {
-            HttpURLConnection connection = null;
-            try {
-                connection = openRetryableConnection(url, userAgent, headers, connectTimeoutMs, readTimeoutMs);
-                int responseCode = connection.getResponseCode();
+            if (retries > 0) {
+                Metrics.getInstance().onRetry(HostRateLimiter.hostOf(url));
+            }
+            try (HttpTransport.Response connection = HttpTransport.getDefault()
+                    .execute(newRetryableRequest(url, userAgent, headers, connectTimeoutMs, readTimeoutMs))) {
+                int responseCode = connection.getStatusCode();
 
                 if (responseCode == 429) {
                     if (retries < maxRetries) {
                         long waitTime = calculate429WaitSeconds(retries, baseDelaySeconds, maxDelaySeconds,
-                                connection.getHeaderField("Retry-After"), random);
+                                connection.getHeader("Retry-After"), random);
                         log.warn("[!] 429 Too Many Requests for {} - retrying in {}s (attempt {}/{})",
                                 url, waitTime, retries + 1, maxRetries);
                         Utils.sleep(waitTime * 1000L);
@@ -404,42 +550,34 @@ public class Http {
                 } else {
                     throw e;
                 }
-            } finally {
-                if (connection != null) {
-                    connection.disconnect();
-                }
             }
         }
 
         throw new IOException("Exceeded max retries (including final attempt) for GET " + url);
     }
 
-    private static HttpURLConnection openRetryableConnection(URL url, String userAgent, Map<String, String> headers,
-                                                             int connectTimeoutMs, int readTimeoutMs)
-            throws IOException {
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestProperty("User-Agent", userAgent);
-        connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
-        boolean acceptSet = false;
-        if (headers != null) {
-            for (Map.Entry<String, String> entry : headers.entrySet()) {
-                connection.setRequestProperty(entry.getKey(), entry.getValue());
-                if ("accept".equalsIgnoreCase(entry.getKey())) {
-                    acceptSet = true;
-                }
-            }
-        }
-        if (!acceptSet) {
-            connection.setRequestProperty("Accept", "*/*");
+    private static Map<String, String> validatorsOf(PageCache.Entry cached) {
+        Map<String, String> validators = new HashMap<>();
+        cached.addConditionalHeaders(validators);
+        return validators;
+    }
+
+    private static HttpTransport.Request newRetryableRequest(URL url, String userAgent, Map<String, String> headers,
+                                                             int connectTimeoutMs, int readTimeoutMs) {
+        HttpTransport.Request request = new HttpTransport.Request(url)
+                .header("User-Agent", userAgent)
+                .header("Accept-Encoding", "gzip, deflate")
+                .headers(headers)
+                .timeouts(connectTimeoutMs, readTimeoutMs);
+        if (!request.hasHeader("Accept")) {
+            request.header("Accept", "*/*");
         }
-        connection.setConnectTimeout(connectTimeoutMs);
-        connection.setReadTimeout(readTimeoutMs);
-        return connection;
+        return request;
     }
 
-    private static InputStream openDecodedStream(HttpURLConnection connection) throws IOException {
-        InputStream inputStream = connection.getInputStream();
-        String encoding = connection.getContentEncoding();
+    private static InputStream openDecodedStream(HttpTransport.Response connection) throws IOException {
+        InputStream inputStream = connection.getBody();
+        String encoding = connection.getHeader("Content-Encoding");
         if (encoding != null) {
             if (encoding.equalsIgnoreCase("gzip")) {
                 return new GZIPInputStream(inputStream);
@@ -463,11 +601,40 @@ public class Http {
         Response response;
         IOException lastException = null;
         int retries = this.retries;
+        HostRateLimiter limiter = HostRateLimiter.getInstance();
+        HostHealth health = HostHealth.getInstance();
+        String host = HostRateLimiter.hostOf(ReplayRouter.unroute(connection.request().url()));
+        Metrics metrics = Metrics.getInstance();
         while (--retries >= 0) {
+            if (retries < this.retries - 1) {
+                metrics.onRetry(host);
+            }
+            try {
+                health.awaitRequest(host);
+                limiter.acquire(host);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to load " + url);
+            }
+            long start = System.nanoTime();
             try {
                 response = connection.execute();
+                metrics.onResponse(host, response.statusCode(), System.nanoTime() - start);
+                limiter.onResponse(host, response.statusCode(), response.header("Retry-After"));
+                health.onResponse(host, response.statusCode());
                 return response;
             } catch (IOException e) {
+                if (e instanceof org.jsoup.HttpStatusException) {
+                    int status = ((HttpStatusException) e).getStatusCode();
+                    metrics.onResponse(host, status, System.nanoTime() - start);
+                    limiter.onResponse(host, status, null);
+                    health.onResponse(host, status);
+                } else {
+                    metrics.onFailure(host);
+                    if (isTransientNetworkError(e)) {
+                        health.onFailure(host);
+                    }
+                }
                 // Warn users about possibly fixable permission error
                 if (e instanceof org.jsoup.HttpStatusException) {
                     HttpStatusException ex = (HttpStatusException) e;
@@ -518,6 +685,7 @@ public class Http {
             HttpsURLConnection.setDefaultSSLSocketFactory(sslContext.getSocketFactory());
             HostnameVerifier allHostsValid = (hostname, session) -> true;
             HttpsURLConnection.setDefaultHostnameVerifier(allHostsValid);
+            HttpTransport.getDefault().setTrustAllCertificates(true);
         } catch (Exception e) {
             logger.error("ignoreSSLVerification() failed.");
             logger.error(e.getMessage());
@@ -546,29 +714,24 @@ public class Http {
         }
 
         while (retries <= maxRetries) {
-            HttpURLConnection connection = null;
-            try {
-                connection = (HttpURLConnection) currentUrl.openConnection();
-                connection.setInstanceFollowRedirects(false);
-                connection.setRequestProperty("User-Agent", userAgent);
-                if (acceptHeader != null) {
-                    connection.setRequestProperty("Accept", acceptHeader);
-                }
-                if (headers != null) {
-                    for (Map.Entry<String,String> entry : headers.entrySet()) {
-                        if (!"accept".equalsIgnoreCase(entry.getKey())) {
-                            connection.setRequestProperty(entry.getKey(), entry.getValue());
-                        }
+            HttpTransport.Request request = new HttpTransport.Request(currentUrl)
+                    .followRedirects(false)
+                    .header("User-Agent", userAgent)
+                    .header("Accept", acceptHeader)
+                    .timeouts(10000, 10000);
+            if (headers != null) {
+                for (Map.Entry<String,String> entry : headers.entrySet()) {
+                    if (!"accept".equalsIgnoreCase(entry.getKey())) {
+                        request.header(entry.getKey(), entry.getValue());
                     }
                 }
-                connection.setConnectTimeout(10000);
-                connection.setReadTimeout(10000);
-
-                int responseCode = connection.getResponseCode();
+            }
+            try (HttpTransport.Response connection = HttpTransport.getDefault().execute(request)) {
+                int responseCode = connection.getStatusCode();
 
                 if (responseCode == 429) {
                     if (retries < maxRetries) {
-                        String retryAfter = connection.getHeaderField("Retry-After");
+                        String retryAfter = connection.getHeader("Retry-After");
                         long waitTime = calculate429WaitSeconds(retries, baseDelaySeconds, maxDelaySeconds, retryAfter, random);
 
                         logger.warn("[429] Too Many Requests - waiting {}s before retry (attempt {}/{})", waitTime, retries + 1, maxRetries);
@@ -584,7 +747,7 @@ public class Http {
                 }
 
                 if (responseCode == 301 || responseCode == 302 || responseCode == 308) {
-                    String location = connection.getHeaderField("Location");
+                    String location = connection.getHeader("Location");
                     if (location != null) {
                         currentUrl = new URL(location);
                         logger.debug("Redirected to {}", currentUrl);
@@ -613,10 +776,6 @@ public class Http {
                 } else {
                     throw e;
                 }
-            } finally {
-                if (connection != null) {
-                    connection.disconnect();
-                }
             }
         }
 
@@ -651,6 +810,7 @@ public class Http {
             sslContext.init(null, null, new SecureRandom());
             HttpsURLConnection.setDefaultSSLSocketFactory(sslContext.getSocketFactory());
             HttpsURLConnection.setDefaultHostnameVerifier(HttpsURLConnection.getDefaultHostnameVerifier());
+            HttpTransport.getDefault().setTrustAllCertificates(false);
         } catch (Exception e) {
             logger.error("undoSSLVerificationIgnore() failed.");
             logger.error(e.getMessage());
@@ -0,0 +1,154 @@
+package com.rarchives.ripme.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Transport used for raw HTTP requests (file downloads and the retrying helpers in {@link Http}).
+ * <p>
+ * The default implementation is {@link OkHttpTransport}, which keeps a shared connection pool so
+ * that many requests against the same host reuse connections. Another implementation can be
+ * installed with {@link #setDefault(HttpTransport)}.
+ */
+public abstract class HttpTransport {
+
+    private static volatile HttpTransport defaultTransport;
+
+    public static HttpTransport getDefault() {
+        HttpTransport transport = defaultTransport;
+        if (transport == null) {
+            synchronized (HttpTransport.class) {
+                if (defaultTransport == null) {
+                    defaultTransport = new OkHttpTransport();
+                }
+                transport = defaultTransport;
+            }
+        }
+        return transport;
+    }
+
+    public static void setDefault(HttpTransport transport) {
+        defaultTransport = transport;
+    }
+
+    /**
+     * Executes a request. The caller must close the returned response.
+     */
+    public abstract Response execute(Request request) throws IOException;
+
+    /**
+     * Enables or disables certificate and hostname verification for requests made by this
+     * transport. Called from {@link Http#SSLVerifyOff()} and {@link Http#undoSSLVerifyOff()}.
+     */
+    public void setTrustAllCertificates(boolean trustAll) {
+        // Nothing to do by default.
+    }
+
+    /**
+     * A single HTTP request. Header names are case-insensitive; setting a header again replaces it.
+     */
+    public static class Request {
+        private final URL url;
+        private String method = "GET";
+        private final Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        private int connectTimeout = 10000;
+        private int readTimeout = 10000;
+        private boolean followRedirects = true;
+
+        public Request(URL url) {
+            this.url = url;
+        }
+
+        public Request method(String method) {
+            this.method = method;
+            return this;
+        }
+
+        public Request header(String name, String value) {
+            if (value != null) {
+                headers.put(name, value);
+            }
+            return this;
+        }
+
+        public Request headers(Map<String, String> headers) {
+            if (headers != null) {
+                for (Map.Entry<String, String> header : headers.entrySet()) {
+                    header(header.getKey(), header.getValue());
+                }
+            }
+            return this;
+        }
+
+        public Request timeouts(int connectTimeoutMs, int readTimeoutMs) {
+            this.connectTimeout = connectTimeoutMs;
+            this.readTimeout = readTimeoutMs;
+            return this;
+        }
+
+        public Request followRedirects(boolean followRedirects) {
+            this.followRedirects = followRedirects;
+            return this;
+        }
+
+        public URL getURL() {
+            return url;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public Map<String, String> getHeaders() {
+            return Collections.unmodifiableMap(headers);
+        }
+
+        public boolean hasHeader(String name) {
+            return headers.containsKey(name);
+        }
+
+        public int getConnectTimeout() {
+            return connectTimeout;
+        }
+
+        public int getReadTimeout() {
+            return readTimeout;
+        }
+
+        public boolean isFollowRedirects() {
+            return followRedirects;
+        }
+    }
+
+    /**
+     * Response to a {@link Request}. Closing it releases the connection back to the pool.
+     */
+    public interface Response extends Closeable {
+        int getStatusCode();
+
+        /**
+         * @return The value of the header, or null if it is not present.
+         */
+        String getHeader(String name);
+
+        /**
+         * @return The body length, or -1 if it is unknown.
+         */
+        long getContentLength();
+
+        /**
+         * @return The raw (not decompressed) response body.
+         */
+        InputStream getBody() throws IOException;
+
+        /**
+         * @return The URL of the final response after any redirects that were followed.
+         */
+        URL getURL();
+    }
+}
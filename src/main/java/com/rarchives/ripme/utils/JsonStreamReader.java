@@ -0,0 +1,540 @@
+package com.rarchives.ripme.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Pull parser for JSON, for API responses too large to hold as one {@code org.json} tree.
+ * <p>
+ * The document is read one token at a time, like this:
+ * <pre>
+ * reader.beginObject();
+ * while (reader.hasNext()) {
+ *     String name = reader.nextName();
+ *     if (name.equals("after")) {
+ *         after = reader.nextString();
+ *     } else {
+ *         reader.skipValue();
+ *     }
+ * }
+ * reader.endObject();
+ * </pre>
+ * Skipped values are scanned without being stored, so memory use grows with the values a ripper
+ * keeps, not with the size of the response. Small parts of the document can still be turned into
+ * {@code org.json} objects with {@link #readObject()} and {@link #readObject(Set)}.
+ */
+public class JsonStreamReader implements Closeable {
+
+    /**
+     * Thrown when the input is not valid JSON or does not have the structure the caller expects.
+     */
+    public static class MalformedJsonException extends IOException {
+        public MalformedJsonException(String message) {
+            super(message);
+        }
+    }
+
+    public enum Token {
+        BEGIN_ARRAY, END_ARRAY, BEGIN_OBJECT, END_OBJECT, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    // What the innermost scope expects next
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_ARRAY = 2;
+    private static final int NONEMPTY_ARRAY = 3;
+    private static final int EMPTY_OBJECT = 4;
+    private static final int DANGLING_NAME = 5;
+    private static final int NONEMPTY_OBJECT = 6;
+
+    private final Reader in;
+    private final char[] buffer = new char[8192];
+    private int pos = 0;
+    private int limit = 0;
+    private long offset = 0;
+
+    private int[] stack = new int[32];
+    private int depth = 1;
+
+    private Token peeked = null;
+    // text of a peeked NUMBER or BOOLEAN
+    private String peekedLiteral = null;
+    private final StringBuilder text = new StringBuilder();
+
+    public JsonStreamReader(Reader in) {
+        this.in = in;
+        stack[0] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * @return A reader for UTF-8 JSON from {@code in}.
+     */
+    public static JsonStreamReader of(InputStream in) {
+        return new JsonStreamReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    private boolean fill() throws IOException {
+        offset += limit;
+        pos = 0;
+        limit = 0;
+        int read;
+        while ((read = in.read(buffer, 0, buffer.length)) == 0) {
+            // keep reading
+        }
+        if (read < 0) {
+            return false;
+        }
+        limit = read;
+        if (offset == 0 && buffer[0] == '\uFEFF') {
+            pos = 1;
+        }
+        return pos < limit || fill();
+    }
+
+    /** @return The next character that is not white space, without consuming it, or -1 at the end. */
+    private int peekChar() throws IOException {
+        while (true) {
+            if (pos == limit && !fill()) {
+                return -1;
+            }
+            char c = buffer[pos];
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+                pos++;
+            } else {
+                return c;
+            }
+        }
+    }
+
+    private char readChar() throws IOException {
+        if (pos == limit && !fill()) {
+            throw syntaxError("Unexpected end of input");
+        }
+        return buffer[pos++];
+    }
+
+    private MalformedJsonException syntaxError(String message) {
+        return new MalformedJsonException(message + " at character " + (offset + pos));
+    }
+
+    private void push(int scope) {
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+        }
+        stack[depth++] = scope;
+    }
+
+    /**
+     * @return The type of the next token, without consuming it.
+     */
+    public Token peek() throws IOException {
+        if (peeked != null) {
+            return peeked;
+        }
+        int scope = stack[depth - 1];
+        int c = peekChar();
+        switch (scope) {
+            case EMPTY_ARRAY:
+                stack[depth - 1] = NONEMPTY_ARRAY;
+                if (c == ']') {
+                    return peeked = Token.END_ARRAY;
+                }
+                break;
+            case NONEMPTY_ARRAY:
+                if (c == ']') {
+                    return peeked = Token.END_ARRAY;
+                }
+                if (c != ',') {
+                    throw syntaxError("Expected ',' or ']'");
+                }
+                pos++;
+                c = peekChar();
+                break;
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                if (c == '}') {
+                    return peeked = Token.END_OBJECT;
+                }
+                if (scope == NONEMPTY_OBJECT) {
+                    if (c != ',') {
+                        throw syntaxError("Expected ',' or '}'");
+                    }
+                    pos++;
+                    c = peekChar();
+                }
+                if (c != '"') {
+                    throw syntaxError("Expected a name");
+                }
+                stack[depth - 1] = DANGLING_NAME;
+                return peeked = Token.NAME;
+            case DANGLING_NAME:
+                if (c != ':') {
+                    throw syntaxError("Expected ':'");
+                }
+                pos++;
+                stack[depth - 1] = NONEMPTY_OBJECT;
+                c = peekChar();
+                break;
+            case NONEMPTY_DOCUMENT:
+                if (c != -1) {
+                    throw syntaxError("Expected end of input");
+                }
+                return peeked = Token.END_DOCUMENT;
+            default:
+                stack[depth - 1] = NONEMPTY_DOCUMENT;
+                break;
+        }
+        return peeked = peekValue(c);
+    }
+
+    private Token peekValue(int c) throws IOException {
+        switch (c) {
+            case '{':
+                return Token.BEGIN_OBJECT;
+            case '[':
+                return Token.BEGIN_ARRAY;
+            case '"':
+                return Token.STRING;
+            case 't':
+            case 'f':
+            case 'n':
+                peekedLiteral = readLiteral();
+                if (peekedLiteral.equals("null")) {
+                    return Token.NULL;
+                }
+                if (peekedLiteral.equals("true") || peekedLiteral.equals("false")) {
+                    return Token.BOOLEAN;
+                }
+                throw syntaxError("Unexpected value '" + peekedLiteral + "'");
+            case -1:
+                throw syntaxError("Unexpected end of input");
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    peekedLiteral = readLiteral();
+                    return Token.NUMBER;
+                }
+                throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    private String readLiteral() throws IOException {
+        text.setLength(0);
+        while (pos < limit || fill()) {
+            char c = buffer[pos];
+            if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.'
+                    || c == 'E') {
+                text.append(c);
+                pos++;
+            } else {
+                break;
+            }
+        }
+        return text.toString();
+    }
+
+    private void expect(Token token) throws IOException {
+        Token actual = peek();
+        if (actual != token) {
+            throw syntaxError("Expected " + token + " but was " + actual);
+        }
+        peeked = null;
+    }
+
+    public void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        pos++;
+        push(EMPTY_ARRAY);
+    }
+
+    public void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        pos++;
+        depth--;
+    }
+
+    public void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        pos++;
+        push(EMPTY_OBJECT);
+    }
+
+    public void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        pos++;
+        depth--;
+    }
+
+    /**
+     * @return True if the current array or object has another element.
+     */
+    public boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_ARRAY && token != Token.END_OBJECT && token != Token.END_DOCUMENT;
+    }
+
+    public String nextName() throws IOException {
+        expect(Token.NAME);
+        return readString(true);
+    }
+
+    /**
+     * @return The next string, or the text of the next number.
+     */
+    public String nextString() throws IOException {
+        Token token = peek();
+        if (token == Token.NUMBER) {
+            peeked = null;
+            return peekedLiteral;
+        }
+        expect(Token.STRING);
+        return readString(true);
+    }
+
+    public boolean nextBoolean() throws IOException {
+        expect(Token.BOOLEAN);
+        return peekedLiteral.equals("true");
+    }
+
+    public void nextNull() throws IOException {
+        expect(Token.NULL);
+    }
+
+    /**
+     * @return The next number, or the next string parsed as a number.
+     */
+    public long nextLong() throws IOException {
+        String value = nextString();
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            try {
+                double d = Double.parseDouble(value);
+                if (d == (long) d) {
+                    return (long) d;
+                }
+            } catch (NumberFormatException ignored) {
+                // reported below
+            }
+            throw syntaxError("Expected a long but was '" + value + "'");
+        }
+    }
+
+    public int nextInt() throws IOException {
+        long value = nextLong();
+        if (value != (int) value) {
+            throw syntaxError("Expected an int but was " + value);
+        }
+        return (int) value;
+    }
+
+    public double nextDouble() throws IOException {
+        String value = nextString();
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw syntaxError("Expected a double but was '" + value + "'");
+        }
+    }
+
+    /**
+     * Reads a string whose opening quote has been peeked.
+     *
+     * @param keep False to only scan past the string.
+     */
+    private String readString(boolean keep) throws IOException {
+        pos++;
+        if (keep) {
+            text.setLength(0);
+        }
+        while (true) {
+            if (pos == limit && !fill()) {
+                throw syntaxError("Unterminated string");
+            }
+            // copy runs of plain characters at once
+            int start = pos;
+            while (pos < limit && buffer[pos] != '"' && buffer[pos] != '\\') {
+                pos++;
+            }
+            if (keep) {
+                text.append(buffer, start, pos - start);
+            }
+            if (pos == limit) {
+                continue;
+            }
+            char c = buffer[pos++];
+            if (c == '"') {
+                return keep ? text.toString() : null;
+            }
+            char escaped = readEscape();
+            if (keep) {
+                text.append(escaped);
+            }
+        }
+    }
+
+    private char readEscape() throws IOException {
+        char c = readChar();
+        switch (c) {
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(readChar(), 16);
+                    if (digit < 0) {
+                        throw syntaxError("Invalid unicode escape");
+                    }
+                    value = value * 16 + digit;
+                }
+                return (char) value;
+            case '"':
+            case '\\':
+            case '/':
+                return c;
+            default:
+                throw syntaxError("Invalid escape '\\" + c + "'");
+        }
+    }
+
+    /**
+     * Skips the next value, including everything nested in it, or the next name and its value.
+     */
+    public void skipValue() throws IOException {
+        int level = 0;
+        do {
+            Token token = peek();
+            peeked = null;
+            switch (token) {
+                case BEGIN_ARRAY:
+                    pos++;
+                    push(EMPTY_ARRAY);
+                    level++;
+                    break;
+                case BEGIN_OBJECT:
+                    pos++;
+                    push(EMPTY_OBJECT);
+                    level++;
+                    break;
+                case END_ARRAY:
+                case END_OBJECT:
+                    pos++;
+                    depth--;
+                    level--;
+                    break;
+                case NAME:
+                    readString(false);
+                    // skip the value too
+                    if (level == 0) {
+                        skipValue();
+                    }
+                    break;
+                case STRING:
+                    readString(false);
+                    break;
+                case END_DOCUMENT:
+                    throw syntaxError("Unexpected end of input");
+                default:
+                    break;
+            }
+        } while (level > 0);
+    }
+
+    /**
+     * Reads the next value as an {@code org.json} value: a {@link JSONObject}, {@link JSONArray},
+     * {@link String}, {@link Number}, {@link Boolean} or {@link JSONObject#NULL}.
+     */
+    public Object readValue() throws IOException {
+        switch (peek()) {
+            case BEGIN_OBJECT:
+                return readObject();
+            case BEGIN_ARRAY:
+                return readArray();
+            case STRING:
+                return nextString();
+            case NUMBER:
+                return toNumber(nextString());
+            case BOOLEAN:
+                return nextBoolean();
+            case NULL:
+                nextNull();
+                return JSONObject.NULL;
+            default:
+                throw syntaxError("Expected a value but was " + peek());
+        }
+    }
+
+    private static Number toNumber(String value) {
+        if (value.indexOf('.') >= 0 || value.indexOf('e') >= 0 || value.indexOf('E') >= 0) {
+            return Double.parseDouble(value);
+        }
+        BigInteger big = new BigInteger(value);
+        if (big.bitLength() < 32) {
+            return big.intValue();
+        }
+        if (big.bitLength() < 64) {
+            return big.longValue();
+        }
+        return big;
+    }
+
+    /**
+     * Reads the next object with everything nested in it.
+     */
+    public JSONObject readObject() throws IOException {
+        return readObject(null);
+    }
+
+    /**
+     * Reads the next object, keeping only the members named in {@code fields}. Nested values of
+     * kept members are read in full.
+     *
+     * @param fields Names of the members to keep, or null to keep all.
+     */
+    public JSONObject readObject(Set<String> fields) throws IOException {
+        JSONObject object = new JSONObject();
+        beginObject();
+        while (hasNext()) {
+            String name = nextName();
+            if (fields == null || fields.contains(name)) {
+                object.put(name, readValue());
+            } else {
+                skipValue();
+            }
+        }
+        endObject();
+        return object;
+    }
+
+    public JSONArray readArray() throws IOException {
+        JSONArray array = new JSONArray();
+        beginArray();
+        while (hasNext()) {
+            array.put(readValue());
+        }
+        endArray();
+        return array;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,432 @@
+package com.rarchives.ripme.utils;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Process-wide counters for watching a long run: per-host request latency, throughput, retries
+ * and throttling, per-ripper status updates and duplicate skips, and download queue depth.
+ * <p>
+ * {@link #startExport()} publishes them as the {@code com.rarchives.ripme:type=Metrics} MXBean
+ * and rewrites {@code metrics.file} in the Prometheus text format every
+ * {@code metrics.interval_seconds}, so a scraper or {@code node_exporter}'s textfile collector can
+ * pick them up. Recording is a few atomic additions and is always on.
+ */
+public class Metrics implements MetricsMXBean {
+
+    private static final Logger logger = LogManager.getLogger(Metrics.class);
+
+    private static final Metrics INSTANCE = new Metrics(System::nanoTime);
+
+    // Upper bounds of the latency histogram buckets, in seconds
+    static final double[] LATENCY_BUCKETS = {0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30};
+
+    /**
+     * Counters of one host.
+     */
+    private static final class Host {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder throttled = new LongAdder();
+        private final LongAdder serverErrors = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder latencyNanos = new LongAdder();
+        private final LongAdder[] latencyBuckets = new LongAdder[LATENCY_BUCKETS.length];
+        // bytes and time at the previous sample, for the download rate
+        private long sampledBytes = 0;
+        private long sampledAt = -1;
+        private volatile double bytesPerSecond = 0;
+
+        private Host() {
+            for (int i = 0; i < latencyBuckets.length; i++) {
+                latencyBuckets[i] = new LongAdder();
+            }
+        }
+    }
+
+    private final LongSupplier clock;
+    private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+    // ripper -> status -> count
+    private final Map<String, Map<String, LongAdder>> updates = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> dedupHits = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> historyHits = new ConcurrentHashMap<>();
+    private final ReentrantLock queuesLock = new ReentrantLock();
+    private final Map<Object, Function<Object, Map<String, Integer>>> queues = new WeakHashMap<>();
+    private final ReentrantLock exportLock = new ReentrantLock();
+    private ScheduledThreadPoolExecutor timer = null;
+
+    /**
+     * @param clock Source of {@link System#nanoTime()}-like timestamps, for the download rates.
+     */
+    Metrics(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    public static Metrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Registers the MXBean and starts rewriting the Prometheus file if {@code metrics.enabled} is
+     * true (default false). Calling it again does nothing.
+     */
+    public static void startExport() {
+        INSTANCE.start(Utils.getConfigBoolean("metrics.enabled", false),
+                Utils.getConfigString("metrics.file", "metrics.prom"),
+                Utils.getConfigInteger("metrics.interval_seconds", 15));
+    }
+
+    private void start(boolean enabled, String fileName, int intervalSeconds) {
+        if (!enabled) {
+            return;
+        }
+        exportLock.lock();
+        try {
+            if (timer != null) {
+                return;
+            }
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(MXBEAN_NAME));
+            } catch (JMException e) {
+                logger.warn("Unable to register metrics MXBean: {}", e.getMessage());
+            }
+            Path file = fileName == null || fileName.isBlank() ? null : Paths.get(Utils.getConfigDir()).resolve(fileName);
+            timer = new ScheduledThreadPoolExecutor(1, task -> {
+                Thread thread = new Thread(task, "ripme-metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = Math.max(1, intervalSeconds);
+            timer.scheduleWithFixedDelay(() -> {
+                try {
+                    sample();
+                    if (file != null) {
+                        write(file);
+                    }
+                } catch (RuntimeException e) {
+                    logger.warn("Unable to export metrics: {}", e.getMessage());
+                }
+            }, interval, interval, TimeUnit.SECONDS);
+            logger.info("Exporting metrics over JMX{}", file == null ? "" : " and to " + file);
+        } finally {
+            exportLock.unlock();
+        }
+    }
+
+    private Host host(String host) {
+        return hosts.computeIfAbsent(host == null || host.isEmpty() ? "unknown" : host, ignored -> new Host());
+    }
+
+    private static LongAdder counter(Map<String, LongAdder> counters, String key) {
+        return counters.computeIfAbsent(key == null ? "unknown" : key, ignored -> new LongAdder());
+    }
+
+    /**
+     * Records a response from {@code host} that arrived {@code nanos} after the request was sent.
+     */
+    public void onResponse(String host, int statusCode, long nanos) {
+        Host counters = host(host);
+        counters.requests.increment();
+        if (statusCode == 429) {
+            counters.throttled.increment();
+        } else if (statusCode >= 500 && statusCode <= 599) {
+            counters.serverErrors.increment();
+        }
+        counters.latencyNanos.add(nanos);
+        double seconds = nanos / 1e9;
+        for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+            if (seconds <= LATENCY_BUCKETS[i]) {
+                counters.latencyBuckets[i].increment();
+                break;
+            }
+        }
+    }
+
+    /**
+     * Records a request to {@code host} that failed without a response.
+     */
+    public void onFailure(String host) {
+        Host counters = host(host);
+        counters.requests.increment();
+        counters.failures.increment();
+    }
+
+    /**
+     * Records that a request to {@code host} is being retried.
+     */
+    public void onRetry(String host) {
+        host(host).retries.increment();
+    }
+
+    /**
+     * Records {@code bytes} of file data downloaded from {@code host}.
+     */
+    public void onBytes(String host, long bytes) {
+        host(host).bytes.add(bytes);
+    }
+
+    /**
+     * Records a status update sent by a ripper.
+     */
+    public void onStatus(String ripper, String status) {
+        counter(updates.computeIfAbsent(ripper == null ? "unknown" : ripper, ignored -> new ConcurrentHashMap<>()),
+                status).increment();
+    }
+
+    /**
+     * Records a download dropped because its hash matched an earlier file.
+     */
+    public void onDedupHit(String ripper) {
+        counter(dedupHits, ripper).increment();
+    }
+
+    /**
+     * Records a URL skipped because it is in the download history.
+     */
+    public void onHistoryHit(String ripper) {
+        counter(historyHits, ripper).increment();
+    }
+
+    /**
+     * Adds the queue depths of {@code pool}, per host, to the exported metrics for as long as the
+     * pool is reachable.
+     *
+     * @param depths Reads the depths from the pool; must not capture it.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void addQueue(T pool, Function<T, Map<String, Integer>> depths) {
+        queuesLock.lock();
+        try {
+            queues.put(pool, (Function<Object, Map<String, Integer>>) depths);
+        } finally {
+            queuesLock.unlock();
+        }
+    }
+
+    /**
+     * @return Tasks waiting in the registered download pools, per host.
+     */
+    Map<String, Integer> queueDepths() {
+        Map<String, Integer> total = new TreeMap<>();
+        List<Map.Entry<Object, Function<Object, Map<String, Integer>>>> pools;
+        queuesLock.lock();
+        try {
+            pools = new ArrayList<>(queues.entrySet());
+        } finally {
+            queuesLock.unlock();
+        }
+        for (Map.Entry<Object, Function<Object, Map<String, Integer>>> pool : pools) {
+            pool.getValue().apply(pool.getKey()).forEach((host, depth) -> total.merge(host, depth, Integer::sum));
+        }
+        return total;
+    }
+
+    /**
+     * Updates the download rate of each host from the bytes downloaded since the last sample.
+     */
+    void sample() {
+        long now = clock.getAsLong();
+        for (Host host : hosts.values()) {
+            synchronized (host) {
+                long bytes = host.bytes.sum();
+                if (host.sampledAt >= 0 && now > host.sampledAt) {
+                    host.bytesPerSecond = (bytes - host.sampledBytes) * 1e9 / (now - host.sampledAt);
+                }
+                host.sampledBytes = bytes;
+                host.sampledAt = now;
+            }
+        }
+    }
+
+    private void write(Path file) {
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(tmp, toPrometheus().getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to write metrics to {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * @return The metrics in the Prometheus text exposition format.
+     */
+    String toPrometheus() {
+        StringBuilder out = new StringBuilder();
+        Map<String, Host> sorted = new TreeMap<>(hosts);
+
+        out.append("# HELP ripme_http_request_duration_seconds Time from sending a request to its response.\n");
+        out.append("# TYPE ripme_http_request_duration_seconds histogram\n");
+        for (Map.Entry<String, Host> entry : sorted.entrySet()) {
+            Host host = entry.getValue();
+            String label = "host=\"" + escape(entry.getKey()) + "\"";
+            long cumulative = 0;
+            for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+                cumulative += host.latencyBuckets[i].sum();
+                out.append("ripme_http_request_duration_seconds_bucket{").append(label).append(",le=\"")
+                        .append(formatDouble(LATENCY_BUCKETS[i])).append("\"} ").append(cumulative).append('\n');
+            }
+            long responses = host.requests.sum() - host.failures.sum();
+            out.append("ripme_http_request_duration_seconds_bucket{").append(label).append(",le=\"+Inf\"} ")
+                    .append(responses).append('\n');
+            out.append("ripme_http_request_duration_seconds_sum{").append(label).append("} ")
+                    .append(formatDouble(host.latencyNanos.sum() / 1e9)).append('\n');
+            out.append("ripme_http_request_duration_seconds_count{").append(label).append("} ")
+                    .append(responses).append('\n');
+        }
+        appendHostCounter(out, sorted, "ripme_http_requests_total", "Requests sent, including failed ones.",
+                host -> host.requests.sum());
+        appendHostCounter(out, sorted, "ripme_http_failures_total", "Requests that failed without a response.",
+                host -> host.failures.sum());
+        appendHostCounter(out, sorted, "ripme_http_throttled_total", "Responses with status 429.",
+                host -> host.throttled.sum());
+        appendHostCounter(out, sorted, "ripme_http_server_errors_total", "Responses with a 5xx status.",
+                host -> host.serverErrors.sum());
+        appendHostCounter(out, sorted, "ripme_http_retries_total", "Requests sent again after a failure.",
+                host -> host.retries.sum());
+        appendHostCounter(out, sorted, "ripme_download_bytes_total", "Bytes of files downloaded.",
+                host -> host.bytes.sum());
+
+        out.append("# HELP ripme_download_bytes_per_second Download rate over the last sample interval.\n");
+        out.append("# TYPE ripme_download_bytes_per_second gauge\n");
+        for (Map.Entry<String, Host> entry : sorted.entrySet()) {
+            out.append("ripme_download_bytes_per_second{host=\"").append(escape(entry.getKey())).append("\"} ")
+                    .append(formatDouble(entry.getValue().bytesPerSecond)).append('\n');
+        }
+
+        out.append("# HELP ripme_download_queue_depth Downloads waiting for a connection to their host.\n");
+        out.append("# TYPE ripme_download_queue_depth gauge\n");
+        for (Map.Entry<String, Integer> entry : queueDepths().entrySet()) {
+            out.append("ripme_download_queue_depth{host=\"").append(escape(entry.getKey())).append("\"} ")
+                    .append(entry.getValue()).append('\n');
+        }
+
+        out.append("# HELP ripme_rip_updates_total Status updates sent by rippers.\n");
+        out.append("# TYPE ripme_rip_updates_total counter\n");
+        for (Map.Entry<String, Map<String, LongAdder>> ripper : new TreeMap<>(updates).entrySet()) {
+            for (Map.Entry<String, LongAdder> status : new TreeMap<>(ripper.getValue()).entrySet()) {
+                out.append("ripme_rip_updates_total{ripper=\"").append(escape(ripper.getKey()))
+                        .append("\",status=\"").append(escape(status.getKey())).append("\"} ")
+                        .append(status.getValue().sum()).append('\n');
+            }
+        }
+        appendRipperCounter(out, dedupHits, "ripme_dedup_hits_total",
+                "Downloads dropped because their hash matched an earlier file.");
+        appendRipperCounter(out, historyHits, "ripme_history_hits_total",
+                "URLs skipped because they are in the download history.");
+        return out.toString();
+    }
+
+    private interface HostValue {
+        long get(Host host);
+    }
+
+    private static void appendHostCounter(StringBuilder out, Map<String, Host> hosts, String name, String help,
+                                          HostValue value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" counter\n");
+        for (Map.Entry<String, Host> entry : hosts.entrySet()) {
+            out.append(name).append("{host=\"").append(escape(entry.getKey())).append("\"} ")
+                    .append(value.get(entry.getValue())).append('\n');
+        }
+    }
+
+    private static void appendRipperCounter(StringBuilder out, Map<String, LongAdder> counters, String name,
+                                            String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" counter\n");
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(counters).entrySet()) {
+            out.append(name).append("{ripper=\"").append(escape(entry.getKey())).append("\"} ")
+                    .append(entry.getValue().sum()).append('\n');
+        }
+    }
+
+    private static String escape(String label) {
+        return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String formatDouble(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    // MXBean attributes
+
+    @Override
+    public List<HostMetrics> getHosts() {
+        List<HostMetrics> result = new ArrayList<>();
+        Map<String, Integer> depths = queueDepths();
+        for (Map.Entry<String, Host> entry : new TreeMap<>(hosts).entrySet()) {
+            Host host = entry.getValue();
+            long responses = host.requests.sum() - host.failures.sum();
+            result.add(new HostMetrics(entry.getKey(), host.requests.sum(), host.failures.sum(),
+                    host.throttled.sum(), host.serverErrors.sum(), host.retries.sum(), host.bytes.sum(),
+                    host.bytesPerSecond, responses > 0 ? host.latencyNanos.sum() / responses / 1_000_000 : 0,
+                    depths.getOrDefault(entry.getKey(), 0)));
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getDedupHits() {
+        return sums(dedupHits);
+    }
+
+    @Override
+    public Map<String, Long> getHistoryHits() {
+        return sums(historyHits);
+    }
+
+    @Override
+    public int getQueueDepth() {
+        int total = 0;
+        for (int depth : queueDepths().values()) {
+            total += depth;
+        }
+        return total;
+    }
+
+    @Override
+    public String getPrometheusText() {
+        return toPrometheus();
+    }
+
+    private static Map<String, Long> sums(Map<String, LongAdder> counters) {
+        Map<String, Long> result = new TreeMap<>();
+        counters.forEach((key, counter) -> result.put(key, counter.sum()));
+        return Collections.unmodifiableMap(result);
+    }
+}
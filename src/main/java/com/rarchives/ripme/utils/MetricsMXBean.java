@@ -0,0 +1,37 @@
+package com.rarchives.ripme.utils;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JMX view of {@link Metrics}, registered as {@value #MXBEAN_NAME}.
+ */
+public interface MetricsMXBean {
+
+    String MXBEAN_NAME = "com.rarchives.ripme:type=Metrics";
+
+    /**
+     * @return Request counters, latency and download rate of each host contacted.
+     */
+    List<HostMetrics> getHosts();
+
+    /**
+     * @return Downloads dropped because their hash matched an earlier file, per ripper.
+     */
+    Map<String, Long> getDedupHits();
+
+    /**
+     * @return URLs skipped because they are in the download history, per ripper.
+     */
+    Map<String, Long> getHistoryHits();
+
+    /**
+     * @return Downloads waiting for a connection to their host, in all download pools.
+     */
+    int getQueueDepth();
+
+    /**
+     * @return All metrics in the Prometheus text format, as written to {@code metrics.file}.
+     */
+    String getPrometheusText();
+}
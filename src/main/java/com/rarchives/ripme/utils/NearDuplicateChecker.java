@@ -0,0 +1,167 @@
+package com.rarchives.ripme.utils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Finds downloaded images that are re-encoded or resized copies of images downloaded before, which
+ * the SHA-256 duplicate check cannot see.
+ * <p>
+ * Completed images are hashed with {@link PerceptualHash} on a small pool of
+ * {@code image.near_duplicates.threads} workers, and looked up in the {@link PerceptualHashIndex}
+ * within {@code image.near_duplicates.distance} bits. What happens to a near duplicate is set by
+ * {@code image.near_duplicates}: {@code log} only logs it, {@code skip} deletes it and
+ * {@code link} replaces it with a hard link to the earlier file. The default, {@code off},
+ * disables the check.
+ */
+public class NearDuplicateChecker {
+
+    private static final Logger logger = LogManager.getLogger(NearDuplicateChecker.class);
+
+    private static final Set<String> IMAGE_EXTENSIONS = Set.of("jpg", "jpeg", "png", "gif", "bmp");
+
+    private static final NearDuplicateChecker INSTANCE = new NearDuplicateChecker(
+            Utils.getConfigInteger("image.near_duplicates.threads", 2),
+            Utils.getConfigInteger("image.near_duplicates.queue", 256));
+
+    public enum Action {
+        LOG, SKIP, LINK
+    }
+
+    private final ThreadPoolExecutor executor;
+
+    public static NearDuplicateChecker getInstance() {
+        return INSTANCE;
+    }
+
+    NearDuplicateChecker(int threads, int queueSize) {
+        threads = Math.max(1, threads);
+        AtomicInteger threadCounter = new AtomicInteger();
+        // When the queue is full, the download thread hashes the image itself, which slows
+        // downloads to the rate images can be hashed
+        executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)), task -> {
+                    Thread thread = new Thread(task, "ripme-near-duplicates-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return The configured action, or null if the check is off.
+     */
+    public static Action getAction() {
+        String action = Utils.getConfigString("image.near_duplicates", "off").trim().toUpperCase(Locale.ROOT);
+        if (action.isEmpty() || action.equals("OFF")) {
+            return null;
+        }
+        try {
+            return Action.valueOf(action);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Unknown image.near_duplicates action: {}", action);
+            return null;
+        }
+    }
+
+    /**
+     * Queues a completed download for the check if it is enabled and the file is an image.
+     *
+     * @param host Host the file was downloaded from, for the dedup metrics.
+     */
+    public void submit(Path file, String host) {
+        Action action = getAction();
+        if (action == null || !isImage(file)) {
+            return;
+        }
+        String indexFile = Utils.getPerceptualHashFile();
+        int radius = Utils.getConfigInteger("image.near_duplicates.distance", 6);
+        executor.execute(() -> check(file, host, action, PerceptualHashIndex.forFile(indexFile), radius));
+    }
+
+    private static boolean isImage(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && IMAGE_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Hashes one image and applies {@code action} if it is near an image already in the index.
+     *
+     * @return The earlier file it is a near duplicate of, or null.
+     */
+    static Path check(Path file, String host, Action action, PerceptualHashIndex index, int radius) {
+        Long hash;
+        try {
+            hash = PerceptualHash.of(file);
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Unable to decode {} for the near-duplicate check: {}", file, e.getMessage());
+            return null;
+        }
+        if (hash == null) {
+            return null;
+        }
+        Path absolute = file.toAbsolutePath();
+        Path existing;
+        while (true) {
+            String match = index.addIfNoneNear(hash, radius, absolute.toString());
+            if (match == null) {
+                return null;
+            }
+            existing = Paths.get(match);
+            if (existing.equals(absolute)) {
+                return null;
+            }
+            if (Files.exists(existing)) {
+                break;
+            }
+            // The earlier file was moved or deleted, so this one takes its place in the index
+            if (index.replaceNear(hash, radius, match, absolute.toString())) {
+                return null;
+            }
+        }
+        switch (action) {
+            case LOG:
+                logger.info("[!] {} looks like a near duplicate of {}", Utils.removeCWD(file), Utils.removeCWD(existing));
+                break;
+            case SKIP:
+                try {
+                    Files.deleteIfExists(file);
+                    logger.info("[!] Deleted {}, a near duplicate of {}", Utils.removeCWD(file), Utils.removeCWD(existing));
+                    Metrics.getInstance().onDedupHit(host);
+                } catch (IOException e) {
+                    logger.warn("[!] Failed to delete near duplicate {}: {}", file, e.getMessage());
+                }
+                break;
+            case LINK:
+                Path link = file.resolveSibling(file.getFileName() + ".link");
+                try {
+                    Files.createLink(link, existing);
+                    Files.move(link, file, StandardCopyOption.REPLACE_EXISTING);
+                    logger.info("[!] Replaced {} with a hard link to {}", Utils.removeCWD(file), Utils.removeCWD(existing));
+                    Metrics.getInstance().onDedupHit(host);
+                } catch (IOException | UnsupportedOperationException e) {
+                    // Hard links don't work across file systems
+                    logger.warn("[!] Failed to link near duplicate {} to {}: {}", file, existing, e.getMessage());
+                    try {
+                        Files.deleteIfExists(link);
+                    } catch (IOException ignored) {
+                    }
+                }
+                break;
+        }
+        return existing;
+    }
+}
@@ -0,0 +1,229 @@
+package com.rarchives.ripme.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import okhttp3.Authenticator;
+import okhttp3.ConnectionPool;
+import okhttp3.Headers;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.ResponseBody;
+
+/**
+ * {@link HttpTransport} backed by a single shared OkHttp client.
+ * <p>
+ * All requests share one connection pool, so connections (and TLS sessions) to a host are kept
+ * alive and reused, and HTTP/2 is negotiated when the server offers it. Pool settings:
+ * <ul>
+ * <li>{@code http.pool.max_idle}: idle connections kept across all hosts (default 32)</li>
+ * <li>{@code http.pool.keep_alive_seconds}: how long an idle connection is kept (default 300)</li>
+ * <li>{@code http.http2}: allow HTTP/2 (default true)</li>
+ * </ul>
+ * Proxies configured through the system properties set by {@link Proxy} are honoured, and requests
+ * go to the replay server when {@link ReplayRouter} is enabled. Requests
+ * wait for the budget of their host in {@link HostRateLimiter} and while {@link HostHealth} has
+ * paused the host.
+ */
+public class OkHttpTransport extends HttpTransport {
+
+    private static final Logger logger = LogManager.getLogger(OkHttpTransport.class);
+
+    private final OkHttpClient baseClient;
+    private volatile OkHttpClient client;
+
+    public OkHttpTransport() {
+        this(newClientBuilder().build());
+    }
+
+    public OkHttpTransport(OkHttpClient client) {
+        this.baseClient = client;
+        this.client = client;
+    }
+
+    private static OkHttpClient.Builder newClientBuilder() {
+        int maxIdle = Utils.getConfigInteger("http.pool.max_idle", 32);
+        int keepAliveSeconds = Utils.getConfigInteger("http.pool.keep_alive_seconds", 300);
+        List<Protocol> protocols = Utils.getConfigBoolean("http.http2", true)
+                ? List.of(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                : List.of(Protocol.HTTP_1_1);
+        logger.debug("Creating HTTP client with up to {} idle connections, keep-alive {}s, protocols {}",
+                maxIdle, keepAliveSeconds, protocols);
+        return new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(maxIdle, keepAliveSeconds, TimeUnit.SECONDS))
+                .protocols(protocols)
+                .proxyAuthenticator(Authenticator.JAVA_NET_AUTHENTICATOR)
+                .addInterceptor(OkHttpTransport::routeToReplayServer);
+    }
+
+    private static okhttp3.Response routeToReplayServer(Interceptor.Chain chain) throws IOException {
+        okhttp3.Request request = chain.request();
+        if (!ReplayRouter.isEnabled()) {
+            return chain.proceed(request);
+        }
+        return chain.proceed(request.newBuilder().url(ReplayRouter.route(request.url().url())).build());
+    }
+
+    /**
+     * @return The client used by this transport. Rippers that talk to OkHttp directly should derive
+     *         their clients from it with {@code newBuilder()} so they share the connection pool.
+     */
+    public OkHttpClient getClient() {
+        return client;
+    }
+
+    /**
+     * @return A builder for an OkHttp client that shares the connection pool of the default
+     *         transport, for rippers that need OkHttp-specific settings.
+     */
+    public static OkHttpClient.Builder newSharedClientBuilder() {
+        HttpTransport transport = HttpTransport.getDefault();
+        if (transport instanceof OkHttpTransport) {
+            return ((OkHttpTransport) transport).getClient().newBuilder();
+        }
+        return newClientBuilder();
+    }
+
+    @Override
+    public void setTrustAllCertificates(boolean trustAll) {
+        if (!trustAll) {
+            client = baseClient;
+            return;
+        }
+        try {
+            X509TrustManager trustAllManager = new X509TrustManager() {
+                public X509Certificate[] getAcceptedIssuers() {
+                    return new X509Certificate[0];
+                }
+
+                public void checkClientTrusted(X509Certificate[] certs, String authType) {
+                }
+
+                public void checkServerTrusted(X509Certificate[] certs, String authType) {
+                }
+            };
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, new TrustManager[]{trustAllManager}, new SecureRandom());
+            client = baseClient.newBuilder()
+                    .sslSocketFactory(sslContext.getSocketFactory(), trustAllManager)
+                    .hostnameVerifier((hostname, session) -> true)
+                    .build();
+        } catch (Exception e) {
+            logger.error("Failed to disable certificate verification: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException {
+        OkHttpClient callClient = client.newBuilder()
+                .connectTimeout(request.getConnectTimeout(), TimeUnit.MILLISECONDS)
+                .readTimeout(request.getReadTimeout(), TimeUnit.MILLISECONDS)
+                .followRedirects(request.isFollowRedirects())
+                .followSslRedirects(request.isFollowRedirects())
+                .build();
+
+        Headers.Builder headers = new Headers.Builder();
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            // Cookie values scraped from browsers are not always ASCII; HttpURLConnection sent them as-is.
+            headers.addUnsafeNonAscii(header.getKey(), header.getValue());
+        }
+        okhttp3.Request.Builder builder = new okhttp3.Request.Builder()
+                .url(request.getURL())
+                .headers(headers.build());
+        if ("HEAD".equalsIgnoreCase(request.getMethod())) {
+            builder.head();
+        } else {
+            builder.get();
+        }
+        String host = HostRateLimiter.hostOf(request.getURL());
+        HostRateLimiter limiter = HostRateLimiter.getInstance();
+        HostHealth health = HostHealth.getInstance();
+        try {
+            health.awaitRequest(host);
+            limiter.acquire(host);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to request " + request.getURL());
+        }
+        okhttp3.Response response;
+        long start = System.nanoTime();
+        try {
+            response = callClient.newCall(builder.build()).execute();
+        } catch (IOException e) {
+            Metrics.getInstance().onFailure(host);
+            if (Http.isTransientNetworkError(e)) {
+                health.onFailure(host);
+            }
+            throw e;
+        }
+        Metrics.getInstance().onResponse(host, response.code(), System.nanoTime() - start);
+        limiter.onResponse(host, response.code(), response.header("Retry-After"));
+        health.onResponse(host, response.code());
+        return new OkHttpResponse(response);
+    }
+
+    private static class OkHttpResponse implements Response {
+        private final okhttp3.Response response;
+
+        OkHttpResponse(okhttp3.Response response) {
+            this.response = response;
+        }
+
+        @Override
+        public int getStatusCode() {
+            return response.code();
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return response.header(name);
+        }
+
+        @Override
+        public long getContentLength() {
+            String header = response.header("Content-Length");
+            if (header == null) {
+                return -1;
+            }
+            try {
+                return Long.parseLong(header.trim());
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            ResponseBody body = response.body();
+            if (body == null) {
+                throw new IOException("Response has no body");
+            }
+            return body.byteStream();
+        }
+
+        @Override
+        public URL getURL() {
+            return ReplayRouter.unroute(response.request().url().url());
+        }
+
+        @Override
+        public void close() {
+            response.close();
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package com.rarchives.ripme.utils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * On-disk cache of page and API responses, revalidated with conditional GETs.
+ * <p>
+ * Only responses that carry an {@code ETag} or {@code Last-Modified} header are stored. The next
+ * request for the same URL (and the same {@code Accept}, {@code Cookie} and
+ * {@code Authorization} headers) sends {@code If-None-Match} / {@code If-Modified-Since}, and a
+ * {@code 304 Not Modified} answer is served from the cache. Re-ripping albums from history then
+ * costs one small response per unchanged page.
+ * <p>
+ * Entries are kept in {@code page_cache} in the config directory, up to {@code http.cache.max_mb}
+ * megabytes, evicting the least recently used first. The cache is turned off with
+ * {@code http.cache.enabled = false}, and per ripper with {@code AbstractRipper.canCachePages()}.
+ */
+public class PageCache {
+
+    private static final Logger logger = LogManager.getLogger(PageCache.class);
+
+    private static final String SUFFIX = ".page";
+    private static final int FORMAT_VERSION = 1;
+
+    private static volatile PageCache instance;
+
+    /**
+     * A cached response.
+     */
+    public static class Entry {
+        private final String url;
+        private final String etag;
+        private final String lastModified;
+        private final String body;
+
+        Entry(String url, String etag, String lastModified, String body) {
+            this.url = url;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.body = body;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public String getETag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        /**
+         * Adds the validators of this entry to a request's headers.
+         */
+        public void addConditionalHeaders(Map<String, String> headers) {
+            if (etag != null) {
+                headers.put("If-None-Match", etag);
+            }
+            if (lastModified != null) {
+                headers.put("If-Modified-Since", lastModified);
+            }
+        }
+    }
+
+    private final Path dir;
+    private final long maxBytes;
+    private final ReentrantLock lock = new ReentrantLock();
+    // file name to size, least recently used first
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<String> disabledHosts = ConcurrentHashMap.newKeySet();
+    private long totalBytes = 0;
+    private boolean loaded = false;
+
+    public PageCache(Path dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return The shared cache, or null if it is disabled with {@code http.cache.enabled}.
+     */
+    public static PageCache getInstance() {
+        if (!Utils.getConfigBoolean("http.cache.enabled", true)) {
+            return null;
+        }
+        if (instance == null) {
+            synchronized (PageCache.class) {
+                if (instance == null) {
+                    long maxBytes = Utils.getConfigLong("http.cache.max_mb", 100) * 1024 * 1024;
+                    instance = new PageCache(Paths.get(Utils.getConfigDir(), "page_cache"), maxBytes);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Stops caching responses from {@code host}, for rippers whose pages must always be loaded
+     * in full.
+     */
+    public void disableFor(String host) {
+        disabledHosts.add(host);
+    }
+
+    public boolean isEnabledFor(String host) {
+        return maxBytes > 0 && !disabledHosts.contains(host);
+    }
+
+    /**
+     * @return The cache key of a request: its URL and the request headers that change the
+     *         response.
+     */
+    public static String key(String url, Map<String, String> headers) {
+        StringBuilder key = new StringBuilder(url);
+        if (headers != null) {
+            Map<String, String> sorted = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            sorted.putAll(headers);
+            for (String name : new String[] {"Accept", "Cookie", "Authorization"}) {
+                String value = sorted.get(name);
+                if (value != null) {
+                    key.append('\n').append(name).append(": ").append(value);
+                }
+            }
+        }
+        return key.toString();
+    }
+
+    private static String fileName(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (byte b : digest) {
+                name.append(String.format("%02x", b));
+            }
+            return name.append(SUFFIX).toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void loadIndex() throws IOException {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        Map<Path, FileTime> times = new LinkedHashMap<>();
+        for (Path file : files) {
+            times.put(file, Files.getLastModifiedTime(file));
+        }
+        files.sort(Comparator.comparing(times::get));
+        for (Path file : files) {
+            long size = Files.size(file);
+            index.put(file.getFileName().toString(), size);
+            totalBytes += size;
+        }
+    }
+
+    /**
+     * @return The cached response for {@code key}, or null if there is none.
+     */
+    public Entry get(String key) {
+        String name = fileName(key);
+        lock.lock();
+        try {
+            loadIndex();
+            if (index.get(name) == null) {
+                return null;
+            }
+            Path file = dir.resolve(name);
+            try (InputStream in = Files.newInputStream(file);
+                 DataInputStream data = new DataInputStream(new GZIPInputStream(in))) {
+                if (data.readInt() != FORMAT_VERSION) {
+                    throw new IOException("Unknown format");
+                }
+                String url = data.readUTF();
+                String etag = emptyToNull(data.readUTF());
+                String lastModified = emptyToNull(data.readUTF());
+                byte[] body = new byte[data.readInt()];
+                data.readFully(body);
+                return new Entry(url, etag, lastModified, new String(body, StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            logger.debug("Dropping unreadable page cache entry for {}: {}", key, e.getMessage());
+            remove(name);
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Marks the entry for {@code key} as used, after the server confirmed it is still current.
+     */
+    public void touch(String key) {
+        String name = fileName(key);
+        lock.lock();
+        try {
+            if (index.get(name) != null) {
+                Files.setLastModifiedTime(dir.resolve(name), FileTime.fromMillis(System.currentTimeMillis()));
+            }
+        } catch (IOException e) {
+            logger.debug("Unable to touch page cache entry {}: {}", name, e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stores a response if it has a validator, replacing any older entry for {@code key}.
+     */
+    public void put(String key, String url, String etag, String lastModified, String body) {
+        String name = fileName(key);
+        if ((etag == null || etag.isEmpty()) && (lastModified == null || lastModified.isEmpty())) {
+            lock.lock();
+            try {
+                // the page no longer has validators; the old entry would never be revalidated
+                if (index.containsKey(name)) {
+                    remove(name);
+                }
+            } finally {
+                lock.unlock();
+            }
+            return;
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        lock.lock();
+        try {
+            loadIndex();
+            Files.createDirectories(dir);
+            Path file = dir.resolve(name);
+            Path tmp = dir.resolve(name + ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp);
+                 DataOutputStream data = new DataOutputStream(new GZIPOutputStream(out))) {
+                data.writeInt(FORMAT_VERSION);
+                data.writeUTF(url);
+                data.writeUTF(etag == null ? "" : etag);
+                data.writeUTF(lastModified == null ? "" : lastModified);
+                data.writeInt(bytes.length);
+                data.write(bytes);
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            long size = Files.size(file);
+            Long old = index.put(name, size);
+            totalBytes += size - (old == null ? 0 : old);
+            evict();
+        } catch (IOException e) {
+            logger.warn("Unable to cache {}: {}", url, e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            it.remove();
+            totalBytes -= eldest.getValue();
+            deleteFile(eldest.getKey());
+        }
+    }
+
+    private void remove(String name) {
+        Long size = index.remove(name);
+        if (size != null) {
+            totalBytes -= size;
+        }
+        deleteFile(name);
+    }
+
+    private void deleteFile(String name) {
+        try {
+            Files.deleteIfExists(dir.resolve(name));
+        } catch (IOException e) {
+            logger.debug("Unable to delete page cache entry {}: {}", name, e.getMessage());
+        }
+    }
+
+    /**
+     * @return Total size of the cached entries, in bytes.
+     */
+    public long getSize() {
+        lock.lock();
+        try {
+            loadIndex();
+            return totalBytes;
+        } catch (IOException e) {
+            return totalBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+}
@@ -0,0 +1,95 @@
+package com.rarchives.ripme.utils;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Difference hashes (dHash) of images: 64 bits that record whether each cell of a 9x8 grayscale
+ * thumbnail is brighter than its right-hand neighbour. Re-encoded, recompressed or resized copies
+ * of an image end up a few bits apart, unlike their SHA-256 values.
+ */
+public class PerceptualHash {
+
+    private static final int COLUMNS = 9;
+    private static final int ROWS = 8;
+    // Images are decoded with subsampling down to at least this many pixels per cell
+    private static final int PIXELS_PER_CELL = 8;
+
+    private PerceptualHash() {
+    }
+
+    /**
+     * Decodes a downscaled copy of an image file and hashes it.
+     *
+     * @return The hash, or null if the file is not an image ImageIO can read.
+     */
+    public static Long of(Path file) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            if (in == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, Math.min(width / (COLUMNS * PIXELS_PER_CELL), height / (ROWS * PIXELS_PER_CELL)));
+                param.setSourceSubsampling(step, step, 0, 0);
+                return dHash(reader.read(0, param));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * @return The hash, or null if the image is smaller than 9x8 pixels.
+     */
+    public static Long dHash(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (width < COLUMNS || height < ROWS) {
+            return null;
+        }
+        long[] sums = new long[COLUMNS * ROWS];
+        int[] counts = new int[COLUMNS * ROWS];
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            int cellRow = y * ROWS / height;
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                int rgb = row[x];
+                int luma = (((rgb >> 16) & 0xff) * 299 + ((rgb >> 8) & 0xff) * 587 + (rgb & 0xff) * 114) / 1000;
+                int cell = cellRow * COLUMNS + x * COLUMNS / width;
+                sums[cell] += luma;
+                counts[cell]++;
+            }
+        }
+        long hash = 0;
+        for (int y = 0; y < ROWS; y++) {
+            for (int x = 0; x < COLUMNS - 1; x++) {
+                int cell = y * COLUMNS + x;
+                // Compare averages without dividing: a/m > b/n  <=>  a*n > b*m
+                boolean brighter = sums[cell] * counts[cell + 1] > sums[cell + 1] * counts[cell];
+                hash = (hash << 1) | (brighter ? 1 : 0);
+            }
+        }
+        return hash;
+    }
+
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+}
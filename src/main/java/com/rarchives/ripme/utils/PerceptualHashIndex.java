@@ -0,0 +1,176 @@
+package com.rarchives.ripme.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Process-wide index of the {@link PerceptualHash perceptual hashes} of downloaded images and the
+ * files they were saved as, looked up by Hamming distance through a {@link HammingIndex}.
+ * <p>
+ * Entries are appended to the index file as {@code <hex hash> <path>} lines. When two images have
+ * exactly the same hash, the first one is kept. A later line for the same hash is a new path for
+ * it, written by {@link #replaceNear(long, int, String, String)}.
+ */
+public class PerceptualHashIndex {
+
+    private static final Logger logger = LogManager.getLogger(PerceptualHashIndex.class);
+
+    private static final Map<String, PerceptualHashIndex> INDEXES = new ConcurrentHashMap<>();
+
+    private final Path indexFile;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final HammingIndex hashes = new HammingIndex();
+    // Saved paths, by entry
+    private final List<String> paths = new ArrayList<>();
+    private boolean loaded = false;
+
+    PerceptualHashIndex(Path indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * @param indexFile Path of the perceptual hash file.
+     * @return The shared index for that file.
+     */
+    public static PerceptualHashIndex forFile(String indexFile) {
+        Path path = Paths.get(indexFile).toAbsolutePath();
+        return INDEXES.computeIfAbsent(path.toString(), ignored -> new PerceptualHashIndex(path));
+    }
+
+    /**
+     * @return The file saved with the closest hash at most {@code radius} bits away, or null.
+     */
+    public String findNear(long hash, int radius) {
+        lock.lock();
+        try {
+            ensureLoaded();
+            int entry = hashes.nearest(hash, radius);
+            return entry < 0 ? null : paths.get(entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Looks up a near duplicate of a new image, and records the image if there is none.
+     *
+     * @return The file saved with the closest hash at most {@code radius} bits away, or null if
+     *         {@code path} was added to the index instead.
+     */
+    public String addIfNoneNear(long hash, int radius, String path) {
+        lock.lock();
+        try {
+            ensureLoaded();
+            int entry = hashes.nearest(hash, radius);
+            if (entry >= 0) {
+                return paths.get(entry);
+            }
+            put(hash, path);
+            appendToFile(toHex(hash) + " " + path);
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Points the entry {@link #addIfNoneNear(long, int, String)} matched at a new file, for when the
+     * file it was saved with has been moved or deleted.
+     *
+     * @param stale Path the entry had when it was matched.
+     * @return False if the entry was pointed elsewhere in the meantime.
+     */
+    public boolean replaceNear(long hash, int radius, String stale, String path) {
+        lock.lock();
+        try {
+            ensureLoaded();
+            int entry = hashes.nearest(hash, radius);
+            if (entry < 0 || !paths.get(entry).equals(stale)) {
+                return false;
+            }
+            paths.set(entry, path);
+            appendToFile(toHex(hashes.getHash(entry)) + " " + path);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of distinct hashes in the index.
+     */
+    public int size() {
+        lock.lock();
+        try {
+            ensureLoaded();
+            return hashes.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void put(long hash, String path) {
+        int entry = hashes.add(hash);
+        if (entry == paths.size()) {
+            paths.add(path);
+        } else {
+            paths.set(entry, path);
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!Files.exists(indexFile)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int space = line.indexOf(' ');
+                if (space != 16) {
+                    continue;
+                }
+                try {
+                    put(Long.parseUnsignedLong(line.substring(0, space), 16), line.substring(space + 1));
+                } catch (NumberFormatException e) {
+                    // Skip malformed lines
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to load perceptual hashes from {}: {}", indexFile, e.getMessage());
+        }
+    }
+
+    private void appendToFile(String entry) {
+        try {
+            if (indexFile.getParent() != null) {
+                Files.createDirectories(indexFile.getParent());
+            }
+            Files.writeString(indexFile, entry + System.lineSeparator(), StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            logger.warn("Failed to append to {}: {}", indexFile, e.getMessage());
+        }
+    }
+
+    static String toHex(long hash) {
+        String hex = Long.toHexString(hash);
+        return "0000000000000000".substring(hex.length()) + hex;
+    }
+}
@@ -0,0 +1,148 @@
+package com.rarchives.ripme.utils;
+
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Sends requests to a local replay server (see {@code ReplayServer} in the jmh sources) instead of
+ * the sites they are meant for.
+ * <p>
+ * When {@code http.replay_server} is set (or {@link #setServer(URL)} is called), {@link Http},
+ * {@link OkHttpTransport} and everything built on them rewrite
+ * {@code https://i.redd.it/abc.jpg} to {@code <server>/https/i.redd.it/abc.jpg}, and map the URLs
+ * of responses back, so rippers only ever see the original URLs. Rippers that open connections
+ * themselves are not routed.
+ */
+public final class ReplayRouter {
+
+    private static final Logger logger = LogManager.getLogger(ReplayRouter.class);
+
+    private static volatile URL server = configuredServer();
+
+    private ReplayRouter() {
+    }
+
+    private static URL configuredServer() {
+        String configured = Utils.getConfigString("http.replay_server", "");
+        if (configured == null || configured.isBlank()) {
+            return null;
+        }
+        try {
+            return new URI(configured.trim()).toURL();
+        } catch (URISyntaxException | MalformedURLException | IllegalArgumentException e) {
+            logger.error("Ignoring invalid http.replay_server {}: {}", configured, e.getMessage());
+            return null;
+        }
+    }
+
+    public static boolean isEnabled() {
+        return server != null;
+    }
+
+    public static URL getServer() {
+        return server;
+    }
+
+    /**
+     * Routes all requests to {@code replayServer}, or stops routing when it is null.
+     */
+    public static void setServer(URL replayServer) {
+        server = replayServer;
+        if (replayServer != null) {
+            logger.info("Routing HTTP requests to {}", replayServer);
+        }
+    }
+
+    /**
+     * @return The URL to request instead of {@code url}: the same URL when routing is off or
+     *         {@code url} is already routed.
+     */
+    public static URL route(URL url) {
+        URL base = server;
+        return base == null ? url : routeWith(base, url);
+    }
+
+    public static String route(String url) {
+        if (server == null) {
+            return url;
+        }
+        try {
+            return route(new URI(url).toURL()).toExternalForm();
+        } catch (URISyntaxException | MalformedURLException | IllegalArgumentException e) {
+            return url;
+        }
+    }
+
+    /**
+     * @return The original URL of a routed URL, or {@code url} itself when it is not routed.
+     */
+    public static URL unroute(URL url) {
+        URL base = server;
+        if (base == null) {
+            return url;
+        }
+        URL original = unrouteWith(base, url);
+        return original == null ? url : original;
+    }
+
+    /**
+     * @return {@code url} routed to the server at {@code base}.
+     */
+    static URL routeWith(URL base, URL url) {
+        if (isRouted(base, url)) {
+            return url;
+        }
+        StringBuilder routed = new StringBuilder(prefix(base));
+        routed.append('/').append(url.getProtocol()).append('/').append(url.getAuthority());
+        String file = url.getFile();
+        routed.append(file.startsWith("/") ? "" : "/").append(file);
+        try {
+            return new URL(routed.toString());
+        } catch (MalformedURLException e) {
+            logger.warn("Could not route {}: {}", url, e.getMessage());
+            return url;
+        }
+    }
+
+    /**
+     * @return The original URL of {@code url} routed to the server at {@code base}, or null if it
+     *         is not routed there.
+     */
+    static URL unrouteWith(URL base, URL url) {
+        if (!isRouted(base, url)) {
+            return null;
+        }
+        String rest = url.getFile().substring(basePath(base).length());
+        // rest is /<scheme>/<authority>/<path>
+        int schemeEnd = rest.indexOf('/', 1);
+        if (schemeEnd < 0 || rest.indexOf('/', schemeEnd + 1) < 0) {
+            return null;
+        }
+        try {
+            return new URL(rest.substring(1, schemeEnd) + "://" + rest.substring(schemeEnd + 1));
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    private static boolean isRouted(URL base, URL url) {
+        return base.getProtocol().equals(url.getProtocol())
+                && base.getAuthority().equalsIgnoreCase(url.getAuthority())
+                && url.getPath().startsWith(basePath(base) + "/");
+    }
+
+    private static String basePath(URL base) {
+        String path = base.getPath();
+        return path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+    }
+
+    private static String prefix(URL base) {
+        String external = base.toExternalForm();
+        return external.endsWith("/") ? external.substring(0, external.length() - 1) : external;
+    }
+}
@@ -0,0 +1,127 @@
+package com.rarchives.ripme.utils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Creates the threads used for rips and downloads.
+ * <p>
+ * When {@code threads.virtual} is enabled and the JVM supports virtual threads (Java 21+), rips
+ * and downloads run on virtual threads, which are cheap to block on network reads and rate-limit
+ * sleeps. The build targets Java 17, so virtual threads are looked up reflectively at runtime;
+ * on older JVMs platform threads are used.
+ */
+public class ThreadUtils {
+
+    private static final Logger logger = LogManager.getLogger(ThreadUtils.class);
+
+    // (String prefix) -> Thread.ofVirtual().name(prefix, 1).factory()
+    private static final MethodHandle VIRTUAL_FACTORY = lookupVirtualThreadFactory();
+    // (ThreadFactory factory) -> Executors.newThreadPerTaskExecutor(factory)
+    private static final MethodHandle THREAD_PER_TASK_EXECUTOR = lookupThreadPerTaskExecutor();
+
+    private ThreadUtils() {
+    }
+
+    private static MethodHandle lookupVirtualThreadFactory() {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Class<?> virtualBuilderClass = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            MethodHandle ofVirtual = lookup.findStatic(Thread.class, "ofVirtual",
+                    MethodType.methodType(virtualBuilderClass));
+            MethodHandle name = lookup.findVirtual(virtualBuilderClass, "name",
+                    MethodType.methodType(virtualBuilderClass, String.class, long.class));
+            MethodHandle factory = lookup.findVirtual(builderClass, "factory",
+                    MethodType.methodType(ThreadFactory.class));
+            // Check that virtual threads are actually usable (they are a preview feature on 19/20).
+            Object builder = ofVirtual.invoke();
+            ThreadFactory probe = (ThreadFactory) factory.invoke(builder);
+            probe.newThread(() -> { });
+            // (prefix) -> factory(name(ofVirtual(), prefix, 1))
+            MethodHandle named = MethodHandles.insertArguments(name, 2, 1L);
+            named = MethodHandles.collectArguments(named, 0, ofVirtual);
+            return MethodHandles.filterReturnValue(named,
+                    factory.asType(MethodType.methodType(ThreadFactory.class, virtualBuilderClass)));
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    private static MethodHandle lookupThreadPerTaskExecutor() {
+        try {
+            return MethodHandles.publicLookup().findStatic(Executors.class, "newThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class, ThreadFactory.class));
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return True if the running JVM supports virtual threads.
+     */
+    public static boolean isVirtualThreadSupported() {
+        return VIRTUAL_FACTORY != null && THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * @return True if rips and downloads should run on virtual threads.
+     */
+    public static boolean useVirtualThreads() {
+        if (!Utils.getConfigBoolean("threads.virtual", false)) {
+            return false;
+        }
+        if (!isVirtualThreadSupported()) {
+            logger.warn("threads.virtual is enabled but this JVM ({}) does not support virtual threads",
+                    System.getProperty("java.version"));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param namePrefix Prefix for the names of the created threads.
+     * @return A factory for virtual threads if they are enabled, otherwise for platform threads.
+     */
+    public static ThreadFactory newThreadFactory(String namePrefix) {
+        if (useVirtualThreads()) {
+            try {
+                return (ThreadFactory) VIRTUAL_FACTORY.invoke(namePrefix);
+            } catch (Throwable e) {
+                logger.warn("Unable to create virtual thread factory, using platform threads: {}", e.getMessage());
+            }
+        }
+        return platformThreadFactory(namePrefix);
+    }
+
+    private static ThreadFactory platformThreadFactory(String namePrefix) {
+        AtomicInteger threadCounter = new AtomicInteger();
+        return task -> new Thread(task, namePrefix + threadCounter.incrementAndGet());
+    }
+
+    /**
+     * @param namePrefix Prefix for the names of the created threads.
+     * @return An executor that starts a new thread per task: a virtual thread if they are enabled,
+     *         otherwise a cached pool of platform threads.
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+        ThreadFactory factory = newThreadFactory(namePrefix);
+        if (useVirtualThreads()) {
+            try {
+                return (ExecutorService) THREAD_PER_TASK_EXECUTOR.invoke(factory);
+            } catch (Throwable e) {
+                logger.warn("Unable to create virtual thread executor, using platform threads: {}", e.getMessage());
+                factory = platformThreadFactory(namePrefix);
+            }
+        }
+        return Executors.newCachedThreadPool(factory);
+    }
+}
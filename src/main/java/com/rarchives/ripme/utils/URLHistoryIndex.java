@@ -0,0 +1,237 @@
+package com.rarchives.ripme.utils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Process-wide index over the url history file.
+ * <p>
+ * The history file is read once per process and every line is kept as a 64-bit
+ * fingerprint in an open-addressing table, so lookups no longer rescan the file.
+ * Appends go through the index, which writes the line to the history file and
+ * records its fingerprint. The text file stays the persistent store, so existing
+ * {@code url_history.txt} files are picked up as-is on first use.
+ */
+public class URLHistoryIndex {
+
+    private static final Logger logger = LogManager.getLogger(URLHistoryIndex.class);
+
+    private static final Map<String, URLHistoryIndex> INDEXES = new ConcurrentHashMap<>();
+
+    private static final int INITIAL_CAPACITY = 1 << 12;
+    // Fingerprint 0 marks an empty slot, so it is tracked separately.
+    private static final long EMPTY = 0L;
+
+    private final File historyFile;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private long[] table = new long[INITIAL_CAPACITY];
+    private int size = 0;
+    private boolean containsZero = false;
+    private volatile boolean loaded = false;
+
+    URLHistoryIndex(File historyFile) {
+        this.historyFile = historyFile;
+    }
+
+    /**
+     * @param historyFile Path of the url history file.
+     * @return The shared index for that file.
+     */
+    public static URLHistoryIndex forFile(String historyFile) {
+        File file = new File(historyFile).getAbsoluteFile();
+        return INDEXES.computeIfAbsent(file.getPath(), ignored -> new URLHistoryIndex(file));
+    }
+
+    /**
+     * Drops the in-memory state of the index for the given file, e.g. after the
+     * history file was deleted. The next lookup reloads it from disk.
+     */
+    public static void invalidate(String historyFile) {
+        URLHistoryIndex index = INDEXES.get(new File(historyFile).getAbsoluteFile().getPath());
+        if (index != null) {
+            index.reset();
+        }
+    }
+
+    /**
+     * @param url URL as written to the history file (without line terminator).
+     * @return True if the URL is in the history.
+     */
+    public boolean contains(String url) {
+        ensureLoaded();
+        long fingerprint = fingerprint(stripLineTerminator(url));
+        lock.readLock().lock();
+        try {
+            return containsFingerprint(fingerprint);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Appends a line to the history file and adds it to the index.
+     *
+     * @param line URL to record, may end with a line terminator.
+     */
+    public void append(String line) throws IOException {
+        ensureLoaded();
+        String url = stripLineTerminator(line);
+        lock.writeLock().lock();
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(historyFile, true))) {
+            bw.write(line);
+            addFingerprint(fingerprint(url));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return Number of distinct URLs in the index.
+     */
+    public int size() {
+        ensureLoaded();
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (loaded) {
+                return;
+            }
+            if (historyFile.exists()) {
+                long start = System.currentTimeMillis();
+                try (BufferedReader reader = new BufferedReader(new FileReader(historyFile))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        addFingerprint(fingerprint(line));
+                    }
+                } catch (IOException e) {
+                    logger.warn("Failed to load url history from {}: {}", historyFile, e.getMessage());
+                }
+                logger.debug("Loaded {} urls from {} in {} ms", size, historyFile,
+                        System.currentTimeMillis() - start);
+            }
+            loaded = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void reset() {
+        lock.writeLock().lock();
+        try {
+            table = new long[INITIAL_CAPACITY];
+            size = 0;
+            containsZero = false;
+            loaded = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean containsFingerprint(long fingerprint) {
+        if (fingerprint == EMPTY) {
+            return containsZero;
+        }
+        int mask = table.length - 1;
+        int slot = (int) fingerprint & mask;
+        while (true) {
+            long existing = table[slot];
+            if (existing == EMPTY) {
+                return false;
+            }
+            if (existing == fingerprint) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void addFingerprint(long fingerprint) {
+        if (fingerprint == EMPTY) {
+            if (!containsZero) {
+                containsZero = true;
+                size++;
+            }
+            return;
+        }
+        // Keep the load factor at or below 1/2 so probe sequences stay short.
+        if ((size + 1) * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        if (insert(table, fingerprint)) {
+            size++;
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        long[] newTable = new long[newCapacity];
+        for (long fingerprint : table) {
+            if (fingerprint != EMPTY) {
+                insert(newTable, fingerprint);
+            }
+        }
+        table = newTable;
+    }
+
+    private static boolean insert(long[] target, long fingerprint) {
+        int mask = target.length - 1;
+        int slot = (int) fingerprint & mask;
+        while (true) {
+            long existing = target[slot];
+            if (existing == EMPTY) {
+                target[slot] = fingerprint;
+                return true;
+            }
+            if (existing == fingerprint) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static String stripLineTerminator(String line) {
+        int end = line.length();
+        while (end > 0 && (line.charAt(end - 1) == '\n' || line.charAt(end - 1) == '\r')) {
+            end--;
+        }
+        return line.substring(0, end);
+    }
+
+    /**
+     * 64-bit FNV-1a over the characters of the string, followed by a final
+     * avalanche step so the low bits used for slot selection are well mixed.
+     */
+    static long fingerprint(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
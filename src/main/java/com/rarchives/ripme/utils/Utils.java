@@ -55,7 +55,7 @@ import org.apache.logging.log4j.core.appender.rolling.TriggeringPolicy;
 import org.apache.logging.log4j.core.config.Configuration;
 import org.apache.logging.log4j.core.config.LoggerConfig;
 
-import com.rarchives.ripme.ripper.AbstractRipper;
+import com.rarchives.ripme.ripper.RipperRegistry;
 
 /**
  * Common utility functions used in various places throughout the project.
@@ -106,6 +106,13 @@ public class Utils {
                     Files.delete(file);
                     config = new PropertiesConfiguration(CONFIG_FILE);
                     LOGGER.info("Loaded " + config.getPath());
+                } else if (!config.containsKey("download.head_dedup")
+                        && "104857600".equals(config.getString("download.max_size", "").trim())) {
+                    // download.max_size was not enforced before download.head_dedup was added, and
+                    // older configs hold its old 100 MB default. Keep downloading large files.
+                    LOGGER.info("Disabling download.max_size, which was not enforced by older versions");
+                    config.setProperty("download.max_size", 0);
+                    config.setProperty("download.head_dedup", true);
                 }
             }
         } catch (Exception e) {
@@ -342,6 +349,7 @@ public class Utils {
         } catch (IOException e) {
             e.printStackTrace();
         }
+        URLHistoryIndex.invalidate(getURLHistoryFile());
     }
 
     /**
@@ -355,6 +363,20 @@ public class Utils {
         return configuredLocation;
     }
 
+    /**
+     * Return the path of the head hash file, which sits next to the hash history file
+     */
+    public static String getHeadHashFile() {
+        return Paths.get(getHashHistoryFile()).resolveSibling("hash_heads.txt").toString();
+    }
+
+    /**
+     * Return the path of the perceptual image hash file, which sits next to the hash history file
+     */
+    public static String getPerceptualHashFile() {
+        return Paths.get(getHashHistoryFile()).resolveSibling("image_hashes.txt").toString();
+    }
+
     /**
      * Return the path of the url history file
      */
@@ -374,6 +396,22 @@ public class Utils {
      * @throws IOException If the file cannot be read.
      */
     public static String sha256(Path path) throws IOException {
+        byte[] hash = sha256Digest(path);
+        StringBuilder builder = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            builder.append(String.format("%02x", b));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Calculates the SHA-256 hash of a file.
+     *
+     * @param path Path to the file that should be hashed.
+     * @return Raw 32-byte SHA-256 value.
+     * @throws IOException If the file cannot be read.
+     */
+    public static byte[] sha256Digest(Path path) throws IOException {
         MessageDigest digest;
         try {
             digest = MessageDigest.getInstance("SHA-256");
@@ -389,12 +427,7 @@ public class Utils {
             }
         }
 
-        byte[] hash = digest.digest();
-        StringBuilder builder = new StringBuilder(hash.length * 2);
-        for (byte b : hash) {
-            builder.append(String.format("%02x", b));
-        }
-        return builder.toString();
+        return digest.digest();
     }
 
     /**
@@ -674,7 +707,7 @@ public class Utils {
      */
     public static List<String> getListOfAlbumRippers() throws Exception {
         List<String> list = new ArrayList<>();
-        for (Constructor<?> ripper : AbstractRipper.getRipperConstructors("com.rarchives.ripme.ripper.rippers")) {
+        for (Constructor<?> ripper : RipperRegistry.getInstance().getConstructors(false)) {
             list.add(ripper.getName());
         }
         return list;
@@ -688,7 +721,7 @@ public class Utils {
      */
     public static List<String> getListOfVideoRippers() throws Exception {
         List<String> list = new ArrayList<>();
-        for (Constructor<?> ripper : AbstractRipper.getRipperConstructors("com.rarchives.ripme.ripper.rippers.video")) {
+        for (Constructor<?> ripper : RipperRegistry.getInstance().getConstructors(true)) {
             list.add(ripper.getName());
         }
         return list;
@@ -0,0 +1,84 @@
+package com.rarchives.ripme.ripper;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchRipSchedulerTest {
+
+    private static String host(String url) {
+        try {
+            return new URI(url).getHost();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    @Test
+    void runsDomainsInParallelButEachDomainAlone() throws Exception {
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            urls.add("https://a.example.com/album" + i);
+            urls.add("https://b.example.com/album" + i);
+            urls.add("https://c.example.com/album" + i);
+        }
+        Map<String, AtomicInteger> runningPerDomain = new ConcurrentHashMap<>();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        AtomicInteger maxPerDomain = new AtomicInteger();
+        List<String> reported = new CopyOnWriteArrayList<>();
+
+        BatchRipScheduler scheduler = new BatchRipScheduler(2, BatchRipSchedulerTest::host);
+        List<BatchRipScheduler.Result> results = scheduler.run(urls, url -> {
+            AtomicInteger domainCount = runningPerDomain.computeIfAbsent(host(url), k -> new AtomicInteger());
+            maxPerDomain.accumulateAndGet(domainCount.incrementAndGet(), Math::max);
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            domainCount.decrementAndGet();
+            BatchRipScheduler.Result result = new BatchRipScheduler.Result(url);
+            result.files = 1;
+            return result;
+        }, result -> reported.add(result.url));
+
+        assertEquals(urls.size(), results.size());
+        for (int i = 0; i < urls.size(); i++) {
+            assertEquals(urls.get(i), results.get(i).url);
+            assertEquals("ok", results.get(i).status);
+        }
+        assertEquals(urls.size(), reported.size());
+        assertEquals(2, maxRunning.get());
+        assertEquals(1, maxPerDomain.get());
+    }
+
+    @Test
+    void reportsInvalidUrlsAndFailures() throws Exception {
+        BatchRipScheduler scheduler = new BatchRipScheduler(4, BatchRipSchedulerTest::host);
+        List<BatchRipScheduler.Result> results = scheduler.run(
+                List.of("not a url", "https://example.com/ok", "https://example.org/broken"),
+                url -> {
+                    if (url.contains("broken")) {
+                        throw new IllegalStateException("boom");
+                    }
+                    return new BatchRipScheduler.Result(url);
+                }, null);
+
+        assertEquals("error", results.get(0).status);
+        assertEquals("Invalid URL", results.get(0).message);
+        assertEquals("ok", results.get(1).status);
+        assertEquals("error", results.get(2).status);
+        assertTrue(results.get(2).message.contains("boom"));
+    }
+}
@@ -0,0 +1,257 @@
+package com.rarchives.ripme.ripper;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.rarchives.ripme.utils.HttpTransport;
+import com.rarchives.ripme.utils.Utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DownloadFileThreadTest {
+
+    public static class RecordingRipper extends VideoRipper {
+        String errored;
+        Path exists;
+        Path completed;
+        long duplicateSize = -1;
+        long headHashSize = -1;
+
+        public RecordingRipper(URL url) throws IOException {
+            super(url);
+        }
+
+        @Override
+        public boolean canRip(URL url) {
+            return true;
+        }
+
+        @Override
+        public void rip() {
+        }
+
+        @Override
+        public String getHost() {
+            return "example";
+        }
+
+        @Override
+        public String getGID(URL url) {
+            return "gid";
+        }
+
+        @Override
+        public void downloadErrored(URL url, String reason) {
+            errored = reason;
+        }
+
+        @Override
+        public void downloadExists(URL url, Path file) {
+            exists = file;
+        }
+
+        @Override
+        public void downloadCompleted(URL url, Path saveAs) {
+            completed = saveAs;
+        }
+
+        @Override
+        public boolean isProbableDuplicate(long size, byte[] headHash) {
+            return size == duplicateSize;
+        }
+
+        @Override
+        public void registerHeadHash(long size, byte[] headHash) {
+            headHashSize = size;
+        }
+
+        @Override
+        public boolean registerDownloadHash(byte[] sha256) {
+            return true;
+        }
+
+        @Override
+        public void checkNearDuplicate(Path file) {
+        }
+    }
+
+    /**
+     * Serves one file, whole or by range, counting the bytes read from the bodies.
+     */
+    private static class FixedTransport extends HttpTransport {
+        private final byte[] body;
+        private final long contentLength;
+        private final boolean ranges;
+        private final AtomicLong read = new AtomicLong();
+
+        FixedTransport(byte[] body, long contentLength, boolean ranges) {
+            this.body = body;
+            this.contentLength = contentLength;
+            this.ranges = ranges;
+        }
+
+        @Override
+        public Response execute(Request request) {
+            String range = request.getHeaders().get("Range");
+            int start = 0;
+            int end = body.length - 1;
+            if (range != null) {
+                String[] bounds = range.substring("bytes=".length()).split("-");
+                start = Integer.parseInt(bounds[0]);
+                end = Integer.parseInt(bounds[1]);
+            }
+            int offset = start;
+            int length = end - start + 1;
+            return new Response() {
+                @Override
+                public int getStatusCode() {
+                    return range == null ? 200 : 206;
+                }
+
+                @Override
+                public String getHeader(String name) {
+                    if (name.equalsIgnoreCase("Accept-Ranges")) {
+                        return ranges ? "bytes" : null;
+                    }
+                    if (name.equalsIgnoreCase("Content-Range") && range != null) {
+                        return "bytes " + offset + "-" + (offset + length - 1) + "/" + body.length;
+                    }
+                    return null;
+                }
+
+                @Override
+                public long getContentLength() {
+                    return range == null ? contentLength : length;
+                }
+
+                @Override
+                public InputStream getBody() {
+                    return new ByteArrayInputStream(body, offset, length) {
+                        @Override
+                        public synchronized int read(byte[] b, int off, int len) {
+                            int n = super.read(b, off, len);
+                            if (n > 0) {
+                                read.addAndGet(n);
+                            }
+                            return n;
+                        }
+                    };
+                }
+
+                @Override
+                public URL getURL() {
+                    return request.getURL();
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+    }
+
+    private HttpTransport originalTransport;
+    private long originalMaxSize;
+    private long originalSegmentMin;
+    private long originalSegmentSize;
+    private Path dir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        originalTransport = HttpTransport.getDefault();
+        originalMaxSize = Utils.getConfigLong("download.max_size", 0);
+        originalSegmentMin = Utils.getConfigLong("download.segment_min_mb", 64);
+        originalSegmentSize = Utils.getConfigLong("download.segment_size_mb", 16);
+        dir = Files.createTempDirectory("ripme-download");
+    }
+
+    @AfterEach
+    void tearDown() {
+        HttpTransport.setDefault(originalTransport);
+        Utils.setConfigLong("download.max_size", originalMaxSize);
+        Utils.setConfigLong("download.segment_min_mb", originalSegmentMin);
+        Utils.setConfigLong("download.segment_size_mb", originalSegmentSize);
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+
+    private RecordingRipper download(FixedTransport transport, File saveAs, long duplicateSize) throws Exception {
+        URL url = new URI("https://example.com/file.bin").toURL();
+        RecordingRipper ripper = new RecordingRipper(url);
+        ripper.duplicateSize = duplicateSize;
+        HttpTransport.setDefault(transport);
+        new DownloadFileThread(url, saveAs, ripper, false).run();
+        return ripper;
+    }
+
+    @Test
+    void rejectsByContentLengthBeforeReadingTheBody() throws Exception {
+        Utils.setConfigLong("download.max_size", 100_000);
+        FixedTransport large = new FixedTransport(randomBytes(200_000), 200_000, false);
+        File saveAs = dir.resolve("large.bin").toFile();
+        RecordingRipper ripper = download(large, saveAs, -1);
+        assertEquals("File larger than 100000 bytes", ripper.errored);
+        assertEquals(0, large.read.get());
+        assertFalse(saveAs.exists());
+
+        FixedTransport small = new FixedTransport(randomBytes(500), 500, false);
+        ripper = download(small, dir.resolve("small.bin").toFile(), -1);
+        assertEquals("File smaller than 10KB", ripper.errored);
+        assertEquals(0, small.read.get());
+    }
+
+    @Test
+    void abandonsProbableDuplicateAfterItsHead() throws Exception {
+        Utils.setConfigLong("download.max_size", 0);
+        byte[] data = randomBytes(4 * 1024 * 1024);
+        FixedTransport duplicate = new FixedTransport(data, data.length, false);
+        File saveAs = dir.resolve("duplicate.bin").toFile();
+        RecordingRipper ripper = download(duplicate, saveAs, data.length);
+        assertEquals(saveAs.toPath(), ripper.exists);
+        assertNull(ripper.completed);
+        assertTrue(duplicate.read.get() < data.length);
+        assertFalse(saveAs.exists());
+
+        File other = dir.resolve("other.bin").toFile();
+        ripper = download(new FixedTransport(data, data.length, false), other, -1);
+        assertEquals(other.toPath(), ripper.completed);
+        assertEquals(data.length, ripper.headHashSize);
+        assertArrayEquals(data, Files.readAllBytes(other.toPath()));
+    }
+
+    @Test
+    void checksHeadOfSegmentedDownloads() throws Exception {
+        Utils.setConfigLong("download.max_size", 0);
+        Utils.setConfigLong("download.segment_min_mb", 1);
+        Utils.setConfigLong("download.segment_size_mb", 1);
+        byte[] data = randomBytes(4 * 1024 * 1024);
+        FixedTransport duplicate = new FixedTransport(data, data.length, true);
+        File saveAs = dir.resolve("duplicate.mp4").toFile();
+        RecordingRipper ripper = download(duplicate, saveAs, data.length);
+        assertEquals(saveAs.toPath(), ripper.exists);
+        assertTrue(duplicate.read.get() < data.length);
+        assertFalse(saveAs.exists());
+
+        File other = dir.resolve("other.mp4").toFile();
+        ripper = download(new FixedTransport(data, data.length, true), other, -1);
+        assertEquals(other.toPath(), ripper.completed);
+        assertEquals(data.length, ripper.headHashSize);
+        assertArrayEquals(data, Files.readAllBytes(other.toPath()));
+    }
+}
@@ -0,0 +1,122 @@
+package com.rarchives.ripme.ripper;
+
+import com.rarchives.ripme.utils.HostHealth;
+import org.junit.jupiter.api.Test;
+
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DownloadThreadPoolTest {
+
+    private static void updateMax(AtomicInteger max, int value) {
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    @Test
+    void limitsConcurrencyPerDomainAndRunsEverything() throws Exception {
+        DownloadThreadPool pool = new DownloadThreadPool("test", 2, 8);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+        URL url = new URL("https://example.com/a.jpg");
+
+        for (int i = 0; i < 50; i++) {
+            pool.addThread(url, () -> {
+                updateMax(maxRunning, running.incrementAndGet());
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                completed.incrementAndGet();
+            });
+        }
+        pool.waitForThreads();
+
+        assertEquals(50, completed.get());
+        assertTrue(maxRunning.get() <= 2, "ran " + maxRunning.get() + " tasks at once for one domain");
+    }
+
+    @Test
+    void boundsWorkerThreadsAcrossDomains() throws Exception {
+        DownloadThreadPool pool = new DownloadThreadPool("test", 4, 3);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        for (int i = 0; i < 20; i++) {
+            pool.addThread(new URL("https://host" + i + ".example.com/a.jpg"), () -> {
+                updateMax(maxRunning, running.incrementAndGet());
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+            });
+        }
+        Thread.sleep(100);
+        assertTrue(pool.getWorkerCount() <= 3);
+        release.countDown();
+        pool.waitForThreads();
+
+        assertEquals(3, maxRunning.get());
+        assertEquals(0, pool.getPendingCount());
+    }
+
+    @Test
+    void reportsQueueDepthAndInFlightPerDomain() throws Exception {
+        DownloadThreadPool pool = new DownloadThreadPool("test", 1, 4);
+        CountDownLatch release = new CountDownLatch(1);
+        URL url = new URL("https://example.com/a.jpg");
+        URL wwwURL = new URL("https://www.example.com/a.jpg");
+
+        for (int i = 0; i < 7; i++) {
+            pool.addThread(i < 5 ? url : wwwURL, () -> {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+
+        assertEquals(1, pool.getInFlightCounts().get("example.com"));
+        // Labelled like the other host metrics, without www.
+        assertEquals(5, pool.getQueueDepths().get("example.com"));
+        assertNull(pool.getQueueDepths().get("www.example.com"));
+        assertEquals(7, pool.getPendingCount());
+
+        release.countDown();
+        pool.waitForThreads();
+        assertTrue(pool.getQueueDepths().isEmpty());
+        assertTrue(pool.getInFlightCounts().isEmpty());
+    }
+
+    @Test
+    void parksTasksWhileHostIsPausedAndResumesWhenItRecovers() throws Exception {
+        HostHealth health = new HostHealth(1, 60_000, System::currentTimeMillis);
+        String host = "parked.example.com";
+        health.onFailure(host);
+        assertTrue(health.isOpen(host));
+        DownloadThreadPool pool = new DownloadThreadPool("test", 2, 4, health);
+        AtomicInteger completed = new AtomicInteger();
+        URL url = new URL("https://" + host + "/a.jpg");
+        for (int i = 0; i < 5; i++) {
+            pool.addThread(url, completed::incrementAndGet);
+        }
+        Thread.sleep(50);
+        assertEquals(0, completed.get());
+        assertEquals(5, pool.getQueueDepths().get(host));
+
+        health.onSuccess(host);
+        pool.waitForThreads();
+        assertEquals(5, completed.get());
+        assertEquals(0, pool.getPendingCount());
+    }
+}
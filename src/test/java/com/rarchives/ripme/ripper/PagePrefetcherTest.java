@@ -0,0 +1,88 @@
+package com.rarchives.ripme.ripper;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PagePrefetcherTest {
+
+    private static List<Integer> drain(PagePrefetcher<Integer> pages) throws Exception {
+        List<Integer> result = new ArrayList<>();
+        Integer page;
+        while ((page = pages.next()) != null) {
+            result.add(page);
+        }
+        return result;
+    }
+
+    @Test
+    void returnsPagesInOrderWithAndWithoutLookAhead() throws Exception {
+        for (int depth = 0; depth <= 3; depth++) {
+            try (PagePrefetcher<Integer> pages = new PagePrefetcher<>(1, depth, page -> page < 5 ? page + 1 : null,
+                    () -> { }, () -> false)) {
+                assertEquals(List.of(2, 3, 4, 5), drain(pages));
+                assertNull(pages.next());
+                assertEquals(4, pages.getPages());
+            }
+        }
+    }
+
+    @Test
+    void fetchesAheadWhileCurrentPageIsProcessed() throws Exception {
+        CountDownLatch fetched = new CountDownLatch(2);
+        AtomicInteger requests = new AtomicInteger();
+        try (PagePrefetcher<Integer> pages = new PagePrefetcher<>(1, 2, page -> {
+            requests.incrementAndGet();
+            fetched.countDown();
+            return page + 1;
+        }, () -> { }, () -> false)) {
+            // nothing was taken yet, but two pages are already fetched, and no more
+            assertTrue(fetched.await(5, TimeUnit.SECONDS));
+            Thread.sleep(100);
+            assertEquals(2, requests.get());
+            assertEquals(2, pages.next());
+            Thread.sleep(100);
+            assertEquals(3, requests.get());
+        }
+    }
+
+    @Test
+    void failureEndsThePages() throws Exception {
+        for (int depth = 0; depth <= 1; depth++) {
+            try (PagePrefetcher<Integer> pages = new PagePrefetcher<>(1, depth, page -> {
+                if (page == 2) {
+                    throw new IOException("No more pages");
+                }
+                return page + 1;
+            }, () -> { }, () -> false)) {
+                assertEquals(2, pages.next());
+                IOException e = assertThrows(IOException.class, pages::next);
+                assertEquals("No more pages", e.getMessage());
+                assertNull(pages.next());
+            }
+        }
+    }
+
+    @Test
+    void stopsFetchingWhenStopped() throws Exception {
+        AtomicBoolean stopped = new AtomicBoolean(false);
+        AtomicInteger requests = new AtomicInteger();
+        try (PagePrefetcher<Integer> pages = new PagePrefetcher<>(1, 1, page -> {
+            requests.incrementAndGet();
+            stopped.set(true);
+            return page + 1;
+        }, () -> { }, stopped::get)) {
+            assertEquals(2, pages.next());
+            assertNull(pages.next());
+            assertEquals(1, requests.get());
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.rarchives.ripme.ripper;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RipCheckpointTest {
+
+    @Test
+    void savesAndLoadsCursorIndexAndPendingDownloads() throws Exception {
+        Path dir = Files.createTempDirectory("ripme-checkpoint");
+        Path file = dir.resolve("checkpoints").resolve("host_gid.json");
+
+        Map<String, String> pending = new LinkedHashMap<>();
+        pending.put("https://example.com/a.jpg", "/rips/album/001_a.jpg");
+        pending.put("https://example.com/b.jpg", "/rips/album/002_b.jpg");
+        RipCheckpoint checkpoint = new RipCheckpoint(file);
+        checkpoint.save("https://example.com/list/2", 40, new LinkedHashMap<>());
+        checkpoint.save("https://example.com/list/3", 80, pending);
+
+        RipCheckpoint loaded = new RipCheckpoint(file);
+        assertTrue(loaded.load());
+        assertEquals("https://example.com/list/3", loaded.getCursor());
+        assertEquals(80, loaded.getIndex());
+        assertEquals(2, loaded.getPages());
+        assertEquals(pending, loaded.getPending());
+
+        loaded.delete();
+        assertFalse(Files.exists(file));
+        assertFalse(new RipCheckpoint(file).load());
+    }
+
+    @Test
+    void ignoresUnreadableCheckpoint() throws Exception {
+        Path file = Files.createTempDirectory("ripme-checkpoint").resolve("broken.json");
+        Files.write(file, "not json".getBytes());
+        assertFalse(new RipCheckpoint(file).load());
+    }
+}
@@ -0,0 +1,112 @@
+package com.rarchives.ripme.ripper;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RipperRegistryTest {
+
+    private static final AtomicInteger otherSiteInstances = new AtomicInteger();
+
+    public abstract static class FakeRipper extends VideoRipper {
+        FakeRipper(URL url) throws IOException {
+            super(url);
+        }
+
+        @Override
+        public void rip() {
+        }
+
+        @Override
+        public String getHost() {
+            return "example";
+        }
+
+        @Override
+        public String getGID(URL url) {
+            return url.getPath();
+        }
+    }
+
+    public static class GalleryRipper extends FakeRipper {
+        public GalleryRipper(URL url) throws IOException {
+            super(url);
+        }
+
+        @Override
+        public boolean canRip(URL url) {
+            return url.getHost().endsWith("example.com") && url.getPath().startsWith("/album/");
+        }
+    }
+
+    public static class ClipRipper extends FakeRipper {
+        public ClipRipper(URL url) throws IOException {
+            super(url);
+        }
+
+        @Override
+        public boolean canRip(URL url) {
+            return url.getHost().endsWith("example.com");
+        }
+    }
+
+    public static class OtherSiteRipper extends FakeRipper {
+        public OtherSiteRipper(URL url) throws IOException {
+            super(url);
+            otherSiteInstances.incrementAndGet();
+        }
+
+        @Override
+        public boolean canRip(URL url) {
+            return true;
+        }
+    }
+
+    @Test
+    void triesRippersInIndexOrderWhateverWasRippedBefore() throws Exception {
+        String prefix = RipperRegistryTest.class.getName() + "$";
+        RipperRegistry registry = new RipperRegistry(List.of(prefix + "OtherSiteRipper example.org",
+                prefix + "GalleryRipper", prefix + "ClipRipper"), getClass().getClassLoader());
+
+        URL video = new URI("https://www.example.com/video/1").toURL();
+        URL album = new URI("https://www.example.com/album/1").toURL();
+        assertEquals(ClipRipper.class, registry.getRipper(video).getClass());
+        assertEquals(GalleryRipper.class, registry.getRipper(album).getClass());
+        assertEquals(ClipRipper.class, registry.getRipper(video).getClass());
+        assertEquals(0, otherSiteInstances.get());
+
+        // Matched like the default canRip, by host suffix
+        assertEquals(OtherSiteRipper.class, registry.getRipper(new URI("https://cdn.example.org/1").toURL()).getClass());
+        assertEquals(OtherSiteRipper.class, registry.getRipper(new URI("https://myexample.org/1").toURL()).getClass());
+        assertEquals(2, otherSiteInstances.get());
+    }
+
+    @Test
+    void readsIndexSkippingCommentsAndBlankLines() {
+        String index = "# rippers\ncom.rarchives.ripme.ripper.rippers.ARipper a.com\n\n"
+                + "  com.rarchives.ripme.ripper.rippers.video.BRipper  \n";
+        List<String> names = RipperRegistry.readIndex(
+                new ByteArrayInputStream(index.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(List.of("com.rarchives.ripme.ripper.rippers.ARipper a.com",
+                "com.rarchives.ripme.ripper.rippers.video.BRipper"), names);
+        assertTrue(RipperRegistry.readIndex(null).isEmpty());
+    }
+
+    @Test
+    void rejectsUrlsWithoutRipper() throws Exception {
+        RipperRegistry registry = new RipperRegistry(List.of("java.lang.String", "com.example.Missing"),
+                getClass().getClassLoader());
+        assertTrue(registry.getConstructors(false).isEmpty());
+        Exception e = assertThrows(Exception.class,
+                () -> registry.getRipper(new URI("https://example.com/album").toURL()));
+        assertEquals("No compatible ripper found", e.getMessage());
+    }
+}
@@ -0,0 +1,143 @@
+package com.rarchives.ripme.ripper;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SegmentedDownloadTest {
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    void downloadsSegmentsIntoPlace() throws IOException {
+        byte[] data = randomBytes(10_000);
+        Path target = Files.createTempDirectory("ripme-segments").resolve("video.mp4");
+        SegmentedDownload download = new SegmentedDownload(target, data.length, "\"etag\"", 1024, 3);
+        assertEquals(10, download.getSegmentCount());
+
+        Set<Long> requested = ConcurrentHashMap.newKeySet();
+        boolean complete = download.download((start, end) -> {
+            requested.add(start);
+            return new ByteArrayInputStream(data, (int) start, (int) (end - start + 1));
+        }, new ByteArrayInputStream(data), bytes -> { }, () -> false);
+
+        assertTrue(complete);
+        // The first segment comes from the response that was already open
+        assertFalse(requested.contains(0L));
+        assertEquals(9, requested.size());
+        download.finish(target);
+        assertArrayEquals(data, Files.readAllBytes(target));
+        assertFalse(Files.exists(target.resolveSibling("video.mp4" + SegmentedDownload.STATE_SUFFIX)));
+    }
+
+    @Test
+    void resumesOnlyMissingSegments() throws IOException {
+        byte[] data = randomBytes(4096);
+        Path target = Files.createTempDirectory("ripme-segments").resolve("video.mp4");
+        SegmentedDownload first = new SegmentedDownload(target, data.length, "v1", 1024, 1);
+        assertThrows(IOException.class, () -> first.download((start, end) -> {
+            if (start >= 2048) {
+                // The connection drops half way through the third segment
+                return new ByteArrayInputStream(data, (int) start, 100);
+            }
+            return new ByteArrayInputStream(data, (int) start, (int) (end - start + 1));
+        }, null, bytes -> { }, () -> false));
+        assertEquals(2, first.getDoneSegments());
+
+        SegmentedDownload resumed = new SegmentedDownload(target, data.length, "v1", 1024, 2);
+        resumed.loadState();
+        assertEquals(2, resumed.getDoneSegments());
+        Set<Long> requested = ConcurrentHashMap.newKeySet();
+        assertTrue(resumed.download((start, end) -> {
+            requested.add(start);
+            return new ByteArrayInputStream(data, (int) start, (int) (end - start + 1));
+        }, null, bytes -> { }, () -> false));
+        assertEquals(Set.of(2048L, 3072L), requested);
+        resumed.finish(target);
+        assertArrayEquals(data, Files.readAllBytes(target));
+    }
+
+    @Test
+    void keepsSegmentsCutShortByAnotherConnectionFailing() throws Exception {
+        byte[] data = randomBytes(4096);
+        Path target = Files.createTempDirectory("ripme-segments").resolve("video.mp4");
+        SegmentedDownload first = new SegmentedDownload(target, data.length, "v1", 2048, 2);
+        CountDownLatch started = new CountDownLatch(1);
+        assertThrows(IOException.class, () -> first.download((start, end) -> {
+            if (start > 0) {
+                try {
+                    started.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IOException("Connection reset");
+            }
+            return new InputStream() {
+                private int position = 0;
+
+                @Override
+                public int read() {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    if (position == 100) {
+                        // Go on only once the other connection has had time to fail
+                        try {
+                            Thread.sleep(200);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    int n = Math.min(Math.min(len, 100), 2048 - position);
+                    System.arraycopy(data, position, b, off, n);
+                    position += n;
+                    started.countDown();
+                    return n;
+                }
+            };
+        }, null, bytes -> { }, () -> false));
+        assertEquals(0, first.getDoneSegments());
+
+        SegmentedDownload resumed = new SegmentedDownload(target, data.length, "v1", 2048, 2);
+        resumed.loadState();
+        assertEquals(0, resumed.getDoneSegments());
+        Set<Long> requested = ConcurrentHashMap.newKeySet();
+        assertTrue(resumed.download((start, end) -> {
+            requested.add(start);
+            return new ByteArrayInputStream(data, (int) start, (int) (end - start + 1));
+        }, null, bytes -> { }, () -> false));
+        assertEquals(Set.of(0L, 2048L), requested);
+        resumed.finish(target);
+        assertArrayEquals(data, Files.readAllBytes(target));
+    }
+
+    @Test
+    void changedFileStartsOver() throws IOException {
+        byte[] data = randomBytes(2048);
+        Path target = Files.createTempDirectory("ripme-segments").resolve("video.mp4");
+        SegmentedDownload first = new SegmentedDownload(target, data.length, "v1", 1024, 1);
+        assertFalse(first.download((start, end) -> new ByteArrayInputStream(data, (int) start, (int) (end - start + 1)),
+                null, bytes -> { }, () -> first.getDoneSegments() == 1));
+        assertEquals(1, first.getDoneSegments());
+
+        SegmentedDownload changed = new SegmentedDownload(target, data.length, "v2", 1024, 1);
+        changed.loadState();
+        assertEquals(0, changed.getDoneSegments());
+    }
+}
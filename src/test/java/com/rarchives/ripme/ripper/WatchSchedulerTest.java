@@ -0,0 +1,180 @@
+package com.rarchives.ripme.ripper;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WatchSchedulerTest {
+
+    private static final long MINUTE = 60_000;
+
+    @Test
+    void intervalShrinksWithNewItemsAndGrowsWithout() {
+        AtomicLong now = new AtomicLong(0);
+        WatchScheduler scheduler = new WatchScheduler(null, 10 * MINUTE, 60 * MINUTE, now::get);
+        scheduler.setSources(Collections.singletonList("https://example.com/a"));
+
+        List<WatchScheduler.Source> due = scheduler.due();
+        assertEquals(1, due.size());
+        WatchScheduler.Source source = due.get(0);
+
+        scheduler.polled(source);
+        assertEquals(15 * MINUTE, source.getIntervalMillis());
+        assertEquals(15 * MINUTE, scheduler.millisUntilNextPoll());
+        assertTrue(scheduler.due().isEmpty());
+
+        for (int i = 0; i < 10; i++) {
+            scheduler.polled(source);
+        }
+        assertEquals(60 * MINUTE, source.getIntervalMillis());
+
+        source.newItems = 3;
+        scheduler.polled(source);
+        assertEquals(30 * MINUTE, source.getIntervalMillis());
+        assertEquals(3, source.getLastNewItems());
+        source.newItems = 1;
+        scheduler.polled(source);
+        scheduler.polled(source);
+        assertEquals(10 * MINUTE, source.getIntervalMillis());
+
+        now.addAndGet(10 * MINUTE);
+        assertEquals(1, scheduler.due().size());
+        assertEquals(0, scheduler.due().get(0).newItems);
+    }
+
+    @Test
+    void failedPollKeepsMarksAndNewSourcesAreDueFirst() {
+        AtomicLong now = new AtomicLong(0);
+        WatchScheduler scheduler = new WatchScheduler(null, MINUTE, 60 * MINUTE, now::get);
+        scheduler.setSources(Collections.singletonList("https://example.com/a"));
+        WatchScheduler.Source a = scheduler.due().get(0);
+        a.newMarks = Collections.singletonMap("", Arrays.asList("3", "2", "1"));
+        scheduler.polled(a);
+        assertEquals(Arrays.asList("3", "2", "1"), a.getMarks().get(""));
+
+        now.addAndGet(2 * MINUTE);
+        scheduler.setSources(Arrays.asList("https://example.com/a", "https://example.com/b"));
+        List<WatchScheduler.Source> due = scheduler.due();
+        assertEquals(2, due.size());
+        assertEquals("https://example.com/b", due.get(0).url);
+
+        scheduler.failed(due.get(1));
+        assertEquals(Arrays.asList("3", "2", "1"), due.get(1).getMarks().get(""));
+        assertEquals(2 * MINUTE + a.getIntervalMillis(), a.getNextPoll());
+
+        scheduler.setSources(Collections.singletonList("https://example.com/b"));
+        assertEquals(1, scheduler.getSources().size());
+        assertEquals(-1, new WatchScheduler(null, MINUTE, MINUTE, now::get).millisUntilNextPoll());
+    }
+
+    @Test
+    void stateSurvivesRestart() throws Exception {
+        Path file = Files.createTempDirectory("ripme-watch").resolve("watch.json");
+        AtomicLong now = new AtomicLong(1000);
+        WatchScheduler scheduler = new WatchScheduler(file, MINUTE, 60 * MINUTE, now::get);
+        scheduler.setSources(Collections.singletonList("https://example.com/a"));
+        WatchScheduler.Source source = scheduler.due().get(0);
+        source.newMarks = Collections.singletonMap("photo", Arrays.asList("42", "41"));
+        source.newItems = 2;
+        scheduler.polled(source);
+
+        WatchScheduler restarted = new WatchScheduler(file, MINUTE, 60 * MINUTE, now::get);
+        restarted.load();
+        List<WatchScheduler.Source> sources = restarted.getSources();
+        assertEquals(1, sources.size());
+        Map<String, List<String>> marks = sources.get(0).getMarks();
+        assertEquals(Arrays.asList("42", "41"), marks.get("photo"));
+        assertEquals(source.getNextPoll(), sources.get(0).getNextPoll());
+        assertEquals(2, sources.get(0).getLastNewItems());
+    }
+
+    /**
+     * A thread that lists its posts oldest first, with an in-memory URL history.
+     */
+    private static class ThreadRipper extends AbstractHTMLRipper {
+        final List<String> posts = new ArrayList<>();
+        final List<String> downloaded = new ArrayList<>();
+        final Set<String> history;
+
+        ThreadRipper(Set<String> history) throws IOException {
+            super(URI.create("https://example.com/thread/1").toURL());
+            this.history = history;
+        }
+
+        @Override
+        protected String getDomain() {
+            return "example.com";
+        }
+
+        @Override
+        public String getHost() {
+            return "example";
+        }
+
+        @Override
+        public String getGID(URL url) {
+            return "1";
+        }
+
+        @Override
+        protected Document getFirstPage() {
+            return Jsoup.parse("<html></html>", url.toExternalForm());
+        }
+
+        @Override
+        protected List<String> getURLsFromPage(Document page) {
+            return new ArrayList<>(posts);
+        }
+
+        @Override
+        protected void downloadURL(URL url, int index) {
+            if (history.add(url.toExternalForm())) {
+                downloaded.add(url.toExternalForm());
+            }
+        }
+
+        @Override
+        boolean isInURLHistory(String url) {
+            return history.contains(url);
+        }
+
+        @Override
+        protected void waitForThreads() {
+        }
+    }
+
+    @Test
+    void oldestFirstListingIsWalkedInFull() throws Exception {
+        Set<String> history = new HashSet<>();
+        ThreadRipper first = new ThreadRipper(history);
+        first.posts.addAll(List.of("https://example.com/1.jpg", "https://example.com/2.jpg"));
+        first.setWatchMarks(Collections.emptyMap());
+        first.rip();
+        assertEquals(first.posts, first.downloaded);
+        assertEquals(2, first.getNewWatchItems());
+
+        ThreadRipper second = new ThreadRipper(history);
+        second.posts.addAll(List.of("https://example.com/1.jpg", "https://example.com/2.jpg",
+                "https://example.com/3.jpg"));
+        second.setWatchMarks(first.getWatchMarks());
+        second.rip();
+        assertEquals(List.of("https://example.com/3.jpg"), second.downloaded);
+        assertEquals(1, second.getNewWatchItems());
+    }
+}
@@ -2,6 +2,7 @@ package com.rarchives.ripme.ripper.rippers;
 
 import com.rarchives.ripme.utils.DownloadLimitTracker;
 import com.rarchives.ripme.utils.Utils;
+import org.json.JSONObject;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -9,8 +10,12 @@ import org.junit.jupiter.api.Test;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -89,6 +94,46 @@ class RedditRipperTest {
         assertEquals("https://v.redd.it/hdohowvhfslg1/fallback.mp4", parsed.toExternalForm());
     }
 
+    @Test
+    void watchesSubredditsNewestFirst() throws Exception {
+        RedditRipper ripper = new RedditRipper(new URL("https://www.reddit.com/r/pics"));
+        assertEquals("https://www.reddit.com/r/pics.json",
+                ripper.getJsonURL(new URL("https://www.reddit.com/r/pics")).toExternalForm());
+
+        ripper.setWatchMarks(Collections.emptyMap());
+        assertEquals("https://www.reddit.com/r/pics/new.json",
+                ripper.getJsonURL(new URL("https://www.reddit.com/r/pics")).toExternalForm());
+        assertEquals("https://www.reddit.com/r/pics/new.json?t=week",
+                ripper.getJsonURL(new URL("https://www.reddit.com/r/pics/top/?t=week")).toExternalForm());
+        assertEquals("https://www.reddit.com/r/pics/comments/abc/title.json",
+                ripper.getJsonURL(new URL("https://www.reddit.com/r/pics/comments/abc/title")).toExternalForm());
+    }
+
+    @Test
+    void stickiedPostsAreNotWatchMarks() throws Exception {
+        JSONObject stickied = new JSONObject().put("kind", "t3")
+                .put("data", new JSONObject().put("name", "t3_rules").put("stickied", true));
+
+        RedditRipper first = new RedditRipper(new URL("https://www.reddit.com/r/pics"));
+        first.setWatchMarks(Collections.emptyMap());
+        assertFalse(first.reachedWatchMark(stickied));
+        assertFalse(first.reachedWatchMark(post("t3_b")));
+        assertFalse(first.reachedWatchMark(post("t3_a")));
+        Map<String, List<String>> marks = first.getWatchMarks();
+        assertEquals(List.of("t3_b", "t3_a"), marks.get(""));
+
+        RedditRipper second = new RedditRipper(new URL("https://www.reddit.com/r/pics"));
+        second.setWatchMarks(marks);
+        assertFalse(second.reachedWatchMark(stickied));
+        assertFalse(second.reachedWatchMark(post("t3_c")));
+        assertTrue(second.reachedWatchMark(post("t3_b")));
+        assertEquals(1, second.getNewWatchItems());
+    }
+
+    private static JSONObject post(String name) {
+        return new JSONObject().put("kind", "t3").put("data", new JSONObject().put("name", name));
+    }
+
     private DownloadLimitTracker downloadLimitTrackerOf(RedditRipper ripper) throws Exception {
         Field field = RedditRipper.class.getDeclaredField("downloadLimitTracker");
         field.setAccessible(true);
@@ -239,11 +239,11 @@ public class CoomerPartyRipperTest extends RippersTest {
             }
 
             @Override
-            protected String fetchRawPosts(String apiUrl, Map<String, String> headers) throws IOException {
+            protected JSONArray fetchPosts(String apiUrl, Map<String, String> headers) throws IOException {
                 if (headers.containsKey("Cookie")) {
                     throw new HttpStatusException("Forbidden", 403, apiUrl);
                 }
-                return "[{\"id\":42}]";
+                return parsePostsArray("[{\"id\":42}]");
             }
         }
 
@@ -0,0 +1,98 @@
+package com.rarchives.ripme.ui;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LogListModelTest {
+
+    private static LogListModel.Line line(String text, LogListModel.Level level, String source) {
+        return new LogListModel.Line(text, Color.BLACK, level, source);
+    }
+
+    private static List<String> texts(LogListModel model) {
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < model.getSize(); i++) {
+            texts.add(model.getElementAt(i).getText());
+        }
+        return texts;
+    }
+
+    @Test
+    void dropsOldestLinesBeyondCapacity() {
+        LogListModel model = new LogListModel(3);
+        for (int i = 0; i < 5; i++) {
+            model.append(line("line" + i, LogListModel.Level.INFO, null));
+        }
+        assertEquals(List.of("line2", "line3", "line4"), texts(model));
+    }
+
+    @Test
+    void filtersByLevelAndSource() {
+        LogListModel model = new LogListModel(4);
+        model.append(line("a-info", LogListModel.Level.INFO, "a"));
+        model.append(line("a-error", LogListModel.Level.ERROR, "a"));
+        model.append(line("b-warn", LogListModel.Level.WARN, "b"));
+
+        model.setFilter(LogListModel.Level.WARN, null);
+        assertEquals(List.of("a-error", "b-warn"), texts(model));
+
+        model.setFilter(LogListModel.Level.INFO, "a");
+        assertEquals(List.of("a-info", "a-error"), texts(model));
+
+        // New lines are matched as they arrive, evicted lines leave the filtered view.
+        model.append(line("a-info2", LogListModel.Level.INFO, "a"));
+        model.append(line("b-info", LogListModel.Level.INFO, "b"));
+        model.append(line("a-warn", LogListModel.Level.WARN, "a"));
+        assertEquals(List.of("a-info2", "a-warn"), texts(model));
+
+        model.setFilter(LogListModel.Level.INFO, null);
+        assertEquals(List.of("b-warn", "a-info2", "b-info", "a-warn"), texts(model));
+    }
+
+    @Test
+    void reportsRemovedAndAddedRows() {
+        LogListModel model = new LogListModel(3);
+        model.append(line("line0", LogListModel.Level.INFO, null));
+        model.append(line("line1", LogListModel.Level.INFO, null));
+        List<String> events = new ArrayList<>();
+        model.addListDataListener(new ListDataListener() {
+            public void intervalAdded(ListDataEvent e) {
+                events.add("added " + e.getIndex0() + "-" + e.getIndex1());
+            }
+
+            public void intervalRemoved(ListDataEvent e) {
+                events.add("removed " + e.getIndex0() + "-" + e.getIndex1());
+            }
+
+            public void contentsChanged(ListDataEvent e) {
+                events.add("changed");
+            }
+        });
+        model.append(List.of(line("line2", LogListModel.Level.INFO, null), line("line3", LogListModel.Level.INFO, null)));
+        assertEquals(List.of("removed 0-0", "added 1-2"), events);
+    }
+
+    @Test
+    void spillsEveryLineToFile() throws Exception {
+        Path dir = Files.createTempDirectory("ripme-log");
+        Path file = dir.resolve("gui_log.txt");
+        LogListModel model = new LogListModel(1);
+        model.setSpillFile(file);
+        model.append(line("first", LogListModel.Level.INFO, "example.com"));
+        model.append(line("second", LogListModel.Level.ERROR, null));
+        model.closeSpillFile();
+
+        assertEquals(List.of("second"), texts(model));
+        assertEquals(List.of("INFO [example.com] first", "ERROR second"), Files.readAllLines(file));
+    }
+}
@@ -0,0 +1,67 @@
+package com.rarchives.ripme.ui;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StatusEventBusTest {
+
+    private static Object progressKey(String event) {
+        return event.startsWith("bytes:") ? event.substring(0, event.lastIndexOf(':')) : null;
+    }
+
+    @Test
+    void collapsesProgressAndKeepsOrderedEvents() throws Exception {
+        List<List<String>> batches = new CopyOnWriteArrayList<>();
+        ExecutorService delivery = Executors.newSingleThreadExecutor();
+        StatusEventBus<String> bus = new StatusEventBus<>(StatusEventBusTest::progressKey, batches::add, delivery, 2);
+
+        // The first event is delivered right away; everything after it waits for the next frame.
+        bus.publish("start");
+        Thread.sleep(100);
+        for (int i = 0; i < 100; i++) {
+            bus.publish("bytes:a:" + i);
+            bus.publish("bytes:b:" + i);
+        }
+        bus.publish("log1");
+        bus.publish("log2");
+        Thread.sleep(1000);
+        delivery.shutdown();
+        assertTrue(delivery.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(2, batches.size());
+        assertEquals(Arrays.asList("start"), batches.get(0));
+        List<String> second = new ArrayList<>(batches.get(1));
+        assertEquals(4, second.size());
+        assertTrue(second.subList(0, 2).containsAll(Arrays.asList("bytes:a:99", "bytes:b:99")));
+        assertEquals(Arrays.asList("log1", "log2"), second.subList(2, 4));
+    }
+
+    @Test
+    void limitsDeliveryRate() throws Exception {
+        List<List<String>> batches = new CopyOnWriteArrayList<>();
+        StatusEventBus<String> bus = new StatusEventBus<>(event -> null, batches::add, Runnable::run, 10);
+
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500);
+        int published = 0;
+        while (System.nanoTime() < end) {
+            bus.publish("event" + published++);
+        }
+        Thread.sleep(300);
+
+        int delivered = 0;
+        for (List<String> batch : batches) {
+            delivered += batch.size();
+        }
+        assertEquals(published, delivered);
+        assertTrue(batches.size() <= 8, "delivered " + batches.size() + " batches in half a second");
+    }
+}
@@ -0,0 +1,43 @@
+package com.rarchives.ripme.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BufferPoolTest {
+
+    @Test
+    void reusesReleasedBuffers() {
+        BufferPool pool = new BufferPool(8192, 2);
+        ByteBuffer first = pool.acquire();
+        assertTrue(first.isDirect());
+        first.put((byte) 1);
+        pool.release(first);
+        ByteBuffer again = pool.acquire();
+        assertSame(first, again);
+        assertEquals(0, again.position());
+        assertEquals(8192, again.remaining());
+        assertEquals(1, pool.getCreated());
+    }
+
+    @Test
+    void fallsBackToHeapBuffersWhenExhausted() {
+        BufferPool pool = new BufferPool(8192, 2);
+        ByteBuffer a = pool.acquire();
+        ByteBuffer b = pool.acquire();
+        ByteBuffer c = pool.acquire();
+        assertTrue(a.isDirect());
+        assertTrue(b.isDirect());
+        assertFalse(c.isDirect());
+        pool.release(c);
+        pool.release(a);
+        pool.release(b);
+        assertEquals(2, pool.getCreated());
+        // Only the pooled direct buffers come back
+        assertTrue(pool.acquire().isDirect());
+        assertTrue(pool.acquire().isDirect());
+        assertFalse(pool.acquire().isDirect());
+    }
+}
@@ -0,0 +1,94 @@
+package com.rarchives.ripme.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FirefoxCookieUtilsTest {
+
+    private static void insert(Connection conn, String host, String name, String value, long lastAccessed)
+            throws Exception {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO moz_cookies (host, name, value, lastAccessed) VALUES (?, ?, ?, ?)")) {
+            stmt.setString(1, host);
+            stmt.setString(2, name);
+            stmt.setString(3, value);
+            stmt.setLong(4, lastAccessed);
+            stmt.executeUpdate();
+        }
+    }
+
+    @Test
+    void likePatternsMatchLikeSQLite() {
+        assertTrue(FirefoxCookieUtils.likeToRegex("%tumblr.co%").matcher("www.Tumblr.com").matches());
+        assertTrue(FirefoxCookieUtils.likeToRegex("%coomer%").matcher(".coomer.su").matches());
+        assertTrue(FirefoxCookieUtils.likeToRegex("_.example.com").matcher("a.example.com").matches());
+        assertFalse(FirefoxCookieUtils.likeToRegex("_.example.com").matcher("ab.example.com").matches());
+        assertFalse(FirefoxCookieUtils.likeToRegex("%reddit.com").matcher("reddit.com.evil").matches());
+    }
+
+    @Test
+    void readsSnapshotUntilDatabaseChanges() throws Exception {
+        assertTrue(FirefoxCookieUtils.isSQLiteDriverAvailable());
+        Path profile = Files.createTempDirectory("ripme-firefox-profile");
+        Path sqlite = profile.resolve("cookies.sqlite");
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + sqlite)) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE moz_cookies (id INTEGER PRIMARY KEY, host TEXT, name TEXT, value TEXT,"
+                        + " lastAccessed INTEGER)");
+            }
+            insert(conn, ".reddit.com", "token_v2", "old", 1);
+            insert(conn, "old.reddit.com", "token_v2", "new", 2);
+            insert(conn, ".notreddit.com", "session", "other", 3);
+            insert(conn, ".coomer.su", "session", "coomer", 4);
+            insert(conn, "www.tumblr.com", "pfg", "tumblr", 5);
+        }
+
+        long recheckNanos = FirefoxCookieUtils.recheckNanos;
+        FirefoxCookieUtils.recheckNanos = 0;
+        try {
+            Map<String, String> reddit = FirefoxCookieUtils.readCookiesFromProfile(profile, List.of("%reddit.com"));
+            assertEquals(Map.of("token_v2", "new"), reddit);
+            // Only the hosts asked for are kept; LIKE also matches .notreddit.com, which the lookup leaves out
+            assertEquals(3, FirefoxCookieUtils.snapshotSize(profile));
+            assertEquals(Map.of("session", "coomer"),
+                    FirefoxCookieUtils.readCookiesFromProfile(profile, List.of("%coomer%")));
+            assertEquals(Map.of("pfg", "tumblr"),
+                    FirefoxCookieUtils.readCookiesFromProfile(profile, List.of("%tumblr.com", "%tumblr.co%")));
+            assertTrue(FirefoxCookieUtils.readCookiesFromProfile(profile, List.of("%bsky.app")).isEmpty());
+            assertEquals(5, FirefoxCookieUtils.snapshotSize(profile));
+
+            // A change that keeps the size and modification time is not seen
+            FileTime modified = Files.getLastModifiedTime(sqlite);
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + sqlite);
+                    Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("UPDATE moz_cookies SET value = 'NEW' WHERE value = 'new'");
+            }
+            Files.setLastModifiedTime(sqlite, modified);
+            assertEquals(Map.of("token_v2", "new"),
+                    FirefoxCookieUtils.readCookiesFromProfile(profile, List.of("%reddit.com")));
+
+            // Nor is any change until the snapshot is due for a check
+            Files.setLastModifiedTime(sqlite, FileTime.fromMillis(modified.toMillis() + 5000));
+            FirefoxCookieUtils.recheckNanos = Long.MAX_VALUE;
+            assertEquals(Map.of("token_v2", "new"),
+                    FirefoxCookieUtils.readCookiesFromProfile(profile, List.of("%reddit.com")));
+
+            FirefoxCookieUtils.recheckNanos = 0;
+            assertEquals(Map.of("token_v2", "NEW"),
+                    FirefoxCookieUtils.readCookiesFromProfile(profile, List.of("%reddit.com")));
+        } finally {
+            FirefoxCookieUtils.recheckNanos = recheckNanos;
+        }
+    }
+}
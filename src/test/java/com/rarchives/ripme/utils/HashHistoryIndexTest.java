@@ -0,0 +1,72 @@
+package com.rarchives.ripme.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HashHistoryIndexTest {
+
+    private static byte[] sha256(String text) throws Exception {
+        return MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void loadsExistingHexHistory() throws Exception {
+        Path dir = Files.createTempDirectory("ripme-hash-history");
+        Path history = dir.resolve("hash_history.txt");
+        Files.write(history, List.of(HashHistoryIndex.toHex(sha256("a")), "", "not-a-hash"));
+
+        HashHistoryIndex index = new HashHistoryIndex(history);
+
+        assertTrue(index.contains(sha256("a")));
+        assertFalse(index.contains(sha256("b")));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void addIfAbsentDetectsDuplicatesAndPersists() throws Exception {
+        Path dir = Files.createTempDirectory("ripme-hash-history");
+        Path history = dir.resolve("hash_history.txt");
+
+        HashHistoryIndex index = new HashHistoryIndex(history);
+        assertTrue(index.addIfAbsent(sha256("a")));
+        assertFalse(index.addIfAbsent(sha256("a")));
+        assertTrue(index.addIfAbsent(sha256("b")));
+
+        assertEquals(List.of(HashHistoryIndex.toHex(sha256("a")), HashHistoryIndex.toHex(sha256("b"))),
+                Files.readAllLines(history));
+
+        HashHistoryIndex reloaded = new HashHistoryIndex(history);
+        assertFalse(reloaded.addIfAbsent(sha256("b")));
+        assertEquals(2, reloaded.size());
+    }
+
+    @Test
+    void growsPastInitialCapacity() throws Exception {
+        Path dir = Files.createTempDirectory("ripme-hash-history");
+        HashHistoryIndex index = new HashHistoryIndex(dir.resolve("hash_history.txt"));
+
+        for (int i = 0; i < 50000; i++) {
+            assertTrue(index.addIfAbsent(sha256(Integer.toString(i))));
+        }
+        assertEquals(50000, index.size());
+        for (int i = 0; i < 50000; i++) {
+            assertTrue(index.contains(sha256(Integer.toString(i))));
+        }
+        assertTrue(index.addIfAbsent(new byte[HashHistoryIndex.HASH_LENGTH]));
+        assertFalse(index.addIfAbsent(new byte[HashHistoryIndex.HASH_LENGTH]));
+    }
+
+    @Test
+    void hexRoundTrip() throws Exception {
+        byte[] hash = sha256("roundtrip");
+        assertArrayEquals(hash, HashHistoryIndex.fromHex(HashHistoryIndex.toHex(hash)));
+        assertNull(HashHistoryIndex.fromHex("zz"));
+    }
+}
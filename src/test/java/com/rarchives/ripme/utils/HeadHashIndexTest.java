@@ -0,0 +1,46 @@
+package com.rarchives.ripme.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HeadHashIndexTest {
+
+    private static byte[] sha256(String text) throws Exception {
+        return MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void matchesOnSizeAndHead() throws Exception {
+        Path dir = Files.createTempDirectory("ripme-head-hash");
+        HeadHashIndex index = new HeadHashIndex(dir.resolve("hash_heads.txt"));
+
+        index.add(100000, sha256("a"));
+        assertTrue(index.contains(100000, sha256("a")));
+        assertFalse(index.contains(100001, sha256("a")));
+        assertFalse(index.contains(100000, sha256("b")));
+
+        index.add(100000, sha256("a"));
+        assertEquals(1, index.size());
+        assertEquals(1, Files.readAllLines(dir.resolve("hash_heads.txt")).size());
+    }
+
+    @Test
+    void loadsExistingEntries() throws Exception {
+        Path dir = Files.createTempDirectory("ripme-head-hash");
+        Path heads = dir.resolve("hash_heads.txt");
+        Files.write(heads, List.of("20480 " + HashHistoryIndex.toHex(sha256("a")), "", "20480", "x "
+                + HashHistoryIndex.toHex(sha256("b")), "4096 not-a-hash"));
+
+        HeadHashIndex index = new HeadHashIndex(heads);
+        assertEquals(1, index.size());
+        assertTrue(index.contains(20480, sha256("a")));
+        assertFalse(index.contains(20480, sha256("b")));
+    }
+}
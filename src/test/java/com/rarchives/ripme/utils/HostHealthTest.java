@@ -0,0 +1,69 @@
+package com.rarchives.ripme.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HostHealthTest {
+
+    @Test
+    void opensAfterConsecutiveFailuresAndLetsOneProbeThrough() {
+        AtomicLong now = new AtomicLong(0);
+        HostHealth health = new HostHealth(3, 1000, now::get);
+
+        health.onFailure("cdn.example.com");
+        health.onResponse("cdn.example.com", 503);
+        health.onSuccess("cdn.example.com");
+        health.onFailure("cdn.example.com");
+        health.onFailure("cdn.example.com");
+        assertEquals(HostHealth.State.CLOSED, health.getState("cdn.example.com"));
+        health.onResponse("cdn.example.com", 500);
+        assertEquals(HostHealth.State.OPEN, health.getState("cdn.example.com"));
+        assertFalse(health.tryRequest("cdn.example.com"));
+        assertTrue(health.tryRequest("example.com"));
+
+        now.set(1000);
+        assertEquals(HostHealth.State.HALF_OPEN, health.getState("cdn.example.com"));
+        assertTrue(health.tryRequest("cdn.example.com"));
+        assertFalse(health.tryRequest("cdn.example.com"));
+
+        // a failed probe doubles the cool-down
+        health.onFailure("cdn.example.com");
+        now.set(2999);
+        assertTrue(health.isOpen("cdn.example.com"));
+        now.set(3000);
+        assertTrue(health.tryRequest("cdn.example.com"));
+        health.onResponse("cdn.example.com", 404);
+        assertEquals(HostHealth.State.CLOSED, health.getState("cdn.example.com"));
+        assertTrue(health.tryRequest("cdn.example.com"));
+    }
+
+    @Test
+    void notifiesListenersOnRecoveryAndIgnoresWww() {
+        HostHealth health = new HostHealth(1, 60_000, System::currentTimeMillis);
+        List<String> available = new CopyOnWriteArrayList<>();
+        health.addListener(available::add);
+
+        health.onFailure("www.example.com");
+        assertTrue(health.isOpen("example.com"));
+        health.onSuccess("example.com");
+        assertFalse(health.isOpen("www.example.com"));
+        assertEquals(List.of("example.com"), available);
+
+        health.onSuccess("example.com");
+        assertEquals(1, available.size());
+    }
+
+    @Test
+    void disabledWithZeroThreshold() {
+        HostHealth health = new HostHealth(0, 1000, System::currentTimeMillis);
+        for (int i = 0; i < 100; i++) {
+            health.onFailure("example.com");
+        }
+        assertEquals(HostHealth.State.CLOSED, health.getState("example.com"));
+    }
+}
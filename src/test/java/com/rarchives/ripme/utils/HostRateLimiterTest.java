@@ -0,0 +1,90 @@
+package com.rarchives.ripme.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HostRateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void unknownHostsAreNotLimited() {
+        HostRateLimiter limiter = new HostRateLimiter(0.1, 0.01, 20, System::nanoTime);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, limiter.reserve("example.com"));
+        }
+        limiter.onSuccess("example.com");
+        assertEquals(0.0, limiter.getRate("example.com"));
+    }
+
+    @Test
+    void budgetSpacesRequests() {
+        AtomicLong now = new AtomicLong(0);
+        HostRateLimiter limiter = new HostRateLimiter(0.1, 0.01, 20, now::get);
+        limiter.setBudget("example.com", 0.5);
+
+        assertEquals(0, limiter.reserve("example.com"));
+        assertEquals(2 * SECOND, limiter.reserve("example.com"));
+        assertEquals(4 * SECOND, limiter.reserve("example.com"));
+        now.addAndGet(10 * SECOND);
+        assertEquals(0, limiter.reserve("example.com"));
+    }
+
+    @Test
+    void throttlingHalvesRateAndSuccessRaisesIt() {
+        AtomicLong now = new AtomicLong(0);
+        HostRateLimiter limiter = new HostRateLimiter(0.5, 0.25, 20, now::get);
+        limiter.setBudget("example.com", 2);
+
+        limiter.onResponse("example.com", 503, null);
+        assertEquals(1, limiter.getRate("example.com"), 1e-9);
+        limiter.onResponse("example.com", 429, null);
+        assertEquals(0.5, limiter.getRate("example.com"), 1e-9);
+        limiter.onThrottled("example.com", -1);
+        limiter.onThrottled("example.com", -1);
+        assertEquals(0.25, limiter.getRate("example.com"), 1e-9);
+
+        limiter.onResponse("example.com", 200, null);
+        assertEquals(0.75, limiter.getRate("example.com"), 1e-9);
+        for (int i = 0; i < 20; i++) {
+            limiter.onSuccess("example.com");
+        }
+        // a declared budget grows to twice its starting rate
+        assertEquals(4, limiter.getRate("example.com"), 1e-9);
+        limiter.onResponse("example.com", 404, null);
+        assertEquals(4, limiter.getRate("example.com"), 1e-9);
+    }
+
+    @Test
+    void retryAfterBlocksHostAndUnbudgetedHostRecovers() {
+        AtomicLong now = new AtomicLong(0);
+        HostRateLimiter limiter = new HostRateLimiter(5, 0.1, 20, now::get);
+
+        limiter.onResponse("example.com", 429, "30");
+        assertEquals(10, limiter.getRate("example.com"), 1e-9);
+        assertEquals(30 * SECOND, limiter.reserve("example.com"));
+        assertEquals(0, limiter.reserve("example.org"));
+
+        now.addAndGet(60 * SECOND);
+        limiter.onSuccess("example.com");
+        assertEquals(15, limiter.getRate("example.com"), 1e-9);
+        limiter.onSuccess("example.com");
+        assertEquals(0.0, limiter.getRate("example.com"));
+        assertEquals(0, limiter.reserve("example.com"));
+    }
+
+    @Test
+    void parsesRetryAfterAndHosts() throws Exception {
+        assertEquals(120_000, HostRateLimiter.parseRetryAfterMillis(" 120 "));
+        assertEquals(-1, HostRateLimiter.parseRetryAfterMillis(null));
+        assertEquals(-1, HostRateLimiter.parseRetryAfterMillis("soon"));
+        assertEquals(0, HostRateLimiter.parseRetryAfterMillis("Wed, 21 Oct 2015 07:28:00 GMT"));
+        assertEquals("example.com", HostRateLimiter.hostOf(new URI("https://WWW.Example.com/a").toURL()));
+        assertEquals("i.example.com", HostRateLimiter.hostOf(new URI("https://i.example.com/a").toURL()));
+    }
+}
@@ -0,0 +1,84 @@
+package com.rarchives.ripme.utils;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JsonStreamReaderTest {
+
+    @Test
+    void pullsOnlyTheRequestedFields() throws IOException {
+        String json = "{\"data\": {\"children\": [{\"id\": \"a\", \"big\": {\"x\": [1, 2, {\"y\": \"}]\"}]}},"
+                + " {\"id\": \"b\\u00e9\\n\", \"big\": null}], \"after\": \"t3_b\", \"count\": 2}}";
+        JsonStreamReader reader = new JsonStreamReader(new StringReader(json));
+        StringBuilder ids = new StringBuilder();
+        String after = null;
+        reader.beginObject();
+        assertEquals("data", reader.nextName());
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("children")) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (reader.nextName().equals("id")) {
+                            ids.append(reader.nextString()).append(',');
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                reader.endArray();
+            } else if (name.equals("after")) {
+                after = reader.nextString();
+            } else {
+                assertEquals(JsonStreamReader.Token.NUMBER, reader.peek());
+                assertEquals(2, reader.nextInt());
+            }
+        }
+        reader.endObject();
+        reader.endObject();
+        assertEquals(JsonStreamReader.Token.END_DOCUMENT, reader.peek());
+        assertEquals("a,bé\n,", ids.toString());
+        assertEquals("t3_b", after);
+    }
+
+    @Test
+    void readsFilteredObjects() throws IOException {
+        String json = "\uFEFF[{\"id\": 12345678901, \"file\": {\"path\": \"/a.jpg\"}, \"content\": \"long\","
+                + " \"ok\": true, \"score\": -1.5e2, \"none\": null}]";
+        JsonStreamReader reader = JsonStreamReader.of(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+        reader.beginArray();
+        JSONObject post = reader.readObject(new HashSet<>(Arrays.asList("id", "file", "ok", "score", "none")));
+        reader.endArray();
+        assertFalse(post.has("content"));
+        assertEquals(12345678901L, post.getLong("id"));
+        assertEquals("/a.jpg", post.getJSONObject("file").getString("path"));
+        assertTrue(post.getBoolean("ok"));
+        assertEquals(-150.0, post.getDouble("score"));
+        assertTrue(post.isNull("none"));
+    }
+
+    @Test
+    void rejectsMalformedInput() {
+        assertThrows(JsonStreamReader.MalformedJsonException.class,
+                () -> new JsonStreamReader(new StringReader("[1 2]")).readArray());
+        assertThrows(JsonStreamReader.MalformedJsonException.class,
+                () -> new JsonStreamReader(new StringReader("<html>")).readValue());
+        assertThrows(JsonStreamReader.MalformedJsonException.class,
+                () -> new JsonStreamReader(new StringReader("{\"a\": \"unterminated")).readObject());
+        assertThrows(JsonStreamReader.MalformedJsonException.class,
+                () -> new JsonStreamReader(new StringReader("[\"a\"]")).beginObject());
+    }
+}
@@ -0,0 +1,77 @@
+package com.rarchives.ripme.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsTest {
+
+    private static long millis(long ms) {
+        return TimeUnit.MILLISECONDS.toNanos(ms);
+    }
+
+    @Test
+    void recordsPerHostCountersAndHistogram() {
+        Metrics metrics = new Metrics(System::nanoTime);
+        metrics.onResponse("a.example", 200, millis(30));
+        metrics.onResponse("a.example", 429, millis(700));
+        metrics.onResponse("a.example", 503, millis(40_000));
+        metrics.onFailure("a.example");
+        metrics.onRetry("a.example");
+        metrics.onResponse("b.example", 200, millis(80));
+
+        String text = metrics.toPrometheus();
+        assertTrue(text.contains("ripme_http_request_duration_seconds_bucket{host=\"a.example\",le=\"0.05\"} 1\n"));
+        assertTrue(text.contains("ripme_http_request_duration_seconds_bucket{host=\"a.example\",le=\"1\"} 2\n"));
+        assertTrue(text.contains("ripme_http_request_duration_seconds_bucket{host=\"a.example\",le=\"30\"} 2\n"));
+        assertTrue(text.contains("ripme_http_request_duration_seconds_bucket{host=\"a.example\",le=\"+Inf\"} 3\n"));
+        assertTrue(text.contains("ripme_http_requests_total{host=\"a.example\"} 4\n"));
+        assertTrue(text.contains("ripme_http_throttled_total{host=\"a.example\"} 1\n"));
+        assertTrue(text.contains("ripme_http_server_errors_total{host=\"a.example\"} 1\n"));
+        assertTrue(text.contains("ripme_http_retries_total{host=\"a.example\"} 1\n"));
+        assertTrue(text.contains("ripme_http_request_duration_seconds_bucket{host=\"b.example\",le=\"0.1\"} 1\n"));
+
+        List<HostMetrics> hosts = metrics.getHosts();
+        assertEquals(2, hosts.size());
+        assertEquals("a.example", hosts.get(0).getHost());
+        assertEquals(1, hosts.get(0).getFailures());
+    }
+
+    @Test
+    void downloadRateComesFromSamples() {
+        AtomicLong now = new AtomicLong(0);
+        Metrics metrics = new Metrics(now::get);
+        metrics.onBytes("cdn.example", 1000);
+        metrics.sample();
+        metrics.onBytes("cdn.example", 4000);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        metrics.sample();
+        assertEquals(2000.0, metrics.getHosts().get(0).getBytesPerSecond());
+        assertTrue(metrics.toPrometheus().contains("ripme_download_bytes_total{host=\"cdn.example\"} 5000\n"));
+    }
+
+    @Test
+    void countsRipperEventsAndQueues() {
+        Metrics metrics = new Metrics(System::nanoTime);
+        metrics.onStatus("reddit", "DOWNLOAD_COMPLETE");
+        metrics.onStatus("reddit", "DOWNLOAD_COMPLETE");
+        metrics.onDedupHit("reddit");
+        metrics.onHistoryHit("imgur");
+        Map<String, Integer> depths = Collections.singletonMap("i.redd.it", 7);
+        Object pool = new Object();
+        metrics.addQueue(pool, ignored -> depths);
+
+        String text = metrics.toPrometheus();
+        assertTrue(text.contains("ripme_rip_updates_total{ripper=\"reddit\",status=\"DOWNLOAD_COMPLETE\"} 2\n"));
+        assertTrue(text.contains("ripme_download_queue_depth{host=\"i.redd.it\"} 7\n"));
+        assertEquals(1L, metrics.getDedupHits().get("reddit"));
+        assertEquals(1L, metrics.getHistoryHits().get("imgur"));
+        assertEquals(7, metrics.getQueueDepth());
+    }
+}
@@ -0,0 +1,100 @@
+package com.rarchives.ripme.utils;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NearDuplicateCheckerTest {
+
+    private static BufferedImage gradient(int width, int height, boolean flipped) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int value = (int) (255.0 * Math.abs(Math.sin((flipped ? width - x : x) * 6.0 / width + y * 3.0 / height)));
+                image.setRGB(x, y, new Color(value, 255 - value, value / 2).getRGB());
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage resize(BufferedImage image, int width, int height) {
+        BufferedImage resized = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = resized.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(image, 0, 0, width, height, null);
+        graphics.dispose();
+        return resized;
+    }
+
+    @Test
+    void resizedCopiesHashClose() throws Exception {
+        BufferedImage original = gradient(800, 600, false);
+        long hash = PerceptualHash.dHash(original);
+        assertTrue(PerceptualHash.distance(hash, PerceptualHash.dHash(resize(original, 320, 240))) <= 4);
+        assertTrue(PerceptualHash.distance(hash, PerceptualHash.dHash(gradient(800, 600, true))) > 16);
+        assertNull(PerceptualHash.dHash(new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB)));
+    }
+
+    @Test
+    void skipsAndLinksNearDuplicates() throws Exception {
+        Path dir = Files.createTempDirectory("ripme-near-duplicates");
+        PerceptualHashIndex index = new PerceptualHashIndex(dir.resolve("image_hashes.txt"));
+        BufferedImage original = gradient(800, 600, false);
+        Path first = dir.resolve("first.png");
+        Path skipped = dir.resolve("skipped.png");
+        Path linked = dir.resolve("linked.png");
+        Path other = dir.resolve("other.png");
+        ImageIO.write(original, "png", first.toFile());
+        ImageIO.write(resize(original, 400, 300), "png", skipped.toFile());
+        ImageIO.write(resize(original, 640, 480), "png", linked.toFile());
+        ImageIO.write(gradient(800, 600, true), "png", other.toFile());
+
+        assertNull(NearDuplicateChecker.check(first, "example.com", NearDuplicateChecker.Action.SKIP, index, 6));
+        assertEquals(first.toAbsolutePath(),
+                NearDuplicateChecker.check(skipped, "example.com", NearDuplicateChecker.Action.SKIP, index, 6));
+        assertFalse(Files.exists(skipped));
+
+        assertEquals(first.toAbsolutePath(),
+                NearDuplicateChecker.check(linked, "example.com", NearDuplicateChecker.Action.LINK, index, 6));
+        assertTrue(Files.isSameFile(first, linked));
+
+        assertNull(NearDuplicateChecker.check(other, "example.com", NearDuplicateChecker.Action.SKIP, index, 6));
+        assertTrue(Files.exists(other));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    void takesThePlaceOfAMovedOriginal() throws Exception {
+        Path dir = Files.createTempDirectory("ripme-near-duplicates");
+        Path hashes = dir.resolve("image_hashes.txt");
+        PerceptualHashIndex index = new PerceptualHashIndex(hashes);
+        BufferedImage original = gradient(800, 600, false);
+        Path first = dir.resolve("first.png");
+        Path copy = dir.resolve("copy.png");
+        Path again = dir.resolve("again.png");
+        ImageIO.write(original, "png", first.toFile());
+        ImageIO.write(resize(original, 400, 300), "png", copy.toFile());
+        ImageIO.write(resize(original, 640, 480), "png", again.toFile());
+
+        assertNull(NearDuplicateChecker.check(first, "example.com", NearDuplicateChecker.Action.SKIP, index, 6));
+        Files.delete(first);
+        assertNull(NearDuplicateChecker.check(copy, "example.com", NearDuplicateChecker.Action.SKIP, index, 6));
+        assertTrue(Files.exists(copy));
+
+        assertEquals(copy.toAbsolutePath(),
+                NearDuplicateChecker.check(again, "example.com", NearDuplicateChecker.Action.SKIP, index, 6));
+        assertFalse(Files.exists(again));
+        assertEquals(1, index.size());
+
+        long hash = PerceptualHash.of(copy);
+        assertEquals(copy.toAbsolutePath().toString(), new PerceptualHashIndex(hashes).findNear(hash, 6));
+    }
+}
@@ -0,0 +1,68 @@
+package com.rarchives.ripme.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PageCacheTest {
+
+    @Test
+    void storesResponsesWithValidatorsOnly() throws Exception {
+        Path dir = Files.createTempDirectory("ripme-page-cache");
+        PageCache cache = new PageCache(dir, 1024 * 1024);
+        String key = PageCache.key("https://example.com/page/2", Map.of("Accept", "text/html"));
+
+        cache.put(key, "https://example.com/page/2", "\"abc\"", null, "<html>page 2</html>");
+        PageCache.Entry entry = cache.get(key);
+        assertNotNull(entry);
+        assertEquals("<html>page 2</html>", entry.getBody());
+        assertEquals("https://example.com/page/2", entry.getUrl());
+        Map<String, String> headers = new HashMap<>();
+        entry.addConditionalHeaders(headers);
+        assertEquals(Map.of("If-None-Match", "\"abc\""), headers);
+
+        // a later response without validators drops the entry
+        cache.put(key, "https://example.com/page/2", null, null, "<html>new</html>");
+        assertNull(cache.get(key));
+
+        cache.put(key, "https://example.com/page/2", null, "Wed, 21 Oct 2015 07:28:00 GMT", "body");
+        assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", new PageCache(dir, 1024 * 1024).get(key).getLastModified());
+    }
+
+    @Test
+    void keyDependsOnAcceptAndCookies() {
+        String plain = PageCache.key("https://example.com/", null);
+        assertEquals(plain, PageCache.key("https://example.com/", Map.of("User-Agent", "x")));
+        assertNotEquals(plain, PageCache.key("https://example.com/", Map.of("cookie", "a=b")));
+        assertNotEquals(PageCache.key("https://example.com/", Map.of("Accept", "text/html")),
+                PageCache.key("https://example.com/", Map.of("Accept", "application/json")));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedEntries() throws Exception {
+        Path dir = Files.createTempDirectory("ripme-page-cache");
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            body.append(Integer.toHexString(i * 7919));
+        }
+        PageCache probe = new PageCache(Files.createTempDirectory("ripme-page-cache"), Long.MAX_VALUE);
+        probe.put("probe", "u", "e", null, body.toString());
+        long entrySize = probe.getSize();
+
+        PageCache cache = new PageCache(dir, entrySize * 2 + entrySize / 2);
+        cache.put("a", "u", "e", null, body.toString());
+        cache.put("b", "u", "e", null, body.toString());
+        assertNotNull(cache.get("a"));
+        cache.put("c", "u", "e", null, body.toString());
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertTrue(cache.getSize() <= entrySize * 2 + entrySize / 2);
+    }
+}
@@ -0,0 +1,64 @@
+package com.rarchives.ripme.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PerceptualHashIndexTest {
+
+    @Test
+    void findsTheSameNearestAsAScan() {
+        Random random = new Random(42);
+        long[] hashes = new long[5000];
+        HammingIndex index = new HammingIndex();
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = random.nextLong();
+            assertEquals(i, index.add(hashes[i]));
+        }
+        assertEquals(hashes.length, index.size());
+        assertEquals(7, index.add(hashes[7]));
+
+        for (int i = 0; i < 500; i++) {
+            // Flip a few bits of a known hash, or query a random one
+            int radius = i % 3 == 0 ? 9 : 6;
+            long query = i % 2 == 0 ? hashes[random.nextInt(hashes.length)] ^ (1L << random.nextInt(64))
+                    ^ (1L << random.nextInt(64)) ^ (1L << random.nextInt(64)) : random.nextLong();
+            int best = Integer.MAX_VALUE;
+            for (long hash : hashes) {
+                best = Math.min(best, Long.bitCount(hash ^ query));
+            }
+            int entry = index.nearest(query, radius);
+            if (best <= radius) {
+                assertTrue(entry >= 0);
+                assertEquals(best, Long.bitCount(index.getHash(entry) ^ query));
+            } else {
+                assertEquals(-1, entry);
+            }
+        }
+    }
+
+    @Test
+    void addsOnlyImagesWithoutANearDuplicate() throws Exception {
+        Path dir = Files.createTempDirectory("ripme-image-hashes");
+        Path hashes = dir.resolve("image_hashes.txt");
+        PerceptualHashIndex index = new PerceptualHashIndex(hashes);
+
+        assertNull(index.addIfNoneNear(0xff00ff00ff00ff00L, 4, "/rips/a.jpg"));
+        assertEquals("/rips/a.jpg", index.addIfNoneNear(0xff00ff00ff00ff07L, 4, "/rips/b.jpg"));
+        assertNull(index.addIfNoneNear(0x00ff00ff00ff00ffL, 4, "/rips/c.jpg"));
+        assertEquals(2, index.size());
+        assertEquals(List.of("ff00ff00ff00ff00 /rips/a.jpg", "00ff00ff00ff00ff /rips/c.jpg"), Files.readAllLines(hashes));
+
+        Files.write(hashes, List.of("not a hash", ""), StandardOpenOption.APPEND);
+        PerceptualHashIndex reloaded = new PerceptualHashIndex(hashes);
+        assertEquals(2, reloaded.size());
+        assertEquals("/rips/c.jpg", reloaded.findNear(0x00ff00ff00ff00feL, 1));
+        assertNull(reloaded.findNear(0x00ff00ff00ff00fcL, 1));
+    }
+}
@@ -0,0 +1,140 @@
+package com.rarchives.ripme.utils;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReplayServerTest {
+
+    private ReplayServer server;
+
+    @AfterEach
+    void stopServer() {
+        ReplayRouter.setServer(null);
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    private static URL url(String url) throws Exception {
+        return new URI(url).toURL();
+    }
+
+    private static void writeFixture(Path dir, String url, int status, JSONObject headers, String body, long size)
+            throws Exception {
+        String key = ReplayServer.keyOf(url(url));
+        JSONObject fixture = new JSONObject();
+        fixture.put("url", url);
+        fixture.put("status", status);
+        fixture.put("headers", headers);
+        if (body != null) {
+            Files.writeString(dir.resolve(key + ".body"), body, StandardCharsets.UTF_8);
+        } else {
+            fixture.put("size", size);
+        }
+        Files.writeString(dir.resolve(key + ".json"), fixture.toString(), StandardCharsets.UTF_8);
+    }
+
+    private static HttpURLConnection open(URL url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) ReplayRouter.route(url).openConnection();
+        connection.setInstanceFollowRedirects(false);
+        return connection;
+    }
+
+    @Test
+    void routesAndUnroutesURLs() throws Exception {
+        ReplayRouter.setServer(url("http://127.0.0.1:8089"));
+        URL original = url("https://i.redd.it/abc.jpg?width=640");
+        URL routed = ReplayRouter.route(original);
+        assertEquals("http://127.0.0.1:8089/https/i.redd.it/abc.jpg?width=640", routed.toExternalForm());
+        assertEquals(routed, ReplayRouter.route(routed));
+        assertEquals(original.toExternalForm(), ReplayRouter.unroute(routed).toExternalForm());
+        assertEquals("http://127.0.0.1:8089/https/example.com/",
+                ReplayRouter.route("https://example.com"));
+        URL other = url("https://example.com/page");
+        assertSame(other, ReplayRouter.unroute(other));
+
+        ReplayRouter.setServer(null);
+        assertSame(original, ReplayRouter.route(original));
+    }
+
+    @Test
+    void replaysFixtures() throws Exception {
+        Path dir = Files.createTempDirectory("ripme-replay");
+        writeFixture(dir, "https://boards.example/thread/1", 200,
+                new JSONObject().put("Content-Type", "text/html; charset=utf-8"), "<html>thread</html>", 0);
+        writeFixture(dir, "https://boards.example/thread/old", 301,
+                new JSONObject().put("Location", "/thread/1"), "", 0);
+        writeFixture(dir, "https://cdn.example/1.jpg", 200,
+                new JSONObject().put("Content-Type", "image/jpeg"), null, 5000);
+        server = new ReplayServer(dir, ReplayServer.Mode.REPLAY, new ReplayServer.Profile());
+        ReplayRouter.setServer(server.start());
+
+        HttpURLConnection page = open(url("https://boards.example/thread/1"));
+        assertEquals(200, page.getResponseCode());
+        try (InputStream in = page.getInputStream()) {
+            assertEquals("<html>thread</html>", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+
+        HttpURLConnection redirect = open(url("https://boards.example/thread/old"));
+        assertEquals(301, redirect.getResponseCode());
+        URL location = url(redirect.getHeaderField("Location"));
+        assertEquals("https://boards.example/thread/1", ReplayRouter.unroute(location).toExternalForm());
+
+        // Media fixtures without a body file serve generated bytes of the recorded size
+        HttpURLConnection media = open(url("http://cdn.example/1.jpg"));
+        assertEquals(200, media.getResponseCode());
+        assertEquals(5000, media.getContentLengthLong());
+        byte[] whole;
+        try (InputStream in = media.getInputStream()) {
+            whole = in.readAllBytes();
+        }
+
+        HttpURLConnection range = open(url("https://cdn.example/1.jpg"));
+        range.setRequestProperty("Range", "bytes=1000-");
+        assertEquals(206, range.getResponseCode());
+        assertEquals("bytes 1000-4999/5000", range.getHeaderField("Content-Range"));
+        try (InputStream in = range.getInputStream()) {
+            byte[] tail = in.readAllBytes();
+            assertEquals(4000, tail.length);
+            assertEquals(whole[1000], tail[0]);
+        }
+
+        assertEquals(404, open(url("https://cdn.example/missing.jpg")).getResponseCode());
+        assertEquals(1, server.getPages());
+        assertEquals(2, server.getFiles());
+        assertEquals(1, server.getMisses());
+    }
+
+    @Test
+    void injectsThrottling() throws Exception {
+        Path dir = Files.createTempDirectory("ripme-replay");
+        writeFixture(dir, "https://cdn.example/1.jpg", 200,
+                new JSONObject().put("Content-Type", "image/jpeg"), null, 10);
+        server = new ReplayServer(dir, ReplayServer.Mode.REPLAY, new ReplayServer.Profile().throttle(3, 2));
+        ReplayRouter.setServer(server.start());
+
+        int[] statuses = new int[6];
+        for (int i = 0; i < statuses.length; i++) {
+            HttpURLConnection connection = open(url("https://cdn.example/1.jpg"));
+            statuses[i] = connection.getResponseCode();
+            if (statuses[i] == 429) {
+                assertEquals("2", connection.getHeaderField("Retry-After"));
+            }
+            connection.disconnect();
+        }
+        assertArrayEquals(new int[]{200, 200, 429, 200, 200, 429}, statuses);
+        assertEquals(2, server.getThrottled());
+    }
+}
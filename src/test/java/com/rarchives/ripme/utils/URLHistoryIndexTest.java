@@ -0,0 +1,76 @@
+package com.rarchives.ripme.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class URLHistoryIndexTest {
+
+    @Test
+    void importsExistingHistoryFile() throws Exception {
+        Path dir = Files.createTempDirectory("ripme-url-history");
+        Path history = dir.resolve("url_history.txt");
+        Files.write(history, List.of("https://example.com/a.jpg", "https://example.com/b.jpg"));
+
+        URLHistoryIndex index = new URLHistoryIndex(history.toFile());
+
+        assertTrue(index.contains("https://example.com/a.jpg"));
+        assertTrue(index.contains("https://example.com/b.jpg"));
+        assertFalse(index.contains("https://example.com/c.jpg"));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    void appendWritesFileAndIndex() throws Exception {
+        Path dir = Files.createTempDirectory("ripme-url-history");
+        Path history = dir.resolve("url_history.txt");
+
+        URLHistoryIndex index = new URLHistoryIndex(history.toFile());
+        assertFalse(index.contains("https://example.com/a.jpg"));
+
+        index.append("https://example.com/a.jpg\n");
+        index.append("https://example.com/a.jpg\n");
+
+        assertTrue(index.contains("https://example.com/a.jpg"));
+        assertEquals(1, index.size());
+        assertEquals(List.of("https://example.com/a.jpg", "https://example.com/a.jpg"), Files.readAllLines(history));
+
+        URLHistoryIndex reloaded = new URLHistoryIndex(history.toFile());
+        assertTrue(reloaded.contains("https://example.com/a.jpg"));
+    }
+
+    @Test
+    void growsPastInitialCapacity() throws Exception {
+        Path dir = Files.createTempDirectory("ripme-url-history");
+        URLHistoryIndex index = new URLHistoryIndex(dir.resolve("url_history.txt").toFile());
+
+        for (int i = 0; i < 10000; i++) {
+            index.append("https://example.com/" + i + ".jpg\n");
+        }
+
+        assertEquals(10000, index.size());
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(index.contains("https://example.com/" + i + ".jpg"));
+        }
+        assertFalse(index.contains("https://example.com/10000.jpg"));
+    }
+
+    @Test
+    void invalidateReloadsFromDisk() throws Exception {
+        Path dir = Files.createTempDirectory("ripme-url-history");
+        Path history = dir.resolve("url_history.txt");
+        URLHistoryIndex index = URLHistoryIndex.forFile(history.toString());
+        index.append("https://example.com/a.jpg\n");
+        assertTrue(index.contains("https://example.com/a.jpg"));
+
+        Files.delete(history);
+        URLHistoryIndex.invalidate(history.toString());
+
+        assertSame(index, URLHistoryIndex.forFile(history.toString()));
+        assertFalse(index.contains("https://example.com/a.jpg"));
+    }
+}